@@ -0,0 +1,193 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.codehaus.cargo.util.log.Logger;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Monitor combining several monitors: the
+ * {@link org.codehaus.cargo.container.deployable.Deployable} is considered deployed as soon as any
+ * of them says so. This allows, for example, to combine a {@link URLDeployableMonitor} with a
+ * {@link LogFileDeployableMonitor}: whichever detects the deployment first wins.
+ * 
+ */
+public class CompositeDeployableMonitor extends LoggedObject implements DeployableMonitor
+{
+    /**
+     * List of {@link DeployableMonitorListener} that we will notify when the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed or undeployed.
+     */
+    private List<DeployableMonitorListener> listeners =
+        new CopyOnWriteArrayList<DeployableMonitorListener>();
+
+    /**
+     * The combined monitors.
+     */
+    private DeployableMonitor[] monitors;
+
+    /**
+     * Last status reported by each of the combined monitors.
+     */
+    private boolean[] statuses;
+
+    /**
+     * @param monitors the monitors to combine, the first one giving the name and timeout of the
+     * composite monitor
+     */
+    public CompositeDeployableMonitor(DeployableMonitor... monitors)
+    {
+        if (monitors.length == 0)
+        {
+            throw new IllegalArgumentException("At least one monitor is required");
+        }
+        this.monitors = monitors;
+        this.statuses = new boolean[monitors.length];
+        for (int i = 0; i < monitors.length; i++)
+        {
+            monitors[i].registerListener(new StatusListener(i));
+        }
+    }
+
+    /**
+     * {@inheritDoc}. The logger is also set on all combined monitors.
+     */
+    @Override
+    public void setLogger(Logger logger)
+    {
+        super.setLogger(logger);
+        for (DeployableMonitor monitor : this.monitors)
+        {
+            monitor.setLogger(logger);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see org.codehaus.cargo.container.deployer.DeployableMonitor#getDeployableName()
+     */
+    public String getDeployableName()
+    {
+        return this.monitors[0].getDeployableName();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see DeployableMonitor#registerListener(DeployableMonitorListener)
+     */
+    public void registerListener(DeployableMonitorListener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Runs all combined monitors.
+     * 
+     * @see DeployableMonitor#monitor()
+     */
+    public void monitor()
+    {
+        for (DeployableMonitor monitor : this.monitors)
+        {
+            monitor.monitor();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see DeployableMonitor#getTimeout()
+     */
+    public long getTimeout()
+    {
+        return this.monitors[0].getTimeout();
+    }
+
+    /**
+     * Records the status reported by one of the combined monitors and notifies the listeners of
+     * the resulting overall status.
+     * 
+     * @param index index of the monitor
+     * @param isDeployed status reported by the monitor
+     */
+    private void statusChanged(int index, boolean isDeployed)
+    {
+        boolean anyDeployed = false;
+        synchronized (this.statuses)
+        {
+            this.statuses[index] = isDeployed;
+            for (boolean status : this.statuses)
+            {
+                anyDeployed |= status;
+            }
+        }
+
+        for (DeployableMonitorListener listener : this.listeners)
+        {
+            if (anyDeployed)
+            {
+                listener.deployed();
+            }
+            else
+            {
+                listener.undeployed();
+            }
+        }
+    }
+
+    /**
+     * Listener receiving the status of one of the combined monitors.
+     */
+    private class StatusListener implements DeployableMonitorListener
+    {
+        /**
+         * Index of the monitor.
+         */
+        private int index;
+
+        /**
+         * @param index index of the monitor
+         */
+        public StatusListener(int index)
+        {
+            this.index = index;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @see DeployableMonitorListener#deployed()
+         */
+        public void deployed()
+        {
+            statusChanged(this.index, true);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @see DeployableMonitorListener#undeployed()
+         */
+        public void undeployed()
+        {
+            statusChanged(this.index, false);
+        }
+    }
+}
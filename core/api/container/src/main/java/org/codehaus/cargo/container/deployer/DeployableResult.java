@@ -0,0 +1,181 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import org.codehaus.cargo.container.deployable.Deployable;
+
+/**
+ * Outcome of a deployment action on a single {@link Deployable}, as part of a
+ * {@link DeploymentResult}.
+ * 
+ */
+public class DeployableResult
+{
+    /**
+     * Deployable the action was performed on.
+     */
+    private final Deployable deployable;
+
+    /**
+     * Action performed: <code>deploy</code>, <code>undeploy</code> or <code>redeploy</code>.
+     */
+    private final String action;
+
+    /**
+     * Time the action started at, in milliseconds.
+     */
+    private final long startTime;
+
+    /**
+     * Time the deployer returned at, in milliseconds.
+     */
+    private long actionEndTime;
+
+    /**
+     * Time the deployable was found in the expected state at, in milliseconds.
+     */
+    private long endTime;
+
+    /**
+     * Failure of the action, <code>null</code> if it succeeded.
+     */
+    private Throwable failure;
+
+    /**
+     * @param deployable Deployable the action is performed on.
+     * @param action Action performed.
+     * @param startTime Time the action started at, in milliseconds.
+     */
+    public DeployableResult(Deployable deployable, String action, long startTime)
+    {
+        this.deployable = deployable;
+        this.action = action;
+        this.startTime = startTime;
+    }
+
+    /**
+     * @return Deployable the action was performed on.
+     */
+    public Deployable getDeployable()
+    {
+        return this.deployable;
+    }
+
+    /**
+     * @return Action performed: <code>deploy</code>, <code>undeploy</code> or
+     * <code>redeploy</code>.
+     */
+    public String getAction()
+    {
+        return this.action;
+    }
+
+    /**
+     * @return Time the action started at, in milliseconds.
+     */
+    public long getStartTime()
+    {
+        return this.startTime;
+    }
+
+    /**
+     * @return Time the deployer returned at, in milliseconds.
+     */
+    public long getActionEndTime()
+    {
+        return this.actionEndTime;
+    }
+
+    /**
+     * @param actionEndTime Time the deployer returned at, in milliseconds.
+     */
+    public void setActionEndTime(long actionEndTime)
+    {
+        this.actionEndTime = actionEndTime;
+    }
+
+    /**
+     * @return Time the deployable was found in the expected state at, in milliseconds. Same as
+     * {@link #getActionEndTime()} if the deployable was not monitored.
+     */
+    public long getEndTime()
+    {
+        return this.endTime;
+    }
+
+    /**
+     * @param endTime Time the deployable was found in the expected state at, in milliseconds.
+     */
+    public void setEndTime(long endTime)
+    {
+        this.endTime = endTime;
+    }
+
+    /**
+     * @return Time spent in the deployer, in milliseconds.
+     */
+    public long getActionDuration()
+    {
+        return this.actionEndTime - this.startTime;
+    }
+
+    /**
+     * @return Time until the deployable was found in the expected state, in milliseconds.
+     */
+    public long getDuration()
+    {
+        return this.endTime - this.startTime;
+    }
+
+    /**
+     * @return Failure of the action, <code>null</code> if it succeeded.
+     */
+    public Throwable getFailure()
+    {
+        return this.failure;
+    }
+
+    /**
+     * @param failure Failure of the action, <code>null</code> if it succeeded.
+     */
+    public void setFailure(Throwable failure)
+    {
+        this.failure = failure;
+    }
+
+    /**
+     * @return <code>true</code> if the action succeeded.
+     */
+    public boolean isSuccessful()
+    {
+        return this.failure == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.action + " of [" + this.deployable.getFile() + "] "
+            + (isSuccessful() ? "succeeded" : "failed: " + this.failure) + " in "
+            + getDuration() + " ms (" + getActionDuration() + " ms in the deployer)";
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.deployable.Deployable;
+
+/**
+ * Aggregate outcome of a deployment action performed on several {@link Deployable}s, possibly
+ * concurrently.
+ * 
+ */
+public class DeploymentResult
+{
+    /**
+     * Results of each deployable, in the order the deployables were given.
+     */
+    private final List<DeployableResult> results;
+
+    /**
+     * Total time taken, in milliseconds.
+     */
+    private final long duration;
+
+    /**
+     * @param results Results of each deployable, in the order the deployables were given.
+     * @param duration Total time taken, in milliseconds.
+     */
+    public DeploymentResult(List<DeployableResult> results, long duration)
+    {
+        this.results = Collections.unmodifiableList(new ArrayList<DeployableResult>(results));
+        this.duration = duration;
+    }
+
+    /**
+     * @return Results of each deployable, in the order the deployables were given.
+     */
+    public List<DeployableResult> getResults()
+    {
+        return this.results;
+    }
+
+    /**
+     * @param deployable Deployable.
+     * @return Result of the deployable, <code>null</code> if not part of this result.
+     */
+    public DeployableResult getResult(Deployable deployable)
+    {
+        for (DeployableResult result : this.results)
+        {
+            if (result.getDeployable() == deployable)
+            {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Results of the deployables the action failed on.
+     */
+    public List<DeployableResult> getFailures()
+    {
+        List<DeployableResult> failures = new ArrayList<DeployableResult>();
+        for (DeployableResult result : this.results)
+        {
+            if (!result.isSuccessful())
+            {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return <code>true</code> if the action succeeded on all deployables.
+     */
+    public boolean isSuccessful()
+    {
+        return getFailures().isEmpty();
+    }
+
+    /**
+     * @return Total time taken, in milliseconds.
+     */
+    public long getDuration()
+    {
+        return this.duration;
+    }
+
+    /**
+     * Throws a {@link ContainerException} if the action failed on any deployable. The exception
+     * is caused by the first failure.
+     */
+    public void checkSuccessful()
+    {
+        List<DeployableResult> failures = getFailures();
+        if (!failures.isEmpty())
+        {
+            StringBuilder message = new StringBuilder();
+            message.append(failures.size());
+            message.append(" of ");
+            message.append(this.results.size());
+            message.append(" deployment actions failed:");
+            for (DeployableResult failure : failures)
+            {
+                message.append("\n  ");
+                message.append(failure);
+            }
+            throw new ContainerException(message.toString(), failures.get(0).getFailure());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Monitor that verifies if a {@link org.codehaus.cargo.container.deployable.Deployable} is deployed
+ * by listening to the JMX notifications emitted by an MBean of the container. As soon as the
+ * JMX connector is reachable, the monitor subscribes to the MBean and notifies its listeners
+ * when a notification of the expected type is received, without waiting for the next call to
+ * {@link #monitor()}. As the notification might have been emitted before the subscription, an
+ * MBean attribute can also be checked on each call to {@link #monitor()}.
+ * 
+ */
+public class JmxNotificationDeployableMonitor extends LoggedObject implements DeployableMonitor,
+    NotificationListener
+{
+    /**
+     * List of {@link DeployableMonitorListener} that we will notify when the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed or undeployed.
+     */
+    private List<DeployableMonitorListener> listeners =
+        new CopyOnWriteArrayList<DeployableMonitorListener>();
+
+    /**
+     * URL of the JMX connector.
+     */
+    private JMXServiceURL serviceURL;
+
+    /**
+     * Environment used when connecting, for example to pass credentials.
+     */
+    private Map<String, ?> environment;
+
+    /**
+     * Name of the MBean emitting the notifications.
+     */
+    private ObjectName objectName;
+
+    /**
+     * Prefix of the type of the notification which tells that the deployable is deployed.
+     */
+    private String notificationType;
+
+    /**
+     * Name of the MBean attribute to check, <code>null</code> if none.
+     */
+    private String attributeName;
+
+    /**
+     * Value the MBean attribute has once the deployable is deployed.
+     */
+    private String attributeValue;
+
+    /**
+     * The timeout after which we stop waiting for deployment.
+     */
+    private long timeout;
+
+    /**
+     * The JMX connector, <code>null</code> if not connected.
+     */
+    private JMXConnector connector;
+
+    /**
+     * Whether the notification has been received.
+     */
+    private volatile boolean notified;
+
+    /**
+     * @param serviceURL URL of the JMX connector
+     * @param objectName name of the MBean emitting the notifications
+     * @param notificationType prefix of the type of the notification which tells that the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed
+     * @param timeout the timeout after which we stop monitoring the deployment
+     */
+    public JmxNotificationDeployableMonitor(JMXServiceURL serviceURL, ObjectName objectName,
+        String notificationType, long timeout)
+    {
+        this.serviceURL = serviceURL;
+        this.objectName = objectName;
+        this.notificationType = notificationType;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param environment environment used when connecting, for example to pass credentials
+     * using {@link JMXConnector#CREDENTIALS}
+     */
+    public void setEnvironment(Map<String, ?> environment)
+    {
+        this.environment = environment;
+    }
+
+    /**
+     * Sets an MBean attribute to check on each call to {@link #monitor()}, which catches the case
+     * of a notification having been emitted before the monitor could subscribe.
+     * 
+     * @param attributeName name of the MBean attribute
+     * @param attributeValue string value the attribute has once the deployable is deployed
+     */
+    public void setAttribute(String attributeName, String attributeValue)
+    {
+        this.attributeName = attributeName;
+        this.attributeValue = attributeValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see org.codehaus.cargo.container.deployer.DeployableMonitor#getDeployableName()
+     */
+    public String getDeployableName()
+    {
+        return this.objectName.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see DeployableMonitor#registerListener(DeployableMonitorListener)
+     */
+    public void registerListener(DeployableMonitorListener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Connects and subscribes to the MBean if not done yet, checks the MBean attribute if any and
+     * tells listeners about the status.
+     * 
+     * @see DeployableMonitor#monitor()
+     */
+    public void monitor()
+    {
+        boolean isDeployed = this.notified;
+        if (!isDeployed)
+        {
+            try
+            {
+                MBeanServerConnection connection = connect();
+                if (this.attributeName != null)
+                {
+                    Object value = connection.getAttribute(this.objectName, this.attributeName);
+                    isDeployed = value != null && this.attributeValue.equals(value.toString());
+                }
+            }
+            catch (IOException e)
+            {
+                getLogger().debug("JMX connector [" + this.serviceURL + "] is not available: "
+                    + e, this.getClass().getName());
+                close();
+            }
+            catch (JMException e)
+            {
+                getLogger().debug("MBean [" + this.objectName + "] is not available: " + e,
+                    this.getClass().getName());
+            }
+        }
+        notifyListeners(isDeployed || this.notified);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see DeployableMonitor#getTimeout()
+     */
+    public long getTimeout()
+    {
+        return this.timeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see NotificationListener#handleNotification(Notification, Object)
+     */
+    public void handleNotification(Notification notification, Object handback)
+    {
+        if (notification.getType() != null
+            && notification.getType().startsWith(this.notificationType))
+        {
+            getLogger().debug("Received notification [" + notification.getType() + "] from ["
+                + this.objectName + "]", this.getClass().getName());
+            this.notified = true;
+            notifyListeners(true);
+        }
+    }
+
+    /**
+     * Unsubscribes from the MBean and closes the JMX connector, if connected.
+     */
+    public synchronized void close()
+    {
+        if (this.connector != null)
+        {
+            try
+            {
+                this.connector.close();
+            }
+            catch (IOException e)
+            {
+                getLogger().debug("Failed to close JMX connector [" + this.serviceURL + "]: "
+                    + e, this.getClass().getName());
+            }
+            this.connector = null;
+        }
+    }
+
+    /**
+     * @return connection to the MBean server, subscribed to the MBean's notifications
+     * @throws IOException if connecting fails
+     * @throws JMException if subscribing fails
+     */
+    private synchronized MBeanServerConnection connect() throws IOException, JMException
+    {
+        if (this.connector == null)
+        {
+            JMXConnector newConnector =
+                JMXConnectorFactory.connect(this.serviceURL, this.environment);
+            try
+            {
+                newConnector.getMBeanServerConnection().addNotificationListener(
+                    this.objectName, this, null, null);
+            }
+            catch (JMException e)
+            {
+                newConnector.close();
+                throw e;
+            }
+            this.connector = newConnector;
+        }
+        return this.connector.getMBeanServerConnection();
+    }
+
+    /**
+     * @param isDeployed whether the deployable is deployed
+     */
+    private void notifyListeners(boolean isDeployed)
+    {
+        for (DeployableMonitorListener listener : this.listeners)
+        {
+            getLogger().debug("Notifying monitor listener [" + listener + "]",
+                this.getClass().getName());
+
+            if (isDeployed)
+            {
+                listener.deployed();
+            }
+            else
+            {
+                listener.undeployed();
+            }
+        }
+    }
+}
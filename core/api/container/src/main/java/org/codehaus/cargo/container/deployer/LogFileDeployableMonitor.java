@@ -0,0 +1,316 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Monitor that verifies if a {@link org.codehaus.cargo.container.deployable.Deployable} is deployed
+ * by looking for a message in a log file, typically the container's output file. Once started, the
+ * monitor tails the file in a background thread and notifies its listeners as soon as a line
+ * matching the regular expression is written, without waiting for the next call to
+ * {@link #monitor()}. Once the message has been found, the deployable is considered deployed for
+ * the lifetime of the monitor.
+ * 
+ */
+public class LogFileDeployableMonitor extends LoggedObject implements DeployableMonitor
+{
+    /**
+     * Interval between two reads of the log file by the tailing thread, in milliseconds.
+     */
+    private static final long TAIL_INTERVAL = 20L;
+
+    /**
+     * Size of the buffer used to read the log file.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * List of {@link DeployableMonitorListener} that we will notify when the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed or undeployed.
+     */
+    private List<DeployableMonitorListener> listeners =
+        new CopyOnWriteArrayList<DeployableMonitorListener>();
+
+    /**
+     * The log file to tail.
+     */
+    private File logFile;
+
+    /**
+     * Regular expression a log line must match.
+     */
+    private Pattern pattern;
+
+    /**
+     * The timeout after which we stop waiting for deployment.
+     */
+    private long timeout;
+
+    /**
+     * Position in the log file up to which lines have been checked.
+     */
+    private long offset;
+
+    /**
+     * Last, not yet terminated, line read from the log file.
+     */
+    private ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+    /**
+     * Whether the message has been found.
+     */
+    private volatile boolean found;
+
+    /**
+     * The tailing thread, <code>null</code> if not started yet.
+     */
+    private Thread tailThread;
+
+    /**
+     * @param logFile the log file in which to look for the message
+     * @param regexp regular expression matching the log line which tells that the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed
+     * @param timeout the timeout after which we stop monitoring the deployment
+     */
+    public LogFileDeployableMonitor(File logFile, String regexp, long timeout)
+    {
+        this.logFile = logFile;
+        this.pattern = Pattern.compile(regexp);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the position in the log file from which to look for the message, so that lines logged
+     * during a previous run of the container are ignored. Defaults to the beginning of the file.
+     * 
+     * @param offset position in the log file, in bytes
+     */
+    public synchronized void setStartOffset(long offset)
+    {
+        this.offset = offset;
+        this.partialLine.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see org.codehaus.cargo.container.deployer.DeployableMonitor#getDeployableName()
+     */
+    public String getDeployableName()
+    {
+        return this.logFile.getPath() + " (" + this.pattern.pattern() + ")";
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see DeployableMonitor#registerListener(DeployableMonitorListener)
+     */
+    public void registerListener(DeployableMonitorListener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Checks the log file for new lines and tells listeners about the status. The first call also
+     * starts the tailing thread, which keeps watching the file until the message is found or the
+     * timeout is reached.
+     * 
+     * @see DeployableMonitor#monitor()
+     */
+    public void monitor()
+    {
+        boolean isDeployed = scan();
+        if (!isDeployed)
+        {
+            startTailing();
+        }
+        notifyListeners(isDeployed);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see DeployableMonitor#getTimeout()
+     */
+    public long getTimeout()
+    {
+        return this.timeout;
+    }
+
+    /**
+     * Stops the tailing thread, if running.
+     */
+    public synchronized void stop()
+    {
+        if (this.tailThread != null)
+        {
+            this.tailThread.interrupt();
+            this.tailThread = null;
+        }
+    }
+
+    /**
+     * Reads the lines appended to the log file since the last scan.
+     * 
+     * @return <code>true</code> if the message has been found
+     */
+    protected synchronized boolean scan()
+    {
+        if (this.found || !this.logFile.isFile())
+        {
+            return this.found;
+        }
+
+        try
+        {
+            RandomAccessFile file = new RandomAccessFile(this.logFile, "r");
+            try
+            {
+                long length = file.length();
+                if (length < this.offset)
+                {
+                    // The file has been truncated or rotated, start again from its beginning
+                    this.offset = 0;
+                    this.partialLine.reset();
+                }
+                file.seek(this.offset);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!this.found && this.offset < length)
+                {
+                    int read = file.read(buffer, 0, (int) Math.min(buffer.length,
+                        length - this.offset));
+                    if (read == -1)
+                    {
+                        break;
+                    }
+                    this.offset += read;
+                    for (int i = 0; i < read && !this.found; i++)
+                    {
+                        if (buffer[i] == '\n')
+                        {
+                            checkLine();
+                        }
+                        else
+                        {
+                            this.partialLine.write(buffer[i]);
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Cannot read log file [" + this.logFile + "]: " + e,
+                this.getClass().getName());
+        }
+
+        return this.found;
+    }
+
+    /**
+     * Matches the last line read against the regular expression.
+     */
+    private void checkLine()
+    {
+        String line = this.partialLine.toString();
+        this.partialLine.reset();
+        if (line.endsWith("\r"))
+        {
+            line = line.substring(0, line.length() - 1);
+        }
+        if (this.pattern.matcher(line).find())
+        {
+            getLogger().debug("Found [" + this.pattern.pattern() + "] in log line [" + line
+                + "]", this.getClass().getName());
+            this.found = true;
+        }
+    }
+
+    /**
+     * Starts the tailing thread, if not already started.
+     */
+    private synchronized void startTailing()
+    {
+        if (this.tailThread != null)
+        {
+            return;
+        }
+
+        final long deadline = System.currentTimeMillis() + this.timeout;
+        this.tailThread = new Thread("Cargo log tail [" + this.logFile.getName() + "]")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    while (System.currentTimeMillis() < deadline)
+                    {
+                        if (scan())
+                        {
+                            notifyListeners(true);
+                            return;
+                        }
+                        Thread.sleep(TAIL_INTERVAL);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    // Stopped
+                }
+            }
+        };
+        this.tailThread.setDaemon(true);
+        this.tailThread.start();
+    }
+
+    /**
+     * @param isDeployed whether the deployable is deployed
+     */
+    private void notifyListeners(boolean isDeployed)
+    {
+        for (DeployableMonitorListener listener : this.listeners)
+        {
+            getLogger().debug("Notifying monitor listener [" + listener + "]",
+                this.getClass().getName());
+
+            if (isDeployed)
+            {
+                listener.deployed();
+            }
+            else
+            {
+                listener.undeployed();
+            }
+        }
+    }
+}
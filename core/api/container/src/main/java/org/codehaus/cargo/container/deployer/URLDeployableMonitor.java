@@ -93,6 +93,17 @@ public class URLDeployableMonitor extends LoggedObject implements DeployableMoni
         this.contains = contains;
     }
 
+    /**
+     * Sets whether the HTTP connection should be kept alive between two pings. Keeping it alive
+     * makes repeated pings much cheaper, especially over HTTPS.
+     * 
+     * @param keepAlive <code>true</code> to keep the HTTP connection alive
+     */
+    public void setKeepAlive(boolean keepAlive)
+    {
+        this.httpUtils.setKeepAlive(keepAlive);
+    }
+
     /**
      * {@inheritDoc}
      * @see org.codehaus.cargo.container.deployer.DeployableMonitor#getDeployableName()
@@ -0,0 +1,364 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Content-addressed cache of container archives. Archives are stored under their SHA-256
+ * checksum, and an index maps each source URL to the checksum of the archive last downloaded
+ * from it. A cache directory can be shared by any number of {@link ZipURLInstaller}s, whatever
+ * their download and extract directories are, including installers running in other processes.
+ *
+ */
+public class ArchiveCache extends LoggedObject
+{
+    /**
+     * Name of the sub directory holding the URL index.
+     */
+    private static final String INDEX_DIRECTORY = "index";
+
+    /**
+     * Checksums of the files hashed by this process, indexed by path, last modification time and
+     * size.
+     */
+    private static final Map<String, String> CHECKSUMS = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Root directory of the cache.
+     */
+    private File cacheDir;
+
+    /**
+     * @param cacheDir Root directory of the cache.
+     */
+    public ArchiveCache(String cacheDir)
+    {
+        this.cacheDir = new File(cacheDir);
+    }
+
+    /**
+     * @return Root directory of the cache.
+     */
+    public String getCacheDir()
+    {
+        return this.cacheDir.getPath();
+    }
+
+    /**
+     * Looks up the archive last downloaded from a given URL. The cached archive's checksum is
+     * verified, a corrupted archive is evicted from the cache.
+     *
+     * @param url URL the archive is downloaded from.
+     * @param fileName Name of the archive file.
+     * @return Cached archive, <code>null</code> if none.
+     */
+    public File lookup(URL url, String fileName)
+    {
+        try
+        {
+            String checksum = getIndexedChecksum(url);
+            if (checksum == null)
+            {
+                return null;
+            }
+
+            File archive = getArchiveFile(checksum, fileName);
+            if (!archive.isFile())
+            {
+                return null;
+            }
+            if (!checksum.equals(checksum(archive)))
+            {
+                getLogger().warn("Cached archive [" + archive + "] is corrupted, evicting it",
+                    getClass().getName());
+                archive.delete();
+                return null;
+            }
+            return archive;
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Cannot read cache entry for [" + url + "]: " + e,
+                getClass().getName());
+            return null;
+        }
+    }
+
+    /**
+     * @param url URL an archive is downloaded from.
+     * @return SHA-256 checksum of the archive last downloaded from <code>url</code>, as recorded
+     * in the index, <code>null</code> if none.
+     * @throws IOException If reading the index fails.
+     */
+    public String getIndexedChecksum(URL url) throws IOException
+    {
+        File indexFile = getIndexFile(url);
+        if (!indexFile.isFile())
+        {
+            return null;
+        }
+
+        String checksum;
+        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+        try
+        {
+            checksum = reader.readLine();
+        }
+        finally
+        {
+            reader.close();
+        }
+        if (checksum == null || checksum.trim().length() == 0)
+        {
+            return null;
+        }
+        return checksum.trim();
+    }
+
+    /**
+     * Creates an empty file in the cache directory, into which an archive can be downloaded
+     * before being {@link #store(URL, File, String, String) stored}.
+     *
+     * @return Temporary file.
+     * @throws IOException If the file cannot be created.
+     */
+    public File createTemporaryFile() throws IOException
+    {
+        mkdirs(this.cacheDir);
+        return File.createTempFile("download", ".part", this.cacheDir);
+    }
+
+    /**
+     * Moves a downloaded archive into the cache and records it as the archive for its URL.
+     *
+     * @param url URL the archive has been downloaded from.
+     * @param downloaded Downloaded archive, which is moved or deleted by this method.
+     * @param fileName Name of the archive file.
+     * @param checksum SHA-256 checksum of the archive, in hexadecimal.
+     * @return Cached archive.
+     */
+    public File store(URL url, File downloaded, String fileName, String checksum)
+    {
+        File archive = getArchiveFile(checksum, fileName);
+        try
+        {
+            mkdirs(archive.getParentFile());
+            if (archive.isFile())
+            {
+                // Another installer (possibly in another process) already stored it
+                downloaded.delete();
+            }
+            else if (!downloaded.renameTo(archive))
+            {
+                copy(downloaded, archive);
+                downloaded.delete();
+            }
+
+            File indexFile = getIndexFile(url);
+            mkdirs(indexFile.getParentFile());
+            File tmpIndexFile = File.createTempFile("index", ".part", indexFile.getParentFile());
+            OutputStream out = new FileOutputStream(tmpIndexFile);
+            try
+            {
+                out.write(checksum.getBytes("US-ASCII"));
+            }
+            finally
+            {
+                out.close();
+            }
+            if (!tmpIndexFile.renameTo(indexFile))
+            {
+                indexFile.delete();
+                if (!tmpIndexFile.renameTo(indexFile))
+                {
+                    tmpIndexFile.delete();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContainerException("Failed to store [" + url + "] in cache ["
+                + this.cacheDir + "]", e);
+        }
+        return archive;
+    }
+
+    /**
+     * @return New SHA-256 message digest.
+     */
+    public static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContainerException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * @param file File to compute the checksum of.
+     * @return SHA-256 checksum of the file, in hexadecimal.
+     * @throws IOException If reading the file fails.
+     */
+    public static String sha256(File file) throws IOException
+    {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int length;
+            while ((length = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, length);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @param file File to compute the checksum of.
+     * @return SHA-256 checksum of the file, in hexadecimal. It is only computed once per file
+     * version, as identified by the path, last modification time and size of the file.
+     * @throws IOException If reading the file fails.
+     */
+    public static String checksum(File file) throws IOException
+    {
+        String stamp = file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length();
+        String checksum = CHECKSUMS.get(stamp);
+        if (checksum == null)
+        {
+            checksum = sha256(file);
+            CHECKSUMS.put(stamp, checksum);
+        }
+        return checksum;
+    }
+
+    /**
+     * @param bytes Bytes to convert.
+     * @return Lower case hexadecimal representation of the bytes.
+     */
+    public static String toHex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param url Archive URL.
+     * @return Index file for the URL.
+     */
+    private File getIndexFile(URL url)
+    {
+        MessageDigest digest = createDigest();
+        try
+        {
+            digest.update(url.toExternalForm().getBytes("UTF-8"));
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new ContainerException("UTF-8 is not supported by this JVM", e);
+        }
+        return new File(new File(this.cacheDir, INDEX_DIRECTORY), toHex(digest.digest()));
+    }
+
+    /**
+     * @param checksum Archive checksum.
+     * @param fileName Archive file name.
+     * @return Location of the archive in the cache. The original file name is kept so that the
+     * archive type can still be determined from it.
+     */
+    private File getArchiveFile(String checksum, String fileName)
+    {
+        return new File(new File(this.cacheDir, checksum), fileName);
+    }
+
+    /**
+     * @param directory Directory to create.
+     * @throws IOException If the directory cannot be created.
+     */
+    private static void mkdirs(File directory) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+        {
+            throw new IOException("Failed to create directory [" + directory + "]");
+        }
+    }
+
+    /**
+     * @param source File to copy.
+     * @param target Target file.
+     * @throws IOException If copying fails.
+     */
+    private static void copy(File source, File target) throws IOException
+    {
+        InputStream in = new FileInputStream(source);
+        try
+        {
+            OutputStream out = new FileOutputStream(target);
+            try
+            {
+                byte[] buffer = new byte[64 * 1024];
+                int length;
+                while ((length = in.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, length);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
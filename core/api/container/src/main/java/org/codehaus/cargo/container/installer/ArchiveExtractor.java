@@ -0,0 +1,497 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.tools.bzip2.CBZip2InputStream;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+
+/**
+ * Extracts container archives without going through the Ant <code>Expand</code> and
+ * <code>Untar</code> tasks. Archives read from a stream are decompressed by the calling thread
+ * while the files are written to disk by a pool of worker threads; ZIP files read from disk are
+ * also decompressed by the worker threads, one entry per task.
+ *
+ */
+public class ArchiveExtractor
+{
+    /**
+     * Size of the I/O buffers.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Entries up to this size are read into memory and handed over to a worker thread, larger
+     * entries are written directly by the thread reading the archive.
+     */
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 1024 * 1024;
+
+    /**
+     * Supported archive types.
+     */
+    private static final String[] ARCHIVE_ENDINGS = {
+        ".zip",
+        ".tar",
+        ".tgz",
+        ".tar.gz",
+        ".bz2",
+    };
+
+    /**
+     * Per-thread copy buffer, reused across entries.
+     */
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * Number of worker threads.
+     */
+    private int threads;
+
+    /**
+     * Creates an extractor with one worker thread per available processor.
+     */
+    public ArchiveExtractor()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads Number of worker threads, values below 1 are treated as 1.
+     */
+    public ArchiveExtractor(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param archiveName Name of the archive.
+     * @return <code>true</code> if this extractor can handle the given archive type.
+     */
+    public static boolean isSupported(String archiveName)
+    {
+        String name = archiveName.toLowerCase(Locale.ENGLISH);
+        for (String ending : ARCHIVE_ENDINGS)
+        {
+            if (name.endsWith(ending))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts an archive file.
+     *
+     * @param archive Archive to extract.
+     * @param targetDir Directory to extract the archive into.
+     * @throws IOException If reading the archive or writing any of its entries fails.
+     */
+    public void extract(File archive, File targetDir) throws IOException
+    {
+        if (archive.getName().toLowerCase(Locale.ENGLISH).endsWith(".zip"))
+        {
+            extractZipFile(archive, targetDir);
+        }
+        else
+        {
+            InputStream in = new FileInputStream(archive);
+            try
+            {
+                extract(in, archive.getName(), targetDir);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Extracts an archive read from a stream. The stream is not closed, and is not necessarily
+     * read until its end: trailing data after the last archive entry is left unread.
+     *
+     * @param in Stream to read the archive from.
+     * @param archiveName Name of the archive, used to determine the archive type.
+     * @param targetDir Directory to extract the archive into.
+     * @throws IOException If reading the archive or writing any of its entries fails.
+     */
+    public void extract(InputStream in, String archiveName, File targetDir) throws IOException
+    {
+        String name = archiveName.toLowerCase(Locale.ENGLISH);
+        if (!isSupported(name))
+        {
+            throw new IllegalArgumentException("Unsupported archive type: [" + archiveName + "]");
+        }
+
+        ExecutorService executor = createExecutor();
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        try
+        {
+            if (name.endsWith(".zip"))
+            {
+                ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null)
+                {
+                    extractEntry(zip, entry.getName(), entry.isDirectory(), targetDir, executor,
+                        pending);
+                }
+            }
+            else
+            {
+                TarInputStream tar = new TarInputStream(decompress(in, name));
+                TarEntry entry;
+                while ((entry = tar.getNextEntry()) != null)
+                {
+                    extractEntry(tar, entry.getName(), entry.isDirectory(), targetDir, executor,
+                        pending);
+                }
+            }
+            await(pending);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts a ZIP file from disk, each file entry being decompressed by a worker thread.
+     *
+     * @param archive ZIP file to extract.
+     * @param targetDir Directory to extract the archive into.
+     * @throws IOException If reading the archive or writing any of its entries fails.
+     */
+    private void extractZipFile(File archive, File targetDir) throws IOException
+    {
+        final ZipFile zip = new ZipFile(archive);
+        ExecutorService executor = createExecutor();
+        try
+        {
+            List<Future<?>> pending = new ArrayList<Future<?>>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements())
+            {
+                final ZipEntry entry = entries.nextElement();
+                final File file = resolve(targetDir, entry.getName());
+                if (entry.isDirectory())
+                {
+                    mkdirs(file);
+                    continue;
+                }
+
+                pending.add(executor.submit(new Callable<Object>()
+                {
+                    public Object call() throws IOException
+                    {
+                        InputStream in = zip.getInputStream(entry);
+                        try
+                        {
+                            writeFile(file, in);
+                        }
+                        finally
+                        {
+                            in.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            await(pending);
+        }
+        finally
+        {
+            executor.shutdownNow();
+            zip.close();
+        }
+    }
+
+    /**
+     * Extracts the current entry of an archive stream. Small entries are buffered and written by a
+     * worker thread, large ones are written by the calling thread.
+     *
+     * @param in Archive stream, positioned at the beginning of the entry's data.
+     * @param name Entry name.
+     * @param directory Whether the entry is a directory.
+     * @param targetDir Directory to extract the archive into.
+     * @param executor Worker threads.
+     * @param pending Pending write tasks, to which the task for this entry will be added.
+     * @throws IOException If reading or writing the entry fails.
+     */
+    private void extractEntry(InputStream in, String name, boolean directory, File targetDir,
+        ExecutorService executor, List<Future<?>> pending) throws IOException
+    {
+        File file = resolve(targetDir, name);
+        if (directory)
+        {
+            mkdirs(file);
+            return;
+        }
+
+        byte[] buffer = BUFFER.get();
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int length = in.read(buffer);
+        while (length != -1)
+        {
+            head.write(buffer, 0, length);
+            if (head.size() > MAX_BUFFERED_ENTRY_SIZE)
+            {
+                break;
+            }
+            length = in.read(buffer);
+        }
+
+        if (length == -1)
+        {
+            pending.add(executor.submit(new WriteTask(file, head.toByteArray())));
+        }
+        else
+        {
+            mkdirs(file.getParentFile());
+            OutputStream out = new FileOutputStream(file);
+            try
+            {
+                head.writeTo(out);
+                while ((length = in.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, length);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * @return Executor with a bounded queue, which makes the reading thread write entries itself
+     * when all worker threads are busy so that memory usage stays bounded.
+     */
+    private ExecutorService createExecutor()
+    {
+        return new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(this.threads * 4),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Waits for all write tasks to complete.
+     *
+     * @param pending Pending write tasks.
+     * @throws IOException If any of the tasks failed.
+     */
+    private static void await(List<Future<?>> pending) throws IOException
+    {
+        for (Future<?> task : pending)
+        {
+            try
+            {
+                task.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                IOException ioe = new IOException("Interrupted while extracting archive");
+                ioe.initCause(e);
+                throw ioe;
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof IOException)
+                {
+                    throw (IOException) e.getCause();
+                }
+                IOException ioe = new IOException("Failed to extract archive entry");
+                ioe.initCause(e.getCause());
+                throw ioe;
+            }
+        }
+    }
+
+    /**
+     * @param in Compressed tar stream.
+     * @param name Lower case name of the archive.
+     * @return Stream of the uncompressed tar data.
+     * @throws IOException If the compression header cannot be read.
+     */
+    private static InputStream decompress(InputStream in, String name) throws IOException
+    {
+        InputStream result;
+        if (name.endsWith(".tgz") || name.endsWith(".tar.gz"))
+        {
+            result = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        else if (name.endsWith(".bz2"))
+        {
+            InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+            if (buffered.read() != 'B' || buffered.read() != 'Z')
+            {
+                throw new IOException("Invalid bz2 header");
+            }
+            result = new CBZip2InputStream(buffered);
+        }
+        else
+        {
+            result = new BufferedInputStream(in, BUFFER_SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * Resolves an entry name against the target directory, rejecting entries that would be
+     * written outside of it.
+     *
+     * @param targetDir Directory the archive is extracted into.
+     * @param name Entry name.
+     * @return File for the entry.
+     * @throws IOException If the entry name points outside of the target directory.
+     */
+    private static File resolve(File targetDir, String name) throws IOException
+    {
+        for (String segment : name.split("[/\\\\]"))
+        {
+            if ("..".equals(segment))
+            {
+                throw new IOException("Archive entry [" + name + "] points outside of the "
+                    + "extraction directory");
+            }
+        }
+        return new File(targetDir, name);
+    }
+
+    /**
+     * Creates a directory and its parents, tolerating concurrent creation by another thread.
+     *
+     * @param directory Directory to create.
+     * @throws IOException If the directory cannot be created.
+     */
+    private static void mkdirs(File directory) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+        {
+            throw new IOException("Failed to create directory [" + directory + "]");
+        }
+    }
+
+    /**
+     * Writes a stream to a file.
+     *
+     * @param file File to write.
+     * @param in Stream to read the file contents from.
+     * @throws IOException If writing fails.
+     */
+    private static void writeFile(File file, InputStream in) throws IOException
+    {
+        mkdirs(file.getParentFile());
+        byte[] buffer = BUFFER.get();
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            int length;
+            while ((length = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, length);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a buffered entry to disk. The buffer is released once written, so that completed
+     * tasks kept in the pending list do not hold on to the entry data.
+     */
+    private static final class WriteTask implements Callable<Object>
+    {
+        /**
+         * File to write.
+         */
+        private final File file;
+
+        /**
+         * Entry data.
+         */
+        private byte[] data;
+
+        /**
+         * @param file File to write.
+         * @param data Entry data.
+         */
+        private WriteTask(File file, byte[] data)
+        {
+            this.file = file;
+            this.data = data;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object call() throws IOException
+        {
+            mkdirs(this.file.getParentFile());
+            OutputStream out = new FileOutputStream(this.file);
+            try
+            {
+                out.write(this.data);
+            }
+            finally
+            {
+                out.close();
+                this.data = null;
+            }
+            return null;
+        }
+    }
+}
@@ -19,10 +19,18 @@
  */
 package org.codehaus.cargo.container.installer;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.taskdefs.Expand;
@@ -32,6 +40,7 @@ import org.apache.tools.ant.taskdefs.Untar.UntarCompressionMethod;
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.util.AntTaskFactory;
 import org.codehaus.cargo.util.AntUtils;
+import org.codehaus.cargo.util.Base64;
 import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
 import org.codehaus.cargo.util.log.LoggedObject;
@@ -53,6 +62,31 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         ".tar.gz",
     };
 
+    /**
+     * Name of the file registering a successful installation.
+     */
+    private static final String MARKER_FILE = ".cargo";
+
+    /**
+     * Header of the installation manifest, kept for compatibility with the older marker files.
+     */
+    private static final String MANIFEST_HEADER = "# Do not remove this file";
+
+    /**
+     * Prefix of the manifest line holding the archive checksum.
+     */
+    private static final String MANIFEST_CHECKSUM = "sha256=";
+
+    /**
+     * Prefix of the manifest lines listing the installed files.
+     */
+    private static final String MANIFEST_FILE = "file=";
+
+    /**
+     * Size of the download buffers.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * URL where the zipped container is located.
      */
@@ -83,6 +117,26 @@ public class ZipURLInstaller extends LoggedObject implements Installer
      */
     private FileHandler fileHandler;
 
+    /**
+     * Whether to download and extract natively instead of using the Ant tasks.
+     */
+    private boolean nativeMode;
+
+    /**
+     * Number of threads used to extract the archive in native mode.
+     */
+    private int extractionThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Cache of downloaded archives, <code>null</code> if none.
+     */
+    private ArchiveCache cache;
+
+    /**
+     * SHA-256 checksum of the archive installed by this installer, if known.
+     */
+    private String archiveChecksum;
+
     /**
      * @param remoteLocation URL where the zipped container is located
      */
@@ -204,6 +258,63 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         this.fileHandler = fileHandler;
     }
 
+    /**
+     * @return <code>true</code> if the container is downloaded and extracted natively rather than
+     * using the Ant <code>get</code> and <code>unzip</code>/<code>untar</code> tasks.
+     */
+    public boolean isNativeMode()
+    {
+        return this.nativeMode;
+    }
+
+    /**
+     * @param nativeMode <code>true</code> to download and extract the container natively: the
+     * archive is then extracted while it is being downloaded, and entries are written to disk in
+     * parallel.
+     */
+    public void setNativeMode(boolean nativeMode)
+    {
+        this.nativeMode = nativeMode;
+    }
+
+    /**
+     * @param extractionThreads number of threads used to extract the archive in native mode.
+     * Defaults to the number of available processors.
+     */
+    public void setExtractionThreads(int extractionThreads)
+    {
+        this.extractionThreads = extractionThreads;
+    }
+
+    /**
+     * @return the directory of the archive cache, <code>null</code> if no cache is used.
+     */
+    public String getCacheDir()
+    {
+        if (this.cache == null)
+        {
+            return null;
+        }
+        return this.cache.getCacheDir();
+    }
+
+    /**
+     * @param cacheDir directory of an archive cache, keyed by SHA-256 checksum, that can be shared
+     * between all installers regardless of their download directories. Only used in native mode;
+     * <code>null</code> to disable caching.
+     */
+    public void setCacheDir(String cacheDir)
+    {
+        if (cacheDir == null)
+        {
+            this.cache = null;
+        }
+        else
+        {
+            this.cache = new ArchiveCache(cacheDir);
+        }
+    }
+
     /**
      * @see Installer#install()
      */
@@ -214,28 +325,42 @@ public class ZipURLInstaller extends LoggedObject implements Installer
             getLogger().debug("Container [" + getSourceFileName() + "] is not yet installed.",
                 this.getClass().getName());
 
-            if (!isAlreadyDownloaded())
+            // Make sure an interrupted installation is never seen as a complete one
+            String markerFile = getFileHandler().append(getExtractDir(), MARKER_FILE);
+            if (getFileHandler().exists(markerFile))
             {
-                getLogger().debug("Container [" + getSourceFileName() + "] is not yet downloaded.",
-                    this.getClass().getName());
-
-                download();
+                getFileHandler().delete(markerFile);
             }
 
-            try
+            if (isNativeMode())
             {
-                getLogger().debug("Container [" + getSourceFileName()
-                    + "] is downloaded, now unpacking.", this.getClass().getName());
-
-                unpack();
+                installNatively();
             }
-            catch (BuildException e)
+            else
             {
-                getLogger().debug("Container [" + getSourceFileName() + "] is broken.",
-                    this.getClass().getName());
+                if (!isAlreadyDownloaded())
+                {
+                    getLogger().debug("Container [" + getSourceFileName()
+                        + "] is not yet downloaded.", this.getClass().getName());
+
+                    download();
+                }
 
-                download();
-                unpack();
+                try
+                {
+                    getLogger().debug("Container [" + getSourceFileName()
+                        + "] is downloaded, now unpacking.", this.getClass().getName());
+
+                    unpack();
+                }
+                catch (BuildException e)
+                {
+                    getLogger().debug("Container [" + getSourceFileName() + "] is broken.",
+                        this.getClass().getName());
+
+                    download();
+                    unpack();
+                }
             }
 
             getLogger().debug("Container [" + getSourceFileName()
@@ -253,18 +378,26 @@ public class ZipURLInstaller extends LoggedObject implements Installer
     }
 
     /**
-     * Create timestamp file to register that the installation has been successful. This allows to
-     * prevent installing again next time. If the remote URL changes, then the container will be
-     * reinstalled.
+     * Create the manifest file that registers that the installation has been successful. This
+     * allows to prevent installing again next time. The manifest lists every installed file, so
+     * that an installation with missing files is detected and installed again. File sizes are not
+     * recorded: containers rewrite some files of their home when running, for example their
+     * default configuration, and these changes must survive the next build. If the remote URL
+     * changes, then the container will be reinstalled.
      */
     public void registerInstallation()
     {
         try
         {
-            File timestampFile = new File(getExtractDir(), ".cargo");
-            BufferedWriter bw = new BufferedWriter(new FileWriter(timestampFile));
-            bw.write("Do not remove this file");
-            bw.close();
+            String extractDir = getExtractDir();
+            StringBuilder manifest = new StringBuilder(MANIFEST_HEADER).append('\n');
+            if (this.archiveChecksum != null)
+            {
+                manifest.append(MANIFEST_CHECKSUM).append(this.archiveChecksum).append('\n');
+            }
+            appendManifestEntries(manifest, extractDir, "");
+            getFileHandler().writeTextFile(getFileHandler().append(extractDir, MARKER_FILE),
+                manifest.toString(), "UTF-8");
         }
         catch (Exception e)
         {
@@ -273,6 +406,29 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         }
     }
 
+    /**
+     * Adds one line per file found under a directory to the installation manifest.
+     * 
+     * @param manifest Manifest being built.
+     * @param directory Directory to list.
+     * @param prefix Path of the directory relative to the extract directory.
+     */
+    private void appendManifestEntries(StringBuilder manifest, String directory, String prefix)
+    {
+        for (String child : getFileHandler().getChildren(directory))
+        {
+            String relativePath = prefix + getFileHandler().getName(child);
+            if (getFileHandler().isDirectory(child))
+            {
+                appendManifestEntries(manifest, child, relativePath + "/");
+            }
+            else if (!MARKER_FILE.equals(relativePath))
+            {
+                manifest.append(MANIFEST_FILE).append(relativePath).append('\n');
+            }
+        }
+    }
+
     /**
      * @return true if the container has already been downloaded, false otherwise
      */
@@ -289,18 +445,72 @@ public class ZipURLInstaller extends LoggedObject implements Installer
     }
 
     /**
-     * @return true if the container has already been extracted, false otherwise
+     * @return true if the container has already been extracted, all files listed in the
+     * installation manifest are still present and, when an archive cache is used, the archive
+     * last downloaded from the remote URL is still the installed one; false otherwise
      */
     public boolean isAlreadyExtracted()
     {
-        boolean isExtracted = false;
-        String timestampFile = getFileHandler().append(getExtractDir(), ".cargo");
-        if (getFileHandler().exists(timestampFile))
+        String extractDir = getExtractDir();
+        String markerFile = getFileHandler().append(extractDir, MARKER_FILE);
+        if (!getFileHandler().exists(markerFile))
         {
-            isExtracted = true;
+            return false;
+        }
+
+        // Marker files written by older versions of Cargo have no entries and are trusted as is
+        String manifest = getFileHandler().readTextFile(markerFile, "UTF-8");
+        for (String line : manifest.split("\r?\n"))
+        {
+            if (line.startsWith(MANIFEST_CHECKSUM))
+            {
+                String checksum = line.substring(MANIFEST_CHECKSUM.length());
+                String cachedChecksum = getCachedChecksum();
+                if (cachedChecksum != null && !cachedChecksum.equals(checksum))
+                {
+                    getLogger().info("Container installation in [" + extractDir + "] is "
+                        + "outdated, the archive at [" + this.remoteLocation + "] has changed; "
+                            + "installing it again", this.getClass().getName());
+                    return false;
+                }
+            }
+            else if (line.startsWith(MANIFEST_FILE))
+            {
+                String file = getFileHandler().append(extractDir,
+                    line.substring(MANIFEST_FILE.length()));
+                if (!getFileHandler().exists(file) || getFileHandler().isDirectory(file))
+                {
+                    getLogger().info("Container installation in [" + extractDir + "] is not "
+                        + "valid, file [" + file + "] is missing; installing it again",
+                            this.getClass().getName());
+                    return false;
+                }
+            }
         }
 
-        return isExtracted;
+        return true;
+    }
+
+    /**
+     * @return Checksum of the archive last downloaded from the remote URL according to the
+     * archive cache, <code>null</code> if there is no cache or no entry for the URL.
+     */
+    private String getCachedChecksum()
+    {
+        if (this.cache == null)
+        {
+            return null;
+        }
+        try
+        {
+            return this.cache.getIndexedChecksum(this.remoteLocation);
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Cannot read the cache entry for [" + this.remoteLocation + "]: "
+                + e, this.getClass().getName());
+            return null;
+        }
     }
 
     /**
@@ -479,6 +689,170 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         getTask.execute();
     }
 
+    /**
+     * Installs the container natively: from the cache or download directory if the archive is
+     * there and sane, else by extracting the archive while it is being downloaded.
+     */
+    private void installNatively()
+    {
+        File targetDir = new File(getExtractDir());
+        ArchiveExtractor extractor = new ArchiveExtractor(this.extractionThreads);
+        if (!ArchiveExtractor.isSupported(getSourceFileName()))
+        {
+            String errorMessage = "Unsupported archive type: [" + getSourceFileName() + "]";
+            getLogger().warn(errorMessage, getClass().getName());
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        File archive = null;
+        if (this.cache != null)
+        {
+            this.cache.setLogger(getLogger());
+            archive = this.cache.lookup(this.remoteLocation, getSourceFileName());
+        }
+        if (archive == null && isAlreadyDownloaded())
+        {
+            archive = new File(getDownloadFile());
+        }
+
+        if (archive != null)
+        {
+            getLogger().info("Installing container in [" + targetDir.getPath() + "] from ["
+                + archive + "]", getClass().getName());
+            try
+            {
+                extractor.extract(archive, targetDir);
+                if (this.cache != null)
+                {
+                    this.archiveChecksum = ArchiveCache.checksum(archive);
+                }
+                return;
+            }
+            catch (IOException e)
+            {
+                getLogger().debug("Container archive [" + archive + "] is broken: " + e,
+                    this.getClass().getName());
+            }
+        }
+
+        // Try once with the proxy settings on (if set up by the user) and if it doesn't work, try
+        // again with no proxy settings...
+        try
+        {
+            if (this.proxy != null)
+            {
+                this.proxy.configure();
+            }
+            downloadAndExtract(extractor, targetDir);
+        }
+        catch (Exception e)
+        {
+            if (this.proxy != null)
+            {
+                try
+                {
+                    this.proxy.clear();
+                    downloadAndExtract(extractor, targetDir);
+                }
+                catch (Exception ee)
+                {
+                    throw new ContainerException(
+                        "Failed to download and install [" + this.remoteLocation + "]", ee);
+                }
+            }
+            else
+            {
+                throw new ContainerException(
+                    "Failed to download and install [" + this.remoteLocation + "]", e);
+            }
+        }
+    }
+
+    /**
+     * Downloads the archive and extracts it while the download is in progress. The downloaded
+     * bytes are also saved to the cache (or download directory if no cache is set) and their
+     * checksum computed, so that the archive can be reused by later installations.
+     * 
+     * @param extractor Archive extractor.
+     * @param targetDir Directory to extract the archive into.
+     * @throws IOException If downloading or extracting fails.
+     */
+    private void downloadAndExtract(ArchiveExtractor extractor, File targetDir) throws IOException
+    {
+        File partFile;
+        if (this.cache != null)
+        {
+            partFile = this.cache.createTemporaryFile();
+        }
+        else
+        {
+            String downloadDir = getDownloadDir();
+            if (!getFileHandler().exists(downloadDir))
+            {
+                getFileHandler().mkdirs(downloadDir);
+            }
+            partFile = new File(getDownloadFile() + ".part");
+        }
+
+        getLogger().info("Downloading container from [" + this.remoteLocation
+            + "] and installing it in [" + targetDir.getPath() + "]", getClass().getName());
+
+        MessageDigest digest = ArchiveCache.createDigest();
+        URLConnection connection = this.remoteLocation.openConnection();
+        String userInfo = this.remoteLocation.getUserInfo();
+        if (userInfo != null)
+        {
+            connection.setRequestProperty("Authorization", "Basic " + Base64.encode(userInfo));
+        }
+
+        InputStream in = new DigestInputStream(
+            new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE), digest);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(partFile), BUFFER_SIZE);
+        try
+        {
+            InputStream tee = new TeeInputStream(in, out);
+            extractor.extract(tee, getSourceFileName(), targetDir);
+
+            // Archives can have trailing data, such as the ZIP central directory
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (tee.read(buffer) != -1)
+            {
+                continue;
+            }
+        }
+        catch (IOException e)
+        {
+            out.close();
+            out = null;
+            partFile.delete();
+            throw e;
+        }
+        finally
+        {
+            in.close();
+            if (out != null)
+            {
+                out.close();
+            }
+        }
+
+        this.archiveChecksum = ArchiveCache.toHex(digest.digest());
+        if (this.cache != null)
+        {
+            this.cache.store(this.remoteLocation, partFile, getSourceFileName(),
+                this.archiveChecksum);
+        }
+        else
+        {
+            File downloadFile = new File(getDownloadFile());
+            downloadFile.delete();
+            if (!partFile.renameTo(downloadFile))
+            {
+                partFile.delete();
+            }
+        }
+    }
+
     /**
      * @return the name of the source zip file (without the path)
      */
@@ -503,4 +877,73 @@ public class ZipURLInstaller extends LoggedObject implements Installer
     {
         this.proxy = proxy;
     }
+
+    /**
+     * Input stream that copies all bytes read to an output stream.
+     */
+    private static final class TeeInputStream extends FilterInputStream
+    {
+        /**
+         * Stream receiving a copy of the bytes read.
+         */
+        private final OutputStream copy;
+
+        /**
+         * @param in Stream to read from.
+         * @param copy Stream receiving a copy of the bytes read.
+         */
+        private TeeInputStream(InputStream in, OutputStream copy)
+        {
+            super(in);
+            this.copy = copy;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b != -1)
+            {
+                this.copy.write(b);
+            }
+            return b;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int length = super.read(b, off, len);
+            if (length > 0)
+            {
+                this.copy.write(b, off, length);
+            }
+            return length;
+        }
+
+        /**
+         * Skipped bytes are read, so that they are copied too. {@inheritDoc}
+         */
+        @Override
+        public long skip(long n) throws IOException
+        {
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int length = read(buffer, 0, buffer.length);
+            return Math.max(length, 0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
 }
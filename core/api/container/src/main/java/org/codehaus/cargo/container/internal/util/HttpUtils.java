@@ -67,6 +67,32 @@ public class HttpUtils extends LoggedObject
         public String responseBody;
     }
 
+    /**
+     * Whether connections to the server should be kept alive and reused across pings.
+     */
+    private boolean keepAlive;
+
+    /**
+     * Sets whether connections should be kept alive between pings. When enabled, the HTTP
+     * connection is returned to the JVM's connection pool after each ping instead of being
+     * closed, which spares a TCP (and possibly TLS) handshake on every subsequent ping to the
+     * same server.
+     * 
+     * @param keepAlive <code>true</code> to keep connections alive
+     */
+    public void setKeepAlive(boolean keepAlive)
+    {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * @return <code>true</code> if connections are kept alive between pings
+     */
+    public boolean isKeepAlive()
+    {
+        return this.keepAlive;
+    }
+
     /**
      * @param pingURL the URL to ping
      * @return true if the URL can be ping or false otherwise
@@ -174,7 +200,10 @@ public class HttpUtils extends LoggedObject
                 connection.setRequestProperty("Authorization", "Basic " + userInfo);
             }
 
-            connection.setRequestProperty("Connection", "close");
+            if (!this.keepAlive)
+            {
+                connection.setRequestProperty("Connection", "close");
+            }
             if (timeout != 0)
             {
                 connection.setReadTimeout((int) timeout);
@@ -198,7 +227,10 @@ public class HttpUtils extends LoggedObject
 
             connection.connect();
             result.responseBody = readFully(connection);
-            connection.disconnect();
+            if (!this.keepAlive)
+            {
+                connection.disconnect();
+            }
             result.responseCode = connection.getResponseCode();
             result.responseMessage = connection.getResponseMessage();
         }
@@ -301,11 +333,19 @@ public class HttpUtils extends LoggedObject
         StringBuilder body = new StringBuilder();
         byte[] buf = new byte[256];
 
-        // Make sure we read all the data in the stream
-        int n;
-        while ((n = stream.read(buf)) != -1)
+        // Make sure we read all the data in the stream, so that the underlying connection can be
+        // reused when it is kept alive
+        try
+        {
+            int n;
+            while ((n = stream.read(buf)) != -1)
+            {
+                body.append(new String(buf, 0, n));
+            }
+        }
+        finally
         {
-            body.append(new String(buf, 0, n));
+            stream.close();
         }
 
         return body.toString();
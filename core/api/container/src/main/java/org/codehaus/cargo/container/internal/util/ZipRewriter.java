@@ -0,0 +1,302 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.cargo.container.installer.ArchiveCache;
+import org.codehaus.cargo.util.internal.zip.RawZipEntry;
+import org.codehaus.cargo.util.internal.zip.RawZipFile;
+import org.codehaus.cargo.util.internal.zip.RawZipWriter;
+
+/**
+ * Rewrites a ZIP archive (JAR, WAR, EAR...) with some of its entries replaced. Unchanged entries
+ * are copied as raw compressed bytes, without being inflated and deflated again; only the
+ * replaced entries are compressed. Archives using the ZIP64 extensions are rewritten by
+ * recompressing all entries.
+ * 
+ */
+public class ZipRewriter
+{
+    /**
+     * Transforms the content of an archive entry.
+     */
+    public interface EntryTransformer
+    {
+        /**
+         * @param name Name of the entry.
+         * @param content Current content of the entry.
+         * @return New content of the entry.
+         * @throws IOException If reading the current content fails.
+         */
+        byte[] transform(String name, InputStream content) throws IOException;
+    }
+
+    /**
+     * Transformers, indexed by lower case entry name.
+     */
+    private final Map<String, EntryTransformer> transformers =
+        new LinkedHashMap<String, EntryTransformer>();
+
+    /**
+     * Replaces an entry of the archive. Entry names are compared ignoring case; entries missing
+     * from the archive are not added.
+     * 
+     * @param entryName Name of the entry, for example <code>META-INF/MANIFEST.MF</code>.
+     * @param transformer Transformer computing the new content of the entry.
+     */
+    public void addTransformer(String entryName, EntryTransformer transformer)
+    {
+        this.transformers.put(entryName.toLowerCase(Locale.ENGLISH), transformer);
+    }
+
+    /**
+     * Rewrites an archive, unless an archive rewritten from the same source with the same
+     * transformations is already present in the cache directory. Only the latest rewrite of each
+     * file name is kept, older ones are deleted.
+     * 
+     * @param source Source archive.
+     * @param cacheDirectory Cache directory.
+     * @param fileName File name of the rewritten archive.
+     * @param key String identifying the transformations: two rewrites of the same source with the
+     * same key must give the same result.
+     * @return Rewritten archive, in the cache directory.
+     * @throws IOException If reading or writing fails.
+     */
+    public File rewriteCached(File source, File cacheDirectory, String fileName, String key)
+        throws IOException
+    {
+        MessageDigest digest = ArchiveCache.createDigest();
+        digest.update(ArchiveCache.checksum(source).getBytes("UTF-8"));
+        digest.update((byte) 0);
+        digest.update(key.getBytes("UTF-8"));
+        digest.update((byte) 0);
+        digest.update(fileName.getBytes("UTF-8"));
+        for (String entryName : this.transformers.keySet())
+        {
+            digest.update((byte) 0);
+            digest.update(entryName.getBytes("UTF-8"));
+        }
+        File directory = new File(cacheDirectory, ArchiveCache.toHex(digest.digest()));
+        File target = new File(directory, fileName);
+        if (target.isFile())
+        {
+            evictOtherRewrites(cacheDirectory, directory, fileName);
+            return target;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+        {
+            throw new IOException("Failed to create directory [" + directory + "]");
+        }
+        File temporary = File.createTempFile("rewrite", ".part", directory);
+        try
+        {
+            rewrite(source, temporary);
+            if (!temporary.renameTo(target) && !target.isFile())
+            {
+                throw new IOException("Failed to rename [" + temporary + "] to [" + target + "]");
+            }
+        }
+        finally
+        {
+            temporary.delete();
+        }
+        evictOtherRewrites(cacheDirectory, directory, fileName);
+        return target;
+    }
+
+    /**
+     * Deletes the cache entries holding an older rewrite under the same file name, so that
+     * rebuilding and redeploying an archive does not leave a copy behind each time.
+     * 
+     * @param cacheDirectory Cache directory.
+     * @param current Cache entry to keep.
+     * @param fileName File name of the rewritten archive.
+     */
+    private static void evictOtherRewrites(File cacheDirectory, File current, String fileName)
+    {
+        File[] entries = cacheDirectory.listFiles();
+        if (entries == null)
+        {
+            return;
+        }
+        for (File entry : entries)
+        {
+            if (!entry.equals(current) && new File(entry, fileName).isFile())
+            {
+                delete(entry);
+            }
+        }
+    }
+
+    /**
+     * Deletes a file or a directory with all its content, ignoring failures.
+     * 
+     * @param file File or directory to delete.
+     */
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Rewrites an archive.
+     * 
+     * @param source Source archive.
+     * @param target Target archive, overwritten if it exists.
+     * @throws IOException If reading or writing fails.
+     */
+    public void rewrite(File source, File target) throws IOException
+    {
+        RawZipFile in = new RawZipFile(source);
+        try
+        {
+            if (in.isRawCopySupported())
+            {
+                rewriteRaw(in, target);
+            }
+            else
+            {
+                rewriteStreaming(source, target);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Rewrites an archive copying unchanged entries as raw compressed bytes.
+     * 
+     * @param source Source archive.
+     * @param target Target archive.
+     * @throws IOException If reading or writing fails.
+     */
+    private void rewriteRaw(RawZipFile source, File target) throws IOException
+    {
+        RawZipWriter out = new RawZipWriter(target);
+        try
+        {
+            out.setComment(source.getComment());
+            for (RawZipEntry entry : source.getEntries())
+            {
+                EntryTransformer transformer =
+                    this.transformers.get(entry.getName().toLowerCase(Locale.ENGLISH));
+                if (transformer == null)
+                {
+                    out.copyEntry(source, entry);
+                }
+                else
+                {
+                    out.replaceEntry(entry,
+                        transformer.transform(entry.getName(), source.getInputStream(entry)));
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Rewrites an archive by recompressing all entries, for archives which cannot be rewritten
+     * raw.
+     * 
+     * @param source Source archive.
+     * @param target Target archive.
+     * @throws IOException If reading or writing fails.
+     */
+    private void rewriteStreaming(File source, File target) throws IOException
+    {
+        ZipInputStream in = new ZipInputStream(new FileInputStream(source));
+        try
+        {
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(target));
+            try
+            {
+                byte[] buffer = new byte[64 * 1024];
+                for (ZipEntry entry = in.getNextEntry(); entry != null;
+                    entry = in.getNextEntry())
+                {
+                    ZipEntry newEntry = new ZipEntry(entry.getName());
+                    newEntry.setTime(entry.getTime());
+                    out.putNextEntry(newEntry);
+                    EntryTransformer transformer = this.transformers.get(
+                        entry.getName().toLowerCase(Locale.ENGLISH));
+                    if (transformer == null)
+                    {
+                        copy(in, out, buffer);
+                    }
+                    else
+                    {
+                        out.write(transformer.transform(entry.getName(), in));
+                    }
+                    out.closeEntry();
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in Input.
+     * @param out Output.
+     * @param buffer Buffer to use.
+     * @throws IOException If reading or writing fails.
+     */
+    private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException
+    {
+        int length;
+        while ((length = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, length);
+        }
+    }
+}
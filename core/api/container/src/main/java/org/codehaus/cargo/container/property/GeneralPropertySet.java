@@ -76,6 +76,13 @@ public interface GeneralPropertySet
      */
     String SPAWN_PROCESS = "cargo.process.spawn";
 
+    /**
+     * The JVM launcher to start local containers with: <code>ant</code> (the default) uses the
+     * Ant Java task, <code>process</code> starts the JVM directly. Ignored when a JVM launcher
+     * factory has been set on the container.
+     */
+    String JVM_LAUNCHER = "cargo.jvm.launcher";
+
     /**
      * Specify if CARGO's configuration generator for standalone containers should ignore when a
      * property cannot be replaced because it does not exist in the source file.
@@ -86,4 +93,48 @@ public interface GeneralPropertySet
      * The port offset to apply to the container ports.
      */
     String PORT_OFFSET = "cargo.port.offset";
+
+    /**
+     * Set to <code>true</code> to have standalone local containers reserve their ports when
+     * starting: each <code>*.port</code> property keeps its value if that port is free, and is
+     * otherwise set to a free port chosen by the system. Reservations are held through lock files
+     * until the container is stopped, so that containers started concurrently on the same host
+     * (including from other processes) never get the same port.
+     */
+    String PORT_ALLOCATION = "cargo.port.allocation";
+
+    /**
+     * Directory holding the lock files of the {@link #PORT_ALLOCATION} reservations. All processes
+     * that should not collide must use the same directory, which defaults to
+     * <code>cargo-ports</code> in the system's temporary directory.
+     */
+    String PORT_ALLOCATION_LOCK_DIRECTORY = "cargo.port.allocation.lockDirectory";
+
+    /**
+     * Regular expression matching the line the container writes to its output once started. When
+     * set and the container has an output file, the start is detected as soon as that line is
+     * written, in addition to the polling of the Cargo Ping Component.
+     */
+    String STARTUP_LOG_PATTERN = "cargo.startup.logPattern";
+
+    /**
+     * URL of a JMX connector of the container, for example
+     * <code>service:jmx:rmi:///jndi/rmi://localhost:1099/jmxrmi</code>. When set together with
+     * {@link #STARTUP_JMX_OBJECT_NAME} and {@link #STARTUP_JMX_NOTIFICATION_TYPE}, the start is
+     * detected as soon as the MBean emits the notification, in addition to the polling of the
+     * Cargo Ping Component.
+     */
+    String STARTUP_JMX_URL = "cargo.startup.jmxUrl";
+
+    /**
+     * Name of the MBean emitting the notification which tells that the container is started, see
+     * {@link #STARTUP_JMX_URL}.
+     */
+    String STARTUP_JMX_OBJECT_NAME = "cargo.startup.jmxObjectName";
+
+    /**
+     * Prefix of the type of the notification which tells that the container is started, see
+     * {@link #STARTUP_JMX_URL}.
+     */
+    String STARTUP_JMX_NOTIFICATION_TYPE = "cargo.startup.jmxNotificationType";
 }
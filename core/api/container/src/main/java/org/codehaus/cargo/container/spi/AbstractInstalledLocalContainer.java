@@ -22,10 +22,8 @@
  */
 package org.codehaus.cargo.container.spi;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -48,7 +46,12 @@ import org.codehaus.cargo.container.property.SSHPropertySet;
 import org.codehaus.cargo.container.spi.jvm.DefaultJvmLauncherFactory;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncherFactory;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncherProcessAware;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncherRequest;
+import org.codehaus.cargo.container.spi.jvm.JvmMetadata;
+import org.codehaus.cargo.container.spi.jvm.JvmMetadataCache;
+import org.codehaus.cargo.container.spi.jvm.ProcessJvmLauncherFactory;
+import org.codehaus.cargo.container.spi.util.ContainerStopStrategy;
 import org.codehaus.cargo.util.AntUtils;
 import org.codehaus.cargo.util.log.Logger;
 
@@ -101,19 +104,25 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
     private ResourceUtils resourceUtils;
 
     /**
-     * JVM launcher factory.
+     * JVM launcher factory set on the container, <code>null</code> to choose it from the
+     * {@link GeneralPropertySet#JVM_LAUNCHER} property.
      */
     private JvmLauncherFactory jvmLauncherFactory;
 
+    /**
+     * JVM launcher factory chosen from the {@link GeneralPropertySet#JVM_LAUNCHER} property.
+     */
+    private JvmLauncherFactory configuredJvmLauncherFactory;
+
     /**
      * JVM launcher that started the container.
      */
     private JvmLauncher jvmStartLauncher;
 
     /**
-     * Major JVM version
+     * Metadata of the JVM the container runs in.
      */
-    private int jvmMajorVersion = -1;
+    private JvmMetadata jvmMetadata;
 
     /**
      * Default constructor.
@@ -129,7 +138,6 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
         this.antUtils = new AntUtils();
         this.resourceUtils = new ResourceUtils();
         this.httpUtils = new HttpUtils();
-        this.jvmLauncherFactory = new DefaultJvmLauncherFactory();
         extraClasspath = new ArrayList<String>();
         sharedClasspath = new ArrayList<String>();
         systemProperties = new HashMap<String, String>();
@@ -254,7 +262,26 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
      */
     public JvmLauncherFactory getJvmLauncherFactory()
     {
-        return jvmLauncherFactory;
+        if (jvmLauncherFactory != null)
+        {
+            return jvmLauncherFactory;
+        }
+
+        boolean process = "process".equalsIgnoreCase(
+            getConfiguration().getPropertyValue(GeneralPropertySet.JVM_LAUNCHER));
+        if (configuredJvmLauncherFactory == null
+            || process != (configuredJvmLauncherFactory instanceof ProcessJvmLauncherFactory))
+        {
+            if (process)
+            {
+                configuredJvmLauncherFactory = new ProcessJvmLauncherFactory();
+            }
+            else
+            {
+                configuredJvmLauncherFactory = new DefaultJvmLauncherFactory();
+            }
+        }
+        return configuredJvmLauncherFactory;
     }
 
     /**
@@ -322,6 +349,17 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
         }
     }
 
+    /**
+     * {@inheritDoc}. The JVM process the container has been started in is tracked as well.
+     */
+    @Override
+    protected ContainerStopStrategy createStopStrategy()
+    {
+        ContainerStopStrategy stopStrategy = super.createStopStrategy();
+        stopStrategy.setProcess(jvmStartLauncher);
+        return stopStrategy;
+    }
+
     /**
      * Creates a preinitialized instance of a JVM launcher to be used for starting, stopping and
      * controlling the container.
@@ -334,86 +372,14 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
     {
         boolean ssh = getConfiguration().getPropertyValue(SSHPropertySet.HOST) != null;
 
-        if (jvmMajorVersion == -1)
+        if (jvmMetadata == null)
         {
-            JvmLauncherRequest request = new JvmLauncherRequest(false, this, ssh);
-            JvmLauncher java = jvmLauncherFactory.createJvmLauncher(request);
-            if (ssh)
-            {
-                addSshProperties(java);
-            }
-            setJvmToLaunchContainerIn(java);
-
-            // Read the real JVM version
-            BufferedReader br = null;
-            String jvmVersion;
-            try
-            {
-                File jvmVersionFile = File.createTempFile("cargo-jvm-version-", ".txt");
-                java.setOutputFile(jvmVersionFile);
-                java.setAppendOutput(true);
-                java.setMainClass("-version");
-
-                // We need to use java.start and not java.execute since the latter, which calls
-                // org.apache.tools.ant.taskdefs.Java.executeJava() method, doesn't set up
-                // stderr / stdout properly
-                java.start();
-
-                // Give 15 seconds to read the version
-                for (int i = 0; i < 150; i++)
-                {
-                    if (jvmVersionFile.length() > 0)
-                    {
-                        break;
-                    }
-                    Thread.sleep(100);
-                }
-                br = new BufferedReader(new FileReader(jvmVersionFile));
-                jvmVersion = br.readLine();
-                if (jvmVersion != null && jvmVersion.startsWith("java version \""))
-                {
-                    jvmVersion = jvmVersion.substring(jvmVersion.indexOf('"') + 1);
-                }
-                else
-                {
-                    throw new IOException("Can't read JVM version from line: " + jvmVersion);
-                }
-            }
-            catch (Throwable t)
-            {
-                jvmVersion = System.getProperty("java.version");
-            }
-            finally
-            {
-                if (br != null)
-                {
-                    try
-                    {
-                        br.close();
-                    }
-                    catch (IOException ignored)
-                    {
-                        // Ignored
-                    }
-                    br = null;
-                    System.gc();
-                }
-            }
-            if (jvmVersion.startsWith("1."))
-            {
-                jvmVersion = jvmVersion.substring(2);
-            }
-            int dot = jvmVersion.indexOf('.');
-            if (dot > 0)
-            {
-                jvmVersion = jvmVersion.substring(0, dot);
-            }
-            jvmMajorVersion = Integer.parseInt(jvmVersion);
+            jvmMetadata = readJvmMetadata(ssh);
         }
 
         JvmLauncherRequest request = new JvmLauncherRequest(server, this, ssh);
 
-        JvmLauncher java = jvmLauncherFactory.createJvmLauncher(request);
+        JvmLauncher java = getJvmLauncherFactory().createJvmLauncher(request);
 
         // Most container configurations assume that the container would be started from the same
         // working directory as the configuration; so set this here.
@@ -512,6 +478,26 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
         return javaHome;
     }
 
+    /**
+     * @return Path of the <code>java</code> executable that will run the container,
+     * <code>null</code> if the Java home is unknown.
+     */
+    protected String getJavaExecutable()
+    {
+        String javaHome = getJavaHome();
+        if (javaHome == null)
+        {
+            return null;
+        }
+        String binDir = getFileHandler().append(javaHome, "bin");
+        String javaPath = getFileHandler().append(binDir, "java");
+        if (Os.isFamily("windows"))
+        {
+            javaPath += ".exe";
+        }
+        return javaPath;
+    }
+
     /**
      * Determines which java virtual machine will run the container.
      * 
@@ -519,16 +505,92 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
      */
     protected void setJvmToLaunchContainerIn(JvmLauncher java)
     {
-        String javaHome = getJavaHome();
-        if (javaHome != null)
+        String javaPath = getJavaExecutable();
+        if (javaPath != null)
+        {
+            java.setJvm(javaPath);
+        }
+    }
+
+    /**
+     * Reads the metadata of the JVM that will run the container. Local JVMs are looked up in the
+     * {@link JvmMetadataCache}, so that <code>java -version</code> only runs once per JVM
+     * installation. Remote JVMs are probed through a JVM launcher. If the JVM cannot be probed,
+     * the metadata of the current JVM is used.
+     * 
+     * @param ssh {@code true} if the container runs on a remote host via SSH.
+     * @return Metadata of the JVM that will run the container.
+     */
+    private JvmMetadata readJvmMetadata(boolean ssh)
+    {
+        try
         {
-            String binDir = getFileHandler().append(javaHome, "bin");
-            String javaPath = getFileHandler().append(binDir, "java");
-            if (Os.isFamily("windows"))
+            if (ssh)
             {
-                javaPath += ".exe";
+                return probeJvmMetadata();
             }
-            java.setJvm(javaPath);
+            String javaPath = getJavaExecutable();
+            if (javaPath != null && new File(javaPath).isFile())
+            {
+                return JvmMetadataCache.getInstance().getMetadata(new File(javaPath));
+            }
+        }
+        catch (Throwable t)
+        {
+            getLogger().debug("Cannot read JVM version, using the current JVM's version: " + t,
+                this.getClass().getName());
+        }
+        return new JvmMetadata(System.getProperty("java.version"),
+            System.getProperty("java.runtime.name"), System.getProperty("java.vm.name"));
+    }
+
+    /**
+     * Runs <code>java -version</code> through a JVM launcher, waiting for it to exit.
+     * 
+     * @return Metadata of the JVM.
+     * @throws IOException If the JVM cannot be run or its version cannot be parsed.
+     * @throws InterruptedException If interrupted while waiting for the JVM to exit.
+     */
+    private JvmMetadata probeJvmMetadata() throws IOException, InterruptedException
+    {
+        JvmLauncherRequest request = new JvmLauncherRequest(false, this, true);
+        JvmLauncher java = getJvmLauncherFactory().createJvmLauncher(request);
+        addSshProperties(java);
+        setJvmToLaunchContainerIn(java);
+
+        File jvmVersionFile = File.createTempFile("cargo-jvm-version-", ".txt");
+        try
+        {
+            java.setOutputFile(jvmVersionFile);
+            java.setAppendOutput(true);
+            java.setMainClass("-version");
+
+            // We need to use java.start and not java.execute since the latter, which calls
+            // org.apache.tools.ant.taskdefs.Java.executeJava() method, doesn't set up
+            // stderr / stdout properly
+            java.start();
+
+            // Give 15 seconds for the JVM to exit; launchers which do not track the remote
+            // process only tell it has completed once the version has been written
+            long deadline = System.currentTimeMillis() + 15000;
+            boolean tracked = java instanceof JvmLauncherProcessAware;
+            while ((tracked && ((JvmLauncherProcessAware) java).isRunning()
+                || jvmVersionFile.length() == 0) && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(50);
+            }
+
+            JvmMetadata metadata =
+                JvmMetadata.parse(getFileHandler().readTextFile(jvmVersionFile.getPath(), null));
+            if (metadata == null)
+            {
+                throw new IOException("Can't read JVM version from " + jvmVersionFile);
+            }
+            return metadata;
+        }
+        finally
+        {
+            jvmVersionFile.delete();
         }
     }
 
@@ -635,7 +697,7 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
         }
 
         // CARGO-1294: Warning when starting containers on Java 8
-        if (jvmMajorVersion < 8)
+        if (jvmMetadata == null || jvmMetadata.isPermGenSupported())
         {
             if (jvmArgs == null || !jvmArgs.contains("-XX:PermSize"))
             {
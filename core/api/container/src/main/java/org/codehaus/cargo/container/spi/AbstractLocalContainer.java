@@ -19,23 +19,36 @@
  */
 package org.codehaus.cargo.container.spi;
 
-import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.remote.JMXServiceURL;
+
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.LocalContainer;
 import org.codehaus.cargo.container.State;
+import org.codehaus.cargo.container.configuration.ConfigurationType;
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
+import org.codehaus.cargo.container.deployer.CompositeDeployableMonitor;
 import org.codehaus.cargo.container.deployer.DeployableMonitor;
+import org.codehaus.cargo.container.deployer.JmxNotificationDeployableMonitor;
+import org.codehaus.cargo.container.deployer.LogFileDeployableMonitor;
 import org.codehaus.cargo.container.deployer.URLDeployableMonitor;
+import org.codehaus.cargo.container.property.GeneralPropertySet;
 import org.codehaus.cargo.container.property.ServletPropertySet;
 import org.codehaus.cargo.container.spi.deployer.DeployerWatchdog;
+import org.codehaus.cargo.container.spi.util.ContainerStopStrategy;
 import org.codehaus.cargo.container.spi.util.ContainerUtils;
+import org.codehaus.cargo.container.spi.util.PortAllocator;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.NioFileHandler;
 
 /**
  * Default container implementation that all local container implementations must extend.
@@ -74,6 +87,24 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
      */
     private FileHandler fileHandler;
 
+    /**
+     * Length of the output file when the container was last started, used to look for the
+     * startup message only in what the container has written since.
+     */
+    private long outputStartOffset;
+
+    /**
+     * Allocator holding the ports reserved for this container, <code>null</code> when
+     * {@link GeneralPropertySet#PORT_ALLOCATION} is not enabled.
+     */
+    private PortAllocator portAllocator;
+
+    /**
+     * Values which the <code>*.port</code> properties changed by {@link #allocatePorts()} had
+     * before the allocation, keyed by property name.
+     */
+    private Map<String, String> unallocatedPorts = new HashMap<String, String>();
+
     /**
      * Default constructor.
      * @param configuration the configuration to associate to this container. It can be changed
@@ -83,7 +114,7 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
     {
         this.append = false;
         this.configuration = configuration;
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = new NioFileHandler();
     }
 
     /**
@@ -194,10 +225,14 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
 
             verify();
 
+            allocatePorts();
+
             // Ensure that the configuration is done before starting the container.
             getConfiguration().configure(this);
 
             // CARGO-365: Check if ports are in use
+            ContainerStopStrategy portProbe = new ContainerStopStrategy();
+            portProbe.setLogger(getLogger());
             for (Map.Entry<String, String> property
                 : getConfiguration().getProperties().entrySet())
             {
@@ -206,7 +241,7 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
                     try
                     {
                         int port = Integer.parseInt(property.getValue());
-                        if (!isPortShutdown(port, 0))
+                        if (!portProbe.isPortShutdown(port, 0))
                         {
                             throw new ContainerException("Port number " + property.getValue()
                                 + " (defined with the property " + property.getKey() + ") is "
@@ -221,6 +256,12 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
                 }
             }
 
+            this.outputStartOffset = 0;
+            if (getOutput() != null && isAppend())
+            {
+                this.outputStartOffset = new File(getOutput()).length();
+            }
+
             startInternal();
 
             // CARGO-712: If timeout is 0, don't wait at all
@@ -240,6 +281,7 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
         catch (CargoException e)
         {
             setState(State.UNKNOWN);
+            releasePorts();
             getLogger().warn(e.toString(), this.getClass().getName());
 
             throw e;
@@ -247,6 +289,7 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
         catch (Throwable t)
         {
             setState(State.UNKNOWN);
+            releasePorts();
             getLogger().warn(t.toString(), this.getClass().getName());
 
             throw new ContainerException("Failed to start the " + getName() + " container."
@@ -306,6 +349,7 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
         finally
         {
             setAppend(isAppend);
+            releasePorts();
             this.getConfiguration().revertPortOffset();
         }
     }
@@ -342,83 +386,128 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
 
         if (waitForStarting)
         {
-            DeployableMonitor monitor =
+            URLDeployableMonitor cpcMonitor =
                 new URLDeployableMonitor(ContainerUtils.getCPCURL(config), getTimeout(),
                     "Cargo Ping Component used to verify if the container is started.");
+            cpcMonitor.setKeepAlive(true);
+
+            List<DeployableMonitor> monitors = new ArrayList<DeployableMonitor>();
+            monitors.add(cpcMonitor);
+            LogFileDeployableMonitor logMonitor = null;
+            String startupLogPattern =
+                config.getPropertyValue(GeneralPropertySet.STARTUP_LOG_PATTERN);
+            if (startupLogPattern != null && getOutput() != null)
+            {
+                logMonitor = new LogFileDeployableMonitor(new File(getOutput()),
+                    startupLogPattern, getTimeout());
+                logMonitor.setStartOffset(this.outputStartOffset);
+                monitors.add(logMonitor);
+            }
+            JmxNotificationDeployableMonitor jmxMonitor = createStartupJmxMonitor();
+            if (jmxMonitor != null)
+            {
+                monitors.add(jmxMonitor);
+            }
+
+            DeployableMonitor monitor = cpcMonitor;
+            if (monitors.size() > 1)
+            {
+                monitor = new CompositeDeployableMonitor(
+                    monitors.toArray(new DeployableMonitor[monitors.size()]));
+            }
             monitor.setLogger(getLogger());
             DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
             watchdog.setLogger(getLogger());
 
-            watchdog.watch(waitForStarting);
-        }
-        else
-        {
-            long deadline = System.currentTimeMillis() + getTimeout();
-
-            int connectTimeout = 0;
-            for (Map.Entry<String, String> property : getConfiguration().getProperties().entrySet())
+            try
             {
-                if (!property.getKey().endsWith(".port") || property.getValue() == null)
-                {
-                    continue;
-                }
-                int port;
-                try
-                {
-                    port = Integer.parseInt(property.getValue());
-                }
-                catch (NumberFormatException e)
+                watchdog.watch(waitForStarting);
+            }
+            finally
+            {
+                if (logMonitor != null)
                 {
-                    continue;
+                    logMonitor.stop();
                 }
-                if (port < 1 || port > 65535)
+                if (jmxMonitor != null)
                 {
-                    continue;
+                    jmxMonitor.close();
                 }
-
-                waitForPortShutdown(port, connectTimeout, deadline);
-                getLogger().debug("\tPort " + port + " is shutdown", this.getClass().getName());
-
-                connectTimeout = 250;
-                continue;
             }
-
-            // Many container do not fully stop even after having destroyed all their sockets;
-            // as a result wait 5 more seconds
-            Thread.sleep(5000);
+        }
+        else
+        {
+            ContainerStopStrategy stopStrategy = createStopStrategy();
+            stopStrategy.setLogger(getLogger());
+            stopStrategy.waitForStop(getTimeout());
         }
     }
 
     /**
-     * Waits for the shutdown of the specified server port.
+     * Creates the monitor listening to the JMX notification which tells that the container is
+     * started, as configured with {@link GeneralPropertySet#STARTUP_JMX_URL}.
      * 
-     * @param port The port number.
-     * @param connectTimeout The connect timeout.
-     * @param deadline The deadline for the port to shutdown.
-     * @throws InterruptedException If the thread was interrupted while waiting for the port
-     *             shutdown.
-     */
-    private void waitForPortShutdown(int port, int connectTimeout, long deadline)
-        throws InterruptedException
+     * @return the JMX notification monitor, <code>null</code> if not configured
+     */
+    protected JmxNotificationDeployableMonitor createStartupJmxMonitor()
     {
-        getLogger().debug("Waiting for port " + port + " to shutdown, deadline " + deadline,
-            this.getClass().getName());
+        String url = getConfiguration().getPropertyValue(GeneralPropertySet.STARTUP_JMX_URL);
+        String objectName =
+            getConfiguration().getPropertyValue(GeneralPropertySet.STARTUP_JMX_OBJECT_NAME);
+        String notificationType = getConfiguration().getPropertyValue(
+            GeneralPropertySet.STARTUP_JMX_NOTIFICATION_TYPE);
+        if (url == null || objectName == null || notificationType == null)
+        {
+            return null;
+        }
 
-        while (true)
+        try
+        {
+            return new JmxNotificationDeployableMonitor(new JMXServiceURL(url),
+                new ObjectName(objectName), notificationType, getTimeout());
+        }
+        catch (MalformedURLException e)
+        {
+            throw new ContainerException("Invalid JMX service URL [" + url + "]", e);
+        }
+        catch (MalformedObjectNameException e)
         {
-            if (isPortShutdown(port, connectTimeout))
+            throw new ContainerException("Invalid MBean name [" + objectName + "]", e);
+        }
+    }
+
+    /**
+     * Creates the strategy used to find out when the container is fully stopped. By default, the
+     * container is stopped once all ports defined in its configuration have been released.
+     * Containers can override this method to refine the strategy, for example to track the
+     * container process or only watch some ports.
+     * 
+     * @return the strategy used to wait for the container to stop
+     */
+    protected ContainerStopStrategy createStopStrategy()
+    {
+        ContainerStopStrategy stopStrategy = new ContainerStopStrategy();
+        for (Map.Entry<String, String> property : getConfiguration().getProperties().entrySet())
+        {
+            if (!property.getKey().endsWith(".port") || property.getValue() == null)
             {
-                break;
+                continue;
             }
-
-            if (System.currentTimeMillis() > deadline)
+            int port;
+            try
             {
-                throw new ContainerException("Server port " + port
-                    + " did not shutdown within the timeout period [" + getTimeout() + "]");
+                port = Integer.parseInt(property.getValue());
+            }
+            catch (NumberFormatException e)
+            {
+                continue;
+            }
+            if (port >= 1 && port <= 65535)
+            {
+                stopStrategy.addPort(port);
             }
-
-            Thread.sleep(1000);
         }
+        return stopStrategy;
     }
 
     /**
@@ -494,78 +583,75 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
 
 
     /**
-     * Checks if the specified server port is shutdown.
-     * 
-     * @param port The port number.
-     * @param connectTimeout The connect timeout.
-     * @return <code>true</code> if <code>port</code> is shut down, <code>false</code> otherwise.
+     * Reserves the ports of a standalone configuration when
+     * {@link GeneralPropertySet#PORT_ALLOCATION} is enabled. Each <code>*.port</code> property
+     * keeps its value when that port is free and is otherwise changed to a free port, before the
+     * configuration files are generated. The reservations are held until the container is stopped.
      */
-    private boolean isPortShutdown(int port, int connectTimeout)
+    protected void allocatePorts()
     {
-        Socket s = new Socket();
-        try
+        releasePorts();
+
+        LocalConfiguration config = getConfiguration();
+        if (!Boolean.parseBoolean(config.getPropertyValue(GeneralPropertySet.PORT_ALLOCATION))
+            || config.getType() != ConfigurationType.STANDALONE)
         {
-            getLogger().debug("\tConnection attempt with socket " + s + ", current time is "
-                + System.currentTimeMillis(), this.getClass().getName());
+            return;
+        }
 
-            s.bind(null);
+        String lockDirectory =
+            config.getPropertyValue(GeneralPropertySet.PORT_ALLOCATION_LOCK_DIRECTORY);
+        PortAllocator allocator = lockDirectory == null ? new PortAllocator()
+            : new PortAllocator(new File(lockDirectory));
+        allocator.setLogger(getLogger());
+        this.portAllocator = allocator;
 
-            // If the remote port is closed, s.connect will throw an exception
-            s.connect(new InetSocketAddress("localhost", port), connectTimeout);
-            getLogger().debug("\tSocket " + s + " for port " + port + " managed to connect",
-                this.getClass().getName());
-
-            try
-            {
-                s.shutdownOutput();
-            }
-            catch (IOException e)
-            {
-                // ignored, irrelevant
-                getLogger().debug("\tFailed to shutdown output for socket " + s + ": " + e,
-                    this.getClass().getName());
-            }
-            try
-            {
-                s.shutdownInput();
-            }
-            catch (IOException e)
+        // Setting a property modifies the properties map, hence work on a copy
+        Map<String, String> properties = new HashMap<String, String>(config.getProperties());
+        for (Map.Entry<String, String> property : properties.entrySet())
+        {
+            if (property.getKey().endsWith(".port") && property.getValue() != null)
             {
-                // ignored, irrelevant
-                getLogger().debug("\tFailed to shutdown input for socket " + s + ": " + e,
-                    this.getClass().getName());
-            }
+                int port;
+                try
+                {
+                    port = Integer.parseInt(property.getValue());
+                }
+                catch (NumberFormatException e)
+                {
+                    continue;
+                }
 
-            getLogger().debug("\tSocket " + s + " for port " + port + " shutdown",
-                this.getClass().getName());
+                int reserved = allocator.reserve(port);
+                if (reserved != port)
+                {
+                    getLogger().info("Port " + port + " (defined with the property "
+                        + property.getKey() + ") is not available, using port " + reserved
+                            + " instead", this.getClass().getName());
+                    this.unallocatedPorts.put(property.getKey(), property.getValue());
+                    config.setProperty(property.getKey(), Integer.toString(reserved));
+                }
+            }
         }
-        catch (IOException ignored)
+    }
+
+    /**
+     * Releases the ports reserved by {@link #allocatePorts()}, if any, and gives back their
+     * original values to the properties it changed. As these values include the port offset,
+     * this must be called before {@link LocalConfiguration#revertPortOffset()}.
+     */
+    protected void releasePorts()
+    {
+        if (this.portAllocator != null)
         {
-            // If an IOException has occured, this means port is shut down
-            return true;
+            this.portAllocator.releaseAll();
+            this.portAllocator = null;
         }
-        finally
-        {
-            try
-            {
-                s.close();
-            }
-            catch (IOException e)
-            {
-                // ignored, irrelevant
-                getLogger().debug("\tFailed to close socket " + s + ": " + e,
-                    this.getClass().getName());
-            }
-            finally
-            {
-                getLogger().debug("\tSocket " + s + " for port " + port + " closed",
-                    this.getClass().getName());
 
-                s = null;
-                System.gc();
-            }
+        for (Map.Entry<String, String> port : this.unallocatedPorts.entrySet())
+        {
+            getConfiguration().setProperty(port.getKey(), port.getValue());
         }
-
-        return false;
+        this.unallocatedPorts.clear();
     }
 }
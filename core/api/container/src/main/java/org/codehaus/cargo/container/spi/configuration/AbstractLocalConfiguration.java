@@ -44,8 +44,8 @@ import org.codehaus.cargo.container.property.ResourcePropertySet;
 import org.codehaus.cargo.container.property.TransactionSupport;
 import org.codehaus.cargo.util.AntUtils;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.NioFileHandler;
 import org.codehaus.cargo.util.log.Logger;
 
 /**
@@ -128,7 +128,7 @@ public abstract class AbstractLocalConfiguration extends AbstractConfiguration i
         super();
 
         this.deployables = new ArrayList<Deployable>();
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = new NioFileHandler();
         this.antUtils = new AntUtils();
         this.resourceUtils = new ResourceUtils();
         this.resources = new ArrayList<Resource>();
@@ -42,6 +42,8 @@ public abstract class AbstractLocalConfigurationCapability extends AbstractConfi
         this.defaultSupportsMap.put(ServletPropertySet.PORT, Boolean.TRUE);
         this.defaultSupportsMap.put(GeneralPropertySet.JAVA_HOME, Boolean.TRUE);
         this.defaultSupportsMap.put(GeneralPropertySet.SPAWN_PROCESS, Boolean.TRUE);
+        this.defaultSupportsMap.put(GeneralPropertySet.JVM_LAUNCHER, Boolean.TRUE);
         this.defaultSupportsMap.put(GeneralPropertySet.PORT_OFFSET, Boolean.TRUE);
+        this.defaultSupportsMap.put(GeneralPropertySet.PORT_ALLOCATION, Boolean.TRUE);
     }
 }
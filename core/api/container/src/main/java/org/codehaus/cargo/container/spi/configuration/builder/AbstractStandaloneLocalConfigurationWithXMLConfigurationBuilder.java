@@ -19,6 +19,7 @@
  */
 package org.codehaus.cargo.container.spi.configuration.builder;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.codehaus.cargo.container.LocalContainer;
@@ -45,12 +46,20 @@ import org.codehaus.cargo.util.XmlFileBuilder;
  * <li> {@link getOrCreateDataSourceConfigurationFile}: where do we load and store the datasource
  * configuration?</li>
  * </ol>
+ * While datasources and resources are being configured, each configuration file is loaded once,
+ * all entries are inserted in memory and the file is written once at the end.
  * 
  */
 public abstract class AbstractStandaloneLocalConfigurationWithXMLConfigurationBuilder extends
     AbstractStandaloneLocalConfiguration implements DataSourceSupport, ResourceSupport
 {
 
+    /**
+     * Configuration files loaded during the current datasource and resource configuration, indexed
+     * by file name. <code>null</code> when no configuration session is in progress.
+     */
+    private Map<String, XmlFileBuilder> xmlFiles;
+
     /**
      * {@inheritDoc}
      * 
@@ -120,8 +129,23 @@ public abstract class AbstractStandaloneLocalConfigurationWithXMLConfigurationBu
     public void configure(LocalContainer container)
     {
         super.configure(container);
-        configureDataSources(container);
-        configureResources(container);
+        boolean sessionStarted = startXmlFileSession();
+        try
+        {
+            configureDataSources(container);
+            configureResources(container);
+            if (sessionStarted)
+            {
+                writeXmlFiles();
+            }
+        }
+        finally
+        {
+            if (sessionStarted)
+            {
+                this.xmlFiles = null;
+            }
+        }
     }
 
     /**
@@ -129,9 +153,24 @@ public abstract class AbstractStandaloneLocalConfigurationWithXMLConfigurationBu
      */
     public void configureDataSources(LocalContainer container)
     {
-        for (DataSource dataSource : getDataSources())
+        boolean sessionStarted = startXmlFileSession();
+        try
+        {
+            for (DataSource dataSource : getDataSources())
+            {
+                configure(dataSource, container);
+            }
+            if (sessionStarted)
+            {
+                writeXmlFiles();
+            }
+        }
+        finally
         {
-            configure(dataSource, container);
+            if (sessionStarted)
+            {
+                this.xmlFiles = null;
+            }
         }
     }
 
@@ -151,9 +190,24 @@ public abstract class AbstractStandaloneLocalConfigurationWithXMLConfigurationBu
      */
     public void configureResources(LocalContainer container)
     {
-        for (Resource resource : getResources())
+        boolean sessionStarted = startXmlFileSession();
+        try
         {
-            configure(resource, container);
+            for (Resource resource : getResources())
+            {
+                configure(resource, container);
+            }
+            if (sessionStarted)
+            {
+                writeXmlFiles();
+            }
+        }
+        finally
+        {
+            if (sessionStarted)
+            {
+                this.xmlFiles = null;
+            }
         }
     }
 
@@ -169,7 +223,9 @@ public abstract class AbstractStandaloneLocalConfigurationWithXMLConfigurationBu
     }
 
     /**
-     * Utility method used to write XML to an appropriate place in the configuration file.
+     * Utility method used to write XML to an appropriate place in the configuration file. When a
+     * configuration session is in progress, the file is only loaded the first time and written
+     * when the session ends; otherwise it is loaded and written straight away.
      * 
      * @param file where to write the datasource configuration to.
      * @param xml node you wish to write to the resources configuration file.
@@ -177,11 +233,56 @@ public abstract class AbstractStandaloneLocalConfigurationWithXMLConfigurationBu
      */
     protected void writeConfigurationToXpath(String file, String xml, String path)
     {
-        XmlFileBuilder manager = new Dom4JXmlFileBuilder(getFileHandler());
-        manager.setNamespaces(getNamespaces());
-        manager.setFile(file);
-        manager.loadFile();
+        XmlFileBuilder manager = null;
+        if (this.xmlFiles != null)
+        {
+            manager = this.xmlFiles.get(file);
+        }
+        if (manager == null)
+        {
+            manager = new Dom4JXmlFileBuilder(getFileHandler());
+            manager.setNamespaces(getNamespaces());
+            manager.setFile(file);
+            manager.loadFile();
+        }
         manager.insertElementsUnderXPath(xml, path);
-        manager.writeFile();
+        if (this.xmlFiles != null)
+        {
+            this.xmlFiles.put(file, manager);
+        }
+        else
+        {
+            manager.writeFile();
+        }
+    }
+
+    /**
+     * Start a configuration session, unless one is already in progress.
+     * 
+     * @return <code>true</code> if a new session has been started, in which case the caller is
+     * responsible for writing the files and ending it.
+     */
+    private boolean startXmlFileSession()
+    {
+        if (this.xmlFiles != null)
+        {
+            return false;
+        }
+        this.xmlFiles = new LinkedHashMap<String, XmlFileBuilder>();
+        return true;
+    }
+
+    /**
+     * Write all configuration files modified during the current configuration session.
+     */
+    private void writeXmlFiles()
+    {
+        for (Map.Entry<String, XmlFileBuilder> xmlFile : this.xmlFiles.entrySet())
+        {
+            getLogger().debug("Writing configuration file [" + xmlFile.getKey() + "]",
+                this.getClass().getName());
+            xmlFile.getValue().writeFile();
+        }
+        this.xmlFiles.clear();
     }
 }
@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 import org.codehaus.cargo.container.ContainerException;
@@ -34,6 +35,7 @@ import org.codehaus.cargo.container.deployable.EAR;
 import org.codehaus.cargo.container.deployable.RAR;
 import org.codehaus.cargo.container.deployable.WAR;
 import org.codehaus.cargo.util.CargoException;
+import org.codehaus.cargo.util.DefaultFileHandler;
 
 /**
  * Local deployer that deploys deployables to a <code>deployable</code> directory of the given
@@ -51,6 +53,27 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
      */
     private Set<DeployableType> doNotDeployExpanded = new HashSet<DeployableType>();
 
+    /**
+     * Contains those DeployableTypes whose archives should be exploded into the
+     * <code>deployable</code> directory instead of being copied as is.
+     */
+    private Set<DeployableType> explodeArchives = new HashSet<DeployableType>();
+
+    /**
+     * Number of threads used to explode archives.
+     */
+    private int explodeThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether deployables should be copied incrementally.
+     */
+    private boolean incremental;
+
+    /**
+     * Whether archives copied incrementally may be hard linked to their source.
+     */
+    private boolean useHardLinks;
+
     /**
      * Deployed Deployables.
      */
@@ -100,57 +123,161 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
         return !this.doNotDeployExpanded.contains(type);
     }
 
+    /**
+     * Decide whether archives of the specified type should be deployed expanded, i.e. exploded
+     * into the <code>deployable</code> directory instead of being copied as is. Containers which
+     * do not support expanded deployables of that type (see
+     * {@link #setShouldDeployExpanded(DeployableType, boolean)}) always get the archive.
+     * 
+     * @param type the deployable type
+     * @param flag whether archives of the specified deployment type should be exploded
+     */
+    public void setShouldExplodeArchive(DeployableType type, boolean flag)
+    {
+        if (flag)
+        {
+            this.explodeArchives.add(type);
+        }
+        else
+        {
+            this.explodeArchives.remove(type);
+        }
+    }
+
+    /**
+     * @param type the deployable type
+     * @return whether archives of the specified deployment type should be exploded
+     */
+    protected boolean shouldExplodeArchive(DeployableType type)
+    {
+        return this.explodeArchives.contains(type) && shouldDeployExpanded(type);
+    }
+
+    /**
+     * @param explodeThreads number of threads used to explode archives, <code>1</code> to
+     * explode sequentially. Defaults to the number of available processors. Archives are only
+     * exploded in parallel when the file handler is a {@link DefaultFileHandler}.
+     */
+    public void setExplodeThreads(int explodeThreads)
+    {
+        this.explodeThreads = explodeThreads;
+    }
+
+    /**
+     * @return number of threads used to explode archives
+     */
+    public int getExplodeThreads()
+    {
+        return this.explodeThreads;
+    }
+
+    /**
+     * Sets whether deployables should be copied incrementally. In incremental mode, a manifest of
+     * what has been copied is kept for each deployable; unchanged archives are not copied again,
+     * only the changed files of expanded deployables are copied and, if
+     * {@link #setUseHardLinks(boolean) enabled}, archives which need to be copied are hard linked
+     * to their source when possible.
+     * 
+     * @param incremental <code>true</code> to copy deployables incrementally
+     */
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return whether deployables are copied incrementally
+     */
+    public boolean isIncremental()
+    {
+        return this.incremental;
+    }
+
+    /**
+     * @param useHardLinks whether archives copied incrementally may be hard linked to their
+     * source instead of being copied. Only enable this if the source is not rebuilt in place while
+     * deployed: a hard linked archive changes along with its source and, on Windows, the
+     * container's lock on the deployed archive prevents the source from being rewritten. Defaults
+     * to <code>false</code>.
+     */
+    public void setUseHardLinks(boolean useHardLinks)
+    {
+        this.useHardLinks = useHardLinks;
+    }
+
     /**
      * {@inheritDoc}
      * 
      * @see org.codehaus.cargo.container.deployer.Deployer#deploy(Deployable)
      */
     @Override
-    public synchronized void deploy(Deployable deployable)
+    public void deploy(Deployable deployable)
     {
-        if (!canBeDeployed(deployable))
+        // Only the list of deployed deployables is shared, the web contexts of the deployable are
+        // reserved in it before copying so that several deployables can be copied concurrently
+        synchronized (this.deployedDeployables)
         {
-            throw new ContainerException("Failed to deploy [" + deployable.getFile() + "] to ["
-                + getDeployableDir(deployable) + "]. The required web context is already in use"
-                + " by another application.");
-        }
+            if (!canBeDeployed(deployable))
+            {
+                throw new ContainerException("Failed to deploy [" + deployable.getFile()
+                    + "] to [" + getDeployableDir(deployable) + "]. The required web context is "
+                        + "already in use by another application.");
+            }
 
-        // Check that the container supports the deployable type to deploy
-        if (!getContainer().getCapability().supportsDeployableType(deployable.getType()))
-        {
-            throw new ContainerException(deployable.getType().getType().toUpperCase()
-                + " archives are not supported for deployment in [" + getContainer().getId()
-                + "]. Got [" + deployable.getFile() + "]");
-        }
+            // Check that the container supports the deployable type to deploy
+            if (!getContainer().getCapability().supportsDeployableType(deployable.getType()))
+            {
+                throw new ContainerException(deployable.getType().getType().toUpperCase()
+                    + " archives are not supported for deployment in [" + getContainer().getId()
+                    + "]. Got [" + deployable.getFile() + "]");
+            }
 
-        String deployableDir = getDeployableDir(deployable);
+            this.deployedDeployables.add(deployable);
+        }
 
+        boolean deployed = false;
         try
         {
-            if (deployable.isExpanded())
+            String deployableDir = getDeployableDir(deployable);
+
+            try
             {
-                if (!shouldDeployExpanded(deployable.getType()))
+                if (deployable.isExpanded())
                 {
-                    throw new ContainerException("Container " + getContainer().getName()
-                        + " cannot deploy expanded " + deployable.getType() + " deployables");
-                }
+                    if (!shouldDeployExpanded(deployable.getType()))
+                    {
+                        throw new ContainerException("Container " + getContainer().getName()
+                            + " cannot deploy expanded " + deployable.getType() + " deployables");
+                    }
 
-                if (!getFileHandler().isDirectory(deployable.getFile()))
-                {
-                    throw new ContainerException("The deployable's file " + deployable.getFile()
-                        + " is not a directory, hence cannot be deployed as expanded");
+                    if (!getFileHandler().isDirectory(deployable.getFile()))
+                    {
+                        throw new ContainerException("The deployable's file "
+                            + deployable.getFile() + " is not a directory, hence cannot be "
+                                + "deployed as expanded");
+                    }
                 }
+
+                doDeploy(deployableDir, deployable);
+            }
+            catch (Exception e)
+            {
+                throw new ContainerException("Failed to deploy [" + deployable.getFile()
+                    + "] to [" + deployableDir + "]", e);
             }
 
-            doDeploy(deployableDir, deployable);
+            deployed = true;
         }
-        catch (Exception e)
+        finally
         {
-            throw new ContainerException("Failed to deploy [" + deployable.getFile() + "] to ["
-                + deployableDir + "]", e);
+            if (!deployed)
+            {
+                synchronized (this.deployedDeployables)
+                {
+                    this.deployedDeployables.remove(deployable);
+                }
+            }
         }
-
-        this.deployedDeployables.add(deployable);
     }
 
     /**
@@ -252,7 +379,51 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
                 getFileHandler().delete(target);
             }
 
-            getFileHandler().copyDirectory(deployable.getFile(), target);
+            if (isIncremental())
+            {
+                createIncrementalCopier().copyDirectory(deployable.getFile(), target,
+                    getManifestFile(target));
+            }
+            else
+            {
+                getFileHandler().copyDirectory(deployable.getFile(), target);
+            }
+        }
+        else if (shouldExplodeArchive(deployable.getType()))
+        {
+            target = getFileHandler().append(deployableDir, getExplodedDeployableName(deployable));
+            if (getFileHandler().exists(target) && !getFileHandler().isDirectory(target))
+            {
+                getFileHandler().delete(target);
+            }
+
+            IncrementalCopier copier = null;
+            String manifest = null;
+            if (isIncremental())
+            {
+                copier = createIncrementalCopier();
+                manifest = getManifestFile(target);
+                if (copier.isUnchanged(deployable.getFile(), target, manifest))
+                {
+                    getLogger().info("[" + deployable.getFile() + "] is unchanged, keeping ["
+                        + target + "]", this.getClass().getName());
+                    return;
+                }
+            }
+
+            if (getFileHandler() instanceof DefaultFileHandler)
+            {
+                ((DefaultFileHandler) getFileHandler()).explode(deployable.getFile(), target,
+                    getExplodeThreads());
+            }
+            else
+            {
+                getFileHandler().explode(deployable.getFile(), target);
+            }
+            if (copier != null)
+            {
+                copier.record(deployable.getFile(), manifest);
+            }
         }
         else
         {
@@ -263,10 +434,65 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
                 getFileHandler().delete(target);
             }
 
-            getFileHandler().copyFile(deployable.getFile(), target, true);
+            if (isIncremental())
+            {
+                createIncrementalCopier().copyFile(deployable.getFile(), target,
+                    getManifestFile(target));
+            }
+            else
+            {
+                getFileHandler().copyFile(deployable.getFile(), target, true);
+            }
         }
     }
 
+    /**
+     * @return the incremental copier to use
+     */
+    private IncrementalCopier createIncrementalCopier()
+    {
+        IncrementalCopier copier = new IncrementalCopier(getFileHandler());
+        copier.setLogger(getLogger());
+        copier.setUseHardLinks(this.useHardLinks);
+        return copier;
+    }
+
+    /**
+     * Gets the manifest file used to copy a deployable incrementally. Manifests are kept in the
+     * container configuration directory, outside of the directories the container deploys from.
+     * 
+     * @param target Deployed file or directory.
+     * @return Manifest file.
+     */
+    protected String getManifestFile(String target)
+    {
+        String manifestDir = getContainer().getConfiguration().getHome();
+        if (manifestDir == null)
+        {
+            manifestDir = getFileHandler().getTmpPath("deployables");
+        }
+        manifestDir = getFileHandler().append(manifestDir, ".cargo-manifests");
+        return getFileHandler().append(manifestDir, getFileHandler().getName(target)
+            + ".properties");
+    }
+
+    /**
+     * Gets the name of the directory an archive is exploded to. By default, this is the deployable
+     * name, without the <code>.war</code> extension for WARs (as for expanded WARs).
+     * @param deployable Deployable to get the name for.
+     * @return Exploded deployable name.
+     */
+    protected String getExplodedDeployableName(Deployable deployable)
+    {
+        String deployableName = getDeployableName(deployable);
+        if (DeployableType.WAR.equals(deployable.getType())
+            && deployableName.toLowerCase(Locale.ENGLISH).endsWith(".war"))
+        {
+            deployableName = deployableName.substring(0, deployableName.length() - 4);
+        }
+        return deployableName;
+    }
+
     /**
      * Gets the deployable name for the given <code>deployable</code>.
      * @param deployable Deployable to get the name for.
@@ -22,13 +22,16 @@ package org.codehaus.cargo.container.spi.deployer;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.codehaus.cargo.container.Container;
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployer.DeployableMonitor;
 import org.codehaus.cargo.container.deployer.Deployer;
+import org.codehaus.cargo.container.deployer.DeploymentResult;
 import org.codehaus.cargo.util.log.LogLevel;
 import org.codehaus.cargo.util.log.LoggedObject;
 
@@ -38,6 +41,11 @@ import org.codehaus.cargo.util.log.LoggedObject;
  */
 public abstract class AbstractDeployer extends LoggedObject implements Deployer
 {
+    /**
+     * Maximum number of deployables on which a deployment action is performed at the same time.
+     */
+    private int parallelism = 1;
+
     /**
      * @param container the container into which to perform deployment operations
      */
@@ -47,17 +55,132 @@ public abstract class AbstractDeployer extends LoggedObject implements Deployer
     }
 
     /**
-     * {@inheritDoc}
+     * Sets the maximum number of deployables on which the deployment actions on lists of
+     * deployables are performed at the same time. Deployers which do not
+     * {@link #isConcurrentOperationSupported() support concurrent operations} still perform
+     * actions one at a time, but monitor all deployables together.
+     * 
+     * @param parallelism maximum number of deployables processed at the same time, 1 (the
+     * default) to process deployables one by one
+     */
+    public void setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Invalid parallelism [" + parallelism + "]");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return maximum number of deployables on which a deployment action is performed at the
+     * same time
+     */
+    public int getParallelism()
+    {
+        return this.parallelism;
+    }
+
+    /**
+     * Tells whether this deployer can be called from several threads at the same time, each
+     * working on a different deployable. Deployers which can must override this method.
+     * 
+     * @return <code>false</code>
+     */
+    public boolean isConcurrentOperationSupported()
+    {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}. If the {@link #setParallelism(int) parallelism} is greater than 1, the
+     * deployables are deployed concurrently.
      * @see #deploy(Deployable)
      */
     public void deploy(List<Deployable> deployables)
     {
+        if (this.parallelism > 1)
+        {
+            deployAll(toMap(deployables)).checkSuccessful();
+            return;
+        }
+
         for (Deployable deployable : deployables)
         {
             deploy(deployable);
         }
     }
 
+    /**
+     * Deploys deployables concurrently, up to the {@link #setParallelism(int) parallelism}, and
+     * waits for all of them to be available.
+     * 
+     * @param deployables deployables to deploy, with the monitor that checks for the deployment
+     * status of each. The monitor of a deployable can be <code>null</code>, in which case it is
+     * considered as deployed as soon as the deployer returns.
+     * @return results of all deployments. This method does not throw when a deployment fails,
+     * see {@link DeploymentResult#checkSuccessful()}.
+     */
+    public DeploymentResult deployAll(Map<Deployable, DeployableMonitor> deployables)
+    {
+        return runConcurrently(ConcurrentDeploymentRunner.Action.DEPLOY, deployables);
+    }
+
+    /**
+     * Undeploys deployables concurrently, up to the {@link #setParallelism(int) parallelism},
+     * and waits for all of them to be unavailable.
+     * 
+     * @param deployables deployables to undeploy, with the monitor that checks for the
+     * deployment status of each. The monitor of a deployable can be <code>null</code>.
+     * @return results of all undeployments
+     * @see #deployAll(Map)
+     */
+    public DeploymentResult undeployAll(Map<Deployable, DeployableMonitor> deployables)
+    {
+        return runConcurrently(ConcurrentDeploymentRunner.Action.UNDEPLOY, deployables);
+    }
+
+    /**
+     * Redeploys deployables concurrently, up to the {@link #setParallelism(int) parallelism},
+     * and waits for all of them to be available.
+     * 
+     * @param deployables deployables to redeploy, with the monitor that checks for the
+     * deployment status of each. The monitor of a deployable can be <code>null</code>.
+     * @return results of all redeployments
+     * @see #deployAll(Map)
+     */
+    public DeploymentResult redeployAll(Map<Deployable, DeployableMonitor> deployables)
+    {
+        return runConcurrently(ConcurrentDeploymentRunner.Action.REDEPLOY, deployables);
+    }
+
+    /**
+     * @param action deployment action to perform
+     * @param deployables deployables with their monitors
+     * @return results of all deployment actions
+     */
+    private DeploymentResult runConcurrently(ConcurrentDeploymentRunner.Action action,
+        Map<Deployable, DeployableMonitor> deployables)
+    {
+        int threads = isConcurrentOperationSupported() ? this.parallelism : 1;
+        return new ConcurrentDeploymentRunner(this, action, threads).run(deployables);
+    }
+
+    /**
+     * @param deployables deployables
+     * @return deployables without monitors, in the same order
+     */
+    private static Map<Deployable, DeployableMonitor> toMap(List<Deployable> deployables)
+    {
+        Map<Deployable, DeployableMonitor> map =
+            new LinkedHashMap<Deployable, DeployableMonitor>();
+        for (Deployable deployable : deployables)
+        {
+            map.put(deployable, null);
+        }
+        return map;
+    }
+
     /**
      * {@inheritDoc}
      * @see Deployer#deploy(Deployable, DeployableMonitor)
@@ -121,11 +244,18 @@ public abstract class AbstractDeployer extends LoggedObject implements Deployer
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc}. If the {@link #setParallelism(int) parallelism} is greater than 1, the
+     * deployables are redeployed concurrently.
      * @see #redeploy(Deployable)
      */
     public void redeploy(List<Deployable> deployables)
     {
+        if (this.parallelism > 1)
+        {
+            redeployAll(toMap(deployables)).checkSuccessful();
+            return;
+        }
+
         for (Deployable deployable : deployables)
         {
             redeploy(deployable);
@@ -0,0 +1,453 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.deployable.Deployable;
+import org.codehaus.cargo.container.deployer.DeployableMonitor;
+import org.codehaus.cargo.container.deployer.DeployableMonitorListener;
+import org.codehaus.cargo.container.deployer.DeployableResult;
+import org.codehaus.cargo.container.deployer.DeploymentResult;
+import org.codehaus.cargo.util.log.LogLevel;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Performs a deployment action on several deployables. The deployer is called from a pool of
+ * threads, and the deployables' monitors are all polled by the calling thread, with the same
+ * adaptive backoff as the {@link DeployerWatchdog}. Each monitor's timeout starts when the
+ * deployer returns for its deployable.
+ * 
+ */
+class ConcurrentDeploymentRunner extends LoggedObject
+{
+    /**
+     * Deployment actions.
+     */
+    enum Action
+    {
+        /**
+         * Deploy and wait for availability.
+         */
+        DEPLOY("deploy", true),
+
+        /**
+         * Undeploy and wait for unavailability.
+         */
+        UNDEPLOY("undeploy", false),
+
+        /**
+         * Undeploy, wait for unavailability, deploy and wait for availability.
+         */
+        REDEPLOY("redeploy", true);
+
+        /**
+         * Name of the action.
+         */
+        private final String name;
+
+        /**
+         * Whether the deployable is available once the action is complete.
+         */
+        private final boolean available;
+
+        /**
+         * @param name Name of the action.
+         * @param available Whether the deployable is available once the action is complete.
+         */
+        private Action(String name, boolean available)
+        {
+            this.name = name;
+            this.available = available;
+        }
+    }
+
+    /**
+     * Event signaling that a monitor has notified its listener.
+     */
+    private static final Object MONITOR_EVENT = new Object();
+
+    /**
+     * Deployer performing the action.
+     */
+    private final AbstractDeployer deployer;
+
+    /**
+     * Action to perform.
+     */
+    private final Action action;
+
+    /**
+     * Number of threads calling the deployer.
+     */
+    private final int threads;
+
+    /**
+     * Completed operations and monitor notifications.
+     */
+    private final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+    /**
+     * Deployment action on a single deployable, and its monitoring status.
+     */
+    private final class Operation implements Runnable, DeployableMonitorListener
+    {
+        /**
+         * Result of the operation.
+         */
+        private final DeployableResult result;
+
+        /**
+         * Monitor of the deployable, <code>null</code> if not monitored.
+         */
+        private final DeployableMonitor monitor;
+
+        /**
+         * Last status reported by the monitor, <code>null</code> if none yet.
+         */
+        private volatile Boolean available;
+
+        /**
+         * Time after which the deployable is considered as failed, in milliseconds.
+         */
+        private long deadline;
+
+        /**
+         * Time of the next poll of the monitor, in milliseconds.
+         */
+        private long nextPoll;
+
+        /**
+         * Current interval between two polls of the monitor, in milliseconds.
+         */
+        private long interval = DeployerWatchdog.DEFAULT_MINIMUM_POLL_INTERVAL;
+
+        /**
+         * @param deployable Deployable to perform the action on.
+         * @param monitor Monitor of the deployable, <code>null</code> if not monitored.
+         */
+        private Operation(Deployable deployable, DeployableMonitor monitor)
+        {
+            this.result = new DeployableResult(deployable, action.name,
+                System.currentTimeMillis());
+            this.monitor = monitor;
+        }
+
+        /**
+         * Calls the deployer, then queues this operation for monitoring.
+         */
+        public void run()
+        {
+            try
+            {
+                perform();
+            }
+            catch (Throwable t)
+            {
+                if (this.monitor == null)
+                {
+                    this.result.setFailure(t);
+                }
+                else
+                {
+                    // CARGO-1100: the monitor decides whether the action has indeed failed
+                    logFailure(action.name, t);
+                }
+            }
+            this.result.setActionEndTime(System.currentTimeMillis());
+            events.offer(this);
+        }
+
+        /**
+         * Calls the deployer.
+         */
+        private void perform()
+        {
+            Deployable deployable = this.result.getDeployable();
+            if (action == Action.DEPLOY)
+            {
+                deployer.deploy(deployable);
+            }
+            else if (action == Action.UNDEPLOY)
+            {
+                deployer.undeploy(deployable);
+            }
+            else if (this.monitor == null)
+            {
+                deployer.redeploy(deployable);
+            }
+            else
+            {
+                try
+                {
+                    deployer.undeploy(deployable);
+                }
+                catch (Throwable t)
+                {
+                    logFailure("undeployment phase of the redeploy", t);
+                }
+                DeployerWatchdog watchdog = new DeployerWatchdog(this.monitor);
+                watchdog.setLogger(getLogger());
+                try
+                {
+                    watchdog.watchForUnavailability();
+                }
+                catch (ContainerException e)
+                {
+                    this.result.setFailure(e);
+                    return;
+                }
+                deployer.deploy(deployable);
+            }
+        }
+
+        /**
+         * @see DeployableMonitorListener#deployed()
+         */
+        public void deployed()
+        {
+            this.available = Boolean.TRUE;
+            events.offer(MONITOR_EVENT);
+        }
+
+        /**
+         * @see DeployableMonitorListener#undeployed()
+         */
+        public void undeployed()
+        {
+            this.available = Boolean.FALSE;
+            events.offer(MONITOR_EVENT);
+        }
+
+        /**
+         * @return <code>true</code> if the monitor reported the expected status.
+         */
+        private boolean isComplete()
+        {
+            Boolean status = this.available;
+            return status != null && status.booleanValue() == action.available;
+        }
+    }
+
+    /**
+     * @param deployer Deployer performing the action.
+     * @param action Action to perform.
+     * @param threads Number of threads calling the deployer.
+     */
+    ConcurrentDeploymentRunner(AbstractDeployer deployer, Action action, int threads)
+    {
+        this.deployer = deployer;
+        this.action = action;
+        this.threads = threads;
+        setLogger(deployer.getLogger());
+    }
+
+    /**
+     * Performs the action on all deployables and waits for all of them to complete.
+     * 
+     * @param deployables Deployables with their monitors, the monitor of a deployable can be
+     * <code>null</code>.
+     * @return Results of all deployables.
+     */
+    DeploymentResult run(Map<Deployable, DeployableMonitor> deployables)
+    {
+        long start = System.currentTimeMillis();
+        List<Operation> operations = new ArrayList<Operation>(deployables.size());
+        for (Map.Entry<Deployable, DeployableMonitor> deployable : deployables.entrySet())
+        {
+            Operation operation = new Operation(deployable.getKey(), deployable.getValue());
+            if (operation.monitor != null && this.action != Action.REDEPLOY)
+            {
+                operation.monitor.registerListener(operation);
+            }
+            operations.add(operation);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(this.threads, operations.size())), new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "Cargo " + action.name + " worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        try
+        {
+            for (Operation operation : operations)
+            {
+                executor.execute(operation);
+            }
+            watch(operations.size());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ContainerException("Failed to monitor deployment", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        List<DeployableResult> results = new ArrayList<DeployableResult>(operations.size());
+        for (Operation operation : operations)
+        {
+            results.add(operation.result);
+            getLogger().debug(operation.result.toString(), this.getClass().getName());
+        }
+        return new DeploymentResult(results, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Waits for all operations to complete, polling the monitors of those for which the deployer
+     * has returned.
+     * 
+     * @param count Number of operations.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void watch(int count) throws InterruptedException
+    {
+        List<Operation> watched = new ArrayList<Operation>();
+        int remaining = count;
+        long wait = DeployerWatchdog.DEFAULT_MAXIMUM_POLL_INTERVAL;
+        while (remaining > 0)
+        {
+            Object event = this.events.poll(wait, TimeUnit.MILLISECONDS);
+            while (event != null)
+            {
+                if (event != MONITOR_EVENT)
+                {
+                    Operation operation = (Operation) event;
+                    if (operation.monitor == null || !operation.result.isSuccessful())
+                    {
+                        operation.result.setEndTime(operation.result.getActionEndTime());
+                        remaining--;
+                    }
+                    else
+                    {
+                        if (this.action == Action.REDEPLOY)
+                        {
+                            // Only listen once the undeployment phase is over
+                            operation.monitor.registerListener(operation);
+                        }
+                        operation.deadline = operation.result.getActionEndTime()
+                            + operation.monitor.getTimeout();
+                        operation.nextPoll = System.currentTimeMillis();
+                        watched.add(operation);
+                    }
+                }
+                event = this.events.poll();
+            }
+
+            long now = System.currentTimeMillis();
+            wait = DeployerWatchdog.DEFAULT_MAXIMUM_POLL_INTERVAL;
+            for (Iterator<Operation> it = watched.iterator(); it.hasNext();)
+            {
+                Operation operation = it.next();
+                if (!operation.isComplete() && now >= operation.nextPoll)
+                {
+                    poll(operation, now);
+                }
+                if (operation.isComplete() || !operation.result.isSuccessful())
+                {
+                    operation.result.setEndTime(System.currentTimeMillis());
+                    it.remove();
+                    remaining--;
+                }
+                else
+                {
+                    wait = Math.min(wait, Math.max(1, operation.nextPoll - now));
+                }
+            }
+        }
+    }
+
+    /**
+     * Polls the monitor of an operation, failing the operation if its timeout is reached.
+     * 
+     * @param operation Operation to poll the monitor of.
+     * @param now Current time, in milliseconds.
+     */
+    private void poll(Operation operation, long now)
+    {
+        try
+        {
+            operation.monitor.monitor();
+        }
+        catch (Throwable t)
+        {
+            operation.result.setFailure(t);
+            return;
+        }
+
+        if (!operation.isComplete())
+        {
+            if (now >= operation.deadline)
+            {
+                String message = "Deployable [" + operation.monitor.getDeployableName()
+                    + "] failed to finish "
+                    + (this.action.available ? "deploying" : "undeploying")
+                    + " within the timeout period [" + operation.monitor.getTimeout()
+                    + "]. The Deployable state is thus unknown.";
+                getLogger().info(message, this.getClass().getName());
+                operation.result.setFailure(new ContainerException(message));
+            }
+            else
+            {
+                operation.nextPoll = now + operation.interval;
+                operation.interval = Math.min(DeployerWatchdog.DEFAULT_MAXIMUM_POLL_INTERVAL,
+                    operation.interval + operation.interval / 2);
+            }
+        }
+    }
+
+    /**
+     * Logs the failure of a deployer call.
+     * 
+     * @param what Failed action.
+     * @param t Failure.
+     */
+    private void logFailure(String what, Throwable t)
+    {
+        getLogger().info("The " + what + " action has failed: " + t.toString(),
+            this.getClass().getName());
+        if (getLogger().getLevel() == LogLevel.DEBUG)
+        {
+            Writer stackTrace = new StringWriter();
+            t.printStackTrace(new PrintWriter(stackTrace));
+            getLogger().debug(stackTrace.toString(), this.getClass().getName());
+        }
+    }
+}
@@ -25,11 +25,24 @@ import org.codehaus.cargo.container.deployer.DeployableMonitorListener;
 import org.codehaus.cargo.util.log.LoggedObject;
 
 /**
- * Wait for a deployable to be deployed.
+ * Wait for a deployable to be deployed. The monitor is polled with an adaptive backoff: polls are
+ * frequent at first and get spaced out the longer the deployable takes. Monitors that learn about
+ * the deployable's status by other means (log output, management notifications...) can notify
+ * the watchdog at any time, which then returns immediately instead of waiting for its next poll.
  * 
  */
 public class DeployerWatchdog extends LoggedObject implements DeployableMonitorListener
 {
+    /**
+     * Default interval before the first poll is repeated, in milliseconds.
+     */
+    public static final long DEFAULT_MINIMUM_POLL_INTERVAL = 50L;
+
+    /**
+     * Default upper bound for the interval between two polls, in milliseconds.
+     */
+    public static final long DEFAULT_MAXIMUM_POLL_INTERVAL = 100L;
+
     /**
      * The monitor to use to monitor the {@link org.codehaus.cargo.container.deployable.Deployable}
      * being deployed.
@@ -40,7 +53,22 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
      * Status flag set to true when the {@link org.codehaus.cargo.container.deployable.Deployable}
      * is deployed.
      */
-    private boolean isDeployed;
+    private volatile boolean isDeployed;
+
+    /**
+     * Lock on which the watching thread waits between two polls.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Interval before the first poll is repeated, in milliseconds.
+     */
+    private long minimumPollInterval = DEFAULT_MINIMUM_POLL_INTERVAL;
+
+    /**
+     * Upper bound for the interval between two polls, in milliseconds.
+     */
+    private long maximumPollInterval = DEFAULT_MAXIMUM_POLL_INTERVAL;
 
     /**
      * @param monitor the monitor to use to monitor the
@@ -52,12 +80,34 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
         monitor.registerListener(this);
     }
 
+    /**
+     * Sets the bounds of the adaptive poll interval. The first polls are separated by the minimum
+     * interval, which then grows by half at each poll until the maximum interval is reached.
+     * 
+     * @param minimumPollInterval interval before the first poll is repeated, in milliseconds
+     * @param maximumPollInterval upper bound for the interval between two polls, in milliseconds
+     */
+    public void setPollInterval(long minimumPollInterval, long maximumPollInterval)
+    {
+        if (minimumPollInterval <= 0 || maximumPollInterval < minimumPollInterval)
+        {
+            throw new IllegalArgumentException("Invalid poll interval bounds ["
+                + minimumPollInterval + ", " + maximumPollInterval + "]");
+        }
+        this.minimumPollInterval = minimumPollInterval;
+        this.maximumPollInterval = maximumPollInterval;
+    }
+
     /**
      * @see DeployableMonitorListener#deployed()
      */
     public void deployed()
     {
-        this.isDeployed = true;
+        synchronized (this.lock)
+        {
+            this.isDeployed = true;
+            this.lock.notifyAll();
+        }
     }
 
     /**
@@ -65,7 +115,11 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
      */
     public void undeployed()
     {
-        this.isDeployed = false;
+        synchronized (this.lock)
+        {
+            this.isDeployed = false;
+            this.lock.notifyAll();
+        }
     }
 
     /**
@@ -92,32 +146,45 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
      */
     public void watch(boolean shouldWatchForAvailability)
     {
-        boolean exitCondition;
+        long deadline = System.currentTimeMillis() + this.monitor.getTimeout();
+        long interval = this.minimumPollInterval;
 
         try
         {
-            long startTime = System.currentTimeMillis();
-            do
+            while (true)
             {
-                if (System.currentTimeMillis() - startTime > this.monitor.getTimeout())
+                this.monitor.monitor();
+
+                synchronized (this.lock)
                 {
-                    String message = "Deployable [" + this.monitor.getDeployableName()
-                        + "] failed to finish "
-                        + (shouldWatchForAvailability ? "deploying" : "undeploying")
-                        + " within the timeout period [" + this.monitor.getTimeout()
-                        + "]. The Deployable state is thus unknown.";
-                    getLogger().info(message, this.getClass().getName());
-                    throw new ContainerException(message);
-                }
+                    if (this.isDeployed == shouldWatchForAvailability)
+                    {
+                        return;
+                    }
 
-                Thread.sleep(100);
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                    {
+                        String message = "Deployable [" + this.monitor.getDeployableName()
+                            + "] failed to finish "
+                            + (shouldWatchForAvailability ? "deploying" : "undeploying")
+                            + " within the timeout period [" + this.monitor.getTimeout()
+                            + "]. The Deployable state is thus unknown.";
+                        getLogger().info(message, this.getClass().getName());
+                        throw new ContainerException(message);
+                    }
 
-                this.monitor.monitor();
+                    // Wait for the next poll, unless the monitor notifies us before that
+                    this.lock.wait(Math.min(interval, remaining));
 
-                exitCondition = shouldWatchForAvailability ? !this.isDeployed : this.isDeployed;
+                    if (this.isDeployed == shouldWatchForAvailability)
+                    {
+                        return;
+                    }
+                }
 
+                interval = Math.min(this.maximumPollInterval, interval + interval / 2);
             }
-            while (exitCondition);
         }
         catch (InterruptedException e)
         {
@@ -0,0 +1,201 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.deployer.DeployableMonitor;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Waits for several deployables at the same time. Each monitor is watched by its own
+ * {@link DeployerWatchdog}, running in a pool of threads, so that the total wait is that of the
+ * slowest deployable instead of the sum of all waits. All watchdogs share one global deadline,
+ * which is the longest of the monitors' timeouts.
+ * 
+ */
+public class DeployerWatchdogGroup extends LoggedObject
+{
+    /**
+     * Default maximum number of monitors polled at the same time.
+     */
+    public static final int DEFAULT_MAXIMUM_THREADS = 16;
+
+    /**
+     * Monitors to watch.
+     */
+    private final List<DeployableMonitor> monitors = new ArrayList<DeployableMonitor>();
+
+    /**
+     * Maximum number of monitors polled at the same time.
+     */
+    private int maximumThreads = DEFAULT_MAXIMUM_THREADS;
+
+    /**
+     * @param monitor monitor of a deployable to watch
+     */
+    public void addMonitor(DeployableMonitor monitor)
+    {
+        this.monitors.add(monitor);
+    }
+
+    /**
+     * @param maximumThreads maximum number of monitors polled at the same time
+     */
+    public void setMaximumThreads(int maximumThreads)
+    {
+        if (maximumThreads < 1)
+        {
+            throw new IllegalArgumentException("Invalid number of threads [" + maximumThreads
+                + "]");
+        }
+        this.maximumThreads = maximumThreads;
+    }
+
+    /**
+     * Waits until all monitored deployables are made available or unavailable.
+     * 
+     * @param shouldWatchForAvailability if true then wait till the deployables are made
+     * available, if false wait till they are made unavailable
+     * @return time each deployable took to reach the expected state in milliseconds, by
+     * deployable name, in the order the deployables completed
+     * @throws ContainerException if any deployable failed to reach the expected state within its
+     * timeout period, once all other deployables are done
+     */
+    public Map<String, Long> watch(boolean shouldWatchForAvailability)
+    {
+        Map<String, Long> completed = new LinkedHashMap<String, Long>();
+        if (this.monitors.isEmpty())
+        {
+            return completed;
+        }
+
+        final long start = System.currentTimeMillis();
+        long timeout = 0;
+        for (DeployableMonitor monitor : this.monitors)
+        {
+            timeout = Math.max(timeout, monitor.getTimeout());
+        }
+        long deadline = start + timeout + DeployerWatchdog.DEFAULT_MAXIMUM_POLL_INTERVAL;
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(this.maximumThreads, this.monitors.size()), new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "Cargo deployable watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        final Map<String, Long> completionTimes = new LinkedHashMap<String, Long>();
+        List<Future<?>> futures = new ArrayList<Future<?>>(this.monitors.size());
+        for (final DeployableMonitor monitor : this.monitors)
+        {
+            final DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
+            watchdog.setLogger(getLogger());
+            final boolean available = shouldWatchForAvailability;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    watchdog.watch(available);
+                    synchronized (completionTimes)
+                    {
+                        completionTimes.put(monitor.getDeployableName(),
+                            Long.valueOf(System.currentTimeMillis() - start));
+                    }
+                }
+            }));
+        }
+
+        List<String> failures = new ArrayList<String>();
+        Throwable firstFailure = null;
+        try
+        {
+            for (int i = 0; i < futures.size(); i++)
+            {
+                String name = this.monitors.get(i).getDeployableName();
+                try
+                {
+                    futures.get(i).get(
+                        Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+                catch (ExecutionException e)
+                {
+                    failures.add(name + ": " + e.getCause().getMessage());
+                    firstFailure = firstFailure == null ? e.getCause() : firstFailure;
+                }
+                catch (TimeoutException e)
+                {
+                    failures.add(name + ": still not done after the global deadline of "
+                        + timeout + " ms");
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ContainerException("Failed to monitor deployment", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        synchronized (completionTimes)
+        {
+            completed.putAll(completionTimes);
+        }
+        for (Map.Entry<String, Long> deployable : completed.entrySet())
+        {
+            getLogger().debug("Deployable [" + deployable.getKey() + "] "
+                + (shouldWatchForAvailability ? "available" : "unavailable") + " after "
+                + deployable.getValue() + " ms", this.getClass().getName());
+        }
+        if (!failures.isEmpty())
+        {
+            StringBuilder message = new StringBuilder();
+            message.append(failures.size());
+            message.append(" of ");
+            message.append(this.monitors.size());
+            message.append(" deployables failed to finish ");
+            message.append(shouldWatchForAvailability ? "deploying:" : "undeploying:");
+            for (String failure : failures)
+            {
+                message.append("\n  ");
+                message.append(failure);
+            }
+            throw new ContainerException(message.toString(), firstFailure);
+        }
+        return completed;
+    }
+}
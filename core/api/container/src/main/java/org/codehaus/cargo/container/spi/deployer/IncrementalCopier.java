@@ -0,0 +1,455 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Copies deployables to a container incrementally. For each deployable, a manifest records the
+ * size, modification time and SHA-256 checksum of every file copied; on the next copy, files
+ * whose size and modification time are unchanged are trusted without being read, files whose
+ * checksum is unchanged are not copied again and files which have disappeared from the source
+ * are deleted from the target. Archives which need to be copied can optionally be hard linked to
+ * their source when the platform and file system allow it.
+ * 
+ */
+public class IncrementalCopier extends LoggedObject
+{
+    /**
+     * Manifest key under which a single file (as opposed to a directory) is recorded.
+     */
+    private static final String FILE_KEY = ".";
+
+    /**
+     * Size of the buffer used to compute checksums.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * File utility class.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Whether to hard link archives rather than copying them.
+     */
+    private boolean useHardLinks;
+
+    /**
+     * @param fileHandler File utility class.
+     */
+    public IncrementalCopier(FileHandler fileHandler)
+    {
+        this.fileHandler = fileHandler;
+    }
+
+    /**
+     * Sets whether archives should be hard linked to their source when possible. This is an
+     * opt-in: a hard linked archive changes along with its source if the source is rebuilt in
+     * place, possibly while the container reads it, and on Windows a container holding the
+     * deployed archive open also locks the source. Defaults to <code>false</code>.
+     * 
+     * @param useHardLinks <code>true</code> to hard link archives when possible
+     */
+    public void setUseHardLinks(boolean useHardLinks)
+    {
+        this.useHardLinks = useHardLinks;
+    }
+
+    /**
+     * Checks whether a file has changed since it was last recorded in a manifest.
+     * 
+     * @param source File to check.
+     * @param target Copy of the file, which must exist for the file to be unchanged.
+     * @param manifest Manifest file.
+     * @return <code>true</code> if the source is unchanged and the target exists.
+     */
+    public boolean isUnchanged(String source, String target, String manifest)
+    {
+        return this.fileHandler.exists(target)
+            && getUnchangedState(source, loadManifest(manifest).getProperty(FILE_KEY)) != null;
+    }
+
+    /**
+     * Records the current state of a file in a manifest.
+     * 
+     * @param source File to record.
+     * @param manifest Manifest file.
+     */
+    public void record(String source, String manifest)
+    {
+        Properties entries = new Properties();
+        entries.setProperty(FILE_KEY, getState(source));
+        saveManifest(entries, manifest);
+    }
+
+    /**
+     * Copies a file unless it is unchanged since the last copy.
+     * 
+     * @param source File to copy.
+     * @param target Target file.
+     * @param manifest Manifest file.
+     * @return <code>true</code> if the file has been copied, <code>false</code> if it was
+     * unchanged.
+     */
+    public boolean copyFile(String source, String target, String manifest)
+    {
+        Properties entries = loadManifest(manifest);
+        String state = getUnchangedState(source, entries.getProperty(FILE_KEY));
+        if (state != null && this.fileHandler.exists(target)
+            && this.fileHandler.getSize(target) == this.fileHandler.getSize(source))
+        {
+            getLogger().debug("[" + source + "] is unchanged, not copying it",
+                this.getClass().getName());
+            entries.setProperty(FILE_KEY, state);
+            saveManifest(entries, manifest);
+            return false;
+        }
+
+        if (this.fileHandler.exists(target))
+        {
+            this.fileHandler.delete(target);
+        }
+        if (!this.useHardLinks || !createLink(source, target))
+        {
+            this.fileHandler.copyFile(source, target, true);
+        }
+        entries.setProperty(FILE_KEY, getState(source));
+        saveManifest(entries, manifest);
+        return true;
+    }
+
+    /**
+     * Copies the files of a directory which have changed since the last copy and deletes the
+     * target files whose source has been removed. Ant's default excludes apply.
+     * 
+     * @param source Directory to copy.
+     * @param target Target directory.
+     * @param manifest Manifest file.
+     * @return Number of files copied or deleted.
+     */
+    public int copyDirectory(String source, String target, String manifest)
+    {
+        Properties previous = loadManifest(manifest);
+        Properties current = new Properties();
+        int changes = copyDirectory(source, target, "", previous, current);
+
+        for (Object key : previous.keySet())
+        {
+            String path = (String) key;
+            if (!current.containsKey(path) && !FILE_KEY.equals(path))
+            {
+                String removed = this.fileHandler.append(target, path);
+                if (this.fileHandler.exists(removed))
+                {
+                    this.fileHandler.delete(removed);
+                    changes++;
+                }
+            }
+        }
+
+        saveManifest(current, manifest);
+        getLogger().debug("Synchronized [" + source + "] to [" + target + "], " + changes
+            + " file(s) changed", this.getClass().getName());
+        return changes;
+    }
+
+    /**
+     * @param source Directory to copy.
+     * @param target Target directory.
+     * @param prefix Path of the directory relative to the copied root, with a trailing slash.
+     * @param previous Manifest of the previous copy.
+     * @param current Manifest of this copy, filled by this method.
+     * @return Number of files copied.
+     */
+    private int copyDirectory(String source, String target, String prefix,
+        Properties previous, Properties current)
+    {
+        int changes = 0;
+        this.fileHandler.mkdirs(target);
+        for (String child : this.fileHandler.getChildren(source))
+        {
+            String name = this.fileHandler.getName(child);
+            String path = prefix + name;
+            if (isDefaultExcluded(path))
+            {
+                continue;
+            }
+
+            String targetChild = this.fileHandler.append(target, name);
+            if (this.fileHandler.isDirectory(child))
+            {
+                changes += copyDirectory(child, targetChild, path + "/", previous, current);
+                continue;
+            }
+
+            String state = getUnchangedState(child, previous.getProperty(path));
+            if (state == null || !this.fileHandler.exists(targetChild))
+            {
+                this.fileHandler.copyFile(child, targetChild, true);
+                state = getState(child);
+                changes++;
+            }
+            current.setProperty(path, state);
+        }
+        return changes;
+    }
+
+    /**
+     * Gets the state of a file, i.e. its size, modification time and checksum.
+     * 
+     * @param file File to get the state of.
+     * @return Current state of the file.
+     */
+    private String getState(String file)
+    {
+        return getStatePrefix(file) + checksum(file);
+    }
+
+    /**
+     * Gets the state of a file if its content is unchanged. The checksum is only computed when
+     * the size or modification time differ from the recorded ones.
+     * 
+     * @param file File to get the state of.
+     * @param recorded State previously recorded for the file, <code>null</code> if none.
+     * @return Current state of the file, <code>null</code> if nothing was recorded or if the
+     * file content has changed.
+     */
+    private String getUnchangedState(String file, String recorded)
+    {
+        if (recorded == null)
+        {
+            return null;
+        }
+
+        String prefix = getStatePrefix(file);
+        if (recorded.startsWith(prefix))
+        {
+            return recorded;
+        }
+
+        String checksum = checksum(file);
+        if (recorded.endsWith("," + checksum))
+        {
+            return prefix + checksum;
+        }
+        return null;
+    }
+
+    /**
+     * @param file File to get the state of.
+     * @return Size and modification time of the file.
+     */
+    private String getStatePrefix(String file)
+    {
+        return this.fileHandler.getSize(file) + "," + new File(file).lastModified() + ",";
+    }
+
+    /**
+     * @param file File to compute the checksum of.
+     * @return SHA-256 checksum of the file, in hexadecimal.
+     */
+    private String checksum(String file)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContainerException("SHA-256 is not supported by this JVM", e);
+        }
+
+        InputStream in = this.fileHandler.getInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, length);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContainerException("Failed to read [" + file + "]", e);
+        }
+        finally
+        {
+            close(in);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param path Path relative to the copied root.
+     * @return <code>true</code> if the path matches one of Ant's default excludes.
+     */
+    private static boolean isDefaultExcluded(String path)
+    {
+        for (String exclude : DirectoryScanner.getDefaultExcludes())
+        {
+            if (SelectorUtils.matchPath(exclude, path))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a hard link, using the Java 7 file API if available.
+     * 
+     * @param source Existing file.
+     * @param target Link to create.
+     * @return <code>true</code> if the link has been created.
+     */
+    private boolean createLink(String source, String target)
+    {
+        File sourceFile = new File(source).getAbsoluteFile();
+        File targetFile = new File(target).getAbsoluteFile();
+        if (!sourceFile.isFile() || targetFile.getParentFile() == null
+            || !targetFile.getParentFile().isDirectory())
+        {
+            return false;
+        }
+
+        try
+        {
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Method toPath = File.class.getMethod("toPath");
+            Class<?> filesClass = Class.forName("java.nio.file.Files");
+            Method createLink = filesClass.getMethod("createLink", pathClass, pathClass);
+            createLink.invoke(null, toPath.invoke(targetFile), toPath.invoke(sourceFile));
+            getLogger().debug("Hard linked [" + target + "] to [" + source + "]",
+                this.getClass().getName());
+            return true;
+        }
+        catch (ClassNotFoundException e)
+        {
+            // Java 6 or earlier
+            return false;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+        catch (IllegalAccessException e)
+        {
+            return false;
+        }
+        catch (InvocationTargetException e)
+        {
+            // Not supported by the file system, or source and target on different file systems
+            getLogger().debug("Cannot hard link [" + target + "] to [" + source + "]: "
+                + e.getCause(), this.getClass().getName());
+            targetFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * @param manifest Manifest file.
+     * @return Entries of the manifest, empty if it does not exist or cannot be read.
+     */
+    private Properties loadManifest(String manifest)
+    {
+        Properties entries = new Properties();
+        if (this.fileHandler.exists(manifest))
+        {
+            InputStream in = this.fileHandler.getInputStream(manifest);
+            try
+            {
+                entries.load(in);
+            }
+            catch (IOException e)
+            {
+                getLogger().debug("Ignoring unreadable manifest [" + manifest + "]: " + e,
+                    this.getClass().getName());
+                entries.clear();
+            }
+            finally
+            {
+                close(in);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param entries Entries of the manifest.
+     * @param manifest Manifest file.
+     */
+    private void saveManifest(Properties entries, String manifest)
+    {
+        this.fileHandler.mkdirs(this.fileHandler.getParent(manifest));
+        OutputStream out = this.fileHandler.getOutputStream(manifest);
+        try
+        {
+            entries.store(out, "Cargo incremental deployment manifest");
+        }
+        catch (IOException e)
+        {
+            throw new ContainerException("Failed to write manifest [" + manifest + "]", e);
+        }
+        finally
+        {
+            close(out);
+        }
+    }
+
+    /**
+     * @param stream Stream to close, errors are ignored.
+     */
+    private static void close(Closeable stream)
+    {
+        try
+        {
+            stream.close();
+        }
+        catch (IOException ignored)
+        {
+            // Ignored
+        }
+    }
+}
@@ -33,7 +33,7 @@ import org.codehaus.cargo.container.internal.AntContainerExecutorThread;
  * The default JVM launcher.
  * 
  */
-class DefaultJvmLauncher implements JvmLauncher
+class DefaultJvmLauncher implements JvmLauncher, JvmLauncherProcessAware
 {
 
     /**
@@ -46,6 +46,11 @@ class DefaultJvmLauncher implements JvmLauncher
      */
     private boolean spawn;
 
+    /**
+     * Thread running the Ant Java task, <code>null</code> if not started.
+     */
+    private AntContainerExecutorThread runner;
+
     /**
      * List of extra environment variables. Ant's Java task doesn't offer a getter for the
      * environment variable, forcing us to keep track of them ourselves.
@@ -288,6 +293,15 @@ class DefaultJvmLauncher implements JvmLauncher
         // Not supported by Ant Java Task
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isRunning()
+    {
+        // Spawned processes are not tracked by the Ant Java task
+        return this.runner != null && !this.spawn && !this.runner.isFinished();
+    }
+
 
     /**
      * {@inheritDoc}
@@ -317,8 +331,8 @@ class DefaultJvmLauncher implements JvmLauncher
      */
     public void start() throws JvmLauncherException
     {
-        Thread runner = new AntContainerExecutorThread(this.java, this.spawn);
-        runner.start();
+        this.runner = new AntContainerExecutorThread(this.java, this.spawn);
+        this.runner.start();
     }
 
     /**
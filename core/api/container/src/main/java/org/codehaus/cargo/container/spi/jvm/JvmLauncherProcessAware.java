@@ -0,0 +1,37 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+/**
+ * Optional interface for JVM launchers which can track the process they launched. Callers check
+ * for it with <code>instanceof</code>; launchers which do not implement it are treated as not
+ * able to tell whether their process is still running.
+ * 
+ */
+public interface JvmLauncherProcessAware
+{
+    /**
+     * Tells whether the process launched using {@link JvmLauncher#start()} is still running.
+     * 
+     * @return {@code true} if the process is still running, {@code false} if it has terminated,
+     * has not been started or if this launcher cannot track it (for example when spawned).
+     */
+    boolean isRunning();
+}
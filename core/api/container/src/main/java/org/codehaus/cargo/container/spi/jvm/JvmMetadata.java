@@ -0,0 +1,166 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+/**
+ * Metadata of a JVM, as reported by <code>java -version</code>.
+ * 
+ */
+public class JvmMetadata
+{
+    /**
+     * Full version, for example <code>1.8.0_392</code> or <code>17.0.9</code>.
+     */
+    private final String version;
+
+    /**
+     * Major version, for example <code>8</code> or <code>17</code>.
+     */
+    private final int majorVersion;
+
+    /**
+     * Name of the runtime, for example <code>OpenJDK Runtime Environment</code>.
+     */
+    private final String runtimeName;
+
+    /**
+     * Name of the virtual machine, for example <code>OpenJDK 64-Bit Server VM</code>.
+     */
+    private final String vmName;
+
+    /**
+     * @param version Full version.
+     * @param runtimeName Name of the runtime, <code>null</code> if unknown.
+     * @param vmName Name of the virtual machine, <code>null</code> if unknown.
+     */
+    public JvmMetadata(String version, String runtimeName, String vmName)
+    {
+        this.version = version;
+        this.majorVersion = parseMajorVersion(version);
+        this.runtimeName = runtimeName;
+        this.vmName = vmName;
+    }
+
+    /**
+     * @return Full version, for example <code>1.8.0_392</code> or <code>17.0.9</code>.
+     */
+    public String getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * @return Major version, for example <code>8</code> or <code>17</code>.
+     */
+    public int getMajorVersion()
+    {
+        return this.majorVersion;
+    }
+
+    /**
+     * @return Name of the runtime, which identifies the vendor, <code>null</code> if unknown.
+     */
+    public String getRuntimeName()
+    {
+        return this.runtimeName;
+    }
+
+    /**
+     * @return Name of the virtual machine, <code>null</code> if unknown.
+     */
+    public String getVmName()
+    {
+        return this.vmName;
+    }
+
+    /**
+     * @return <code>true</code> if the JVM has a permanent generation, and hence supports the
+     * <code>-XX:PermSize</code> and <code>-XX:MaxPermSize</code> options.
+     */
+    public boolean isPermGenSupported()
+    {
+        return this.majorVersion < 8;
+    }
+
+    /**
+     * Parses the output of <code>java -version</code>. The first line gives the version, for
+     * example <code>java version "1.7.0_80"</code> or <code>openjdk version "17.0.9"</code>, the
+     * next ones the runtime and virtual machine names.
+     * 
+     * @param output Output of <code>java -version</code>.
+     * @return JVM metadata, <code>null</code> if the output does not contain any version.
+     */
+    public static JvmMetadata parse(String output)
+    {
+        String[] lines = output.trim().split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++)
+        {
+            String line = lines[i].trim();
+            int versionStart = line.indexOf(" version \"");
+            if (versionStart != -1)
+            {
+                versionStart += " version \"".length();
+                int versionEnd = line.indexOf('"', versionStart);
+                if (versionEnd == -1)
+                {
+                    return null;
+                }
+                String runtimeName = i + 1 < lines.length ? stripBuild(lines[i + 1]) : null;
+                String vmName = i + 2 < lines.length ? stripBuild(lines[i + 2]) : null;
+                return new JvmMetadata(line.substring(versionStart, versionEnd), runtimeName,
+                    vmName);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param line Line of <code>java -version</code>.
+     * @return Line without the <code>(build ...)</code> suffix.
+     */
+    private static String stripBuild(String line)
+    {
+        int build = line.indexOf(" (build");
+        return build == -1 ? line.trim() : line.substring(0, build).trim();
+    }
+
+    /**
+     * @param version Full version.
+     * @return Major version.
+     */
+    private static int parseMajorVersion(String version)
+    {
+        String majorVersion = version;
+        if (majorVersion.startsWith("1."))
+        {
+            majorVersion = majorVersion.substring(2);
+        }
+        int end = 0;
+        while (end < majorVersion.length() && Character.isDigit(majorVersion.charAt(end)))
+        {
+            end++;
+        }
+        if (end == 0)
+        {
+            throw new IllegalArgumentException("Cannot parse JVM version " + version);
+        }
+        return Integer.parseInt(majorVersion.substring(0, end));
+    }
+}
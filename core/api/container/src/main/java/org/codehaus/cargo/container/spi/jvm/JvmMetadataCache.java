@@ -0,0 +1,331 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Cache of {@link JvmMetadata}, so that <code>java -version</code> is only run once per JVM
+ * installation rather than once per container. Entries are keyed by the path of the
+ * <code>java</code> executable, its last modification date and its size, so that upgrading a JVM
+ * in place invalidates its entry. The cache is held in memory for the whole process and persisted
+ * to a properties file shared by all processes, by default <code>jvm-metadata.properties</code> in
+ * the Cargo home directory (the <code>cargo.home</code> system property, or <code>.cargo</code> in
+ * the user's home directory).
+ * 
+ */
+public class JvmMetadataCache extends LoggedObject
+{
+    /**
+     * Maximum time to wait for <code>java -version</code> to complete, in milliseconds.
+     */
+    private static final long PROBE_TIMEOUT = 15000;
+
+    /**
+     * Process-wide instance.
+     */
+    private static final JvmMetadataCache INSTANCE = new JvmMetadataCache(getDefaultCacheFile());
+
+    /**
+     * In memory entries, indexed by cache key.
+     */
+    private final Map<String, JvmMetadata> entries = new ConcurrentHashMap<String, JvmMetadata>();
+
+    /**
+     * File the cache is persisted to, <code>null</code> to only cache in memory.
+     */
+    private final File cacheFile;
+
+    /**
+     * @param cacheFile File the cache is persisted to, <code>null</code> to only cache in memory.
+     */
+    public JvmMetadataCache(File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @return Process-wide instance.
+     */
+    public static JvmMetadataCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the metadata of a JVM, running <code>java -version</code> if it is neither cached in
+     * memory nor on disk.
+     * 
+     * @param java <code>java</code> executable.
+     * @return Metadata of the JVM.
+     * @throws IOException If the JVM cannot be run or its version cannot be parsed.
+     */
+    public JvmMetadata getMetadata(File java) throws IOException
+    {
+        String key = getKey(java);
+        JvmMetadata metadata = this.entries.get(key);
+        if (metadata != null)
+        {
+            return metadata;
+        }
+
+        synchronized (this)
+        {
+            metadata = this.entries.get(key);
+            if (metadata == null)
+            {
+                metadata = load(key);
+            }
+            if (metadata == null)
+            {
+                metadata = probe(java);
+                getLogger().debug("Probed JVM " + java + ": version " + metadata.getVersion()
+                    + ", " + metadata.getVmName(), this.getClass().getName());
+                store(key, metadata);
+            }
+            this.entries.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Runs <code>java -version</code> and waits for it to exit.
+     * 
+     * @param java <code>java</code> executable.
+     * @return Metadata of the JVM.
+     * @throws IOException If the JVM cannot be run or its version cannot be parsed.
+     */
+    protected JvmMetadata probe(File java) throws IOException
+    {
+        ProcessBuilder processBuilder = new ProcessBuilder(java.getPath(), "-version");
+        processBuilder.redirectErrorStream(true);
+        final Process process = processBuilder.start();
+        process.getOutputStream().close();
+
+        Timer watchdog = new Timer("Cargo JVM probe watchdog", true);
+        watchdog.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                process.destroy();
+            }
+        }, PROBE_TIMEOUT);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try
+        {
+            InputStream in = process.getInputStream();
+            try
+            {
+                byte[] buffer = new byte[1024];
+                int length;
+                while ((length = in.read(buffer)) != -1)
+                {
+                    output.write(buffer, 0, length);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            process.waitFor();
+        }
+        catch (InterruptedException e)
+        {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running " + java + " -version");
+        }
+        finally
+        {
+            watchdog.cancel();
+        }
+
+        JvmMetadata metadata = JvmMetadata.parse(output.toString());
+        if (metadata == null)
+        {
+            throw new IOException("Cannot read JVM version from output of " + java
+                + " -version: " + output.toString().trim());
+        }
+        return metadata;
+    }
+
+    /**
+     * @param java <code>java</code> executable.
+     * @return Cache key for the executable.
+     */
+    private static String getKey(File java)
+    {
+        File absoluteJava = java.getAbsoluteFile();
+        return absoluteJava.getPath() + "|" + absoluteJava.lastModified() + "|"
+            + absoluteJava.length();
+    }
+
+    /**
+     * @param key Cache key.
+     * @return Metadata read from the cache file, <code>null</code> if none.
+     */
+    private JvmMetadata load(String key)
+    {
+        if (this.cacheFile == null || !this.cacheFile.isFile())
+        {
+            return null;
+        }
+
+        Properties properties = readCacheFile();
+        String version = properties.getProperty(key + ".version");
+        if (version == null)
+        {
+            return null;
+        }
+        try
+        {
+            return new JvmMetadata(version, properties.getProperty(key + ".runtime"),
+                properties.getProperty(key + ".vm"));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Adds an entry to the cache file. Entries added by other processes in the meantime are kept,
+     * and the file is replaced atomically where the file system allows it.
+     * 
+     * @param key Cache key.
+     * @param metadata Metadata to store.
+     */
+    private void store(String key, JvmMetadata metadata)
+    {
+        if (this.cacheFile == null)
+        {
+            return;
+        }
+
+        Properties properties = readCacheFile();
+        properties.setProperty(key + ".version", metadata.getVersion());
+        if (metadata.getRuntimeName() != null)
+        {
+            properties.setProperty(key + ".runtime", metadata.getRuntimeName());
+        }
+        if (metadata.getVmName() != null)
+        {
+            properties.setProperty(key + ".vm", metadata.getVmName());
+        }
+
+        try
+        {
+            File directory = this.cacheFile.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            {
+                throw new IOException("Failed to create directory " + directory);
+            }
+            File tmpFile = File.createTempFile("jvm-metadata", ".part", directory);
+            OutputStream out = new FileOutputStream(tmpFile);
+            try
+            {
+                properties.store(out, "Cargo JVM metadata cache");
+            }
+            finally
+            {
+                out.close();
+            }
+            if (!tmpFile.renameTo(this.cacheFile))
+            {
+                this.cacheFile.delete();
+                if (!tmpFile.renameTo(this.cacheFile))
+                {
+                    tmpFile.delete();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Cannot write JVM metadata cache " + this.cacheFile + ": " + e,
+                this.getClass().getName());
+        }
+    }
+
+    /**
+     * @return Contents of the cache file, empty if it cannot be read.
+     */
+    private Properties readCacheFile()
+    {
+        Properties properties = new Properties();
+        if (this.cacheFile.isFile())
+        {
+            try
+            {
+                InputStream in = new FileInputStream(this.cacheFile);
+                try
+                {
+                    properties.load(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (IOException e)
+            {
+                getLogger().debug("Cannot read JVM metadata cache " + this.cacheFile + ": " + e,
+                    this.getClass().getName());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * @return Default cache file.
+     */
+    private static File getDefaultCacheFile()
+    {
+        String home = System.getProperty("cargo.home");
+        File homeDir;
+        if (home != null)
+        {
+            homeDir = new File(home);
+        }
+        else if (System.getProperty("user.home") != null)
+        {
+            homeDir = new File(System.getProperty("user.home"), ".cargo");
+        }
+        else
+        {
+            homeDir = new File(System.getProperty("java.io.tmpdir"), "cargo");
+        }
+        return new File(homeDir, "jvm-metadata.properties");
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+/**
+ * Listener notified of the life cycle of a JVM process launched by a {@link ProcessJvmLauncher}.
+ * 
+ */
+public interface JvmProcessListener
+{
+
+    /**
+     * Called once the JVM process has been launched.
+     * 
+     * @param launcher The launcher which launched the process.
+     * @param pid The identifier of the process, {@code -1} if the running JVM cannot tell it.
+     */
+    void processStarted(ProcessJvmLauncher launcher, long pid);
+
+    /**
+     * Called once the JVM process has terminated, from a thread dedicated to waiting for it.
+     * 
+     * @param launcher The launcher which launched the process.
+     * @param exitCode The exit code of the process.
+     */
+    void processExited(ProcessJvmLauncher launcher, int exitCode);
+
+}
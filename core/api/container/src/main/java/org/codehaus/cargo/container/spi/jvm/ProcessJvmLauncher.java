@@ -0,0 +1,942 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.tools.ant.types.Commandline;
+import org.apache.tools.ant.util.JavaEnvUtils;
+import org.codehaus.cargo.util.log.Loggable;
+import org.codehaus.cargo.util.log.Logger;
+
+/**
+ * A JVM launcher which starts the JVM directly with a <code>ProcessBuilder</code>, without going
+ * through the Ant Java task. When an output file is set and the running JVM supports it (Java 7
+ * and later), the output of the process is redirected to that file by the operating system, so
+ * no thread copies it. Otherwise, a single thread copies the output to the file as is or, when
+ * there is no output file, logs it line by line.
+ * 
+ * The launcher tracks the process it launched: its identifier and exit code can be read, and
+ * {@link JvmProcessListener}s are notified when it starts and terminates.
+ * 
+ */
+public class ProcessJvmLauncher implements JvmLauncher, JvmLauncherProcessAware
+{
+
+    /**
+     * <code>ProcessBuilder.Redirect.appendTo(File)</code>, <code>null</code> before Java 7.
+     */
+    private static final Method REDIRECT_APPEND_TO;
+
+    /**
+     * <code>ProcessBuilder.Redirect.to(File)</code>, <code>null</code> before Java 7.
+     */
+    private static final Method REDIRECT_TO;
+
+    /**
+     * <code>ProcessBuilder.redirectOutput(Redirect)</code>, <code>null</code> before Java 7.
+     */
+    private static final Method REDIRECT_OUTPUT;
+
+    /**
+     * <code>Process.destroyForcibly()</code>, <code>null</code> before Java 8.
+     */
+    private static final Method DESTROY_FORCIBLY;
+
+    /**
+     * <code>Process.pid()</code>, <code>null</code> before Java 9.
+     */
+    private static final Method PID;
+
+    static
+    {
+        Method appendTo = null;
+        Method to = null;
+        Method redirectOutput = null;
+        try
+        {
+            Class<?> redirect = Class.forName("java.lang.ProcessBuilder$Redirect");
+            appendTo = redirect.getMethod("appendTo", File.class);
+            to = redirect.getMethod("to", File.class);
+            redirectOutput = ProcessBuilder.class.getMethod("redirectOutput", redirect);
+        }
+        catch (ClassNotFoundException e)
+        {
+            // Java 6 or earlier, the output is copied by a thread
+        }
+        catch (NoSuchMethodException e)
+        {
+            // Same as above
+        }
+        REDIRECT_APPEND_TO = appendTo;
+        REDIRECT_TO = to;
+        REDIRECT_OUTPUT = redirectOutput;
+        DESTROY_FORCIBLY = getProcessMethod("destroyForcibly");
+        PID = getProcessMethod("pid");
+    }
+
+    /**
+     * Timer killing the processes which run longer than their timeout.
+     */
+    private static Timer timeoutTimer;
+
+    /**
+     * The object to log the output of the process to, when there is no output file.
+     */
+    private final Loggable loggable;
+
+    /**
+     * The working directory, <code>null</code> for the current directory.
+     */
+    private File workingDirectory;
+
+    /**
+     * The command to launch the JVM, <code>null</code> for the JVM running Cargo.
+     */
+    private String jvm;
+
+    /**
+     * The JVM arguments.
+     */
+    private final List<String> jvmArguments = new ArrayList<String>();
+
+    /**
+     * The system properties, as JVM arguments.
+     */
+    private final List<String> systemProperties = new ArrayList<String>();
+
+    /**
+     * The classpath entries.
+     */
+    private final List<String> classpath = new ArrayList<String>();
+
+    /**
+     * The environment variables to set, <code>null</code> values meaning variables to unset.
+     */
+    private final Map<String, String> environmentVariables = new HashMap<String, String>();
+
+    /**
+     * The JAR file to execute.
+     */
+    private File jarFile;
+
+    /**
+     * The main class to execute.
+     */
+    private String mainClass;
+
+    /**
+     * The application arguments.
+     */
+    private final List<String> appArguments = new ArrayList<String>();
+
+    /**
+     * The file the output of the process is redirected to, <code>null</code> to log it.
+     */
+    private File outputFile;
+
+    /**
+     * Whether to append the output to the output file.
+     */
+    private boolean appendOutput;
+
+    /**
+     * Timeout after which the process is killed, non-positive for none.
+     */
+    private long timeout;
+
+    /**
+     * Whether the process should outlive the JVM running Cargo.
+     */
+    private boolean spawn;
+
+    /**
+     * The listeners to notify.
+     */
+    private final List<JvmProcessListener> listeners =
+        new CopyOnWriteArrayList<JvmProcessListener>();
+
+    /**
+     * The launched process, <code>null</code> if not started.
+     */
+    private volatile Process process;
+
+    /**
+     * The identifier of the launched process, {@code -1} if unknown.
+     */
+    private volatile long pid = -1;
+
+    /**
+     * The exit code of the launched process, <code>null</code> if still running.
+     */
+    private volatile Integer exitCode;
+
+    /**
+     * The thread copying the output of the process, <code>null</code> if none.
+     */
+    private Thread outputCopier;
+
+    /**
+     * Creates a new launcher.
+     * 
+     * @param loggable The object to log the output of the process to when there is no output
+     * file, must not be {@code null}.
+     */
+    public ProcessJvmLauncher(Loggable loggable)
+    {
+        this.loggable = loggable;
+    }
+
+    /**
+     * Adds a listener notified when the process starts and terminates.
+     * 
+     * @param listener The listener to add.
+     */
+    public void addProcessListener(JvmProcessListener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     * 
+     * @param listener The listener to remove.
+     */
+    public void removeProcessListener(JvmProcessListener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Gets the identifier of the launched process. The identifier is read from the
+     * <code>Process</code> API on Java 9 and later, and from the implementation of the Unix
+     * process on earlier versions.
+     * 
+     * @return The identifier of the launched process, {@code -1} if not started or unknown.
+     */
+    public long getPid()
+    {
+        return this.pid;
+    }
+
+    /**
+     * Gets the exit code of the launched process.
+     * 
+     * @return The exit code, {@code null} if the process has not been started or is running.
+     */
+    public Integer getExitCode()
+    {
+        return this.exitCode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setWorkingDirectory(File workingDirectory)
+    {
+        this.workingDirectory = workingDirectory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setJvm(String command)
+    {
+        this.jvm = command;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addJvmArgument(File file)
+    {
+        if (file != null)
+        {
+            this.jvmArguments.add(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addJvmArguments(String... values)
+    {
+        if (values != null)
+        {
+            for (String value : values)
+            {
+                this.jvmArguments.add(value);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addJvmArgumentLine(String line)
+    {
+        if (line != null)
+        {
+            addJvmArguments(Commandline.translateCommandline(line));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addClasspathEntries(String... paths)
+    {
+        if (paths != null)
+        {
+            for (String path : paths)
+            {
+                this.classpath.add(new File(path).getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addClasspathEntries(File... paths)
+    {
+        if (paths != null)
+        {
+            for (File path : paths)
+            {
+                this.classpath.add(path.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getClasspath()
+    {
+        StringBuilder result = new StringBuilder();
+        for (String entry : this.classpath)
+        {
+            if (result.length() > 0)
+            {
+                result.append(File.pathSeparatorChar);
+            }
+            result.append(entry);
+        }
+        return result.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setSystemProperty(String name, String value)
+    {
+        if (name != null && name.length() > 0)
+        {
+            this.systemProperties.add("-D" + name + "=" + (value != null ? value : ""));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setEnvironmentVariable(String name, String value)
+    {
+        if (name != null && name.length() > 0)
+        {
+            this.environmentVariables.put(name, value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getEnvironmentVariable(String name)
+    {
+        String value = this.environmentVariables.get(name);
+        if (value == null)
+        {
+            value = System.getenv(name);
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setJarFile(File jarFile)
+    {
+        if (jarFile != null)
+        {
+            this.jarFile = jarFile;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setMainClass(String mainClass)
+    {
+        if (mainClass != null)
+        {
+            this.mainClass = mainClass;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addAppArgument(File file)
+    {
+        if (file != null)
+        {
+            this.appArguments.add(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addAppArguments(String... values)
+    {
+        if (values != null)
+        {
+            for (String value : values)
+            {
+                this.appArguments.add(value);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addAppArgumentLine(String line)
+    {
+        if (line != null)
+        {
+            addAppArguments(Commandline.translateCommandline(line));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setOutputFile(File outputFile)
+    {
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setAppendOutput(boolean appendOutput)
+    {
+        this.appendOutput = appendOutput;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getCommandLine()
+    {
+        List<String> commandLine = buildCommandLine();
+        return Commandline.toString(commandLine.toArray(new String[commandLine.size()]));
+    }
+
+    /**
+     * {@inheritDoc}. The process is destroyed forcibly on Java 8 and later; on earlier versions
+     * it is destroyed and, on Unix, sent a <code>SIGKILL</code> if its identifier is known.
+     */
+    public void kill()
+    {
+        Process running = this.process;
+        if (running == null)
+        {
+            return;
+        }
+        if (DESTROY_FORCIBLY != null)
+        {
+            try
+            {
+                DESTROY_FORCIBLY.invoke(running);
+                return;
+            }
+            catch (Exception e)
+            {
+                this.loggable.getLogger().debug("Cannot destroy process forcibly: " + e,
+                    getClass().getName());
+            }
+        }
+        running.destroy();
+        if (this.pid > 0 && File.separatorChar == '/')
+        {
+            try
+            {
+                Runtime.getRuntime().exec(new String[] {"kill", "-9", Long.toString(this.pid)});
+            }
+            catch (IOException e)
+            {
+                this.loggable.getLogger().debug("Cannot kill process " + this.pid + ": " + e,
+                    getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isRunning()
+    {
+        return this.process != null && this.exitCode == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTimeout(long millis)
+    {
+        this.timeout = millis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setSpawn(boolean spawn)
+    {
+        this.spawn = spawn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void start() throws JvmLauncherException
+    {
+        ProcessBuilder builder = new ProcessBuilder(buildCommandLine());
+        builder.directory(this.workingDirectory);
+        builder.redirectErrorStream(true);
+        for (Map.Entry<String, String> variable : this.environmentVariables.entrySet())
+        {
+            if (variable.getValue() == null)
+            {
+                builder.environment().remove(variable.getKey());
+            }
+            else
+            {
+                builder.environment().put(variable.getKey(), variable.getValue());
+            }
+        }
+
+        File redirectTo = this.outputFile;
+        boolean append = this.appendOutput;
+        if (redirectTo == null && this.spawn)
+        {
+            // A spawned process must not write to a pipe nobody reads once Cargo has exited
+            redirectTo = new File(File.separatorChar == '/' ? "/dev/null" : "NUL");
+            append = true;
+        }
+        boolean redirected = redirectTo != null && redirectOutput(builder, redirectTo, append);
+
+        final Process started;
+        try
+        {
+            started = builder.start();
+        }
+        catch (IOException e)
+        {
+            throw new JvmLauncherException("Failed to launch [" + getCommandLine() + "]", e);
+        }
+        this.process = started;
+        this.exitCode = null;
+        this.pid = readPid(started);
+        closeQuietly(started.getOutputStream());
+
+        if (redirected)
+        {
+            closeQuietly(started.getInputStream());
+        }
+        else
+        {
+            this.outputCopier = new Thread(new OutputCopier(started.getInputStream()),
+                "cargo-jvm-output-" + this.pid);
+            this.outputCopier.setDaemon(true);
+            this.outputCopier.start();
+        }
+
+        for (JvmProcessListener listener : this.listeners)
+        {
+            listener.processStarted(this, this.pid);
+        }
+
+        final Thread destroyer;
+        if (this.spawn)
+        {
+            destroyer = null;
+        }
+        else
+        {
+            // As the Ant Java task does, destroy forked processes when Cargo exits
+            destroyer = new Thread("cargo-jvm-destroyer-" + this.pid)
+            {
+                @Override
+                public void run()
+                {
+                    started.destroy();
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(destroyer);
+        }
+
+        final TimerTask timeoutTask;
+        if (this.timeout > 0)
+        {
+            timeoutTask = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    loggable.getLogger().warn("Process [" + pid + "] still running after "
+                        + timeout + " ms, killing it", ProcessJvmLauncher.class.getName());
+                    kill();
+                }
+            };
+            getTimeoutTimer().schedule(timeoutTask, this.timeout);
+        }
+        else
+        {
+            timeoutTask = null;
+        }
+
+        Thread waiter = new Thread("cargo-jvm-waiter-" + this.pid)
+        {
+            @Override
+            public void run()
+            {
+                waitForExit(started, destroyer, timeoutTask);
+            }
+        };
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int execute() throws JvmLauncherException
+    {
+        start();
+        try
+        {
+            int result = this.process.waitFor();
+            if (this.outputCopier != null)
+            {
+                this.outputCopier.join();
+            }
+            return result;
+        }
+        catch (InterruptedException e)
+        {
+            throw new JvmLauncherException("Interrupted while waiting for the process to exit", e);
+        }
+    }
+
+    /**
+     * Waits for the launched process to terminate, then records its exit code and notifies the
+     * listeners.
+     * 
+     * @param started The launched process.
+     * @param destroyer The shutdown hook destroying the process, <code>null</code> if none.
+     * @param timeoutTask The task killing the process on timeout, <code>null</code> if none.
+     */
+    private void waitForExit(Process started, Thread destroyer, TimerTask timeoutTask)
+    {
+        int code;
+        try
+        {
+            code = started.waitFor();
+        }
+        catch (InterruptedException e)
+        {
+            return;
+        }
+        if (timeoutTask != null)
+        {
+            timeoutTask.cancel();
+        }
+        if (destroyer != null)
+        {
+            try
+            {
+                Runtime.getRuntime().removeShutdownHook(destroyer);
+            }
+            catch (IllegalStateException e)
+            {
+                // Cargo is exiting, the hook will find the process terminated
+            }
+        }
+        this.exitCode = Integer.valueOf(code);
+        for (JvmProcessListener listener : this.listeners)
+        {
+            listener.processExited(this, code);
+        }
+    }
+
+    /**
+     * @return The command line of the JVM.
+     */
+    private List<String> buildCommandLine()
+    {
+        List<String> commandLine = new ArrayList<String>();
+        commandLine.add(this.jvm != null ? this.jvm : JavaEnvUtils.getJreExecutable("java"));
+        commandLine.addAll(this.jvmArguments);
+        commandLine.addAll(this.systemProperties);
+        if (this.jarFile != null)
+        {
+            commandLine.add("-jar");
+            commandLine.add(this.jarFile.getAbsolutePath());
+        }
+        else
+        {
+            if (!this.classpath.isEmpty())
+            {
+                commandLine.add("-classpath");
+                commandLine.add(getClasspath());
+            }
+            if (this.mainClass != null)
+            {
+                commandLine.add(this.mainClass);
+            }
+        }
+        commandLine.addAll(this.appArguments);
+        return commandLine;
+    }
+
+    /**
+     * Redirects the output of the process to a file, if the running JVM supports it.
+     * 
+     * @param builder The process builder.
+     * @param file The file to redirect to.
+     * @param append Whether to append to the file.
+     * @return Whether the output has been redirected.
+     */
+    private boolean redirectOutput(ProcessBuilder builder, File file, boolean append)
+    {
+        if (REDIRECT_OUTPUT == null)
+        {
+            return false;
+        }
+        try
+        {
+            Object redirect = (append ? REDIRECT_APPEND_TO : REDIRECT_TO).invoke(null, file);
+            REDIRECT_OUTPUT.invoke(builder, redirect);
+            return true;
+        }
+        catch (Exception e)
+        {
+            this.loggable.getLogger().debug("Cannot redirect process output to [" + file + "]: "
+                + e, getClass().getName());
+            return false;
+        }
+    }
+
+    /**
+     * @param started A process.
+     * @return The identifier of the process, {@code -1} if unknown.
+     */
+    private static long readPid(Process started)
+    {
+        try
+        {
+            if (PID != null)
+            {
+                return ((Long) PID.invoke(started)).longValue();
+            }
+            Field field = started.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(started);
+        }
+        catch (Exception e)
+        {
+            // Windows before Java 9, for instance
+            return -1;
+        }
+    }
+
+    /**
+     * @param name Name of a method of <code>Process</code> without parameters.
+     * @return The method, <code>null</code> if the running JVM does not have it.
+     */
+    private static Method getProcessMethod(String name)
+    {
+        try
+        {
+            return Process.class.getMethod(name);
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return The timer killing the processes which run longer than their timeout.
+     */
+    private static synchronized Timer getTimeoutTimer()
+    {
+        if (timeoutTimer == null)
+        {
+            timeoutTimer = new Timer("cargo-jvm-timeout", true);
+        }
+        return timeoutTimer;
+    }
+
+    /**
+     * @param stream Stream to close, errors are ignored.
+     */
+    private static void closeQuietly(Closeable stream)
+    {
+        try
+        {
+            stream.close();
+        }
+        catch (IOException e)
+        {
+            // Ignored
+        }
+    }
+
+    /**
+     * Copies the output of the process to the output file, or logs it when there is no output
+     * file. Used when the running JVM cannot redirect the output itself.
+     */
+    private final class OutputCopier implements Runnable
+    {
+        /**
+         * The output of the process.
+         */
+        private final InputStream input;
+
+        /**
+         * @param input The output of the process.
+         */
+        private OutputCopier(InputStream input)
+        {
+            this.input = input;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            try
+            {
+                if (outputFile != null)
+                {
+                    copyToFile();
+                }
+                else
+                {
+                    log();
+                }
+            }
+            catch (IOException e)
+            {
+                loggable.getLogger().debug("Stopped reading the output of process [" + pid
+                    + "]: " + e, ProcessJvmLauncher.class.getName());
+            }
+            finally
+            {
+                closeQuietly(this.input);
+            }
+        }
+
+        /**
+         * Copies the output as is to the output file.
+         * 
+         * @throws IOException If reading or writing fails.
+         */
+        private void copyToFile() throws IOException
+        {
+            OutputStream output = new FileOutputStream(outputFile, appendOutput);
+            try
+            {
+                byte[] buffer = new byte[8192];
+                int length;
+                while ((length = this.input.read(buffer)) != -1)
+                {
+                    output.write(buffer, 0, length);
+                    output.flush();
+                }
+            }
+            finally
+            {
+                output.close();
+            }
+        }
+
+        /**
+         * Logs the output line by line, guessing the level of each line as the Ant build
+         * listener does.
+         * 
+         * @throws IOException If reading fails.
+         */
+        private void log() throws IOException
+        {
+            Logger logger = loggable.getLogger();
+            String category = loggable.getClass().getName();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(this.input));
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.contains("DEBUG") || line.contains("FINE") || line.contains("TRACE"))
+                {
+                    logger.debug(line, category);
+                }
+                else if (line.contains("WARN") || line.contains("ERROR")
+                    || line.contains("FATAL"))
+                {
+                    logger.warn(line, category);
+                }
+                else
+                {
+                    logger.info(line, category);
+                }
+            }
+        }
+    }
+
+}
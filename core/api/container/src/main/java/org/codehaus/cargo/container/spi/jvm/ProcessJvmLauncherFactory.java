@@ -0,0 +1,47 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+/**
+ * A factory to create JVM launchers starting the JVM directly with a <code>ProcessBuilder</code>
+ * instead of the Ant Java task. Remote JVMs launched via SSH still use the Ant task.
+ * 
+ */
+public class ProcessJvmLauncherFactory implements JvmLauncherFactory
+{
+
+    /**
+     * The factory creating launchers for remote JVMs.
+     */
+    private final JvmLauncherFactory sshLauncherFactory = new DefaultJvmLauncherFactory();
+
+    /**
+     * {@inheritDoc}
+     */
+    public JvmLauncher createJvmLauncher(JvmLauncherRequest request)
+    {
+        if (request.isSsh())
+        {
+            return this.sshLauncherFactory.createJvmLauncher(request);
+        }
+        return new ProcessJvmLauncher(request.getLoggable());
+    }
+
+}
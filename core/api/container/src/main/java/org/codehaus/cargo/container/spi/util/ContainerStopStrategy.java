@@ -0,0 +1,303 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncherProcessAware;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Strategy used by local containers to find out when they are fully stopped. A container is
+ * stopped once the JVM process it was launched in has exited or, when that process cannot be
+ * tracked, once all its ports have been released. A tracked process which is still running after
+ * its ports have been released is given a grace period to exit, after which the container is
+ * considered stopped anyway and will be killed. Checks are repeated with a sub-second backoff
+ * until the container is stopped or the timeout is reached. Containers can refine this strategy,
+ * for example by only watching the ports which tell when they have completed their shutdown.
+ * 
+ */
+public class ContainerStopStrategy extends LoggedObject
+{
+    /**
+     * Default interval before the first check is repeated, in milliseconds.
+     */
+    public static final long DEFAULT_MINIMUM_POLL_INTERVAL = 25L;
+
+    /**
+     * Default upper bound for the interval between two checks, in milliseconds.
+     */
+    public static final long DEFAULT_MAXIMUM_POLL_INTERVAL = 250L;
+
+    /**
+     * Default time to wait for the container process to exit once all its ports have been
+     * released, in milliseconds.
+     */
+    public static final long DEFAULT_PROCESS_EXIT_GRACE_PERIOD = 5000L;
+
+    /**
+     * Connect timeout used when checking whether a port is still open, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 250;
+
+    /**
+     * Ports to watch.
+     */
+    private List<Integer> ports = new ArrayList<Integer>();
+
+    /**
+     * JVM launcher of the container process, <code>null</code> if not known.
+     */
+    private JvmLauncher process;
+
+    /**
+     * Interval before the first check is repeated, in milliseconds.
+     */
+    private long minimumPollInterval = DEFAULT_MINIMUM_POLL_INTERVAL;
+
+    /**
+     * Upper bound for the interval between two checks, in milliseconds.
+     */
+    private long maximumPollInterval = DEFAULT_MAXIMUM_POLL_INTERVAL;
+
+    /**
+     * Once all ports have been released, how long to wait for the container process to exit.
+     */
+    private long processExitGracePeriod = DEFAULT_PROCESS_EXIT_GRACE_PERIOD;
+
+    /**
+     * @param port port which has to be released once the container is stopped
+     */
+    public void addPort(int port)
+    {
+        if (!this.ports.contains(port))
+        {
+            this.ports.add(port);
+        }
+    }
+
+    /**
+     * @param port port not to watch anymore
+     */
+    public void removePort(int port)
+    {
+        this.ports.remove(Integer.valueOf(port));
+    }
+
+    /**
+     * @return ports which have to be released once the container is stopped
+     */
+    public List<Integer> getPorts()
+    {
+        return this.ports;
+    }
+
+    /**
+     * @param process JVM launcher that started the container process
+     */
+    public void setProcess(JvmLauncher process)
+    {
+        this.process = process;
+    }
+
+    /**
+     * Sets the bounds of the backoff between two checks.
+     * 
+     * @param minimumPollInterval interval before the first check is repeated, in milliseconds
+     * @param maximumPollInterval upper bound for the interval between two checks, in milliseconds
+     */
+    public void setPollInterval(long minimumPollInterval, long maximumPollInterval)
+    {
+        if (minimumPollInterval <= 0 || maximumPollInterval < minimumPollInterval)
+        {
+            throw new IllegalArgumentException("Invalid poll interval bounds ["
+                + minimumPollInterval + ", " + maximumPollInterval + "]");
+        }
+        this.minimumPollInterval = minimumPollInterval;
+        this.maximumPollInterval = maximumPollInterval;
+    }
+
+    /**
+     * @param processExitGracePeriod once all ports have been released, how long to wait for the
+     * container process to exit, in milliseconds
+     */
+    public void setProcessExitGracePeriod(long processExitGracePeriod)
+    {
+        this.processExitGracePeriod = processExitGracePeriod;
+    }
+
+    /**
+     * Waits for the container to be stopped.
+     * 
+     * @param timeout the timeout after which to give up, in milliseconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void waitForStop(long timeout) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        long interval = this.minimumPollInterval;
+        List<Integer> openPorts = new ArrayList<Integer>(this.ports);
+        boolean processTracked = isProcessTracked();
+        long portsReleasedAt = -1;
+
+        while (true)
+        {
+            if (processTracked && !isProcessRunning())
+            {
+                // Once the process has exited, the operating system has released its ports
+                getLogger().debug("\tContainer process has exited", this.getClass().getName());
+                return;
+            }
+
+            for (Iterator<Integer> i = openPorts.iterator(); i.hasNext();)
+            {
+                int port = i.next();
+                if (isPortShutdown(port, CONNECT_TIMEOUT))
+                {
+                    getLogger().debug("\tPort " + port + " is shutdown",
+                        this.getClass().getName());
+                    i.remove();
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (openPorts.isEmpty())
+            {
+                if (!processTracked)
+                {
+                    return;
+                }
+                if (portsReleasedAt == -1)
+                {
+                    portsReleasedAt = now;
+                }
+                if (now - portsReleasedAt >= this.processExitGracePeriod || now >= deadline)
+                {
+                    // Some non-daemon thread might keep the process alive, it will be killed
+                    getLogger().debug("\tAll ports are shutdown but the container process is "
+                        + "still running", this.getClass().getName());
+                    return;
+                }
+            }
+            else if (now >= deadline)
+            {
+                throw new ContainerException("Server port " + openPorts.get(0)
+                    + " did not shutdown within the timeout period [" + timeout + "]");
+            }
+
+            Thread.sleep(Math.min(interval, Math.max(1, deadline - now)));
+            interval = Math.min(this.maximumPollInterval, interval + interval / 2);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the termination of the container process can be tracked, which
+     * requires a {@link JvmLauncherProcessAware} launcher
+     */
+    protected boolean isProcessTracked()
+    {
+        return this.process instanceof JvmLauncherProcessAware && isProcessRunning();
+    }
+
+    /**
+     * @return <code>true</code> if the container process is still running
+     */
+    protected boolean isProcessRunning()
+    {
+        return ((JvmLauncherProcessAware) this.process).isRunning();
+    }
+
+    /**
+     * Checks if the specified server port is shutdown.
+     * 
+     * @param port The port number.
+     * @param connectTimeout The connect timeout.
+     * @return <code>true</code> if <code>port</code> is shut down, <code>false</code> otherwise.
+     */
+    public boolean isPortShutdown(int port, int connectTimeout)
+    {
+        Socket s = new Socket();
+        try
+        {
+            getLogger().debug("\tConnection attempt with socket " + s + ", current time is "
+                + System.currentTimeMillis(), this.getClass().getName());
+
+            s.bind(null);
+
+            // If the remote port is closed, s.connect will throw an exception
+            s.connect(new InetSocketAddress("localhost", port), connectTimeout);
+            getLogger().debug("\tSocket " + s + " for port " + port + " managed to connect",
+                this.getClass().getName());
+
+            try
+            {
+                s.shutdownOutput();
+            }
+            catch (IOException e)
+            {
+                // ignored, irrelevant
+                getLogger().debug("\tFailed to shutdown output for socket " + s + ": " + e,
+                    this.getClass().getName());
+            }
+            try
+            {
+                s.shutdownInput();
+            }
+            catch (IOException e)
+            {
+                // ignored, irrelevant
+                getLogger().debug("\tFailed to shutdown input for socket " + s + ": " + e,
+                    this.getClass().getName());
+            }
+
+            getLogger().debug("\tSocket " + s + " for port " + port + " shutdown",
+                this.getClass().getName());
+        }
+        catch (IOException ignored)
+        {
+            // If an IOException has occured, this means port is shut down
+            return true;
+        }
+        finally
+        {
+            try
+            {
+                s.close();
+            }
+            catch (IOException e)
+            {
+                // ignored, irrelevant
+                getLogger().debug("\tFailed to close socket " + s + ": " + e,
+                    this.getClass().getName());
+            }
+            getLogger().debug("\tSocket " + s + " for port " + port + " closed",
+                this.getClass().getName());
+        }
+
+        return false;
+    }
+}
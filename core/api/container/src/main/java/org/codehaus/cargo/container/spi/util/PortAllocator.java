@@ -0,0 +1,361 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Reserves free ports for local containers. Each reserved port is held through a lock on a file
+ * named after the port in a lock directory shared by all processes on the host, so that
+ * concurrent builds (for example parallel Maven forks or Cargo daemon handles) using the same lock
+ * directory never reserve the same port. The locks are released by {@link #releaseAll()} or, at
+ * the latest, by the operating system when the process exits.
+ * 
+ */
+public class PortAllocator extends LoggedObject
+{
+    /**
+     * Default lock directory.
+     */
+    public static final String DEFAULT_LOCK_DIRECTORY =
+        new File(System.getProperty("java.io.tmpdir"), "cargo-ports").getAbsolutePath();
+
+    /**
+     * Maximum number of ephemeral ports tried before giving up.
+     */
+    private static final int MAXIMUM_ATTEMPTS = 100;
+
+    /**
+     * Directory holding the lock files.
+     */
+    private File lockDirectory;
+
+    /**
+     * Locks of the reserved ports, indexed by port number.
+     */
+    private Map<Integer, PortLock> reservations = new LinkedHashMap<Integer, PortLock>();
+
+    /**
+     * Creates an allocator which uses the default lock directory.
+     */
+    public PortAllocator()
+    {
+        this(new File(DEFAULT_LOCK_DIRECTORY));
+    }
+
+    /**
+     * Creates an allocator.
+     * 
+     * @param lockDirectory Directory holding the lock files, it will be created if needed.
+     */
+    public PortAllocator(File lockDirectory)
+    {
+        this.lockDirectory = lockDirectory;
+    }
+
+    /**
+     * Reserves a port. The preferred port is reserved if it is free; otherwise a free port is
+     * chosen by the operating system.
+     * 
+     * @param preferredPort Port to reserve if it is free.
+     * @return The reserved port.
+     */
+    public synchronized int reserve(int preferredPort)
+    {
+        if (!this.lockDirectory.isDirectory() && !this.lockDirectory.mkdirs()
+            && !this.lockDirectory.isDirectory())
+        {
+            throw new ContainerException("Cannot create the port lock directory ["
+                + this.lockDirectory + "]");
+        }
+
+        if (preferredPort > 0 && preferredPort <= 65535 && tryReserve(preferredPort))
+        {
+            return preferredPort;
+        }
+
+        for (int i = 0; i < MAXIMUM_ATTEMPTS; i++)
+        {
+            int port = findEphemeralPort();
+            if (tryReserve(port))
+            {
+                getLogger().debug("Port " + preferredPort + " is not available, reserved port "
+                    + port + " instead", this.getClass().getName());
+                return port;
+            }
+        }
+
+        throw new ContainerException("Cannot reserve a free port after " + MAXIMUM_ATTEMPTS
+            + " attempts, check the port lock directory [" + this.lockDirectory + "]");
+    }
+
+    /**
+     * @return The ports currently reserved by this allocator.
+     */
+    public synchronized List<Integer> getReservedPorts()
+    {
+        return new ArrayList<Integer>(this.reservations.keySet());
+    }
+
+    /**
+     * Releases all ports reserved by this allocator.
+     */
+    public synchronized void releaseAll()
+    {
+        for (PortLock lock : this.reservations.values())
+        {
+            lock.release();
+        }
+        this.reservations.clear();
+    }
+
+    /**
+     * Locks a port and checks that it can be bound.
+     * 
+     * @param port Port to reserve.
+     * @return <code>true</code> if the port is now reserved, <code>false</code> if it is locked by
+     * someone else or in use.
+     */
+    private boolean tryReserve(int port)
+    {
+        if (this.reservations.containsKey(port))
+        {
+            return false;
+        }
+
+        PortLock lock = PortLock.tryLock(new File(this.lockDirectory, "port-" + port + ".lock"));
+        if (lock == null)
+        {
+            return false;
+        }
+        if (!isBindable(port))
+        {
+            lock.release();
+            return false;
+        }
+
+        this.reservations.put(port, lock);
+        return true;
+    }
+
+    /**
+     * @param port Port to check.
+     * @return <code>true</code> if a server socket can currently be bound to <code>port</code>.
+     */
+    private static boolean isBindable(int port)
+    {
+        ServerSocket socket = null;
+        try
+        {
+            socket = new ServerSocket();
+            socket.bind(new InetSocketAddress(port));
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        finally
+        {
+            close(socket);
+        }
+    }
+
+    /**
+     * @return A port the operating system currently considers free.
+     */
+    private static int findEphemeralPort()
+    {
+        ServerSocket socket = null;
+        try
+        {
+            socket = new ServerSocket(0);
+            return socket.getLocalPort();
+        }
+        catch (IOException e)
+        {
+            throw new ContainerException("Cannot find a free port", e);
+        }
+        finally
+        {
+            close(socket);
+        }
+    }
+
+    /**
+     * Closes a server socket, ignoring errors.
+     * 
+     * @param socket Socket to close, may be <code>null</code>.
+     */
+    private static void close(ServerSocket socket)
+    {
+        if (socket != null)
+        {
+            try
+            {
+                socket.close();
+            }
+            catch (IOException ignored)
+            {
+                // Ignored
+            }
+        }
+    }
+
+    /**
+     * Lock held on a port lock file.
+     */
+    private static final class PortLock
+    {
+        /**
+         * Canonical paths of the lock files locked by this process. On many systems, file locks
+         * are held per process and closing any channel on a file drops all the locks of the
+         * process on it; hence a file locked by this process must never be opened again until
+         * the lock is released.
+         */
+        private static final Set<String> HELD_LOCK_FILES = new HashSet<String>();
+
+        /**
+         * Canonical path of the lock file.
+         */
+        private String path;
+
+        /**
+         * Lock file.
+         */
+        private RandomAccessFile file;
+
+        /**
+         * Lock on the file.
+         */
+        private FileLock lock;
+
+        /**
+         * @param path Canonical path of the lock file.
+         * @param file Lock file.
+         * @param lock Lock on the file.
+         */
+        private PortLock(String path, RandomAccessFile file, FileLock lock)
+        {
+            this.path = path;
+            this.file = file;
+            this.lock = lock;
+        }
+
+        /**
+         * Tries to lock a lock file, without waiting.
+         * 
+         * @param lockFile Lock file, created if needed.
+         * @return The lock, <code>null</code> if the file is locked by another process or by
+         * another allocator in this process.
+         */
+        public static PortLock tryLock(File lockFile)
+        {
+            String path;
+            try
+            {
+                path = lockFile.getCanonicalPath();
+            }
+            catch (IOException e)
+            {
+                return null;
+            }
+            synchronized (HELD_LOCK_FILES)
+            {
+                if (!HELD_LOCK_FILES.add(path))
+                {
+                    return null;
+                }
+            }
+
+            RandomAccessFile file = null;
+            FileLock lock = null;
+            try
+            {
+                file = new RandomAccessFile(lockFile, "rw");
+                lock = file.getChannel().tryLock();
+            }
+            catch (IOException e)
+            {
+                lock = null;
+            }
+            catch (OverlappingFileLockException e)
+            {
+                lock = null;
+            }
+
+            if (lock == null)
+            {
+                new PortLock(path, file, null).release();
+                return null;
+            }
+            return new PortLock(path, file, lock);
+        }
+
+        /**
+         * Releases the lock and closes the lock file. The file itself is kept, since deleting it
+         * could let two processes lock different files for the same port.
+         */
+        public void release()
+        {
+            try
+            {
+                if (this.lock != null)
+                {
+                    this.lock.release();
+                }
+            }
+            catch (IOException ignored)
+            {
+                // Ignored, closing the file releases the lock anyway
+            }
+            try
+            {
+                if (this.file != null)
+                {
+                    this.file.close();
+                }
+            }
+            catch (IOException ignored)
+            {
+                // Ignored
+            }
+            synchronized (HELD_LOCK_FILES)
+            {
+                HELD_LOCK_FILES.remove(this.path);
+            }
+        }
+    }
+}
@@ -19,7 +19,12 @@
  */
 package org.codehaus.cargo.container.installer;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import junit.framework.TestCase;
 
@@ -29,6 +34,7 @@ import org.apache.tools.ant.Task;
 import org.apache.tools.ant.taskdefs.Get;
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.util.AntTaskFactory;
+import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
 import org.codehaus.cargo.util.VFSFileHandler;
 
@@ -249,4 +255,98 @@ public class ZipURLInstallerTest extends TestCase
 
         assertEquals("ram:///tmp/resin-3.0.18/resin-3.0.18", this.installer.getHome());
     }
+
+    /**
+     * Test {@link ZipURLInstaller#isAlreadyExtracted()} when a file of the installation has been
+     * removed after the installation has been registered.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testIsAlreadyExtractedWhenInstallationModified() throws Exception
+    {
+        this.fsManager.resolveFile("ram:///tmp/resin-3.0.18/resin-3.0.18/bin").createFolder();
+        this.fsManager.resolveFile("ram:///tmp/resin-3.0.18/resin-3.0.18/lib/resin.jar")
+            .createFile();
+        this.installer.setExtractDir("ram:///tmp");
+        this.installer.registerInstallation();
+        assertTrue(this.installer.isAlreadyExtracted());
+
+        this.fsManager.resolveFile("ram:///tmp/resin-3.0.18/resin-3.0.18/lib/resin.jar").delete();
+        assertFalse(this.installer.isAlreadyExtracted());
+    }
+
+    /**
+     * Test {@link ZipURLInstaller#isAlreadyExtracted()} when the container has rewritten one of
+     * its files, like JBoss or GlassFish do with their configuration files.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testIsAlreadyExtractedWhenInstalledFileRewritten() throws Exception
+    {
+        String configuration = "ram:///tmp/resin-3.0.18/resin-3.0.18/conf/resin.conf";
+        this.fsManager.resolveFile(configuration).createFile();
+        this.installer.setExtractDir("ram:///tmp");
+        this.installer.registerInstallation();
+
+        OutputStream out = this.fsManager.resolveFile(configuration).getContent()
+            .getOutputStream();
+        try
+        {
+            out.write("<resin/>".getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+        assertTrue(this.installer.isAlreadyExtracted());
+    }
+
+    /**
+     * Test {@link ZipURLInstaller#install()} in native mode, including a second installation in
+     * another directory which is served from the archive cache.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testNativeInstallWithCache() throws Exception
+    {
+        File base = new File("target/native-install").getAbsoluteFile();
+        new DefaultFileHandler().delete(base.getPath());
+        base.mkdirs();
+
+        File archive = new File(base, "container-1.0.zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try
+        {
+            zip.putNextEntry(new ZipEntry("container-1.0/"));
+            zip.putNextEntry(new ZipEntry("container-1.0/bin/run.sh"));
+            zip.write("#!/bin/sh".getBytes("UTF-8"));
+            zip.putNextEntry(new ZipEntry("container-1.0/lib/container.jar"));
+            zip.write(new byte[256 * 1024]);
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        ZipURLInstaller nativeInstaller = new ZipURLInstaller(archive.toURI().toURL(),
+            new File(base, "download1").getPath(), new File(base, "extract1").getPath());
+        nativeInstaller.setNativeMode(true);
+        nativeInstaller.setCacheDir(new File(base, "cache").getPath());
+        nativeInstaller.install();
+
+        assertTrue(nativeInstaller.isAlreadyExtracted());
+        File home = new File(nativeInstaller.getHome());
+        assertEquals("container-1.0", home.getName());
+        assertEquals(9, new File(home, "bin/run.sh").length());
+        assertEquals(256 * 1024, new File(home, "lib/container.jar").length());
+
+        // The second installer cannot reach the URL anymore, so it has to use the cache
+        archive.delete();
+        nativeInstaller = new ZipURLInstaller(archive.toURI().toURL(),
+            new File(base, "download2").getPath(), new File(base, "extract2").getPath());
+        nativeInstaller.setNativeMode(true);
+        nativeInstaller.setCacheDir(new File(base, "cache").getPath());
+        nativeInstaller.install();
+
+        assertTrue(nativeInstaller.isAlreadyExtracted());
+        assertEquals(256 * 1024,
+            new File(nativeInstaller.getHome(), "lib/container.jar").length());
+    }
 }
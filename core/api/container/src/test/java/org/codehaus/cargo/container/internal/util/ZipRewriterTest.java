@@ -0,0 +1,269 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ZipRewriter}.
+ * 
+ */
+public class ZipRewriterTest extends TestCase
+{
+    /**
+     * Test directory.
+     */
+    private File directory;
+
+    /**
+     * Number of transformations performed.
+     */
+    private int transformations;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.directory = new File("target/zip-rewriter/" + getName());
+        this.directory.mkdirs();
+    }
+
+    /**
+     * Test that replaced entries are transformed and all other entries are kept as is, whether
+     * they are stored or deflated.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testRewrite() throws Exception
+    {
+        Map<String, byte[]> entries = createEntries();
+        File source = createArchive("source.war", entries);
+        File target = new File(this.directory, "target.war");
+
+        createRewriter().rewrite(source, target);
+
+        Map<String, byte[]> expected = new LinkedHashMap<String, byte[]>(entries);
+        expected.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nPatched: true\n".getBytes());
+        assertEntries(expected, target);
+        assertEquals(1, this.transformations);
+    }
+
+    /**
+     * Test that rewritten archives are cached by source content and key.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testRewriteCached() throws Exception
+    {
+        File source = createArchive("source.war", createEntries());
+        File cache = new File(this.directory, "cache");
+        ZipRewriter rewriter = createRewriter();
+
+        File first = rewriter.rewriteCached(source, cache, "app.war", "a");
+        File second = rewriter.rewriteCached(source, cache, "app.war", "a");
+        assertEquals(first, second);
+        assertEquals("app.war", first.getName());
+        assertEquals(1, this.transformations);
+
+        File other = rewriter.rewriteCached(source, cache, "app.war", "b");
+        assertFalse(first.equals(other));
+        assertEquals(2, this.transformations);
+    }
+
+    /**
+     * Test that only the latest rewrite of each file name is kept in the cache.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testRewriteCachedEvictsOlderRewrites() throws Exception
+    {
+        File source = createArchive("source.war", createEntries());
+        File cache = new File(this.directory, "cache");
+        ZipRewriter rewriter = createRewriter();
+
+        File unrelated = rewriter.rewriteCached(source, cache, "other.war", "a");
+        File first = rewriter.rewriteCached(source, cache, "app.war", "a");
+        File second = rewriter.rewriteCached(source, cache, "app.war", "b");
+
+        assertTrue(second.isFile());
+        assertFalse(first.exists());
+        assertFalse(first.getParentFile().exists());
+        assertTrue(unrelated.isFile());
+
+        File again = rewriter.rewriteCached(source, cache, "app.war", "a");
+        assertTrue(again.isFile());
+        assertFalse(second.exists());
+    }
+
+    /**
+     * @return Rewriter appending a line to the manifest.
+     */
+    private ZipRewriter createRewriter()
+    {
+        ZipRewriter rewriter = new ZipRewriter();
+        rewriter.addTransformer("meta-inf/manifest.mf", new ZipRewriter.EntryTransformer()
+        {
+            public byte[] transform(String name, InputStream content) throws IOException
+            {
+                transformations++;
+                return (new String(readFully(content)) + "Patched: true\n").getBytes();
+            }
+        });
+        return rewriter;
+    }
+
+    /**
+     * @return Entries of a test archive, by name.
+     */
+    private Map<String, byte[]> createEntries()
+    {
+        Random random = new Random(42);
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes());
+        entries.put("WEB-INF/", new byte[0]);
+        byte[] text = new byte[100000];
+        for (int i = 0; i < text.length; i++)
+        {
+            text[i] = (byte) ('a' + random.nextInt(4));
+        }
+        entries.put("WEB-INF/web.xml", text);
+        byte[] binary = new byte[50000];
+        random.nextBytes(binary);
+        entries.put("WEB-INF/lib/stored.jar", binary);
+        entries.put("index.html", "<html/>".getBytes());
+        return entries;
+    }
+
+    /**
+     * Creates an archive, with <code>.jar</code> entries stored and the others deflated.
+     * @param name Archive name.
+     * @param entries Entries, by name.
+     * @return Archive.
+     * @throws IOException If anything goes wrong.
+     */
+    private File createArchive(String name, Map<String, byte[]> entries) throws IOException
+    {
+        File archive = new File(this.directory, name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try
+        {
+            out.setComment("Archive comment");
+            for (Map.Entry<String, byte[]> entry : entries.entrySet())
+            {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (entry.getKey().endsWith(".jar"))
+                {
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return archive;
+    }
+
+    /**
+     * Checks the entries of an archive, reading it both through its central directory and
+     * sequentially.
+     * @param expected Expected entries, by name.
+     * @param archive Archive.
+     * @throws IOException If anything goes wrong.
+     */
+    private void assertEntries(Map<String, byte[]> expected, File archive) throws IOException
+    {
+        ZipFile zipFile = new ZipFile(archive);
+        try
+        {
+            assertEquals("Archive comment", zipFile.getComment());
+            assertEquals(expected.size(), zipFile.size());
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            for (Map.Entry<String, byte[]> entry : expected.entrySet())
+            {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                assertEquals(entry.getKey(), zipEntry.getName());
+                assertEquals(entry.getKey(), new String(entry.getValue()),
+                    new String(readFully(zipFile.getInputStream(zipEntry))));
+            }
+        }
+        finally
+        {
+            zipFile.close();
+        }
+
+        ZipInputStream in = new ZipInputStream(new FileInputStream(archive));
+        try
+        {
+            for (Map.Entry<String, byte[]> entry : expected.entrySet())
+            {
+                ZipEntry zipEntry = in.getNextEntry();
+                assertEquals(entry.getKey(), zipEntry.getName());
+                assertEquals(entry.getKey(), new String(entry.getValue()),
+                    new String(readFully(in)));
+            }
+            assertNull(in.getNextEntry());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in Stream to read, not closed.
+     * @return Content of the stream.
+     * @throws IOException If anything goes wrong.
+     */
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+}
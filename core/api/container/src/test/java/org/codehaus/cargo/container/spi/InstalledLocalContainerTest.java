@@ -22,15 +22,21 @@
  */
 package org.codehaus.cargo.container.spi;
 
+import java.io.File;
+import java.net.ServerSocket;
+
 import junit.framework.TestCase;
 
 import org.apache.commons.vfs.impl.StandardFileSystemManager;
 import org.codehaus.cargo.container.ContainerCapability;
+import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.LocalContainer;
 import org.codehaus.cargo.container.configuration.ConfigurationCapability;
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.configuration.entry.Resource;
+import org.codehaus.cargo.container.deployer.JmxNotificationDeployableMonitor;
 import org.codehaus.cargo.container.property.GeneralPropertySet;
+import org.codehaus.cargo.container.property.ServletPropertySet;
 import org.codehaus.cargo.container.spi.configuration.AbstractStandaloneLocalConfiguration;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
 import org.codehaus.cargo.container.stub.JvmLauncherStub;
@@ -529,6 +535,71 @@ public class InstalledLocalContainerTest extends TestCase
         checkString(commandLine, "-XX:MaxPermSize=256m");
     }
 
+    /**
+     * Test that releasing the allocated ports gives back their original values to the port
+     * properties, including when a port offset is used.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReleasePortsRestoresOriginalPorts() throws Exception
+    {
+        ServerSocket socket = new ServerSocket(0);
+        try
+        {
+            String port = Integer.toString(socket.getLocalPort() - 100);
+            configuration.setProperty(ServletPropertySet.PORT, port);
+            configuration.setProperty(GeneralPropertySet.PORT_OFFSET, "100");
+            configuration.setProperty(GeneralPropertySet.PORT_ALLOCATION, "true");
+            configuration.setProperty(GeneralPropertySet.PORT_ALLOCATION_LOCK_DIRECTORY,
+                new File("target/port-locks").getAbsolutePath());
+            AbstractInstalledLocalContainer container =
+                new AbstractInstalledLocalContainerStub(configuration);
+
+            configuration.applyPortOffset();
+            container.allocatePorts();
+            assertFalse(Integer.toString(socket.getLocalPort()).equals(
+                configuration.getPropertyValue(ServletPropertySet.PORT)));
+
+            container.releasePorts();
+            configuration.revertPortOffset();
+            assertEquals(port, configuration.getPropertyValue(ServletPropertySet.PORT));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * Test that the startup JMX notification monitor is only created once configured.
+     */
+    public void testCreateStartupJmxMonitor()
+    {
+        AbstractInstalledLocalContainer container =
+            new AbstractInstalledLocalContainerStub(configuration);
+        configuration.setProperty(GeneralPropertySet.STARTUP_JMX_URL,
+            "service:jmx:rmi:///jndi/rmi://localhost:1099/jmxrmi");
+        configuration.setProperty(GeneralPropertySet.STARTUP_JMX_OBJECT_NAME,
+            "jboss.system:type=Server");
+        assertNull(container.createStartupJmxMonitor());
+
+        configuration.setProperty(GeneralPropertySet.STARTUP_JMX_NOTIFICATION_TYPE,
+            "org.jboss.system.server.started");
+        JmxNotificationDeployableMonitor monitor = container.createStartupJmxMonitor();
+        assertNotNull(monitor);
+        assertEquals("jboss.system:type=Server", monitor.getDeployableName());
+
+        configuration.setProperty(GeneralPropertySet.STARTUP_JMX_URL, "localhost:1099");
+        try
+        {
+            container.createStartupJmxMonitor();
+            fail("Expected a ContainerException for an invalid JMX service URL");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("localhost:1099"));
+        }
+    }
+
     /**
      * Check if <code>haystack</code> contains <code>needle</code>. A JUnit assertion will fail
      * otherwise.
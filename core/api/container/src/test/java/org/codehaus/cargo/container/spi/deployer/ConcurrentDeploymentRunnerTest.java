@@ -0,0 +1,306 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.deployable.Deployable;
+import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.container.deployer.DeployableMonitor;
+import org.codehaus.cargo.container.deployer.DeployableMonitorListener;
+import org.codehaus.cargo.container.deployer.DeployableResult;
+import org.codehaus.cargo.container.deployer.DeploymentResult;
+import org.codehaus.cargo.container.stub.RemoteContainerStub;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Unit tests for the concurrent deployment actions of {@link AbstractDeployer}.
+ * 
+ */
+public class ConcurrentDeploymentRunnerTest extends TestCase
+{
+    /**
+     * Time taken by each deployer call, in milliseconds.
+     */
+    private static final long DEPLOY_TIME = 200L;
+
+    /**
+     * Deployer which takes some time for each call and records how many calls run at the same
+     * time.
+     */
+    private static class SlowDeployer extends AbstractRemoteDeployer
+    {
+        /**
+         * Whether concurrent calls are supported.
+         */
+        private final boolean concurrent;
+
+        /**
+         * Number of calls in progress.
+         */
+        private final AtomicInteger running = new AtomicInteger();
+
+        /**
+         * Maximum number of calls in progress at the same time.
+         */
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        /**
+         * Name of the file of the deployable whose deployment fails, <code>null</code> if none.
+         */
+        private String failingFile;
+
+        /**
+         * @param concurrent Whether concurrent calls are supported.
+         */
+        public SlowDeployer(boolean concurrent)
+        {
+            super(new RemoteContainerStub());
+            this.concurrent = concurrent;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isConcurrentOperationSupported()
+        {
+            return this.concurrent;
+        }
+
+        /**
+         * Waits, failing if the deployable is the failing one. {@inheritDoc}
+         */
+        @Override
+        public void deploy(Deployable deployable)
+        {
+            int current = this.running.incrementAndGet();
+            synchronized (this.maxRunning)
+            {
+                this.maxRunning.set(Math.max(current, this.maxRunning.get()));
+            }
+            try
+            {
+                Thread.sleep(DEPLOY_TIME);
+            }
+            catch (InterruptedException e)
+            {
+                throw new ContainerException("Interrupted", e);
+            }
+            finally
+            {
+                this.running.decrementAndGet();
+            }
+            if (deployable.getFile().equals(this.failingFile))
+            {
+                throw new ContainerException("Failed to deploy " + this.failingFile);
+            }
+        }
+    }
+
+    /**
+     * Monitor reporting the deployable as deployed after a number of polls.
+     */
+    private static class CountingMonitor extends LoggedObject implements DeployableMonitor
+    {
+        /**
+         * Listeners.
+         */
+        private final List<DeployableMonitorListener> listeners =
+            new ArrayList<DeployableMonitorListener>();
+
+        /**
+         * Number of polls after which the deployable is deployed.
+         */
+        private final int polls;
+
+        /**
+         * Timeout, in milliseconds.
+         */
+        private final long timeout;
+
+        /**
+         * Number of polls so far.
+         */
+        private int count;
+
+        /**
+         * @param polls Number of polls after which the deployable is deployed.
+         * @param timeout Timeout, in milliseconds.
+         */
+        public CountingMonitor(int polls, long timeout)
+        {
+            this.polls = polls;
+            this.timeout = timeout;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void registerListener(DeployableMonitorListener listener)
+        {
+            this.listeners.add(listener);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void monitor()
+        {
+            this.count++;
+            for (DeployableMonitorListener listener : this.listeners)
+            {
+                if (this.count >= this.polls)
+                {
+                    listener.deployed();
+                }
+                else
+                {
+                    listener.undeployed();
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public long getTimeout()
+        {
+            return this.timeout;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String getDeployableName()
+        {
+            return "counting";
+        }
+    }
+
+    /**
+     * Test that deployables are deployed concurrently, up to the parallelism.
+     */
+    public void testConcurrentDeployment()
+    {
+        SlowDeployer deployer = new SlowDeployer(true);
+        deployer.setParallelism(4);
+        Map<Deployable, DeployableMonitor> deployables = createDeployables(8, 3);
+
+        DeploymentResult result = deployer.deployAll(deployables);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(8, result.getResults().size());
+        assertEquals(4, deployer.maxRunning.get());
+        assertTrue("Took " + result.getDuration() + " ms",
+            result.getDuration() < 8 * DEPLOY_TIME);
+        for (DeployableResult deployableResult : result.getResults())
+        {
+            assertEquals("deploy", deployableResult.getAction());
+            assertTrue(deployableResult.getActionDuration() >= DEPLOY_TIME);
+            assertTrue(deployableResult.getDuration() >= deployableResult.getActionDuration());
+        }
+    }
+
+    /**
+     * Test that deployers which do not support concurrent operations are called one at a time.
+     */
+    public void testDeployerWithoutConcurrentOperations()
+    {
+        SlowDeployer deployer = new SlowDeployer(false);
+        deployer.setParallelism(4);
+
+        DeploymentResult result = deployer.deployAll(createDeployables(3, 2));
+
+        assertTrue(result.isSuccessful());
+        assertEquals(1, deployer.maxRunning.get());
+    }
+
+    /**
+     * Test that failures are reported per deployable.
+     */
+    public void testFailure()
+    {
+        SlowDeployer deployer = new SlowDeployer(true);
+        deployer.failingFile = "file1.war";
+        deployer.setParallelism(2);
+
+        DeploymentResult result = deployer.deployAll(createDeployables(3, 0));
+        assertFalse(result.isSuccessful());
+        assertEquals(1, result.getFailures().size());
+        assertEquals("file1.war", result.getFailures().get(0).getDeployable().getFile());
+
+        try
+        {
+            deployer.deploy(Arrays.asList(new Deployable[] {new WAR("file0.war"),
+                new WAR("file1.war")}));
+            fail("The failed deployment should have been reported");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("file1.war"));
+        }
+    }
+
+    /**
+     * Test that a deployable whose monitor never reports it as deployed fails when its timeout is
+     * reached, without failing the others.
+     */
+    public void testMonitorTimeout()
+    {
+        SlowDeployer deployer = new SlowDeployer(true);
+        deployer.setParallelism(2);
+        Map<Deployable, DeployableMonitor> deployables = createDeployables(2, 1);
+        Deployable stuck = new WAR("stuck.war");
+        deployables.put(stuck, new CountingMonitor(Integer.MAX_VALUE, 300L));
+
+        DeploymentResult result = deployer.deployAll(deployables);
+
+        assertEquals(1, result.getFailures().size());
+        assertSame(stuck, result.getFailures().get(0).getDeployable());
+        assertTrue(result.getResult(stuck).getFailure().getMessage().contains(
+            "within the timeout period [300]"));
+    }
+
+    /**
+     * @param count Number of deployables.
+     * @param polls Number of polls after which each deployable is deployed, 0 for no monitor.
+     * @return Deployables with their monitors.
+     */
+    private Map<Deployable, DeployableMonitor> createDeployables(int count, int polls)
+    {
+        Map<Deployable, DeployableMonitor> deployables =
+            new LinkedHashMap<Deployable, DeployableMonitor>();
+        for (int i = 0; i < count; i++)
+        {
+            deployables.put(new WAR("file" + i + ".war"),
+                polls == 0 ? null : new CountingMonitor(polls, 10000L));
+        }
+        return deployables;
+    }
+}
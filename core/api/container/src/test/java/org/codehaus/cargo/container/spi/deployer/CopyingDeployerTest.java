@@ -19,6 +19,11 @@
  */
 package org.codehaus.cargo.container.spi.deployer;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.vfs.impl.StandardFileSystemManager;
 import org.codehaus.cargo.container.ContainerCapability;
 import org.codehaus.cargo.container.ContainerException;
@@ -27,6 +32,8 @@ import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableType;
 import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.container.deployer.DeployableMonitor;
+import org.codehaus.cargo.container.deployer.DeploymentResult;
 import org.codehaus.cargo.util.CargoException;
 import org.codehaus.cargo.util.FileHandler;
 import org.codehaus.cargo.util.VFSFileHandler;
@@ -132,6 +139,54 @@ public class CopyingDeployerTest extends MockObjectTestCase
         }
     }
 
+    /**
+     * Copying deployer supporting concurrent operations, whose copies only start once a given
+     * number of deployments are in progress at the same time.
+     */
+    private class ConcurrentCopyingDeployer extends TestableCopyingDeployer
+    {
+        /**
+         * Barrier the deployments wait on before copying.
+         */
+        private final CyclicBarrier barrier;
+
+        /**
+         * @param container Local container.
+         * @param barrier Barrier the deployments wait on before copying.
+         */
+        public ConcurrentCopyingDeployer(InstalledLocalContainer container, CyclicBarrier barrier)
+        {
+            super(container);
+            this.barrier = barrier;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isConcurrentOperationSupported()
+        {
+            return true;
+        }
+
+        /**
+         * Waits for the other deployments, then copies. {@inheritDoc}
+         */
+        @Override
+        protected void doDeploy(String deployableDir, Deployable deployable)
+        {
+            try
+            {
+                this.barrier.await(10, TimeUnit.SECONDS);
+            }
+            catch (Exception e)
+            {
+                throw new ContainerException("Deployments did not overlap", e);
+            }
+            super.doDeploy(deployableDir, deployable);
+        }
+    }
+
     /**
      * Test that the handling of ShouldDeployExpanded functions correctly.
      */
@@ -183,6 +238,58 @@ public class CopyingDeployerTest extends MockObjectTestCase
         }
     }
 
+    /**
+     * Test that deployables are copied concurrently when the deployer supports it.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDeployablesAreCopiedConcurrently() throws Exception
+    {
+        WAR war1 = new WAR("ram:///path1/first.war");
+        this.fsManager.resolveFile(war1.getFile()).createFile();
+        WAR war2 = new WAR("ram:///path2/second.war");
+        this.fsManager.resolveFile(war2.getFile()).createFile();
+
+        AbstractCopyingInstalledLocalDeployer deployer = new ConcurrentCopyingDeployer(
+            createContainer(createContainerCapability(DeployableType.WAR), null),
+                new CyclicBarrier(2));
+        deployer.setParallelism(2);
+
+        Map<Deployable, DeployableMonitor> deployables =
+            new LinkedHashMap<Deployable, DeployableMonitor>();
+        deployables.put(war1, null);
+        deployables.put(war2, null);
+        DeploymentResult result = deployer.deployAll(deployables);
+
+        result.checkSuccessful();
+        assertTrue(this.fsManager.resolveFile("ram:///webapps/first.war").exists());
+        assertTrue(this.fsManager.resolveFile("ram:///webapps/second.war").exists());
+    }
+
+    /**
+     * Test that the web context of a deployable which failed to deploy can be used again.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testWebContextIsFreedWhenDeploymentFails() throws Exception
+    {
+        AbstractCopyingInstalledLocalDeployer deployer = new TestableCopyingDeployer(
+            createContainer(createContainerCapability(DeployableType.WAR), null));
+
+        WAR war = new WAR("ram:///some/warfile.war");
+        try
+        {
+            deployer.deploy(war);
+            fail("Should have thrown a ContainerException here");
+        }
+        catch (ContainerException expected)
+        {
+            // Expected, the WAR does not exist
+        }
+
+        this.fsManager.resolveFile(war.getFile()).createFile();
+        deployer.deploy(war);
+        assertTrue(this.fsManager.resolveFile("ram:///webapps/warfile.war").exists());
+    }
+
     /**
      * Test deployment when the container does not support a given deployable type.
      */
@@ -0,0 +1,160 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.deployer.DeployableMonitor;
+import org.codehaus.cargo.container.deployer.DeployableMonitorListener;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Unit tests for {@link DeployerWatchdogGroup}.
+ * 
+ */
+public class DeployerWatchdogGroupTest extends TestCase
+{
+    /**
+     * Monitor reporting its deployable as deployed once a given time has elapsed.
+     */
+    private static class DelayedMonitor extends LoggedObject implements DeployableMonitor
+    {
+        /**
+         * Listeners.
+         */
+        private final List<DeployableMonitorListener> listeners =
+            new ArrayList<DeployableMonitorListener>();
+
+        /**
+         * Deployable name.
+         */
+        private final String name;
+
+        /**
+         * Time at which the deployable is deployed, in milliseconds.
+         */
+        private final long deployedAt;
+
+        /**
+         * Timeout, in milliseconds.
+         */
+        private final long timeout;
+
+        /**
+         * @param name Deployable name.
+         * @param delay Delay after which the deployable is deployed, in milliseconds.
+         * @param timeout Timeout, in milliseconds.
+         */
+        public DelayedMonitor(String name, long delay, long timeout)
+        {
+            this.name = name;
+            this.deployedAt = System.currentTimeMillis() + delay;
+            this.timeout = timeout;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void registerListener(DeployableMonitorListener listener)
+        {
+            this.listeners.add(listener);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void monitor()
+        {
+            boolean deployed = System.currentTimeMillis() >= this.deployedAt;
+            for (DeployableMonitorListener listener : this.listeners)
+            {
+                if (deployed)
+                {
+                    listener.deployed();
+                }
+                else
+                {
+                    listener.undeployed();
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public long getTimeout()
+        {
+            return this.timeout;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String getDeployableName()
+        {
+            return this.name;
+        }
+    }
+
+    /**
+     * Test that deployables are waited for concurrently and reported in completion order.
+     */
+    public void testWatchConcurrently()
+    {
+        DeployerWatchdogGroup group = new DeployerWatchdogGroup();
+        group.addMonitor(new DelayedMonitor("slow", 1000L, 10000L));
+        group.addMonitor(new DelayedMonitor("fast", 200L, 10000L));
+        group.addMonitor(new DelayedMonitor("medium", 600L, 10000L));
+
+        long start = System.currentTimeMillis();
+        Map<String, Long> completed = group.watch(true);
+        long duration = System.currentTimeMillis() - start;
+
+        assertEquals("[fast, medium, slow]", completed.keySet().toString());
+        assertTrue("Took " + duration + " ms", duration < 1800L);
+        assertTrue(completed.get("slow").longValue() >= 1000L);
+    }
+
+    /**
+     * Test that a failing deployable is reported once the others are done.
+     */
+    public void testTimeout()
+    {
+        DeployerWatchdogGroup group = new DeployerWatchdogGroup();
+        group.addMonitor(new DelayedMonitor("never", Long.MAX_VALUE / 2, 300L));
+        group.addMonitor(new DelayedMonitor("ready", 0L, 10000L));
+
+        try
+        {
+            group.watch(true);
+            fail("The deployable which never deploys should have been reported");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith(
+                "1 of 2 deployables failed to finish deploying:\n  never: "));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.deployer.LogFileDeployableMonitor;
+
+/**
+ * Unit tests for {@link DeployerWatchdog}.
+ * 
+ */
+public class DeployerWatchdogTest extends TestCase
+{
+    /**
+     * Log file used by the tests.
+     */
+    private File logFile;
+
+    /**
+     * Creates an empty log file. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.logFile = new File("target/watchdog/" + getName() + ".log");
+        this.logFile.getParentFile().mkdirs();
+        this.logFile.delete();
+        append("");
+    }
+
+    /**
+     * Test that the watchdog returns as soon as the log line is written, without waiting for its
+     * next poll.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testWatchIsWokenUpByLogFileMonitor() throws Exception
+    {
+        LogFileDeployableMonitor monitor =
+            new LogFileDeployableMonitor(this.logFile, "Server started in \\d+ ms", 30000L);
+        DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
+        watchdog.setPollInterval(20000L, 20000L);
+
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                    append("Starting server\n");
+                    append("Server started in 1234 ms\n");
+                }
+                catch (Exception e)
+                {
+                    throw new IllegalStateException(e.toString());
+                }
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        writer.start();
+        try
+        {
+            watchdog.watchForAvailability();
+        }
+        finally
+        {
+            monitor.stop();
+            writer.join();
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000L);
+    }
+
+    /**
+     * Test that lines before the start offset are ignored.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testLogFileMonitorIgnoresLinesBeforeStartOffset() throws Exception
+    {
+        append("Server started in 10 ms\r\n");
+        LogFileDeployableMonitor monitor =
+            new LogFileDeployableMonitor(this.logFile, "Server started", 200L);
+        monitor.setStartOffset(this.logFile.length());
+        append("Starting server\r\nServer sta");
+
+        DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
+        try
+        {
+            watchdog.watchForAvailability();
+            fail("The monitor should not have found a line written before its start offset");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage().contains("within the timeout period [200]"));
+        }
+        finally
+        {
+            monitor.stop();
+        }
+
+        append("rted\r\n");
+        monitor = new LogFileDeployableMonitor(this.logFile, "^Server started$", 200L);
+        new DeployerWatchdog(monitor).watchForAvailability();
+        monitor.stop();
+    }
+
+    /**
+     * Appends text to the log file.
+     * @param text Text to append.
+     * @throws IOException If anything goes wrong.
+     */
+    private void append(String text) throws IOException
+    {
+        OutputStream out = new FileOutputStream(this.logFile, true);
+        try
+        {
+            out.write(text.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
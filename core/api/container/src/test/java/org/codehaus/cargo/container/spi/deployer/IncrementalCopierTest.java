@@ -0,0 +1,158 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import java.io.File;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.FileHandler;
+
+/**
+ * Unit tests for {@link IncrementalCopier}.
+ * 
+ */
+public class IncrementalCopierTest extends TestCase
+{
+    /**
+     * File handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Test directory.
+     */
+    private String testDir;
+
+    /**
+     * Creates the test directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new DefaultFileHandler();
+        this.testDir = new File("target/incremental-copier/" + getName()).getAbsolutePath();
+        this.fileHandler.delete(this.testDir);
+        this.fileHandler.mkdirs(this.testDir);
+    }
+
+    /**
+     * Test that archives are copied, not hard linked, unless requested.
+     */
+    public void testCopyFileDoesNotLinkByDefault()
+    {
+        String source = this.fileHandler.append(this.testDir, "source.war");
+        String target = this.fileHandler.append(this.testDir, "target.war");
+        String manifest = this.fileHandler.append(this.testDir, "manifest.properties");
+        this.fileHandler.writeTextFile(source, "version 1", "UTF-8");
+
+        IncrementalCopier copier = new IncrementalCopier(this.fileHandler);
+        assertTrue(copier.copyFile(source, target, manifest));
+
+        // Rewrite the source in place, as a build would
+        this.fileHandler.writeTextFile(source, "version 2", "UTF-8");
+        assertEquals("version 1", this.fileHandler.readTextFile(target, "UTF-8"));
+    }
+
+    /**
+     * Test that an unchanged file is not copied again.
+     */
+    public void testCopyFileSkipsUnchangedFile()
+    {
+        String source = this.fileHandler.append(this.testDir, "source.war");
+        String target = this.fileHandler.append(this.testDir, "target.war");
+        String manifest = this.fileHandler.append(this.testDir, "manifest.properties");
+        this.fileHandler.writeTextFile(source, "version 1", "UTF-8");
+
+        IncrementalCopier copier = new IncrementalCopier(this.fileHandler);
+        copier.setUseHardLinks(false);
+        assertTrue(copier.copyFile(source, target, manifest));
+        assertEquals("version 1", this.fileHandler.readTextFile(target, "UTF-8"));
+        assertFalse(copier.copyFile(source, target, manifest));
+        assertTrue(copier.isUnchanged(source, target, manifest));
+
+        this.fileHandler.writeTextFile(source, "version 22", "UTF-8");
+        assertFalse(copier.isUnchanged(source, target, manifest));
+        assertTrue(copier.copyFile(source, target, manifest));
+        assertEquals("version 22", this.fileHandler.readTextFile(target, "UTF-8"));
+    }
+
+    /**
+     * Test that a file is copied again when its target has disappeared.
+     */
+    public void testCopyFileRestoresDeletedTarget()
+    {
+        String source = this.fileHandler.append(this.testDir, "source.war");
+        String target = this.fileHandler.append(this.testDir, "target.war");
+        String manifest = this.fileHandler.append(this.testDir, "manifest.properties");
+        this.fileHandler.writeTextFile(source, "content", "UTF-8");
+
+        IncrementalCopier copier = new IncrementalCopier(this.fileHandler);
+        assertTrue(copier.copyFile(source, target, manifest));
+        this.fileHandler.delete(target);
+        assertFalse(copier.isUnchanged(source, target, manifest));
+        assertTrue(copier.copyFile(source, target, manifest));
+        assertEquals("content", this.fileHandler.readTextFile(target, "UTF-8"));
+    }
+
+    /**
+     * Test that only changed files of a directory are copied and that removed files are deleted.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCopyDirectorySynchronizesChanges() throws Exception
+    {
+        String source = this.fileHandler.append(this.testDir, "source");
+        String target = this.fileHandler.append(this.testDir, "target");
+        String manifest = this.fileHandler.append(this.testDir, "manifest.properties");
+        this.fileHandler.writeTextFile(this.fileHandler.append(source, "index.jsp"), "index",
+            "UTF-8");
+        this.fileHandler.writeTextFile(this.fileHandler.append(source, "WEB-INF/web.xml"),
+            "web.xml", "UTF-8");
+        this.fileHandler.writeTextFile(this.fileHandler.append(source, "old.jsp"), "old",
+            "UTF-8");
+        this.fileHandler.writeTextFile(this.fileHandler.append(source, ".svn/entries"), "svn",
+            "UTF-8");
+
+        IncrementalCopier copier = new IncrementalCopier(this.fileHandler);
+        assertEquals(3, copier.copyDirectory(source, target, manifest));
+        assertEquals("web.xml", this.fileHandler.readTextFile(
+            this.fileHandler.append(target, "WEB-INF/web.xml"), "UTF-8"));
+        assertFalse(this.fileHandler.exists(this.fileHandler.append(target, ".svn")));
+
+        Properties entries = new Properties();
+        entries.load(this.fileHandler.getInputStream(manifest));
+        assertEquals(3, entries.size());
+        assertNotNull(entries.getProperty("WEB-INF/web.xml"));
+
+        assertEquals(0, copier.copyDirectory(source, target, manifest));
+
+        this.fileHandler.writeTextFile(this.fileHandler.append(source, "index.jsp"),
+            "new index", "UTF-8");
+        this.fileHandler.delete(this.fileHandler.append(source, "old.jsp"));
+        assertEquals(2, copier.copyDirectory(source, target, manifest));
+        assertEquals("new index", this.fileHandler.readTextFile(
+            this.fileHandler.append(target, "index.jsp"), "UTF-8"));
+        assertFalse(this.fileHandler.exists(this.fileHandler.append(target, "old.jsp")));
+    }
+}
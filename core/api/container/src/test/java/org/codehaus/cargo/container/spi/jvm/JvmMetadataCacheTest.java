@@ -0,0 +1,162 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link JvmMetadataCache} and {@link JvmMetadata}.
+ * 
+ */
+public class JvmMetadataCacheTest extends TestCase
+{
+    /**
+     * Cache file.
+     */
+    private File cacheFile;
+
+    /**
+     * Fake <code>java</code> executable.
+     */
+    private File java;
+
+    /**
+     * Cache which counts probes instead of running <code>java -version</code>.
+     */
+    private static class CountingJvmMetadataCache extends JvmMetadataCache
+    {
+        /**
+         * Number of probes.
+         */
+        private int probes;
+
+        /**
+         * @param cacheFile Cache file.
+         */
+        public CountingJvmMetadataCache(File cacheFile)
+        {
+            super(cacheFile);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected JvmMetadata probe(File java)
+        {
+            probes++;
+            return new JvmMetadata("1.7.0_80", "Java(TM) SE Runtime Environment", "Test VM");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.cacheFile = File.createTempFile("jvm-metadata", ".properties");
+        this.cacheFile.delete();
+        this.java = File.createTempFile("java", ".exe");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.cacheFile.delete();
+        this.java.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test parsing the output of <code>java -version</code>.
+     */
+    public void testParse()
+    {
+        JvmMetadata java7 = JvmMetadata.parse("java version \"1.7.0_80\"\n"
+            + "Java(TM) SE Runtime Environment (build 1.7.0_80-b15)\n"
+            + "Java HotSpot(TM) 64-Bit Server VM (build 24.80-b11, mixed mode)\n");
+        assertEquals("1.7.0_80", java7.getVersion());
+        assertEquals(7, java7.getMajorVersion());
+        assertEquals("Java(TM) SE Runtime Environment", java7.getRuntimeName());
+        assertEquals("Java HotSpot(TM) 64-Bit Server VM", java7.getVmName());
+        assertTrue(java7.isPermGenSupported());
+
+        JvmMetadata java17 = JvmMetadata.parse("Picked up JAVA_TOOL_OPTIONS: -Xss1m\r\n"
+            + "openjdk version \"17.0.9\" 2023-10-17\r\n"
+            + "OpenJDK Runtime Environment Temurin-17.0.9+9 (build 17.0.9+9)\r\n"
+            + "OpenJDK 64-Bit Server VM Temurin-17.0.9+9 (build 17.0.9+9, mixed mode)\r\n");
+        assertEquals(17, java17.getMajorVersion());
+        assertEquals("OpenJDK Runtime Environment Temurin-17.0.9+9", java17.getRuntimeName());
+        assertFalse(java17.isPermGenSupported());
+
+        assertEquals(9, JvmMetadata.parse("java version \"9-ea\"").getMajorVersion());
+        assertNull(JvmMetadata.parse("Error: could not find libjava.so"));
+    }
+
+    /**
+     * Test that the metadata is cached in memory and on disk, and invalidated when the executable
+     * changes.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCache() throws Exception
+    {
+        CountingJvmMetadataCache cache = new CountingJvmMetadataCache(this.cacheFile);
+        assertEquals(7, cache.getMetadata(this.java).getMajorVersion());
+        assertEquals(7, cache.getMetadata(this.java).getMajorVersion());
+        assertEquals(1, cache.probes);
+        assertTrue(this.cacheFile.isFile());
+
+        CountingJvmMetadataCache otherProcessCache = new CountingJvmMetadataCache(this.cacheFile);
+        JvmMetadata metadata = otherProcessCache.getMetadata(this.java);
+        assertEquals(0, otherProcessCache.probes);
+        assertEquals("1.7.0_80", metadata.getVersion());
+        assertEquals("Test VM", metadata.getVmName());
+
+        this.java.setLastModified(this.java.lastModified() - 60000);
+        otherProcessCache.getMetadata(this.java);
+        assertEquals(1, otherProcessCache.probes);
+    }
+
+    /**
+     * Test probing the JVM running the tests.
+     * 
+     * @throws IOException If the JVM cannot be probed.
+     */
+    public void testProbeCurrentJvm() throws IOException
+    {
+        File currentJava = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        if (!currentJava.isFile())
+        {
+            currentJava = new File(currentJava.getPath() + ".exe");
+        }
+        JvmMetadata metadata = new JvmMetadataCache(null).getMetadata(currentJava);
+        assertEquals(new JvmMetadata(System.getProperty("java.version"), null, null)
+            .getMajorVersion(), metadata.getMajorVersion());
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Unit tests for {@link ProcessJvmLauncher}.
+ * 
+ */
+public class ProcessJvmLauncherTest extends TestCase
+{
+    /**
+     * Classpath of the tests, to launch {@link SleeperMain} with.
+     */
+    private static final String[] CLASSPATH =
+        System.getProperty("java.class.path").split(File.pathSeparator);
+
+    /**
+     * Output file.
+     */
+    private File outputFile;
+
+    /**
+     * Listener recording the life cycle of a process.
+     */
+    private static class RecordingListener implements JvmProcessListener
+    {
+        /**
+         * Released once the process has started.
+         */
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Released once the process has exited.
+         */
+        private final CountDownLatch exited = new CountDownLatch(1);
+
+        /**
+         * Identifier of the started process.
+         */
+        private volatile long pid;
+
+        /**
+         * {@inheritDoc}
+         */
+        public void processStarted(ProcessJvmLauncher launcher, long pid)
+        {
+            this.pid = pid;
+            this.started.countDown();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void processExited(ProcessJvmLauncher launcher, int exitCode)
+        {
+            this.exited.countDown();
+        }
+    }
+
+    /**
+     * Main class of the JVM launched by the tests, which sleeps until killed.
+     */
+    public static final class SleeperMain
+    {
+        /**
+         * Utility class.
+         */
+        private SleeperMain()
+        {
+        }
+
+        /**
+         * @param args Ignored.
+         * @throws InterruptedException If interrupted.
+         */
+        public static void main(String[] args) throws InterruptedException
+        {
+            Thread.sleep(60000);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.outputFile = File.createTempFile("cargo-process-", ".log");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.outputFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that the output of the process goes to the output file and that its exit code is
+     * returned.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExecuteWithOutputFile() throws Exception
+    {
+        ProcessJvmLauncher launcher = new ProcessJvmLauncher(new LoggedObject());
+        launcher.setOutputFile(this.outputFile);
+        launcher.setAppendOutput(true);
+        launcher.setMainClass("-version");
+
+        assertEquals(0, launcher.execute());
+
+        FileHandler fileHandler = new DefaultFileHandler();
+        String output = fileHandler.readTextFile(this.outputFile.getPath(), "UTF-8");
+        assertTrue("Unexpected output: " + output, output.contains("version"));
+    }
+
+    /**
+     * Test that the launched process is tracked, that listeners are notified and that the
+     * process can be killed.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStartAndKill() throws Exception
+    {
+        ProcessJvmLauncher launcher = new ProcessJvmLauncher(new LoggedObject());
+        RecordingListener listener = new RecordingListener();
+        launcher.addProcessListener(listener);
+        launcher.setOutputFile(this.outputFile);
+        launcher.addClasspathEntries(CLASSPATH);
+        launcher.setMainClass(SleeperMain.class.getName());
+
+        assertFalse(launcher.isRunning());
+        launcher.start();
+        assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+        assertEquals(launcher.getPid(), listener.pid);
+        if (File.separatorChar == '/')
+        {
+            assertTrue("Unknown pid", launcher.getPid() > 0);
+        }
+        assertTrue(launcher.isRunning());
+        assertNull(launcher.getExitCode());
+
+        launcher.kill();
+        assertTrue(listener.exited.await(10, TimeUnit.SECONDS));
+        assertFalse(launcher.isRunning());
+        assertNotNull(launcher.getExitCode());
+    }
+
+    /**
+     * Test that the process is killed once its timeout elapses.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testTimeout() throws Exception
+    {
+        ProcessJvmLauncher launcher = new ProcessJvmLauncher(new LoggedObject());
+        launcher.setOutputFile(this.outputFile);
+        launcher.addClasspathEntries(CLASSPATH);
+        launcher.setMainClass(SleeperMain.class.getName());
+        launcher.setTimeout(500);
+
+        long start = System.currentTimeMillis();
+        launcher.execute();
+        assertTrue(System.currentTimeMillis() - start < 30000);
+    }
+
+    /**
+     * Test the command line of a JVM launched with a JAR file.
+     */
+    public void testCommandLineWithJar()
+    {
+        ProcessJvmLauncher launcher = new ProcessJvmLauncher(new LoggedObject());
+        launcher.setJvm("java");
+        launcher.addJvmArgumentLine("-Xmx64m -Dquoted=\"a b\"");
+        launcher.setSystemProperty("name", "value");
+        launcher.addClasspathEntries("ignored.jar");
+        launcher.setJarFile(new File("app.jar"));
+        launcher.addAppArguments("start");
+
+        assertEquals("java -Xmx64m \"-Dquoted=a b\" -Dname=value -jar "
+            + new File("app.jar").getAbsolutePath() + " start", launcher.getCommandLine());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.util;
+
+import java.net.ServerSocket;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.container.ContainerException;
+
+/**
+ * Unit tests for {@link ContainerStopStrategy}.
+ * 
+ */
+public class ContainerStopStrategyTest extends TestCase
+{
+    /**
+     * Test that waiting returns shortly after the last port is released.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testWaitForStopReturnsOncePortsAreReleased() throws Exception
+    {
+        final ServerSocket socket = new ServerSocket(0);
+        ContainerStopStrategy stopStrategy = new ContainerStopStrategy();
+        stopStrategy.addPort(socket.getLocalPort());
+
+        Thread closer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                    socket.close();
+                }
+                catch (Exception e)
+                {
+                    throw new IllegalStateException(e.toString());
+                }
+            }
+        };
+        closer.start();
+
+        long start = System.currentTimeMillis();
+        stopStrategy.waitForStop(10000L);
+        assertTrue(System.currentTimeMillis() - start < 5000L);
+        closer.join();
+    }
+
+    /**
+     * Test that a port which is never released makes waiting time out.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testWaitForStopTimesOut() throws Exception
+    {
+        ServerSocket socket = new ServerSocket(0);
+        try
+        {
+            ContainerStopStrategy stopStrategy = new ContainerStopStrategy();
+            stopStrategy.addPort(socket.getLocalPort());
+            stopStrategy.waitForStop(200L);
+            fail("The port is still open");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage().contains(
+                "Server port " + socket.getLocalPort() + " did not shutdown"));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+}
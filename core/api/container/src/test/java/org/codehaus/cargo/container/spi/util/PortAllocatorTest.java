@@ -0,0 +1,180 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.util;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.ServerSocket;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link PortAllocator}.
+ * 
+ */
+public class PortAllocatorTest extends TestCase
+{
+    /**
+     * Lock directory used by the tests.
+     */
+    private File lockDirectory;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.lockDirectory = new File("target/port-locks");
+    }
+
+    /**
+     * Test that a free preferred port is reserved as is.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReserveFreePreferredPort() throws Exception
+    {
+        int port = findFreePort();
+        PortAllocator allocator = new PortAllocator(this.lockDirectory);
+        try
+        {
+            assertEquals(port, allocator.reserve(port));
+            assertTrue(allocator.getReservedPorts().contains(port));
+        }
+        finally
+        {
+            allocator.releaseAll();
+        }
+        assertTrue(allocator.getReservedPorts().isEmpty());
+    }
+
+    /**
+     * Test that a port which is in use is replaced by a free one.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReservePortInUse() throws Exception
+    {
+        ServerSocket socket = new ServerSocket(0);
+        PortAllocator allocator = new PortAllocator(this.lockDirectory);
+        try
+        {
+            int reserved = allocator.reserve(socket.getLocalPort());
+            assertTrue(reserved != socket.getLocalPort());
+            assertTrue(reserved > 0);
+        }
+        finally
+        {
+            allocator.releaseAll();
+            socket.close();
+        }
+    }
+
+    /**
+     * Test that a port reserved by an allocator is not reserved by another one until released.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReservedPortIsNotReservedTwice() throws Exception
+    {
+        int port = findFreePort();
+        PortAllocator first = new PortAllocator(this.lockDirectory);
+        PortAllocator second = new PortAllocator(this.lockDirectory);
+        try
+        {
+            assertEquals(port, first.reserve(port));
+            assertTrue(second.reserve(port) != port);
+            assertTrue(first.reserve(port) != port);
+
+            first.releaseAll();
+            second.releaseAll();
+            assertEquals(port, second.reserve(port));
+        }
+        finally
+        {
+            first.releaseAll();
+            second.releaseAll();
+        }
+    }
+
+    /**
+     * Test that another allocator of this process trying a reserved port does not release the
+     * lock seen by other processes.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReservedPortStaysLockedForOtherProcesses() throws Exception
+    {
+        int port = findFreePort();
+        File lockFile = new File(this.lockDirectory, "port-" + port + ".lock");
+        PortAllocator first = new PortAllocator(this.lockDirectory);
+        PortAllocator second = new PortAllocator(this.lockDirectory);
+        try
+        {
+            assertEquals(port, first.reserve(port));
+            assertTrue(second.reserve(port) != port);
+            assertFalse("Lock file locked by another process", lockFromOtherProcess(lockFile));
+        }
+        finally
+        {
+            first.releaseAll();
+            second.releaseAll();
+        }
+        assertTrue("Lock file not locked by another process", lockFromOtherProcess(lockFile));
+    }
+
+    /**
+     * @param lockFile Lock file.
+     * @return <code>true</code> if a new JVM could lock <code>lockFile</code>.
+     * @throws Exception If anything goes wrong.
+     */
+    private static boolean lockFromOtherProcess(File lockFile) throws Exception
+    {
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java")
+            .getAbsolutePath();
+        String classpath = new File(PortLockProbeMain.class.getProtectionDomain().getCodeSource()
+            .getLocation().toURI()).getAbsolutePath();
+        Process process = new ProcessBuilder(java, "-cp", classpath,
+            PortLockProbeMain.class.getName(), lockFile.getAbsolutePath()).redirectErrorStream(true)
+                .start();
+        process.getOutputStream().close();
+        InputStream output = process.getInputStream();
+        while (output.read() != -1)
+        {
+            // Discard the output
+        }
+        return process.waitFor() == 0;
+    }
+
+    /**
+     * @return A port which is currently free.
+     * @throws Exception If anything goes wrong.
+     */
+    private static int findFreePort() throws Exception
+    {
+        ServerSocket socket = new ServerSocket(0);
+        try
+        {
+            return socket.getLocalPort();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+}
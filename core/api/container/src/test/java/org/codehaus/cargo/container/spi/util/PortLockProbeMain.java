@@ -0,0 +1,50 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.util;
+
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+/**
+ * Run by {@link PortAllocatorTest} in a separate JVM: tries to lock the file given as argument,
+ * exits with <code>0</code> if it succeeded and <code>1</code> otherwise.
+ * 
+ */
+public final class PortLockProbeMain
+{
+    /**
+     * Utility class.
+     */
+    private PortLockProbeMain()
+    {
+        // Nothing
+    }
+
+    /**
+     * @param args Lock file.
+     * @throws Exception If anything goes wrong.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        RandomAccessFile file = new RandomAccessFile(args[0], "rw");
+        FileLock lock = file.getChannel().tryLock();
+        System.exit(lock != null ? 0 : 1);
+    }
+}
@@ -19,15 +19,26 @@
  */
 package org.codehaus.cargo.generic;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.apache.commons.discovery.jdk.JDKHooks;
-import org.apache.commons.discovery.resource.ClassLoaders;
-import org.apache.commons.discovery.tools.SPInterface;
-import org.apache.commons.discovery.tools.Service;
+import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.internal.util.ResourceUtils;
 import org.codehaus.cargo.generic.configuration.ConfigurationCapabilityFactory;
 import org.codehaus.cargo.generic.configuration.ConfigurationFactory;
@@ -35,6 +46,7 @@ import org.codehaus.cargo.generic.configuration.builder.ConfigurationBuilderFact
 import org.codehaus.cargo.generic.deployable.DeployableFactory;
 import org.codehaus.cargo.generic.deployer.DeployerFactory;
 import org.codehaus.cargo.generic.packager.PackagerFactory;
+import org.codehaus.cargo.generic.spi.AbstractGenericHintFactory;
 
 /**
  * SPI to be implemented by container implementation to register implementations to their factories.
@@ -55,6 +67,26 @@ import org.codehaus.cargo.generic.packager.PackagerFactory;
  */
 public abstract class AbstractFactoryRegistry
 {
+    /**
+     * Name of the optional index resource through which container modules list, for each
+     * container id they implement, the class name of their registry. It is generated at build
+     * time by {@link org.codehaus.cargo.generic.internal.FactoryRegistryIndexMain}.
+     */
+    public static final String INDEX_RESOURCE = "META-INF/cargo/factory-registries.properties";
+
+    /**
+     * Name of the service provider configuration files listing the registries.
+     */
+    private static final String SERVICES_RESOURCE =
+        "META-INF/services/" + AbstractFactoryRegistry.class.getName();
+
+    /**
+     * Discovered registries, keyed by the first class loader searched. The discoveries are only
+     * softly referenced as registries reference their class loader.
+     */
+    private static final Map<ClassLoader, SoftReference<Discovery>> DISCOVERIES =
+        new WeakHashMap<ClassLoader, SoftReference<Discovery>>();
+
     /**
      * Discovers all the {@link org.codehaus.cargo.container.deployable.Deployable}s and adds them
      * to the given {@link DeployableFactory}.
@@ -63,6 +95,13 @@ public abstract class AbstractFactoryRegistry
      * The discovery is done by <a href="http://java.sun.com/j2se/1.3/docs/guide/jar/jar.html">the
      * standard service loader mechanism</a>, by looking for
      * <tt>/META-INF/services/org.codehaus.cargo.generic.AbstractFactoryRegistry</tt> files.
+     * The discovered registries are cached for the whole process, per class loader.
+     * 
+     * <p>
+     * When the discovered container modules provide an index of the containers they implement
+     * (see {@link #INDEX_RESOURCE}) and the factory extends {@link AbstractGenericHintFactory},
+     * the indexed registries are only loaded when the factory is first asked about one of their
+     * containers. Registries missing from the index are registered immediately.
      * 
      * @param classLoader The class loader to be used to search service provide configuration files.
      * If null, the value defaults to the thread context classloader. If that's also null, the value
@@ -72,12 +111,16 @@ public abstract class AbstractFactoryRegistry
      * @param factory The factory whose {@code register} method is invoked to receive
      * {@link org.codehaus.cargo.container.deployable.Deployable}s that are discovered.
      */
-    public static void register(ClassLoader classLoader, DeployableFactory factory)
+    public static void register(ClassLoader classLoader, final DeployableFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -86,12 +129,16 @@ public abstract class AbstractFactoryRegistry
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      * @param factory See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      */
-    public static void register(ClassLoader classLoader, ConfigurationFactory factory)
+    public static void register(ClassLoader classLoader, final ConfigurationFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -100,12 +147,17 @@ public abstract class AbstractFactoryRegistry
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      * @param factory See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      */
-    public static void register(ClassLoader classLoader, ConfigurationCapabilityFactory factory)
+    public static void register(ClassLoader classLoader,
+        final ConfigurationCapabilityFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -114,12 +166,16 @@ public abstract class AbstractFactoryRegistry
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      * @param factory See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      */
-    public static void register(ClassLoader classLoader, DeployerFactory factory)
+    public static void register(ClassLoader classLoader, final DeployerFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -128,12 +184,16 @@ public abstract class AbstractFactoryRegistry
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      * @param factory See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      */
-    public static void register(ClassLoader classLoader, PackagerFactory factory)
+    public static void register(ClassLoader classLoader, final PackagerFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -142,12 +202,16 @@ public abstract class AbstractFactoryRegistry
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      * @param factory See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      */
-    public static void register(ClassLoader classLoader, ContainerFactory factory)
+    public static void register(ClassLoader classLoader, final ContainerFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -156,12 +220,16 @@ public abstract class AbstractFactoryRegistry
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      * @param factory See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      */
-    public static void register(ClassLoader classLoader, ContainerCapabilityFactory factory)
+    public static void register(ClassLoader classLoader, final ContainerCapabilityFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -170,12 +238,16 @@ public abstract class AbstractFactoryRegistry
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      * @param factory See {@link #register(ClassLoader, DeployableFactory)} for the semantics.
      */
-    public static void register(ClassLoader classLoader, ConfigurationBuilderFactory factory)
+    public static void register(ClassLoader classLoader, final ConfigurationBuilderFactory factory)
     {
-        for (AbstractFactoryRegistry registry : list(classLoader))
+        register(classLoader, factory, new AbstractRegistration()
         {
-            registry.register(factory);
-        }
+            @Override
+            void register(AbstractFactoryRegistry registry)
+            {
+                registry.register(factory);
+            }
+        });
     }
 
     /**
@@ -239,64 +311,431 @@ public abstract class AbstractFactoryRegistry
     }
 
     /**
-     * Lists up {@link AbstractFactoryRegistry}s that are discovered.
+     * Clears the cache of discovered registries, so that the next factory created discovers them
+     * again. Only needed if service provider configuration files are added to a class loader
+     * which has already been searched.
+     */
+    public static void clearCache()
+    {
+        synchronized (DISCOVERIES)
+        {
+            DISCOVERIES.clear();
+        }
+    }
+
+    /**
+     * Registers the discovered registries to a factory, lazily when possible.
+     * 
+     * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for more details.
+     * @param factory The factory to register to.
+     * @param registration Registers a registry to the factory.
+     */
+    private static void register(ClassLoader classLoader, Object factory,
+        AbstractRegistration registration)
+    {
+        Discovery discovery = discover(classLoader);
+        IndexedRegistration indexedRegistration = new IndexedRegistration(discovery, registration);
+        if (factory instanceof AbstractGenericHintFactory && discovery.isIndexed())
+        {
+            indexedRegistration.registerUnindexed();
+            ((AbstractGenericHintFactory<?>) factory).setLazyRegistration(indexedRegistration);
+        }
+        else
+        {
+            indexedRegistration.registerAll();
+        }
+    }
+
+    /**
+     * Gets the registries discovered through a list of class loaders, from the cache if they have
+     * already been discovered.
+     * 
+     * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for more details.
+     * @return always non-null but can be empty.
+     */
+    private static Discovery discover(ClassLoader classLoader)
+    {
+        List<ClassLoader> loaders = getClassLoaders(classLoader);
+        if (loaders.isEmpty())
+        {
+            // this is not our day. bail out.
+            return new Discovery(loaders);
+        }
+
+        synchronized (DISCOVERIES)
+        {
+            SoftReference<Discovery> cached = DISCOVERIES.get(loaders.get(0));
+            Discovery discovery = cached != null ? cached.get() : null;
+            if (discovery == null || !discovery.isFor(loaders))
+            {
+                discovery = new Discovery(loaders);
+                DISCOVERIES.put(loaders.get(0), new SoftReference<Discovery>(discovery));
+            }
+            return discovery;
+        }
+    }
+
+    /**
+     * Lists up the class loaders to search for registries, in search order.
      * 
      * @param classLoader See {@link #register(ClassLoader, DeployableFactory)} for more details.
      * @return always non-null but can be empty.
      */
-    private static List<AbstractFactoryRegistry> list(ClassLoader classLoader)
+    private static List<ClassLoader> getClassLoaders(ClassLoader classLoader)
+    {
+        ClassLoader[] candidates = new ClassLoader[]
+        {
+            classLoader,
+            Thread.currentThread().getContextClassLoader(),
+            AbstractFactoryRegistry.class.getClassLoader(),
+            ResourceUtils.getResourceLoader(),
+            JDKHooks.getJDKHooks().getSystemClassLoader()
+        };
+
+        List<ClassLoader> loaders = new ArrayList<ClassLoader>();
+        for (ClassLoader candidate : candidates)
+        {
+            if (candidate != null && !loaders.contains(candidate))
+            {
+                loaders.add(candidate);
+            }
+        }
+        return loaders;
+    }
+
+    /**
+     * Registers a registry to a factory of a given type.
+     */
+    private abstract static class AbstractRegistration
+    {
+        /**
+         * @param registry Registry to register to the factory.
+         */
+        abstract void register(AbstractFactoryRegistry registry);
+    }
+
+    /**
+     * Registers the registries of a discovery to a factory, each registry at most once.
+     */
+    private static class IndexedRegistration implements
+        AbstractGenericHintFactory.LazyRegistration
     {
-        ClassLoader cl;
-        ClassLoaders loaders = new ClassLoaders();
+        /**
+         * Discovered registries.
+         */
+        private final Discovery discovery;
+
+        /**
+         * Registers a registry to the factory.
+         */
+        private final AbstractRegistration registration;
 
-        cl = classLoader;
-        if (cl != null)
+        /**
+         * Class names of the registries already registered to the factory.
+         */
+        private final Set<String> registered = new HashSet<String>();
+
+        /**
+         * @param discovery Discovered registries.
+         * @param registration Registers a registry to the factory.
+         */
+        public IndexedRegistration(Discovery discovery, AbstractRegistration registration)
         {
-            loaders.put(cl);
+            this.discovery = discovery;
+            this.registration = registration;
         }
 
-        cl = Thread.currentThread().getContextClassLoader();
-        if (cl != null)
+        /**
+         * {@inheritDoc}. Containers which are not in the index cause all registries to be
+         * registered, as they may come from any of them.
+         */
+        public synchronized void register(String containerId)
         {
-            loaders.put(cl);
+            String provider = this.discovery.getIndexedProvider(containerId);
+            if (provider != null)
+            {
+                registerProvider(provider);
+            }
+            else
+            {
+                registerAll();
+            }
         }
 
-        cl = AbstractFactoryRegistry.class.getClassLoader();
-        if (cl != null)
+        /**
+         * {@inheritDoc}
+         */
+        public synchronized void registerAll()
         {
-            loaders.put(cl);
+            for (String provider : this.discovery.getProviders())
+            {
+                registerProvider(provider);
+            }
         }
 
-        cl = ResourceUtils.getResourceLoader();
-        if (cl != null)
+        /**
+         * Registers all registries which are not in the index.
+         */
+        public synchronized void registerUnindexed()
         {
-            loaders.put(cl);
+            for (String provider : this.discovery.getProviders())
+            {
+                if (!this.discovery.isIndexed(provider))
+                {
+                    registerProvider(provider);
+                }
+            }
         }
 
-        cl = JDKHooks.getJDKHooks().getSystemClassLoader();
-        if (cl != null)
+        /**
+         * @param provider Class name of the registry to register, unless already registered.
+         */
+        private void registerProvider(String provider)
         {
-            loaders.put(cl);
+            if (this.registered.add(provider))
+            {
+                AbstractFactoryRegistry registry = this.discovery.getRegistry(provider);
+                if (registry != null)
+                {
+                    this.registration.register(registry);
+                }
+            }
         }
+    }
+
+    /**
+     * Registries discovered through a list of class loaders. The service provider configuration
+     * files and indexes are read once, whereas registries are only instantiated when first used.
+     */
+    private static final class Discovery
+    {
+        /**
+         * Class loaders searched, in search order.
+         */
+        private final List<WeakReference<ClassLoader>> loaders =
+            new ArrayList<WeakReference<ClassLoader>>();
+
+        /**
+         * Class names of the discovered registries, in discovery order, with the class loader
+         * through which each was discovered.
+         */
+        private final Map<String, ClassLoader> providers =
+            new LinkedHashMap<String, ClassLoader>();
+
+        /**
+         * Class names of the registries implementing each container id in the index.
+         */
+        private final Map<String, String> index = new HashMap<String, String>();
 
-        if (loaders.size() == 0)
+        /**
+         * Class names of the registries present in the index.
+         */
+        private final Set<String> indexedProviders = new HashSet<String>();
+
+        /**
+         * Instantiated registries, keyed by class name.
+         */
+        private final Map<String, AbstractFactoryRegistry> registries =
+            new HashMap<String, AbstractFactoryRegistry>();
+
+        /**
+         * Reads the service provider configuration files and indexes of the class loaders.
+         * 
+         * @param loaders Class loaders to search, in search order.
+         */
+        public Discovery(List<ClassLoader> loaders)
         {
-            // this is not our day. bail out.
-            return Collections.EMPTY_LIST;
+            Map<String, String> rawIndex = new HashMap<String, String>();
+            try
+            {
+                Set<String> readResources = new HashSet<String>();
+                for (ClassLoader loader : loaders)
+                {
+                    this.loaders.add(new WeakReference<ClassLoader>(loader));
+                    readProviders(loader, readResources);
+                    readIndex(loader, readResources, rawIndex);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new ContainerException("Failed to discover the factory registries", e);
+            }
+
+            for (Map.Entry<String, String> indexEntry : rawIndex.entrySet())
+            {
+                if (this.providers.containsKey(indexEntry.getValue()))
+                {
+                    this.index.put(indexEntry.getKey(), indexEntry.getValue());
+                    this.indexedProviders.add(indexEntry.getValue());
+                }
+            }
+        }
+
+        /**
+         * @param loaders Class loaders to search, in search order.
+         * @return Whether this discovery searched the same class loaders.
+         */
+        public boolean isFor(List<ClassLoader> loaders)
+        {
+            if (loaders.size() != this.loaders.size())
+            {
+                return false;
+            }
+            for (int i = 0; i < loaders.size(); i++)
+            {
+                if (loaders.get(i) != this.loaders.get(i).get())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return Whether any of the discovered registries is indexed.
+         */
+        public boolean isIndexed()
+        {
+            return !this.indexedProviders.isEmpty();
+        }
+
+        /**
+         * @param provider Class name of a registry.
+         * @return Whether the registry is indexed.
+         */
+        public boolean isIndexed(String provider)
+        {
+            return this.indexedProviders.contains(provider);
+        }
+
+        /**
+         * @param containerId Container id.
+         * @return Class name of the registry implementing the container according to the index,
+         * <code>null</code> if the container is not in the index.
+         */
+        public String getIndexedProvider(String containerId)
+        {
+            return this.index.get(containerId);
+        }
+
+        /**
+         * @return Class names of the discovered registries, in discovery order.
+         */
+        public Set<String> getProviders()
+        {
+            return this.providers.keySet();
+        }
+
+        /**
+         * @param provider Class name of a discovered registry.
+         * @return The registry, <code>null</code> if the class is not a registry.
+         */
+        public synchronized AbstractFactoryRegistry getRegistry(String provider)
+        {
+            if (!this.registries.containsKey(provider))
+            {
+                Object registry;
+                try
+                {
+                    registry = Class.forName(provider, true, this.providers.get(provider))
+                        .newInstance();
+                }
+                catch (Exception e)
+                {
+                    throw new ContainerException("Cannot instantiate factory registry ["
+                        + provider + "]", e);
+                }
+                this.registries.put(provider, registry instanceof AbstractFactoryRegistry
+                    ? (AbstractFactoryRegistry) registry : null);
+            }
+            return this.registries.get(provider);
         }
 
-        List<AbstractFactoryRegistry> registries = new ArrayList<AbstractFactoryRegistry>();
-        Enumeration providers = Service.providers(
-                new SPInterface(AbstractFactoryRegistry.class), loaders);
-        while (providers.hasMoreElements())
+        /**
+         * Reads the service provider configuration files of a class loader.
+         * 
+         * @param loader Class loader.
+         * @param readResources URLs of the resources already read, to skip the resources shared
+         * with a parent class loader.
+         * @throws IOException If reading fails.
+         */
+        private void readProviders(ClassLoader loader, Set<String> readResources)
+            throws IOException
         {
-            Object provider = providers.nextElement();
-            if (provider instanceof AbstractFactoryRegistry)
+            Enumeration<URL> resources = loader.getResources(SERVICES_RESOURCE);
+            while (resources.hasMoreElements())
             {
-                registries.add((AbstractFactoryRegistry) provider);
+                URL resource = resources.nextElement();
+                if (!readResources.add(resource.toExternalForm()))
+                {
+                    continue;
+                }
+
+                BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(resource.openStream(), "UTF-8"));
+                try
+                {
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                    {
+                        int comment = line.indexOf('#');
+                        if (comment >= 0)
+                        {
+                            line = line.substring(0, comment);
+                        }
+                        line = line.trim();
+                        if (line.length() > 0 && !this.providers.containsKey(line))
+                        {
+                            this.providers.put(line, loader);
+                        }
+                    }
+                }
+                finally
+                {
+                    reader.close();
+                }
             }
         }
 
-        return registries;
+        /**
+         * Reads the indexes of a class loader.
+         * 
+         * @param loader Class loader.
+         * @param readResources URLs of the resources already read, to skip the resources shared
+         * with a parent class loader.
+         * @param rawIndex Index to add the entries to, entries already present are kept.
+         * @throws IOException If reading fails.
+         */
+        private static void readIndex(ClassLoader loader, Set<String> readResources,
+            Map<String, String> rawIndex) throws IOException
+        {
+            Enumeration<URL> resources = loader.getResources(INDEX_RESOURCE);
+            while (resources.hasMoreElements())
+            {
+                URL resource = resources.nextElement();
+                if (!readResources.add(resource.toExternalForm()))
+                {
+                    continue;
+                }
+
+                Properties entries = new Properties();
+                InputStream in = resource.openStream();
+                try
+                {
+                    entries.load(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+                for (Map.Entry<Object, Object> entry : entries.entrySet())
+                {
+                    if (!rawIndex.containsKey(entry.getKey()))
+                    {
+                        rawIndex.put((String) entry.getKey(), ((String) entry.getValue()).trim());
+                    }
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.generic.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.codehaus.cargo.container.Container;
+import org.codehaus.cargo.container.ContainerType;
+import org.codehaus.cargo.container.configuration.Configuration;
+import org.codehaus.cargo.generic.AbstractFactoryRegistry;
+import org.codehaus.cargo.generic.ContainerFactory;
+
+/**
+ * Generates, at build time, the index of the containers implemented by the registries of a
+ * container module (see {@link AbstractFactoryRegistry#INDEX_RESOURCE}). It takes as argument
+ * the classes directory of the module, reads the registries listed in its service provider
+ * configuration file and writes the index next to it. The module classes and their dependencies
+ * must be in the class path. This is a build tool of the container modules, not part of the
+ * Cargo API.
+ * 
+ */
+public final class FactoryRegistryIndexMain
+{
+    /**
+     * Utility class.
+     */
+    private FactoryRegistryIndexMain()
+    {
+        // Nothing
+    }
+
+    /**
+     * Generates the index.
+     * 
+     * @param args Classes directory of the container module.
+     * @throws Exception If anything goes wrong.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length != 1)
+        {
+            throw new IllegalArgumentException("Usage: FactoryRegistryIndexMain <classes dir>");
+        }
+
+        File classesDir = new File(args[0]);
+        File services = new File(classesDir, "META-INF/services/"
+            + AbstractFactoryRegistry.class.getName());
+        if (!services.isFile())
+        {
+            // Not a container module
+            return;
+        }
+
+        Map<String, String> index = new TreeMap<String, String>();
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(services), "UTF-8"));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                int comment = line.indexOf('#');
+                if (comment >= 0)
+                {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.length() > 0)
+                {
+                    for (String containerId : getContainerIds(line))
+                    {
+                        index.put(containerId, line);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        writeIndex(index, new File(classesDir, AbstractFactoryRegistry.INDEX_RESOURCE));
+    }
+
+    /**
+     * @param provider Class name of a registry.
+     * @return Ids of the containers the registry registers.
+     * @throws Exception If the registry cannot be instantiated.
+     */
+    private static Set<String> getContainerIds(String provider) throws Exception
+    {
+        AbstractFactoryRegistry registry = (AbstractFactoryRegistry) Class.forName(provider,
+            true, FactoryRegistryIndexMain.class.getClassLoader()).newInstance();
+        RecordingContainerFactory factory = new RecordingContainerFactory();
+
+        // The registration methods of the registries are only meant to be called by Cargo itself
+        Method register = AbstractFactoryRegistry.class.getDeclaredMethod("register",
+            ContainerFactory.class);
+        register.setAccessible(true);
+        register.invoke(registry, factory);
+        return factory.getContainerIds().keySet();
+    }
+
+    /**
+     * @param index Index to write.
+     * @param indexFile Index file.
+     * @throws IOException If writing fails.
+     */
+    private static void writeIndex(Map<String, String> index, File indexFile) throws IOException
+    {
+        indexFile.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile), "ISO-8859-1");
+        try
+        {
+            writer.write("# Generated by " + FactoryRegistryIndexMain.class.getName()
+                + ", do not edit\n");
+            for (Map.Entry<String, String> entry : index.entrySet())
+            {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Container factory which only records the containers registered to it.
+     */
+    private static class RecordingContainerFactory implements ContainerFactory
+    {
+        /**
+         * Registered container ids, with their types.
+         */
+        private Map<String, Set<ContainerType>> containerIds =
+            new HashMap<String, Set<ContainerType>>();
+
+        /**
+         * {@inheritDoc}
+         */
+        public void registerContainer(String containerId, ContainerType containerType,
+            Class<? extends Container> containerClass)
+        {
+            Set<ContainerType> types = this.containerIds.get(containerId);
+            if (types == null)
+            {
+                types = new HashSet<ContainerType>();
+                this.containerIds.put(containerId, types);
+            }
+            types.add(containerType);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Class<? extends Container> getContainerClass(String containerId,
+            ContainerType containerType)
+        {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean isContainerRegistered(String containerId, ContainerType containerType)
+        {
+            return this.containerIds.containsKey(containerId)
+                && this.containerIds.get(containerId).contains(containerType);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Map<String, Set<ContainerType>> getContainerIds()
+        {
+            return this.containerIds;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public Container createContainer(String containerId, ContainerType containerType,
+            Configuration configuration)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
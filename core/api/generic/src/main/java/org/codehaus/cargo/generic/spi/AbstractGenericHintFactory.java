@@ -28,6 +28,7 @@ import java.util.Map;
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.generic.internal.util.ContainerIdentity;
 import org.codehaus.cargo.generic.internal.util.RegistrationKey;
+import org.codehaus.cargo.generic.internal.util.SimpleContainerIdentity;
 import org.codehaus.cargo.util.log.LoggedObject;
 
 /**
@@ -43,6 +44,18 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
      */
     private Map<RegistrationKey, Class<? extends T>> mappings;
 
+    /**
+     * Source of the implementations which are registered on demand, <code>null</code> if all
+     * implementations are registered upfront.
+     */
+    private LazyRegistration lazyRegistration;
+
+    /**
+     * Whether implementations are currently being registered on demand. Only accessed while
+     * holding the lock of the factory, as are the {@link #mappings}.
+     */
+    private boolean registeringLazily;
+
     /**
      * Generic class to be extended by implementors of {@link AbstractGenericHintFactory} in order
      * to provide possible additional parameters.
@@ -52,6 +65,25 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
         // Extension classes should provide custom fields here.
     }
 
+    /**
+     * Source of implementations which are only registered to a factory when the factory is first
+     * asked about a given container.
+     */
+    public interface LazyRegistration
+    {
+        /**
+         * Registers the implementations for a container, if they have not been registered yet.
+         * 
+         * @param containerId Container id.
+         */
+        void register(String containerId);
+
+        /**
+         * Registers the implementations for all containers, if they have not been registered yet.
+         */
+        void registerAll();
+    }
+
     /**
      * Place to register default configurations.
      */
@@ -64,26 +96,82 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
      * @param key the key associated with the implementation class
      * @return true if the mapping is already registered or false otherwise
      */
-    protected boolean hasMapping(RegistrationKey key)
+    protected synchronized boolean hasMapping(RegistrationKey key)
     {
-        return getMappings().containsKey(key);
+        ensureRegistered(key);
+        return this.mappings.containsKey(key);
     }
 
     /**
      * @param key the key associated with the implementation class to return
      * @return the implementation class
      */
-    protected Class<? extends T> getMapping(RegistrationKey key)
+    protected synchronized Class<? extends T> getMapping(RegistrationKey key)
+    {
+        ensureRegistered(key);
+        return this.mappings.get(key);
+    }
+
+    /**
+     * @return a snapshot of the mappings indexed using a {@link RegistrationKey}.
+     */
+    protected synchronized Map<RegistrationKey, Class<? extends T>> getMappings()
+    {
+        LazyRegistration registration = this.lazyRegistration;
+        if (registration != null)
+        {
+            boolean wasRegisteringLazily = this.registeringLazily;
+            this.registeringLazily = true;
+            try
+            {
+                registration.registerAll();
+            }
+            finally
+            {
+                this.registeringLazily = wasRegisteringLazily;
+            }
+        }
+        return new HashMap<RegistrationKey, Class<? extends T>>(this.mappings);
+    }
+
+    /**
+     * Sets the source of the implementations to register on demand. Implementations registered
+     * on demand never replace the implementation already registered for the same key, so that
+     * implementations registered explicitly to the factory take precedence.
+     * 
+     * @param lazyRegistration Source of the implementations to register on demand.
+     */
+    public synchronized void setLazyRegistration(LazyRegistration lazyRegistration)
     {
-        return getMappings().get(key);
+        this.lazyRegistration = lazyRegistration;
     }
 
     /**
-     * @return the mappings indexed using a {@link RegistrationKey}.
+     * Registers on demand the implementations for the container of a key, unless the key
+     * already has an implementation. Callers hold the lock of the factory, so that lookups from
+     * several threads neither register the same container twice nor see half-registered
+     * mappings.
+     * 
+     * @param key the key which is about to be looked up
      */
-    protected Map<RegistrationKey, Class<? extends T>> getMappings()
+    private void ensureRegistered(RegistrationKey key)
     {
-        return this.mappings;
+        LazyRegistration registration = this.lazyRegistration;
+        if (registration != null && !this.mappings.containsKey(key)
+            && key.getContainerIdentity() instanceof SimpleContainerIdentity)
+        {
+            boolean wasRegisteringLazily = this.registeringLazily;
+            this.registeringLazily = true;
+            try
+            {
+                registration.register(
+                    ((SimpleContainerIdentity) key.getContainerIdentity()).getId());
+            }
+            finally
+            {
+                this.registeringLazily = wasRegisteringLazily;
+            }
+        }
     }
 
     /**
@@ -92,10 +180,13 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
      * @param key the key under which to register the implementation class
      * @param implementationClass the implementation class to register
      */
-    protected void registerImplementation(RegistrationKey key,
+    protected synchronized void registerImplementation(RegistrationKey key,
         Class<? extends T> implementationClass)
     {
-        getMappings().put(key, implementationClass);
+        if (!this.registeringLazily || !this.mappings.containsKey(key))
+        {
+            this.mappings.put(key, implementationClass);
+        }
     }
 
     /**
@@ -111,7 +202,7 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
     protected T createImplementation(RegistrationKey key, GenericParameters parameters,
         String implementationConceptName)
     {
-        if (!getMappings().containsKey(key))
+        if (!hasMapping(key))
         {
             String message =
                 "Cannot create " + implementationConceptName + ". There's no registered "
@@ -139,7 +230,7 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
             throw new ContainerException(message);
         }
 
-        Class<? extends T> implementationClass = getMappings().get(key);
+        Class<? extends T> implementationClass = getMapping(key);
 
         T implementation;
         try
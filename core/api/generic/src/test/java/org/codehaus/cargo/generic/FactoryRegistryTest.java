@@ -19,6 +19,16 @@
  */
 package org.codehaus.cargo.generic;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
 import junit.framework.TestCase;
 
 import org.codehaus.cargo.container.ContainerType;
@@ -26,9 +36,12 @@ import org.codehaus.cargo.container.configuration.ConfigurationCapability;
 import org.codehaus.cargo.container.configuration.ConfigurationType;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.deployable.WAR;
 import org.codehaus.cargo.generic.configuration.ConfigurationCapabilityFactory;
 import org.codehaus.cargo.generic.configuration.DefaultConfigurationCapabilityFactory;
 import org.codehaus.cargo.generic.deployable.DefaultDeployableFactory;
+import org.codehaus.cargo.generic.deployable.DeployableFactory;
+import org.codehaus.cargo.generic.internal.FactoryRegistryIndexMain;
 
 /**
  * Tests the discovery behavior.
@@ -59,4 +72,96 @@ public class FactoryRegistryTest extends TestCase
             ContainerType.INSTALLED, ConfigurationType.STANDALONE);
         assertTrue(cc instanceof SuperConfigurationCapability);
     }
+
+    /**
+     * Test that indexed registries are only instantiated once a factory is asked about one of
+     * their containers, and only once per class loader.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testIndexedRegistryIsLoadedLazily() throws Exception
+    {
+        ClassLoader loader = createIndexedClassLoader("lazy");
+        int instances = IndexedTestFactoryRegistry.getInstances();
+
+        ContainerFactory containerFactory = new DefaultContainerFactory(loader);
+        DeployableFactory deployableFactory = new DefaultDeployableFactory(loader);
+        assertEquals(instances, IndexedTestFactoryRegistry.getInstances());
+
+        Deployable war = deployableFactory.createDeployable(
+            IndexedTestFactoryRegistry.CONTAINER_ID, ".", DeployableType.WAR);
+        assertTrue(war instanceof SuperContainerWar);
+        assertEquals(instances + 1, IndexedTestFactoryRegistry.getInstances());
+
+        assertTrue(containerFactory.isContainerRegistered(IndexedTestFactoryRegistry.CONTAINER_ID,
+            ContainerType.INSTALLED));
+        assertEquals(instances + 1, IndexedTestFactoryRegistry.getInstances());
+
+        // Registries which are not in the index are registered right away
+        war = deployableFactory.createDeployable("super-container", ".", DeployableType.WAR);
+        assertTrue(war instanceof SuperContainerWar);
+
+        assertTrue(new DefaultContainerFactory(loader).getContainerIds().containsKey(
+            IndexedTestFactoryRegistry.CONTAINER_ID));
+        assertEquals(instances + 1, IndexedTestFactoryRegistry.getInstances());
+    }
+
+    /**
+     * Test that implementations registered explicitly are not replaced by the implementations of
+     * indexed registries.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExplicitRegistrationTakesPrecedence() throws Exception
+    {
+        ClassLoader loader = createIndexedClassLoader("precedence");
+        DeployableFactory deployableFactory = new DefaultDeployableFactory(loader);
+        deployableFactory.registerDeployable(IndexedTestFactoryRegistry.CONTAINER_ID,
+            DeployableType.WAR, WAR.class);
+
+        Deployable war = deployableFactory.createDeployable(
+            IndexedTestFactoryRegistry.CONTAINER_ID, ".", DeployableType.WAR);
+        assertFalse(war instanceof SuperContainerWar);
+    }
+
+    /**
+     * Creates a class loader with {@link IndexedTestFactoryRegistry} in its service provider
+     * configuration file, and an index generated by {@link FactoryRegistryIndexMain}.
+     * @param name Name of the directory to generate.
+     * @return Class loader.
+     * @throws Exception If anything goes wrong.
+     */
+    private ClassLoader createIndexedClassLoader(String name) throws Exception
+    {
+        File classesDir = new File("target/factory-registry-index/" + name).getAbsoluteFile();
+        File services = new File(classesDir, "META-INF/services/"
+            + AbstractFactoryRegistry.class.getName());
+        services.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(services), "UTF-8");
+        try
+        {
+            writer.write("# Test registry\n" + IndexedTestFactoryRegistry.class.getName() + "\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        FactoryRegistryIndexMain.main(new String[] {classesDir.getPath()});
+        File index = new File(classesDir, AbstractFactoryRegistry.INDEX_RESOURCE);
+        assertTrue(index.isFile());
+        Properties entries = new Properties();
+        InputStream in = new FileInputStream(index);
+        try
+        {
+            entries.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        assertEquals(IndexedTestFactoryRegistry.class.getName(),
+            entries.getProperty(IndexedTestFactoryRegistry.CONTAINER_ID));
+
+        return new URLClassLoader(new URL[] {classesDir.toURI().toURL()},
+            getClass().getClassLoader());
+    }
 }
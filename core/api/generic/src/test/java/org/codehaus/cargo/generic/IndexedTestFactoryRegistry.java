@@ -0,0 +1,134 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.generic;
+
+import org.codehaus.cargo.container.ContainerType;
+import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.stub.InstalledLocalContainerStub;
+import org.codehaus.cargo.generic.configuration.ConfigurationCapabilityFactory;
+import org.codehaus.cargo.generic.configuration.ConfigurationFactory;
+import org.codehaus.cargo.generic.configuration.builder.ConfigurationBuilderFactory;
+import org.codehaus.cargo.generic.deployable.DeployableFactory;
+import org.codehaus.cargo.generic.deployer.DeployerFactory;
+import org.codehaus.cargo.generic.packager.PackagerFactory;
+
+/**
+ * Registry discovered by {@link FactoryRegistryTest} through an index, which counts how many
+ * times it is instantiated.
+ * 
+ */
+public class IndexedTestFactoryRegistry extends AbstractFactoryRegistry
+{
+    /**
+     * Id of the container registered by this registry.
+     */
+    public static final String CONTAINER_ID = "indexed-container";
+
+    /**
+     * Number of instances created.
+     */
+    private static int instances;
+
+    /**
+     * Counts the instance.
+     */
+    public IndexedTestFactoryRegistry()
+    {
+        synchronized (IndexedTestFactoryRegistry.class)
+        {
+            instances++;
+        }
+    }
+
+    /**
+     * @return Number of instances created.
+     */
+    public static synchronized int getInstances()
+    {
+        return instances;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(DeployableFactory factory)
+    {
+        factory.registerDeployable(CONTAINER_ID, DeployableType.WAR, SuperContainerWar.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ConfigurationCapabilityFactory factory)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ConfigurationFactory factory)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(DeployerFactory factory)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(PackagerFactory factory)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ContainerFactory factory)
+    {
+        factory.registerContainer(CONTAINER_ID, ContainerType.INSTALLED,
+            InstalledLocalContainerStub.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ContainerCapabilityFactory factory)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ConfigurationBuilderFactory factory)
+    {
+    }
+}
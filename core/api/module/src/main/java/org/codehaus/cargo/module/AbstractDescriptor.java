@@ -29,6 +29,7 @@ import org.jdom.Comment;
 import org.jdom.Content;
 import org.jdom.Document;
 import org.jdom.Element;
+import org.jdom.Parent;
 
 /**
  * Encapsulates the DOM representation of a deployment descriptor to provide convenience methods for
@@ -42,6 +43,11 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
      */
     private DescriptorType descriptorType;
 
+    /**
+     * Index of the children of the root element, built when first needed.
+     */
+    private transient DescriptorIndex index;
+
     /**
      * Constructor.
      * 
@@ -88,15 +94,7 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
      */
     public List<Element> getTags(String tagName)
     {
-        List<Element> elements = new ArrayList<Element>();
-        for (Element child : (List<Element>) getRootElement().getChildren())
-        {
-            if (child.getName().equals(tagName))
-            {
-                elements.add(child);
-            }
-        }
-        return elements;
+        return new ArrayList<Element>(getIndex().getElements(tagName));
     }
 
     /**
@@ -291,17 +289,31 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
      */
     public Element addElement(DescriptorTag tag, Element child, Element parent)
     {
-        Element importedNode = (Element) child.detach();
+        Element importedNode = detach(child);
+
+        List<Element> siblings;
+        boolean indexed = parent == getRootElement();
+        if (indexed)
+        {
+            // Only elements with the same name can be the same as the imported one
+            siblings = getIndex().getElements(importedNode.getName());
+        }
+        else
+        {
+            siblings = parent.getChildren();
+        }
+        if (containsElement(siblings, importedNode))
+        {
+            return importedNode;
+        }
 
         Element refNode = getInsertionPointFor(tag, parent.getName());
 
         int idx = parent.getContent().indexOf(refNode);
+        DescriptorIndex rootIndex = indexed ? getIndex() : null;
         if (idx == -1)
         {
-            if (!containsElement(parent.getChildren(), importedNode))
-            {
-                parent.addContent(importedNode);
-            }
+            parent.addContent(importedNode);
         }
         else
         {
@@ -311,15 +323,53 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
                 idx--;
             }
 
-            if (!containsElement(parent.getChildren(), importedNode))
-            {
-                parent.addContent(idx, importedNode);
-            }
+            parent.addContent(idx, importedNode);
+        }
+        if (rootIndex != null)
+        {
+            rootIndex.added(importedNode, idx);
         }
 
         return importedNode;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean removeElement(Element element)
+    {
+        if (element.getDocument() != this || element.getParent() == this)
+        {
+            return false;
+        }
+        detach(element);
+        return true;
+    }
+
+    /**
+     * Detaches an element from its parent, keeping the index of the descriptor it belonged to (if
+     * any) up to date.
+     * 
+     * @param element Element to detach
+     * @return the detached element
+     */
+    private static Element detach(Element element)
+    {
+        Parent parent = element.getParent();
+        Document document = element.getDocument();
+        if (document instanceof AbstractDescriptor && parent == document.getRootElement())
+        {
+            DescriptorIndex documentIndex = ((AbstractDescriptor) document).getIndex();
+            element.detach();
+            documentIndex.removed(element);
+        }
+        else
+        {
+            element.detach();
+        }
+        return element;
+    }
+
     /**
      * Checks if <code>haystack</code> contains <code>needle</code>.
      * @param haystack List of element to look into.
@@ -448,13 +498,12 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
                 for (int j = i + 1; j < elementOrder.size(); j++)
                 {
                     DescriptorTag theTag = elementOrder.get(j);
-                    List<Element> elements =
-                        getRootElement().getChildren(
-                            theTag.getTagName(), theTag.getTagNamespace());
-                    if (elements.size() > 0)
+                    for (Element element : getIndex().getElements(theTag.getTagName()))
                     {
-                        Element result = elements.get(0);
-                        return result;
+                        if (DescriptorIndex.isInNamespace(element, theTag.getTagNamespace()))
+                        {
+                            return element;
+                        }
                     }
                 }
                 break;
@@ -487,11 +536,10 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
         Identifier id = tag.getIdentifier();
         if (id != null)
         {
-            List<Element> tags = getTags(tag);
-
-            for (Element e : tags)
+            for (Element e : getIndex().getElements(tag.getTagName()))
             {
-                if (value.equals(id.getIdentifier(e)))
+                if (DescriptorIndex.isInNamespace(e, tag.getTagNamespace())
+                    && value.equals(id.getIdentifier(e)))
                 {
                     return e;
                 }
@@ -517,9 +565,7 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
         Identifier id = tag.getIdentifier();
         if (id != null)
         {
-            List<Element> tags = getTags(tagName);
-
-            for (Element e : tags)
+            for (Element e : getIndex().getElements(tagName))
             {
                 if (value.equals(id.getIdentifier(e)))
                 {
@@ -529,4 +575,44 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
         }
         return null;
     }
+
+    /**
+     * Get elements of a particular descriptor tag having a nested element with the given text,
+     * for example the <code>servlet-mapping</code> elements of a given <code>servlet-name</code>.
+     * 
+     * @param tagName Name of the tag to search for
+     * @param childTagName name of the nested element
+     * @param text text of the nested element to match
+     * @return the elements that match, in the order they occur in the descriptor
+     */
+    public List<Element> getTagsByChildText(String tagName, String childTagName, String text)
+    {
+        if (text == null || tagName == null || childTagName == null)
+        {
+            throw new NullPointerException();
+        }
+        List<Element> tags = new ArrayList<Element>();
+        for (Element e : getIndex().getElements(tagName))
+        {
+            if (text.equals(e.getChildText(childTagName, e.getNamespace())))
+            {
+                tags.add(e);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * @return Index of the children of the root element, rebuilt if the root element's content
+     * has been changed other than through this descriptor.
+     */
+    private DescriptorIndex getIndex()
+    {
+        Element root = getRootElement();
+        if (this.index == null || !this.index.isValid(root))
+        {
+            this.index = new DescriptorIndex(root);
+        }
+        return this.index;
+    }
 }
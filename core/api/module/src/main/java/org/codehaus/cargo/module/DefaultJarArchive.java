@@ -30,15 +30,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
 
 /**
- * Provide convenient methods to read information from a Jar archive.
+ * Provide convenient methods to read information from a Jar archive. The names of the entries
+ * are indexed the first time they are needed, so that lookups do not need to scan the archive;
+ * archives which are local files are indexed from their central directory and read with random
+ * access.
  * 
  */
 public class DefaultJarArchive implements JarArchive
@@ -58,6 +70,37 @@ public class DefaultJarArchive implements JarArchive
      */
     private FileHandler fileHandler = new DefaultFileHandler();
 
+    /**
+     * Paths of the entries of the archive, in archive order, <code>null</code> until indexed.
+     */
+    private List<String> entries;
+
+    /**
+     * Paths of the entries of the archive.
+     */
+    private Set<String> entriesByPath;
+
+    /**
+     * Paths of the entries of the archive, keyed by their name without directory. When several
+     * entries have the same name, the first one in the archive is kept.
+     */
+    private Map<String, String> entriesByName;
+
+    /**
+     * Entries of the nested archives read so far, keyed by path of the nested archive.
+     */
+    private Map<String, Set<String>> nestedEntries;
+
+    /**
+     * Modification time of the archive file when it was indexed.
+     */
+    private long indexedLastModified;
+
+    /**
+     * Size of the archive file when it was indexed.
+     */
+    private long indexedLength;
+
     /**
      * Constructor.
      * 
@@ -97,9 +140,10 @@ public class DefaultJarArchive implements JarArchive
     /**
      * @param fileHandler the file utility class to use for performing all file I/O.
      */
-    public void setFileHandler(FileHandler fileHandler)
+    public synchronized void setFileHandler(FileHandler fileHandler)
     {
         this.fileHandler = fileHandler;
+        this.entries = null;
     }
 
     /**
@@ -109,33 +153,17 @@ public class DefaultJarArchive implements JarArchive
     public boolean containsClass(String className) throws IOException
     {
         String resourceName = className.replace('.', '/') + ".class";
-        return getResource(resourceName) != null;
+        return containsEntry(resourceName);
     }
 
     /**
      * {@inheritDoc}
      * @see JarArchive#findResource(String)
      */
-    public String findResource(String name) throws IOException
+    public synchronized String findResource(String name) throws IOException
     {
-        String result = null;
-        for (String entryPath : getResources(""))
-        {
-            String entryName = entryPath;
-
-            int lastSlashIndex = entryName.lastIndexOf('/');
-            if (lastSlashIndex >= 0)
-            {
-                entryName = entryName.substring(lastSlashIndex + 1);
-            }
-
-            if (entryName.equals(name))
-            {
-                result = entryPath;
-                break;
-            }
-        }
-        return result;
+        getEntries();
+        return this.entriesByName.get(name);
     }
 
     /**
@@ -144,6 +172,30 @@ public class DefaultJarArchive implements JarArchive
      */
     public InputStream getResource(String path) throws IOException
     {
+        if (!containsEntry(path))
+        {
+            return null;
+        }
+
+        if (isLocalFile())
+        {
+            ZipFile zipFile = new ZipFile(this.sourceFile);
+            try
+            {
+                ZipEntry zipEntry = zipFile.getEntry(path);
+                if (zipEntry == null)
+                {
+                    return null;
+                }
+                return new ByteArrayInputStream(streamToByteArray(
+                    zipFile.getInputStream(zipEntry)));
+            }
+            finally
+            {
+                zipFile.close();
+            }
+        }
+
         JarInputStream in = null;
         try
         {
@@ -187,28 +239,242 @@ public class DefaultJarArchive implements JarArchive
         }
 
         List<String> resources = new ArrayList<String>();
-        JarInputStream in = null;
-        try
+        for (String entryName : getEntries())
         {
-            in = getContentAsStream();
-            ZipEntry zipEntry;
-            while ((zipEntry = in.getNextEntry()) != null)
+            if (entryName.startsWith(normalizedPath) && !entryName.equals(normalizedPath))
+            {
+                resources.add(entryName);
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Returns whether the archive has an entry with the given path. Unlike
+     * {@link #getResource(String)}, this does not read the entry.
+     * 
+     * @param path The path of the entry in the archive
+     * @return Whether the entry exists
+     * @throws IOException If an exception occurred reading the archive
+     */
+    public synchronized boolean containsEntry(String path) throws IOException
+    {
+        getEntries();
+        return this.entriesByPath.contains(path);
+    }
+
+    /**
+     * Returns the paths of the entries of an archive nested in this archive, for example a JAR in
+     * the <code>WEB-INF/lib</code> directory of a WAR. The nested archive is streamed rather than
+     * loaded in memory, and its entries are cached.
+     * 
+     * @param path The path of the nested archive
+     * @return The paths of the entries of the nested archive, empty if there is no such archive
+     * @throws IOException If an exception occurred reading the archive
+     */
+    protected synchronized Set<String> getNestedEntries(String path) throws IOException
+    {
+        getEntries();
+        Set<String> nested = this.nestedEntries.get(path);
+        if (nested == null)
+        {
+            nested = readNestedEntries(path);
+            this.nestedEntries.put(path, nested);
+        }
+        return nested;
+    }
+
+    /**
+     * Returns the paths of all entries of the archive, in the order they appear in the archive.
+     * The index is built once, from the central directory for archives that are local files, and
+     * rebuilt if the archive file is modified. As with <code>JarInputStream</code>, the manifest
+     * is not listed.
+     * 
+     * @return The paths of all entries of the archive
+     * @throws IOException If an exception occurred reading the archive
+     */
+    protected synchronized List<String> getEntries() throws IOException
+    {
+        boolean localFile = isLocalFile();
+        if (localFile)
+        {
+            File file = new File(this.sourceFile);
+            if (file.lastModified() != this.indexedLastModified
+                || file.length() != this.indexedLength)
+            {
+                this.entries = null;
+            }
+        }
+        if (this.entries != null)
+        {
+            return this.entries;
+        }
+
+        List<String> names = new ArrayList<String>();
+        if (localFile)
+        {
+            File file = new File(this.sourceFile);
+            this.indexedLastModified = file.lastModified();
+            this.indexedLength = file.length();
+            ZipFile zipFile = new ZipFile(file);
+            try
             {
-                if (zipEntry.getName().startsWith(normalizedPath)
-                    && !zipEntry.getName().equals(normalizedPath))
+                Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                while (zipEntries.hasMoreElements())
                 {
-                    resources.add(zipEntry.getName());
+                    addEntry(names, zipEntries.nextElement().getName());
                 }
             }
+            finally
+            {
+                zipFile.close();
+            }
         }
-        finally
+        else
         {
-            if (in != null)
+            ZipInputStream in = new ZipInputStream(getRawContentAsStream());
+            try
+            {
+                ZipEntry zipEntry;
+                while ((zipEntry = in.getNextEntry()) != null)
+                {
+                    addEntry(names, zipEntry.getName());
+                }
+            }
+            finally
             {
                 in.close();
             }
         }
-        return resources;
+
+        this.entriesByPath = new HashSet<String>(names);
+        this.entriesByName = new HashMap<String, String>();
+        for (String entryPath : names)
+        {
+            String entryName = entryPath.substring(entryPath.lastIndexOf('/') + 1);
+            if (!this.entriesByName.containsKey(entryName))
+            {
+                this.entriesByName.put(entryName, entryPath);
+            }
+        }
+        this.nestedEntries = new HashMap<String, Set<String>>();
+        this.entries = Collections.unmodifiableList(names);
+        return this.entries;
+    }
+
+    /**
+     * @param names Entry names to add to.
+     * @param name Entry name to add, unless it is the manifest.
+     */
+    private static void addEntry(List<String> names, String name)
+    {
+        if (!JarFile.MANIFEST_NAME.equalsIgnoreCase(name))
+        {
+            names.add(name);
+        }
+    }
+
+    /**
+     * @param path The path of the nested archive
+     * @return The paths of the entries of the nested archive, empty if there is no such archive
+     * @throws IOException If an exception occurred reading the archive
+     */
+    private Set<String> readNestedEntries(String path) throws IOException
+    {
+        Set<String> nested = new HashSet<String>();
+        if (!this.entriesByPath.contains(path) || path.endsWith("/"))
+        {
+            return nested;
+        }
+
+        if (isLocalFile())
+        {
+            ZipFile zipFile = new ZipFile(this.sourceFile);
+            try
+            {
+                ZipEntry zipEntry = zipFile.getEntry(path);
+                if (zipEntry != null)
+                {
+                    readEntryNames(zipFile.getInputStream(zipEntry), nested);
+                }
+            }
+            finally
+            {
+                zipFile.close();
+            }
+        }
+        else
+        {
+            ZipInputStream in = new ZipInputStream(getRawContentAsStream());
+            try
+            {
+                ZipEntry zipEntry;
+                while ((zipEntry = in.getNextEntry()) != null)
+                {
+                    if (path.equals(zipEntry.getName()))
+                    {
+                        readEntryNames(in, nested);
+                        break;
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        return nested;
+    }
+
+    /**
+     * Reads the entry names of an archive, without reading the entries themselves.
+     * 
+     * @param archive Stream of the archive, which is read but not closed.
+     * @param names Set to add the entry names to.
+     * @throws IOException If an exception occurred reading the archive
+     */
+    private static void readEntryNames(InputStream archive, Set<String> names)
+        throws IOException
+    {
+        ZipInputStream in = new ZipInputStream(archive);
+        ZipEntry zipEntry;
+        while ((zipEntry = in.getNextEntry()) != null)
+        {
+            names.add(zipEntry.getName());
+        }
+    }
+
+    /**
+     * @return The archive file, <code>null</code> if the archive is not a file of the local file
+     * system, for example if it has been read from a stream.
+     */
+    public File getLocalFile()
+    {
+        return isLocalFile() ? new File(this.sourceFile) : null;
+    }
+
+    /**
+     * @return Whether the archive is a file of the local file system, which can then be read
+     * with random access.
+     */
+    private boolean isLocalFile()
+    {
+        return this.sourceFile != null && getFileHandler() instanceof DefaultFileHandler
+            && new File(this.sourceFile).isFile();
+    }
+
+    /**
+     * @return The content of the archive, as a raw stream.
+     * @throws IOException If an exception occurred reading the archive
+     */
+    private InputStream getRawContentAsStream() throws IOException
+    {
+        if (this.content != null)
+        {
+            return new ByteArrayInputStream(this.content);
+        }
+
+        return getFileHandler().getInputStream(this.sourceFile);
     }
 
     /**
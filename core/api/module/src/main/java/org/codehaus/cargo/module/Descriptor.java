@@ -57,6 +57,13 @@ public interface Descriptor extends org.jdom.Parent
      */
     Element addElement(DescriptorTag tag, Element right, Element rootElement);
 
+    /**
+     * Remove an element from the descriptor.
+     * @param element Element to remove
+     * @return whether the element was part of the descriptor and has been removed
+     */
+    boolean removeElement(Element element);
+
     /**
      * Get elements of a particular descriptor tag whose identifier matches the passed parameter.
      * 
@@ -0,0 +1,173 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.module;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+/**
+ * Index of the children of a descriptor's root element by tag name, maintained as elements are
+ * added and removed through the descriptor. Only the tag name is indexed: keys computed from the
+ * content of an element, like its identifier, can change whenever a nested element is edited
+ * and lookups by such keys hence scan the elements with the right tag name.<br>
+ * <br>
+ * JDOM does not notify anyone of changes, so the index remembers the size of the root element's
+ * content when it was last in sync with it; a descriptor that finds a different size throws the
+ * index away and builds a new one.
+ * 
+ */
+final class DescriptorIndex
+{
+    /**
+     * Indexed root element.
+     */
+    private final Element root;
+
+    /**
+     * Size of the root element's content when the index was last in sync with it.
+     */
+    private int contentSize;
+
+    /**
+     * Children of the root element by tag name, in document order.
+     */
+    private final Map<String, List<Element>> elementsByName = new HashMap<String, List<Element>>();
+
+    /**
+     * @param root Root element to index.
+     */
+    DescriptorIndex(Element root)
+    {
+        this.root = root;
+        for (Element child : (List<Element>) root.getChildren())
+        {
+            getOrCreateElements(child.getName()).add(child);
+        }
+        this.contentSize = root.getContentSize();
+    }
+
+    /**
+     * @param currentRoot Current root element of the descriptor.
+     * @return Whether this index still reflects the children of <code>currentRoot</code>.
+     */
+    boolean isValid(Element currentRoot)
+    {
+        return this.root == currentRoot && this.root.getContentSize() == this.contentSize;
+    }
+
+    /**
+     * @param name Tag name.
+     * @return Children of the root element with the given tag name, in document order. The
+     * returned list must not be modified.
+     */
+    List<Element> getElements(String name)
+    {
+        List<Element> elements = this.elementsByName.get(name);
+        if (elements == null)
+        {
+            return Collections.emptyList();
+        }
+        return elements;
+    }
+
+    /**
+     * Records an element that has just been added to the root element.
+     * 
+     * @param element Added element.
+     * @param position Position the element has been inserted at in the root element's content,
+     * <code>-1</code> if it has been appended.
+     */
+    void added(Element element, int position)
+    {
+        String name = element.getName();
+        List<Element> elements = getOrCreateElements(name);
+        boolean last = position == -1 || elements.isEmpty()
+            || this.root.indexOf(elements.get(elements.size() - 1)) < position;
+        if (last)
+        {
+            elements.add(element);
+        }
+        else
+        {
+            // Inserted in the middle of elements with the same name, for example because the
+            // descriptor does not follow its grammar's order: reindex that name only
+            elements.clear();
+            for (Element child : (List<Element>) this.root.getChildren())
+            {
+                if (name.equals(child.getName()))
+                {
+                    elements.add(child);
+                }
+            }
+        }
+        this.contentSize = this.root.getContentSize();
+    }
+
+    /**
+     * Records an element that has just been removed from the root element.
+     * 
+     * @param element Removed element.
+     */
+    void removed(Element element)
+    {
+        List<Element> elements = this.elementsByName.get(element.getName());
+        if (elements != null && elements.remove(element))
+        {
+            this.contentSize = this.root.getContentSize();
+        }
+        else
+        {
+            // Not an element we know of, make sure the index gets rebuilt
+            this.contentSize = -1;
+        }
+    }
+
+    /**
+     * @param element Element to check.
+     * @param namespace Namespace, <code>null</code> meaning any namespace.
+     * @return Whether the element is in the given namespace, following the same rules as
+     * {@link Element#getChildren(String, Namespace)}.
+     */
+    static boolean isInNamespace(Element element, Namespace namespace)
+    {
+        return namespace == null || namespace.equals(element.getNamespace());
+    }
+
+    /**
+     * @param name Tag name.
+     * @return Indexed children with the given name, created if needed.
+     */
+    private List<Element> getOrCreateElements(String name)
+    {
+        List<Element> elements = this.elementsByName.get(name);
+        if (elements == null)
+        {
+            elements = new ArrayList<Element>();
+            this.elementsByName.put(name, elements);
+        }
+        return elements;
+    }
+}
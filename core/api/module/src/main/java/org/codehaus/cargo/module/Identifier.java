@@ -19,7 +19,10 @@
  */
 package org.codehaus.cargo.module;
 
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.codehaus.cargo.util.CargoException;
 import org.jdom.Element;
@@ -32,6 +35,21 @@ import org.jdom.xpath.XPath;
  */
 public class Identifier
 {
+    /**
+     * XPath selecting a child element by name, with an optional namespace prefix.
+     */
+    private static final Pattern CHILD_XPATH = Pattern.compile("(?:([\\w.-]+):)?([\\w.-]+)");
+
+    /**
+     * Name of the child element selected by the XPath, <code>null</code> if the XPath is not a
+     * plain child element selection.
+     */
+    private String childName;
+
+    /**
+     * Namespace URI of the child element selected by the XPath, <code>null</code> if unknown.
+     */
+    private String childNamespaceURI;
     /**
      * String XPath of how to navigate to the identifier field.
      */
@@ -59,6 +77,7 @@ public class Identifier
         {
             throw new CargoException("Unexpected xpath error", ex);
         }
+        initChildSelection(null, xpath);
     }
 
     /**
@@ -83,6 +102,36 @@ public class Identifier
         {
             throw new CargoException("Unexpected xpath error", ex);
         }
+        initChildSelection(namespaceMap, xpath);
+    }
+
+    /**
+     * Recognizes XPaths which only select a child element, so that they can be evaluated without
+     * going through the XPath engine. Descriptors look up elements by identifier by evaluating
+     * the XPath of each candidate element, which would otherwise dominate the merge time.
+     * 
+     * @param namespaceMap The namespaceMap, <code>null</code> if none
+     * @param xpath The xpath
+     */
+    private void initChildSelection(Map<String, String> namespaceMap, String xpath)
+    {
+        Matcher matcher = CHILD_XPATH.matcher(xpath);
+        if (matcher.matches())
+        {
+            String prefix = matcher.group(1);
+            if (prefix == null)
+            {
+                this.childNamespaceURI = "";
+            }
+            else if (namespaceMap != null)
+            {
+                this.childNamespaceURI = namespaceMap.get(prefix);
+            }
+            if (this.childNamespaceURI != null)
+            {
+                this.childName = matcher.group(2);
+            }
+        }
     }
 
     /**
@@ -93,6 +142,23 @@ public class Identifier
      */
     public String getIdentifier(Element element)
     {
+        if (this.childName != null)
+        {
+            for (Element child : (List<Element>) element.getChildren())
+            {
+                if (this.childName.equals(child.getName())
+                    && this.childNamespaceURI.equals(child.getNamespaceURI()))
+                {
+                    String identifier = child.getValue();
+                    if (identifier.length() > 0)
+                    {
+                        return identifier;
+                    }
+                    break;
+                }
+            }
+        }
+
         try
         {
             String identifier = xpath.valueOf(element);
@@ -68,7 +68,7 @@ public class DescriptorMergerByTag implements DescriptorMerger
         public int inBoth(Descriptor target, DescriptorElement left, DescriptorElement right)
         {
             Element parent = left.getParentElement();
-            parent.removeContent(left);
+            target.removeElement(left);
             target.addElement(right.getTag(), right, parent);
             return 1;
         }
@@ -35,7 +35,6 @@ import java.util.jar.JarOutputStream;
 import org.codehaus.cargo.module.AbstractDescriptorIo;
 import org.codehaus.cargo.module.DefaultJarArchive;
 import org.codehaus.cargo.module.Descriptor;
-import org.codehaus.cargo.module.JarArchive;
 import org.codehaus.cargo.module.webapp.jboss.JBossWebXml;
 import org.codehaus.cargo.module.webapp.jboss.JBossWebXmlIo;
 import org.codehaus.cargo.module.webapp.orion.OrionWebXml;
@@ -193,26 +192,24 @@ public class DefaultWarArchive extends DefaultJarArchive implements WarArchive
     @Override
     public boolean containsClass(String className) throws IOException
     {
-        boolean containsClass = false;
+        String resourceName = className.replace('.', '/') + ".class";
 
         // Look in WEB-INF/classes first
-        String resourceName = "WEB-INF/classes/" + className.replace('.', '/') + ".class";
-        if (getResource(resourceName) != null)
+        if (containsEntry("WEB-INF/classes/" + resourceName))
         {
-            containsClass = true;
+            return true;
         }
 
-        // Next scan the JARs in WEB-INF/lib
+        // Next scan the JARs in WEB-INF/lib, which are only read until the class is found
         for (String resource : getResources("WEB-INF/lib/"))
         {
-            JarArchive jar = new DefaultJarArchive(getResource(resource));
-            if (jar.containsClass(className))
+            if (getNestedEntries(resource).contains(resourceName))
             {
-                containsClass = true;
+                return true;
             }
         }
 
-        return containsClass;
+        return false;
     }
 
     /**
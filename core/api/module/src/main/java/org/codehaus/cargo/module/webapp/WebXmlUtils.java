@@ -87,16 +87,12 @@ public final class WebXmlUtils
             throw new NullPointerException();
         }
         List<String> filterMappings = new ArrayList<String>();
-        for (Element element : webXml.getTags(WebXmlType.FILTER_MAPPING))
+        for (FilterMapping filterMappingElement : getFilterMappingElements(webXml, theFilterName))
         {
-            FilterMapping filterMappingElement = (FilterMapping) element;
-            if (theFilterName.equals(filterMappingElement.getFilterName()))
+            String urlPattern = filterMappingElement.getUrlPattern();
+            if (urlPattern != null)
             {
-                String urlPattern = filterMappingElement.getUrlPattern();
-                if (urlPattern != null)
-                {
-                    filterMappings.add(urlPattern);
-                }
+                filterMappings.add(urlPattern);
             }
         }
         return filterMappings;
@@ -118,13 +114,10 @@ public final class WebXmlUtils
             throw new NullPointerException();
         }
         List<FilterMapping> filterMappings = new ArrayList<FilterMapping>();
-        for (Element element : webXml.getTags(WebXmlType.FILTER_MAPPING))
+        for (Element element : webXml.getTagsByChildText(WebXmlType.FILTER_MAPPING,
+            WebXmlType.FILTER_NAME, theFilterName))
         {
-            FilterMapping filterMappingElement = (FilterMapping) element;
-            if (theFilterName.equals(filterMappingElement.getFilterName()))
-            {
-                filterMappings.add(filterMappingElement);
-            }
+            filterMappings.add((FilterMapping) element);
         }
         return filterMappings;
     }
@@ -361,20 +354,17 @@ public final class WebXmlUtils
             throw new NullPointerException();
         }
         List<String> servletMappings = new ArrayList<String>();
-        List<Element> servletMappingElements = webXml.getElements(WebXmlType.SERVLET_MAPPING);
+        List<Element> servletMappingElements = webXml.getTagsByChildText(
+            WebXmlType.SERVLET_MAPPING, WebXmlType.SERVLET_NAME, theServletName);
         for (Element servletMappingElement : servletMappingElements)
         {
-            if (theServletName.equals(servletMappingElement.getChild(
-                WebXmlType.SERVLET_NAME, servletMappingElement.getNamespace()).getText()))
+            String urlPattern =
+                servletMappingElement.getChild(WebXmlType.URL_PATTERN,
+                    servletMappingElement.getNamespace())
+                    .getText();
+            if (urlPattern != null)
             {
-                String urlPattern =
-                    servletMappingElement.getChild(WebXmlType.URL_PATTERN,
-                        servletMappingElement.getNamespace())
-                        .getText();
-                if (urlPattern != null)
-                {
-                    servletMappings.add(urlPattern);
-                }
+                servletMappings.add(urlPattern);
             }
         }
         return servletMappings;
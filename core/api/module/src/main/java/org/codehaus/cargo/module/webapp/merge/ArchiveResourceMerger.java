@@ -82,6 +82,25 @@ public class ArchiveResourceMerger
 
     }
 
+    /**
+     * @return The path of the resource being merged, relative to the root of the archive
+     */
+    public String getResource()
+    {
+        return this.resource;
+    }
+
+    /**
+     * Execute the merge in memory.
+     * 
+     * @return The merged resource, <code>null</code> if none of the merged items had it
+     * @throws MergeException if a problem
+     */
+    public InputStream performMerge() throws MergeException
+    {
+        return (InputStream) this.next.performMerge();
+    }
+
     /**
      * Execute the merge into the assembly directory.
      * 
@@ -90,7 +109,7 @@ public class ArchiveResourceMerger
      */
     public void execute(File assembleDir) throws MergeException
     {
-        InputStream is = (InputStream) this.next.performMerge();
+        InputStream is = performMerge();
 
         // If we get back nothing, then none of the source files
         // had this resource to do the merge.
@@ -19,14 +19,25 @@
  */
 package org.codehaus.cargo.module.webapp.merge;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import org.codehaus.cargo.module.AbstractDescriptorIo;
+import org.codehaus.cargo.module.DefaultJarArchive;
+import org.codehaus.cargo.module.Descriptor;
 import org.codehaus.cargo.module.merge.MergeException;
 import org.codehaus.cargo.module.merge.MergeProcessor;
 import org.codehaus.cargo.module.webapp.WarArchive;
@@ -34,6 +45,9 @@ import org.codehaus.cargo.module.webapp.WebXml;
 import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
 import org.codehaus.cargo.util.JarUtils;
+import org.codehaus.cargo.util.internal.zip.RawZipEntry;
+import org.codehaus.cargo.util.internal.zip.RawZipFile;
+import org.codehaus.cargo.util.internal.zip.RawZipWriter;
 import org.jdom.JDOMException;
 
 /**
@@ -41,6 +55,11 @@ import org.jdom.JDOMException;
  */
 public class MergedWarArchive implements WarArchive
 {
+    /**
+     * Path of the manifest, which is written first rather than merged with the other entries.
+     */
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
     /**
      * War files making up this merged war, or type MergeWarFileDetails.
      */
@@ -71,6 +90,11 @@ public class MergedWarArchive implements WarArchive
      */
     private WebXmlMerger webXmlMerger;
 
+    /**
+     * Additional resources, such as the manifest, indexed by path.
+     */
+    private Map<String, byte[]> resources;
+
     /**
      * Constructor.
      */
@@ -79,6 +103,7 @@ public class MergedWarArchive implements WarArchive
         this.warFiles = new ArrayList<MergeWarFileDetails>();
         this.jarFiles = new ArrayList<File>();
         this.mergeProcessors = new ArrayList<ArchiveResourceMerger>();
+        this.resources = new LinkedHashMap<String, byte[]>();
     }
 
     /**
@@ -98,6 +123,19 @@ public class MergedWarArchive implements WarArchive
         this.mergeProcessors.add(new ArchiveResourceMerger(path, merger));
     }
 
+    /**
+     * Adds a resource to the merged WAR file, replacing the resource with the same path in the
+     * merged WAR files. Resources added this way are in turn replaced by the merged deployment
+     * descriptors and by the output of the merge processors.
+     * 
+     * @param path path of the resource, for example <code>META-INF/MANIFEST.MF</code>
+     * @param content content of the resource
+     */
+    public void addResource(String path, byte[] content)
+    {
+        this.resources.put(path, content);
+    }
+
     /**
      * @param warFile in a warfile to add to the merge
      */
@@ -167,24 +205,54 @@ public class MergedWarArchive implements WarArchive
     {
         for (ArchiveResourceMerger processor : this.mergeProcessors)
         {
-            for (MergeWarFileDetails details : this.warFiles)
-            {
-                WarArchive wa = details.getWarFile();
-
-                processor.addMergeItem(wa);
-            }
-
+            addMergeItems(processor);
             processor.execute(assembleDir);
         }
 
     }
 
     /**
-     * Here we do actual merge and store resulting war file into the new location. {@inheritDoc}
+     * @param processor in the processor to give all WAR files to
+     * @throws MergeException when there is a problem
+     */
+    private void addMergeItems(ArchiveResourceMerger processor) throws MergeException
+    {
+        for (MergeWarFileDetails details : this.warFiles)
+        {
+            WarArchive wa = details.getWarFile();
+
+            processor.addMergeItem(wa);
+        }
+    }
+
+    /**
+     * Here we do actual merge and store resulting war file into the new location. When all
+     * merged WAR files are local files, the merged WAR file is written directly: entries are
+     * de-duplicated by name (the last WAR file wins, as when expanding them in order), unchanged
+     * entries are copied without being recompressed and generated resources are kept in memory.
+     * Otherwise, the WAR files are expanded into a temporary directory which is then archived.
+     * {@inheritDoc}
      * @see org.codehaus.cargo.module.webapp.WarArchive#store(java.io.File)
      */
     public void store(File warFile) throws MergeException, IOException, JDOMException
     {
+        List<RawZipFile> sources = openRawSources();
+        if (sources != null)
+        {
+            try
+            {
+                storeRaw(sources, warFile);
+            }
+            finally
+            {
+                for (RawZipFile source : sources)
+                {
+                    source.close();
+                }
+            }
+            return;
+        }
+
         DefaultFileHandler fileHandler = new DefaultFileHandler();
 
         // Create place for merge
@@ -200,6 +268,227 @@ public class MergedWarArchive implements WarArchive
         fileHandler.delete(assembleDir);
     }
 
+    /**
+     * @return the merged WAR files opened for raw copy, <code>null</code> if any of them is not
+     * a local file or cannot be copied raw
+     * @throws IOException if a WAR file cannot be read
+     */
+    private List<RawZipFile> openRawSources() throws IOException
+    {
+        List<RawZipFile> sources = new ArrayList<RawZipFile>(this.warFiles.size());
+        boolean supported = true;
+        for (MergeWarFileDetails details : this.warFiles)
+        {
+            WarArchive wa = details.getWarFile();
+            File file = null;
+            if (wa instanceof DefaultJarArchive)
+            {
+                file = ((DefaultJarArchive) wa).getLocalFile();
+            }
+            if (file == null)
+            {
+                supported = false;
+                break;
+            }
+            RawZipFile source = new RawZipFile(file);
+            sources.add(source);
+            if (!source.isRawCopySupported())
+            {
+                supported = false;
+                break;
+            }
+        }
+        if (!supported)
+        {
+            for (RawZipFile source : sources)
+            {
+                source.close();
+            }
+            return null;
+        }
+        return sources;
+    }
+
+    /**
+     * Writes the merged WAR file directly from the merged WAR files.
+     * @param sources merged WAR files, in merge order
+     * @param warFile WAR file to write
+     * @throws IOException If there was a problem reading or writing a WAR file
+     * @throws JDOMException If the deployment descriptor of a WAR could not be parsed
+     * @throws MergeException If one of merge processors fails
+     */
+    private void storeRaw(List<RawZipFile> sources, File warFile)
+        throws MergeException, IOException, JDOMException
+    {
+        // Generated content, by order of precedence
+        Map<String, byte[]> generated = new LinkedHashMap<String, byte[]>(this.resources);
+        Map<String, File> jars = new LinkedHashMap<String, File>();
+        for (File jarFile : this.jarFiles)
+        {
+            String path = "WEB-INF/lib/" + jarFile.getName();
+            generated.remove(path);
+            jars.put(path, jarFile);
+        }
+        WebXml webXml = getWebXml();
+        putGenerated(generated, jars, "WEB-INF/web.xml", webXml);
+        for (Descriptor descr : webXml.getVendorDescriptors())
+        {
+            putGenerated(generated, jars, "WEB-INF/" + descr.getFileName(), descr);
+        }
+        for (ArchiveResourceMerger processor : this.mergeProcessors)
+        {
+            addMergeItems(processor);
+            InputStream is = processor.performMerge();
+            if (is != null)
+            {
+                String path = processor.getResource();
+                while (path.startsWith("/"))
+                {
+                    path = path.substring(1);
+                }
+                jars.remove(path);
+                generated.put(path, toByteArray(is));
+            }
+        }
+
+        // The last WAR file holding an entry wins
+        Map<String, Integer> winners = new HashMap<String, Integer>();
+        for (int i = 0; i < sources.size(); i++)
+        {
+            for (RawZipEntry entry : sources.get(i).getEntries())
+            {
+                if (isMerged(entry.getName()) && !generated.containsKey(entry.getName())
+                    && !jars.containsKey(entry.getName()))
+                {
+                    winners.put(entry.getName(), i);
+                }
+            }
+        }
+
+        // Without a generated manifest, the last WAR file holding a manifest wins as well
+        RawZipFile manifestSource = null;
+        RawZipEntry manifestEntry = null;
+        if (!generated.containsKey(MANIFEST))
+        {
+            for (RawZipFile source : sources)
+            {
+                for (RawZipEntry entry : source.getEntries())
+                {
+                    if (MANIFEST.equalsIgnoreCase(entry.getName()))
+                    {
+                        manifestSource = source;
+                        manifestEntry = entry;
+                    }
+                }
+            }
+        }
+
+        if (warFile.getParentFile() != null)
+        {
+            warFile.getParentFile().mkdirs();
+        }
+        long now = System.currentTimeMillis();
+        RawZipWriter out = new RawZipWriter(warFile);
+        try
+        {
+            // The manifest must come first for JarInputStream to find it
+            byte[] manifest = generated.remove(MANIFEST);
+            if (manifest != null)
+            {
+                out.putEntry(MANIFEST, manifest, now);
+            }
+            else if (manifestEntry != null)
+            {
+                out.copyEntry(manifestSource, manifestEntry);
+            }
+            Set<String> written = new HashSet<String>();
+            for (int i = 0; i < sources.size(); i++)
+            {
+                for (RawZipEntry entry : sources.get(i).getEntries())
+                {
+                    Integer winner = winners.get(entry.getName());
+                    if (winner != null && winner == i && written.add(entry.getName()))
+                    {
+                        out.copyEntry(sources.get(i), entry);
+                    }
+                }
+            }
+            for (Map.Entry<String, File> jar : jars.entrySet())
+            {
+                out.putEntry(jar.getKey(), jar.getValue());
+            }
+            for (Map.Entry<String, byte[]> resource : generated.entrySet())
+            {
+                out.putEntry(resource.getKey(), resource.getValue(), now);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @param path path of an entry of a merged WAR file
+     * @return whether the entry is to be merged, the manifest and, unless JAR files are merged,
+     * the JAR files in WEB-INF/lib are not
+     */
+    private boolean isMerged(String path)
+    {
+        if (MANIFEST.equalsIgnoreCase(path))
+        {
+            return false;
+        }
+        if (!this.mergeJarFiles && path.startsWith("WEB-INF/lib/")
+            && path.indexOf('/', "WEB-INF/lib/".length()) == -1)
+        {
+            return !path.toLowerCase(Locale.ENGLISH).endsWith(".jar");
+        }
+        return true;
+    }
+
+    /**
+     * Serializes a descriptor as generated content.
+     * @param generated generated content
+     * @param jars JAR files to add
+     * @param path path of the descriptor
+     * @param descriptor descriptor to serialize
+     * @throws IOException If the descriptor cannot be serialized
+     */
+    private static void putGenerated(Map<String, byte[]> generated, Map<String, File> jars,
+        String path, Descriptor descriptor) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AbstractDescriptorIo.writeDescriptor(descriptor, out, "UTF-8", true);
+        jars.remove(path);
+        generated.remove(path);
+        generated.put(path, out.toByteArray());
+    }
+
+    /**
+     * @param is stream to read, closed by this method
+     * @return content of the stream
+     * @throws IOException If reading fails
+     */
+    private static byte[] toByteArray(InputStream is) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = is.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
     /**
      * Here we write combined archive file structure out into the new location.
      * @param assembleDir target directory to write to
@@ -216,6 +505,7 @@ public class MergedWarArchive implements WarArchive
 
         // 2. Expand everything in order somewhere temporary
         expandToPath(assembleDir);
+        writeResources(assembleDir);
 
         if (!mergeJarFiles)
         {
@@ -240,6 +530,28 @@ public class MergedWarArchive implements WarArchive
         executeMergeProcessors(new File(assembleDir));
     }
 
+    /**
+     * @param assembleDir directory to write the additional resources to
+     * @throws IOException if a resource cannot be written
+     */
+    private void writeResources(String assembleDir) throws IOException
+    {
+        for (Map.Entry<String, byte[]> resource : this.resources.entrySet())
+        {
+            File file = new File(assembleDir, resource.getKey());
+            file.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(file);
+            try
+            {
+                out.write(resource.getValue());
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+
     /**
      * @param assembleDir directory to copy JAR files to
      */
@@ -22,7 +22,9 @@
  */
 package org.codehaus.cargo.module.webapp.merge;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.codehaus.cargo.module.Descriptor;
 import org.codehaus.cargo.module.XmlMerger;
@@ -208,11 +210,11 @@ public class WebXmlMerger extends XmlMerger
                 // merge the parameters
                 List<String> filterInitParamNames =
                     WebXmlUtils.getFilterInitParamNames(theWebXml, filterName);
+                Set<String> existingInitParams = new HashSet<String>(
+                    WebXmlUtils.getFilterInitParamNames(this.webXml, filterName));
                 for (String paramName : filterInitParamNames)
                 {
-                    List<String> existingInitParams =
-                        WebXmlUtils.getFilterInitParamNames(this.webXml, filterName);
-                    if (!existingInitParams.contains(paramName))
+                    if (existingInitParams.add(paramName))
                     {
                         String paramValue =
                             WebXmlUtils.getFilterInitParam(theWebXml, filterName, paramName);
@@ -277,11 +279,11 @@ public class WebXmlMerger extends XmlMerger
                 // merge the mappings
                 List<String> servletMappings =
                     WebXmlUtils.getServletMappings(theWebXml, servletName);
+                Set<String> existingServletMappings = new HashSet<String>(
+                    WebXmlUtils.getServletMappings(this.webXml, servletName));
                 for (String urlPattern : servletMappings)
                 {
-                    List<String> existingServletMappings =
-                        WebXmlUtils.getServletMappings(this.webXml, servletName);
-                    if (!existingServletMappings.contains(urlPattern))
+                    if (existingServletMappings.add(urlPattern))
                     {
                         WebXmlUtils.addServletMapping(this.webXml, servletName, urlPattern);
                     }
@@ -307,12 +309,15 @@ public class WebXmlMerger extends XmlMerger
     protected final void mergeSecurityRoles(WebXml theWebXml)
     {
         List<String> securityRoleNames = WebXmlUtils.getSecurityRoleNames(theWebXml);
+        Set<String> existingSecurityRoleNames =
+            new HashSet<String>(WebXmlUtils.getSecurityRoleNames(this.webXml));
         int count = 0;
         for (String securityRoleName : securityRoleNames)
         {
-            if (!WebXmlUtils.hasSecurityRole(this.webXml, securityRoleName))
+            if (existingSecurityRoleNames.add(securityRoleName))
             {
                 WebXmlUtils.addSecurityRole(this.webXml, securityRoleName);
+                count++;
             }
         }
         if (count > 0)
@@ -332,27 +337,18 @@ public class WebXmlMerger extends XmlMerger
     {
         int count = 0;
 
-        List<Element> srcItems = webXml.getTags(WebXmlType.MIME_MAPPING);
+        Set<String> extensions = new HashSet<String>();
+        for (Element srcItem : webXml.getTags(WebXmlType.MIME_MAPPING))
+        {
+            extensions.add(((MimeMapping) srcItem).getExtension());
+        }
         List<Element> targetItems = theWebXml.getTags(WebXmlType.MIME_MAPPING);
 
         for (Element targetItem : targetItems)
         {
-            boolean foundItem = false;
-
             MimeMapping targetMimeMapping = (MimeMapping) targetItem;
 
-            for (Element srcItem : srcItems)
-            {
-                MimeMapping srcMimeMapping = (MimeMapping) srcItem;
-
-                if (targetMimeMapping.getExtension().equals(srcMimeMapping.getExtension()))
-                {
-                    foundItem = true;
-                    break;
-                }
-            }
-
-            if (!foundItem)
+            if (extensions.add(targetMimeMapping.getExtension()))
             {
                 MimeMapping mimeMappingElement = (MimeMapping) webXml.getDescriptorType().
                     getTagByName(WebXmlType.MIME_MAPPING).create();
@@ -360,9 +356,8 @@ public class WebXmlMerger extends XmlMerger
                 mimeMappingElement.setExtension(targetMimeMapping.getExtension());
                 mimeMappingElement.setMimeType(targetMimeMapping.getMimeType());
 
-                this.webXml.addElement(mimeMappingElement.getTag(), mimeMappingElement,
-                    this.webXml.getRootElement());
                 this.webXml.addTag(mimeMappingElement);
+                count++;
             }
         }
 
@@ -22,6 +22,8 @@
  */
 package org.codehaus.cargo.module;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.List;
 import java.util.zip.ZipEntry;
@@ -203,4 +205,64 @@ public final class JarArchiveTest extends AbstractResourceTest
         // Verify that the rootResource.txt file has been correctly expanded
         assertTrue(this.fsManager.resolveFile("ram:///test/rootResource.txt").exists());
     }
+
+    /**
+     * Verifies that the index of an archive file is rebuilt when the file is modified.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testIndexIsRebuiltWhenFileChanges() throws Exception
+    {
+        File testJar = File.createTempFile("cargo", ".jar");
+        testJar.deleteOnExit();
+        writeJar(testJar, "first.txt");
+
+        DefaultJarArchive jarArchive = new DefaultJarArchive(testJar.getPath());
+        assertTrue(jarArchive.containsEntry("first.txt"));
+        assertEquals("first.txt", jarArchive.findResource("first.txt"));
+        assertNull(jarArchive.findResource("second.txt"));
+
+        writeJar(testJar, "folder/second.txt");
+        testJar.setLastModified(testJar.lastModified() - 10000);
+        assertFalse(jarArchive.containsEntry("first.txt"));
+        assertEquals("folder/second.txt", jarArchive.findResource("second.txt"));
+        assertContains(jarArchive.getResource("folder/second.txt"), "folder/second.txt");
+    }
+
+    /**
+     * Verifies that an archive read from a stream gives the same results as a file archive.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testArchiveFromStream() throws Exception
+    {
+        JarArchive jar = new DefaultJarArchive(
+            getResource(PACKAGE_PATH + "test.jar").openStream());
+        assertEquals(6, jar.getResources("").size());
+        assertEquals("folder1/resourceOne.txt", jar.findResource("resourceOne.txt"));
+        assertNotNull(jar.getResource("rootResource.txt"));
+        assertNull(jar.getResource("foo.txt"));
+    }
+
+    /**
+     * Writes a JAR file with a single entry, whose content is the entry name.
+     * 
+     * @param file JAR file to write.
+     * @param entryName Name of the entry.
+     * @throws Exception If anything goes wrong.
+     */
+    private void writeJar(File file, String entryName) throws Exception
+    {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try
+        {
+            zos.putNextEntry(new ZipEntry(entryName));
+            zos.write(entryName.getBytes("UTF-8"));
+            zos.closeEntry();
+        }
+        finally
+        {
+            zos.close();
+        }
+    }
 }
@@ -62,6 +62,27 @@ public final class WarArchiveTest extends AbstractResourceTest
         assertTrue(war.containsClass("test.Test"));
     }
 
+    /**
+     * Verifies that the method <code>containsClass()</code> gives the same results on repeated
+     * lookups in the JARs in <code>WEB-INF/lib</code>, including for a WAR read from a stream.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testContainsClassInWebinfLibRepeated() throws Exception
+    {
+        WarArchive war = new DefaultWarArchive(getResourcePath(PACKAGE_PATH
+            + "containsclasslib.war"));
+        WarArchive streamedWar = new DefaultWarArchive(getResource(PACKAGE_PATH
+            + "containsclasslib.war").openStream());
+        for (int i = 0; i < 2; i++)
+        {
+            assertTrue(war.containsClass("test.Test"));
+            assertFalse(war.containsClass("test.Missing"));
+            assertTrue(streamedWar.containsClass("test.Test"));
+            assertFalse(streamedWar.containsClass("test.Missing"));
+        }
+    }
+
     /**
      * Verifies that the method <code>containsClass()</code> returns <code>false</code> if the WAR
      * does not contain such a class.
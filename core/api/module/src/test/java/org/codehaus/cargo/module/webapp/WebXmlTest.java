@@ -1714,6 +1714,110 @@ public final class WebXmlTest extends AbstractDocumentBuilderTest
         assertEquals("MyEjb", m.getText());
     }
 
+    /**
+     * Tests that servlets added or removed directly through the DOM are seen by the indexed
+     * lookups.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testIndexedLookupsAfterDirectDomChanges() throws Exception
+    {
+        String xml = WEBAPP_TEST_HEADER
+            + "  <servlet>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <servlet-class>s1class</servlet-class>"
+            + "  </servlet>"
+            + "</web-app>";
+        WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+            getEntityResolver());
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s1"));
+        assertFalse(WebXmlUtils.hasServlet(webXml, "s2"));
+
+        webXml.getRootElement().addContent(
+            createServletElement(webXml.getDescriptorType(), "s2", "s2class"));
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s2"));
+
+        webXml.getRootElement().removeContent(WebXmlUtils.getServlet(webXml, "s1"));
+        assertFalse(WebXmlUtils.hasServlet(webXml, "s1"));
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s2"));
+    }
+
+    /**
+     * Tests that servlet mappings are looked up by servlet name as they are added, including when
+     * the servlet element is moved to another descriptor.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testIndexedServletMappings() throws Exception
+    {
+        String xml = WEBAPP_TEST_HEADER
+            + "  <servlet>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <servlet-class>s1class</servlet-class>"
+            + "  </servlet>"
+            + "  <servlet-mapping>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <url-pattern>/s1mapping1</url-pattern>"
+            + "  </servlet-mapping>"
+            + "</web-app>";
+        WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+            getEntityResolver());
+        WebXml other = WebXmlIo.parseWebXml(new ByteArrayInputStream(
+            (WEBAPP_TEST_HEADER + "</web-app>").getBytes("UTF-8")), getEntityResolver());
+
+        assertEquals(1, WebXmlUtils.getServletMappings(webXml, "s1").size());
+        WebXmlUtils.addServletMapping(webXml, "s1", "/s1mapping2");
+        WebXmlUtils.addServletMapping(webXml, "s1", "/s1mapping2");
+        List<String> servletMappings = WebXmlUtils.getServletMappings(webXml, "s1");
+        assertEquals(2, servletMappings.size());
+        assertEquals("/s1mapping1", servletMappings.get(0));
+        assertEquals("/s1mapping2", servletMappings.get(1));
+
+        WebXmlUtils.addServlet(other, WebXmlUtils.getServlet(webXml, "s1"));
+        assertFalse(WebXmlUtils.hasServlet(webXml, "s1"));
+        assertTrue(WebXmlUtils.hasServlet(other, "s1"));
+        assertEquals(2, WebXmlUtils.getServletMappings(webXml, "s1").size());
+    }
+
+    /**
+     * Tests that servlets and servlet mappings changed in place, below the root element, are
+     * still found by the lookups and by the duplicate check of
+     * {@link WebXml#addElement(org.codehaus.cargo.module.DescriptorTag, Element, Element)}.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testLookupsAfterNestedChanges() throws Exception
+    {
+        String xml = WEBAPP_TEST_HEADER
+            + "  <servlet>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <servlet-class>s1class</servlet-class>"
+            + "  </servlet>"
+            + "  <servlet-mapping>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <url-pattern>/s1mapping</url-pattern>"
+            + "  </servlet-mapping>"
+            + "</web-app>";
+        WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+            getEntityResolver());
+        Element servlet = WebXmlUtils.getServlet(webXml, "s1");
+        webXml.addElement(webXml.getDescriptorType().getTagByName(WebXmlType.SERVLET),
+            (Element) servlet.clone(), webXml.getRootElement());
+        assertEquals(1, webXml.getTags(WebXmlType.SERVLET).size());
+        assertEquals(1, WebXmlUtils.getServletMappings(webXml, "s1").size());
+
+        WebXmlUtils.addServletInitParam(webXml, "s1", "param", "value");
+        webXml.addElement(webXml.getDescriptorType().getTagByName(WebXmlType.SERVLET),
+            (Element) servlet.clone(), webXml.getRootElement());
+        assertEquals(1, webXml.getTags(WebXmlType.SERVLET).size());
+
+        Element mapping = webXml.getTags(WebXmlType.SERVLET_MAPPING).get(0);
+        mapping.getChild(WebXmlType.SERVLET_NAME, mapping.getNamespace()).setText("s2");
+        assertTrue(WebXmlUtils.getServletMappings(webXml, "s1").isEmpty());
+        assertEquals(1, WebXmlUtils.getServletMappings(webXml, "s2").size());
+        assertNotNull(webXml.getTagByIdentifier(WebXmlType.SERVLET, "s1"));
+    }
+
     // Private Methods ---------------------------------------------------------
 
     /**
@@ -0,0 +1,334 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.module.webapp.merge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.module.webapp.DefaultWarArchive;
+import org.codehaus.cargo.module.webapp.WebXml;
+import org.codehaus.cargo.module.webapp.WebXmlUtils;
+import org.codehaus.cargo.util.DefaultFileHandler;
+
+/**
+ * Unit tests for {@link MergedWarArchive}.
+ * 
+ */
+public class MergedWarArchiveTest extends TestCase
+{
+    /**
+     * Temporary directory holding the test archives.
+     */
+    private String tmpDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.tmpDir = new DefaultFileHandler().createUniqueTmpDirectory();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        new DefaultFileHandler().delete(this.tmpDir);
+        super.tearDown();
+    }
+
+    /**
+     * Test that WAR files read from local files are merged directly into the merged WAR file:
+     * entries are de-duplicated, the last WAR file wins and the manifest comes first.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStoreLocalFiles() throws Exception
+    {
+        File merged = merge(true, true, true);
+
+        List<String> names = getEntryNames(merged);
+        assertEquals("META-INF/MANIFEST.MF", names.get(0));
+        assertEquals(names.size(), new HashSet<String>(names).size());
+        assertTrue(names.contains("WEB-INF/lib/first.jar"));
+
+        ZipFile zip = new ZipFile(merged);
+        try
+        {
+            // JAR files are stored as is, they would hardly be compressed anyway
+            assertEquals(ZipEntry.STORED, zip.getEntry("WEB-INF/lib/extra.jar").getMethod());
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        JarInputStream jar = new JarInputStream(new FileInputStream(merged));
+        try
+        {
+            assertNotNull(jar.getManifest());
+            assertEquals("merged", jar.getManifest().getMainAttributes().getValue("Test"));
+        }
+        finally
+        {
+            jar.close();
+        }
+
+        assertMerged(merged);
+    }
+
+    /**
+     * Test that, when no manifest is added, the manifest of the last WAR file holding one is kept,
+     * whether the WAR files are merged directly or through a temporary directory.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStoreKeepsLastManifest() throws Exception
+    {
+        for (boolean localFiles : new boolean[] {true, false})
+        {
+            File merged = merge(localFiles, true, false);
+
+            assertEquals("META-INF/MANIFEST.MF", getEntryNames(merged).get(0));
+            JarInputStream jar = new JarInputStream(new FileInputStream(merged));
+            try
+            {
+                assertNotNull(jar.getManifest());
+                assertEquals("second", jar.getManifest().getMainAttributes().getValue("Test"));
+            }
+            finally
+            {
+                jar.close();
+            }
+            assertMerged(merged);
+        }
+    }
+
+    /**
+     * Test that the JAR files of the merged WAR files are skipped when they are not merged.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStoreWithoutMergingJarFiles() throws Exception
+    {
+        File merged = merge(true, false, true);
+
+        List<String> names = getEntryNames(merged);
+        assertFalse(names.contains("WEB-INF/lib/first.jar"));
+        assertTrue(names.contains("WEB-INF/lib/extra.jar"));
+        assertMerged(merged);
+    }
+
+    /**
+     * Test that WAR files read from streams are merged into the same content.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStoreStreams() throws Exception
+    {
+        File merged = merge(false, true, true);
+
+        assertTrue(getEntryNames(merged).contains("WEB-INF/lib/first.jar"));
+        assertMerged(merged);
+    }
+
+    /**
+     * Merges two test WAR files and a JAR file.
+     * 
+     * @param localFiles Whether to read the WAR files from local files or from streams.
+     * @param mergeJarFiles Whether to merge the JAR files of the WAR files.
+     * @param addManifest Whether to add a manifest to the merged WAR file.
+     * @return Merged WAR file.
+     * @throws Exception If anything goes wrong.
+     */
+    private File merge(boolean localFiles, boolean mergeJarFiles, boolean addManifest)
+        throws Exception
+    {
+        File first = createArchive("first.war", new String[] {
+            "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nTest: first\r\n\r\n",
+            "WEB-INF/web.xml", createWebXml("s1"),
+            "WEB-INF/lib/first.jar", "first jar",
+            "index.jsp", "first",
+            "first.jsp", "first only"
+        });
+        File second = createArchive("second.war", new String[] {
+            "WEB-INF/web.xml", createWebXml("s2"),
+            "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nTest: second\r\n\r\n",
+            "index.jsp", "second",
+            "second.jsp", "second only"
+        });
+        File extraJar = createArchive("extra.jar", new String[] {"extra.txt", "extra"});
+
+        WarArchiveMerger merger = new WarArchiveMerger();
+        merger.setMergeJarFiles(mergeJarFiles);
+        for (File war : new File[] {first, second})
+        {
+            if (localFiles)
+            {
+                merger.addMergeItem(new DefaultWarArchive(war.getPath()));
+            }
+            else
+            {
+                merger.addMergeItem(new DefaultWarArchive(new FileInputStream(war)));
+            }
+        }
+        merger.addMergeItem(extraJar);
+
+        MergedWarArchive archive = (MergedWarArchive) merger.performMerge();
+        if (addManifest)
+        {
+            archive.addResource("META-INF/MANIFEST.MF",
+                "Manifest-Version: 1.0\r\nTest: merged\r\n\r\n".getBytes("UTF-8"));
+        }
+        File merged = new File(this.tmpDir, "merged.war");
+        archive.store(merged);
+        return merged;
+    }
+
+    /**
+     * Asserts the content of a merged WAR file.
+     * 
+     * @param merged Merged WAR file.
+     * @throws Exception If anything goes wrong.
+     */
+    private void assertMerged(File merged) throws Exception
+    {
+        ZipFile zip = new ZipFile(merged);
+        try
+        {
+            assertEquals("second", read(zip, "index.jsp"));
+            assertEquals("first only", read(zip, "first.jsp"));
+            assertEquals("second only", read(zip, "second.jsp"));
+            assertNotNull(zip.getEntry("WEB-INF/lib/extra.jar"));
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        WebXml webXml = new DefaultWarArchive(merged.getPath()).getWebXml();
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s1"));
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s2"));
+    }
+
+    /**
+     * @param servletName Name of the only servlet of the descriptor.
+     * @return Web deployment descriptor.
+     */
+    private static String createWebXml(String servletName)
+    {
+        return "<web-app><servlet><servlet-name>" + servletName + "</servlet-name>"
+            + "<servlet-class>test." + servletName + "</servlet-class></servlet></web-app>";
+    }
+
+    /**
+     * @param name Archive file name.
+     * @param entries Entry names and contents.
+     * @return Archive file.
+     * @throws IOException If anything goes wrong.
+     */
+    private File createArchive(String name, String[] entries) throws IOException
+    {
+        File file = new File(this.tmpDir, name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try
+        {
+            for (int i = 0; i < entries.length; i += 2)
+            {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * @param file Archive file.
+     * @return Names of the entries of the archive, in order.
+     * @throws IOException If anything goes wrong.
+     */
+    private static List<String> getEntryNames(File file) throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile(file);
+        try
+        {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements())
+            {
+                names.add(entries.nextElement().getName());
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return names;
+    }
+
+    /**
+     * @param zip Archive.
+     * @param name Entry name.
+     * @return Content of the entry.
+     * @throws IOException If anything goes wrong.
+     */
+    private static String read(ZipFile zip, String name) throws IOException
+    {
+        InputStream in = zip.getInputStream(zip.getEntry(name));
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, count);
+            }
+            return out.toString("UTF-8");
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
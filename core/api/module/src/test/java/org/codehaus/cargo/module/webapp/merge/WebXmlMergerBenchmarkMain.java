@@ -0,0 +1,167 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.module.webapp.merge;
+
+import java.io.ByteArrayInputStream;
+
+import org.codehaus.cargo.module.webapp.WebXml;
+import org.codehaus.cargo.module.webapp.WebXmlIo;
+import org.codehaus.cargo.module.webapp.WebXmlUtils;
+import org.codehaus.cargo.util.log.Logger;
+import org.codehaus.cargo.util.log.SimpleLogger;
+
+/**
+ * Measures how {@link WebXmlMerger} scales with the size of the descriptors. Each run merges two
+ * version 2.5 descriptors with the given number of filters, servlets, mappings, security roles and
+ * MIME mappings, half of which are in both descriptors. Lookups scan the elements with the
+ * looked up tag name, so doubling the size roughly quadruples the duration of the largest merges.
+ * This is not a unit test and is not run by the build; run it with the test classpath, for
+ * example:
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.codehaus.cargo.module.webapp.merge.WebXmlMergerBenchmarkMain</code>.
+ * 
+ */
+public final class WebXmlMergerBenchmarkMain
+{
+    /**
+     * Descriptor sizes to measure, in number of elements of each kind.
+     */
+    private static final int[] SIZES = {250, 500, 1000, 2000, 4000};
+
+    /**
+     * Number of untimed runs before measuring.
+     */
+    private static final int WARMUP_RUNS = 3;
+
+    /**
+     * Number of measured runs.
+     */
+    private static final int MEASURED_RUNS = 5;
+
+    /**
+     * Logger the results are reported to.
+     */
+    private static final Logger LOGGER = new SimpleLogger();
+
+    /**
+     * Utility class.
+     */
+    private WebXmlMergerBenchmarkMain()
+    {
+        // Nothing
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args Ignored.
+     * @throws Exception If parsing or merging fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        long previous = 0;
+        for (int size : SIZES)
+        {
+            byte[] base = createDescriptor(0, size).getBytes("UTF-8");
+            byte[] merged = createDescriptor(size / 2, size).getBytes("UTF-8");
+
+            long total = 0;
+            for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++)
+            {
+                WebXml baseWebXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(base), null);
+                WebXml mergedWebXml =
+                    WebXmlIo.parseWebXml(new ByteArrayInputStream(merged), null);
+
+                long start = System.nanoTime();
+                new WebXmlMerger(baseWebXml).merge(mergedWebXml);
+                if (i >= WARMUP_RUNS)
+                {
+                    total += System.nanoTime() - start;
+                }
+
+                int expected = size + size / 2;
+                if (WebXmlUtils.getServletNames(baseWebXml).size() != expected
+                    || WebXmlUtils.getFilterNames(baseWebXml).size() != expected)
+                {
+                    throw new IllegalStateException("Unexpected merge result for size " + size);
+                }
+            }
+
+            long average = total / MEASURED_RUNS / 1000;
+            String ratio = "";
+            if (previous > 0)
+            {
+                ratio = String.format(" (x%.2f)", (double) average / previous);
+            }
+            LOGGER.info(size + " elements of each kind: " + average + " us" + ratio,
+                WebXmlMergerBenchmarkMain.class.getName());
+            previous = average;
+        }
+    }
+
+    /**
+     * Creates a descriptor.
+     * 
+     * @param first Number of the first element.
+     * @param size Number of elements of each kind.
+     * @return Descriptor.
+     */
+    private static String createDescriptor(int first, int size)
+    {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<web-app xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.5\">\n");
+        for (int i = first; i < first + size; i++)
+        {
+            xml.append("  <filter><filter-name>f").append(i).append("</filter-name>");
+            xml.append("<filter-class>F").append(i).append("</filter-class>");
+            xml.append("<init-param><param-name>p</param-name>");
+            xml.append("<param-value>").append(first).append("</param-value></init-param>");
+            xml.append("</filter>\n");
+        }
+        for (int i = first; i < first + size; i++)
+        {
+            xml.append("  <filter-mapping><filter-name>f").append(i).append("</filter-name>");
+            xml.append("<url-pattern>/f").append(i).append("/*</url-pattern></filter-mapping>\n");
+        }
+        for (int i = first; i < first + size; i++)
+        {
+            xml.append("  <servlet><servlet-name>s").append(i).append("</servlet-name>");
+            xml.append("<servlet-class>S").append(i).append("</servlet-class></servlet>\n");
+        }
+        for (int i = first; i < first + size; i++)
+        {
+            xml.append("  <servlet-mapping><servlet-name>s").append(i).append("</servlet-name>");
+            xml.append("<url-pattern>/s").append(i).append("</url-pattern></servlet-mapping>\n");
+        }
+        for (int i = first; i < first + size; i++)
+        {
+            xml.append("  <mime-mapping><extension>e").append(i).append("</extension>");
+            xml.append("<mime-type>x/e").append(i).append("</mime-type></mime-mapping>\n");
+        }
+        for (int i = first; i < first + size; i++)
+        {
+            xml.append("  <security-role><role-name>r").append(i);
+            xml.append("</role-name></security-role>\n");
+        }
+        xml.append("</web-app>\n");
+        return xml.toString();
+    }
+}
@@ -25,10 +25,10 @@ package org.codehaus.cargo.util;
 import java.io.File;
 import java.net.URI;
 import java.util.Map;
+import java.util.Vector;
 
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
-import org.apache.tools.ant.filters.ReplaceTokens;
 import org.apache.tools.ant.types.Environment;
 import org.apache.tools.ant.types.FilterChain;
 import org.apache.tools.ant.types.Path;
@@ -146,7 +146,9 @@ public class AntUtils
     }
 
     /**
-     * Add a token to an existing filter chain.
+     * Add a token to an existing filter chain. If the last filter of the chain is a
+     * {@link TokenReplacer}, the token is added to it, so that all tokens get replaced in a single
+     * pass instead of one pass per token.
      * 
      * @param filterChain the filter chain to augment
      * @param key the token key
@@ -155,12 +157,7 @@ public class AntUtils
     public void addTokenToFilterChain(FilterChain filterChain, String key,
         String value)
     {
-        ReplaceTokens replaceToken = new ReplaceTokens();
-        ReplaceTokens.Token token = new ReplaceTokens.Token();
-        token.setKey(key);
-        token.setValue(value);
-        replaceToken.addConfiguredToken(token);
-        filterChain.addReplaceTokens(replaceToken);
+        getTokenReplacer(filterChain).addToken(key, value);
     }
 
     /**
@@ -171,10 +168,27 @@ public class AntUtils
      */
     public void addTokensToFilterChain(FilterChain filterChain, Map<String, String> map)
     {
-        for (Map.Entry<String, String> entry : map.entrySet())
+        getTokenReplacer(filterChain).addTokens(map);
+    }
+
+    /**
+     * Gets the {@link TokenReplacer} tokens are added to, that is the last filter of a filter
+     * chain if it is a token replacer, a new token replacer appended to the chain otherwise.
+     * 
+     * @param filterChain The filter chain
+     * @return The token replacer at the end of the filter chain
+     */
+    public TokenReplacer getTokenReplacer(FilterChain filterChain)
+    {
+        Vector<?> filterReaders = filterChain.getFilterReaders();
+        if (!filterReaders.isEmpty() && filterReaders.lastElement() instanceof TokenReplacer)
         {
-            addTokenToFilterChain(filterChain, entry.getKey(), entry.getValue());
+            return (TokenReplacer) filterReaders.lastElement();
         }
+
+        TokenReplacer tokenReplacer = new TokenReplacer();
+        filterChain.add(tokenReplacer);
+        return tokenReplacer;
     }
 
 }
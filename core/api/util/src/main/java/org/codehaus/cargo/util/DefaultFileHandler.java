@@ -40,19 +40,32 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
@@ -74,6 +87,35 @@ import org.codehaus.cargo.util.log.LoggedObject;
  */
 public class DefaultFileHandler extends LoggedObject implements FileHandler
 {
+    /**
+     * Default size of the buffers used when copying streams.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Buffers used by the threads extracting archive entries in parallel.
+     */
+    private static final ThreadLocal<byte[]> EXPLODE_BUFFERS = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[DEFAULT_BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * XML parsing, XPath and serialization tools, reused by each thread running XML replacements.
+     */
+    private static final ThreadLocal<XmlTools> XML_TOOLS = new ThreadLocal<XmlTools>()
+    {
+        @Override
+        protected XmlTools initialValue()
+        {
+            return new XmlTools();
+        }
+    };
+
     /**
      * Counter for creating unique temp directories.
      */
@@ -218,7 +260,6 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                     // Ignored
                 }
                 fileIS = null;
-                System.gc();
             }
         }
     }
@@ -315,7 +356,7 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
             delete(exploded);
         }
 
-        byte[] buf = new byte[1024];
+        byte[] buf = new byte[DEFAULT_BUFFER_SIZE];
 
         JarFile archive = null;
         try
@@ -357,13 +398,11 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                     {
                         in.close();
                         in = null;
-                        System.gc();
                     }
                     if (out != null)
                     {
                         out.close();
                         out = null;
-                        System.gc();
                     }
                 }
             }
@@ -386,11 +425,168 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                     // Ignored
                 }
                 archive = null;
-                System.gc();
             }
         }
     }
 
+    /**
+     * Extracts a war file into a directory using several threads: all directories are created
+     * first, then entries are extracted in parallel.
+     * 
+     * @param war the War archive to be extracted.
+     * @param exploded the directory that receives files.
+     * @param threads the number of threads to extract entries with, <code>1</code> or less
+     * to extract sequentially.
+     */
+    public void explode(String war, String exploded, int threads)
+    {
+        if (threads <= 1)
+        {
+            explode(war, exploded);
+            return;
+        }
+
+        if (exists(exploded))
+        {
+            delete(exploded);
+        }
+
+        final File targetDirectory = new File(exploded).getAbsoluteFile();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final ZipFile archive = new ZipFile(new File(war).getAbsoluteFile());
+            try
+            {
+                // Create all directories in one pass, so that extracting threads never race on
+                // them; the set is sorted hence parents are created before their children
+                List<ZipEntry> files = new ArrayList<ZipEntry>();
+                Set<File> directories = new TreeSet<File>();
+                directories.add(targetDirectory);
+                Enumeration<? extends ZipEntry> entries = archive.entries();
+                while (entries.hasMoreElements())
+                {
+                    ZipEntry entry = entries.nextElement();
+                    File destination = new File(targetDirectory, entry.getName());
+                    if (entry.isDirectory())
+                    {
+                        directories.add(destination);
+                    }
+                    else
+                    {
+                        directories.add(destination.getParentFile());
+                        files.add(entry);
+                    }
+                }
+                for (File directory : directories)
+                {
+                    if (!directory.isDirectory())
+                    {
+                        mkdirs(directory.getPath());
+                    }
+                }
+
+                List<Future<Object>> extractions = new ArrayList<Future<Object>>(files.size());
+                for (final ZipEntry entry : files)
+                {
+                    extractions.add(executor.submit(new Callable<Object>()
+                    {
+                        public Object call() throws IOException
+                        {
+                            extractEntry(archive, entry,
+                                new File(targetDirectory, entry.getName()),
+                                    EXPLODE_BUFFERS.get());
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Object> extraction : extractions)
+                {
+                    extraction.get();
+                }
+            }
+            finally
+            {
+                // When an entry fails, other workers may still be writing: wait for them before
+                // closing the archive they read from and reporting the failure
+                shutdownAndWait(executor);
+                archive.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new CargoException(
+                "Failed to extract file [" + war + "] to [" + exploded + "]", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new CargoException(
+                "Failed to extract file [" + war + "] to [" + exploded + "]", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            throw new CargoException(
+                "Interrupted while extracting file [" + war + "] to [" + exploded + "]", e);
+        }
+    }
+
+    /**
+     * Cancels the tasks of an executor and waits for the running ones to complete. If the current
+     * thread is interrupted while waiting, its interrupted status is restored.
+     * 
+     * @param executor Executor to shut down.
+     */
+    private static void shutdownAndWait(ExecutorService executor)
+    {
+        executor.shutdownNow();
+        try
+        {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+            {
+                // Workers only stop between entries, keep waiting for them
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Extracts an archive entry.
+     * 
+     * @param archive Archive to extract from.
+     * @param entry Entry to extract.
+     * @param destination File to extract the entry to, its parent directory must exist.
+     * @param buffer Buffer to use.
+     * @throws IOException If extracting fails.
+     */
+    protected static void extractEntry(ZipFile archive, ZipEntry entry, File destination,
+        byte[] buffer) throws IOException
+    {
+        InputStream in = archive.getInputStream(entry);
+        try
+        {
+            OutputStream out = new FileOutputStream(destination);
+            try
+            {
+                int length;
+                while ((length = in.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, length);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
     /**
      * {@inheritDoc}
      * @see FileHandler#createDirectory(String, String)
@@ -429,12 +625,12 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
     }
 
     /**
-     * {@inheritDoc}. The default buffer size if 1024.
+     * {@inheritDoc}. The default buffer size is {@link #DEFAULT_BUFFER_SIZE}.
      * @see FileHandler#copy(java.io.InputStream, java.io.OutputStream, int)
      */
     public void copy(InputStream in, OutputStream out)
     {
-        copy(in, out, 1024);
+        copy(in, out, DEFAULT_BUFFER_SIZE);
     }
 
     /**
@@ -529,14 +725,8 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
 
         try
         {
-            DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = domFactory.newDocumentBuilder();
-
-            XPathFactory xPathFactory = XPathFactory.newInstance();
-            XPath xPath = xPathFactory.newXPath();
-
-            TransformerFactory tFactory = TransformerFactory.newInstance();
-            Transformer transformer = tFactory.newTransformer();
+            XmlTools xmlTools = XML_TOOLS.get();
+            DocumentBuilder builder = xmlTools.getDocumentBuilder();
 
             if (!exists(file))
             {
@@ -557,7 +747,6 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
             {
                 is.close();
                 is = null;
-                System.gc();
             }
 
             for (Map.Entry<XmlReplacementDetails, String> replacement : replacements.entrySet())
@@ -565,7 +754,7 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                 String expression = replacement.getKey().getXpathExpression();
                 String attributeName = replacement.getKey().getAttributeName();
 
-                XPathExpression xPathExpr = xPath.compile(expression);
+                XPathExpression xPathExpr = xmlTools.compile(expression);
 
                 Node node = (Node) xPathExpr.evaluate(doc, XPathConstants.NODE);
 
@@ -605,7 +794,7 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
 
             delete(file);
             os = getOutputStream(file);
-            transformer.transform(new DOMSource(doc), new StreamResult(os));
+            xmlTools.getTransformer().transform(new DOMSource(doc), new StreamResult(os));
         }
         catch (Exception e)
         {
@@ -644,8 +833,6 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                     os = null;
                 }
             }
-
-            System.gc();
         }
     }
 
@@ -984,7 +1171,6 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
             {
                 writer.close();
                 writer = null;
-                System.gc();
             }
             catch (IOException ignored)
             {
@@ -1035,4 +1221,88 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
         }
     }
 
+    /**
+     * Per-thread XML tools used by the XML replacements. The JAXP factories are costly to look up
+     * and their products are not thread-safe, hence they are created once per thread and compiled
+     * XPath expressions are kept for the following replacements.
+     */
+    private static final class XmlTools
+    {
+        /**
+         * Document builder.
+         */
+        private DocumentBuilder documentBuilder;
+
+        /**
+         * XPath compiler.
+         */
+        private XPath xPath;
+
+        /**
+         * Transformer used to write documents back.
+         */
+        private Transformer transformer;
+
+        /**
+         * Compiled XPath expressions, indexed by their text.
+         */
+        private final Map<String, XPathExpression> expressions =
+            new HashMap<String, XPathExpression>();
+
+        /**
+         * @return The document builder, reset to its initial state.
+         * @throws ParserConfigurationException If the document builder cannot be created.
+         */
+        public DocumentBuilder getDocumentBuilder() throws ParserConfigurationException
+        {
+            if (documentBuilder == null)
+            {
+                documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            }
+            else
+            {
+                documentBuilder.reset();
+            }
+            return documentBuilder;
+        }
+
+        /**
+         * @return The transformer, reset to its initial state.
+         * @throws TransformerConfigurationException If the transformer cannot be created.
+         */
+        public Transformer getTransformer() throws TransformerConfigurationException
+        {
+            if (transformer == null)
+            {
+                transformer = TransformerFactory.newInstance().newTransformer();
+            }
+            else
+            {
+                transformer.reset();
+            }
+            return transformer;
+        }
+
+        /**
+         * Compile an XPath expression, or return the one compiled earlier.
+         * 
+         * @param expression XPath expression.
+         * @return Compiled XPath expression.
+         * @throws XPathExpressionException If the expression cannot be compiled.
+         */
+        public XPathExpression compile(String expression) throws XPathExpressionException
+        {
+            XPathExpression compiled = expressions.get(expression);
+            if (compiled == null)
+            {
+                if (xPath == null)
+                {
+                    xPath = XPathFactory.newInstance().newXPath();
+                }
+                compiled = xPath.compile(expression);
+                expressions.put(expression, compiled);
+            }
+            return compiled;
+        }
+    }
 }
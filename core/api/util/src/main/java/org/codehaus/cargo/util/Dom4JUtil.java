@@ -46,6 +46,11 @@ public class Dom4JUtil
      */
     private Map<String, String> namespaces;
 
+    /**
+     * XPath selectors compiled with the current namespaces, indexed by their expression.
+     */
+    private Map<String, XPath> compiledXPaths = new HashMap<String, XPath>();
+
     /**
      * File utility class.
      */
@@ -80,8 +85,13 @@ public class Dom4JUtil
      */
     public List<Element> selectElementsMatchingXPath(String xpath, Element toSearch)
     {
-        XPath xpathSelector = DocumentHelper.createXPath(xpath);
-        xpathSelector.setNamespaceURIs(getNamespaces());
+        XPath xpathSelector = compiledXPaths.get(xpath);
+        if (xpathSelector == null)
+        {
+            xpathSelector = DocumentHelper.createXPath(xpath);
+            xpathSelector.setNamespaceURIs(getNamespaces());
+            compiledXPaths.put(xpath, xpathSelector);
+        }
         List<Element> results = xpathSelector.selectNodes(toSearch);
         return results;
     }
@@ -219,6 +229,7 @@ public class Dom4JUtil
     public void setNamespaces(Map<String, String> namespaces)
     {
         this.namespaces = namespaces;
+        this.compiledXPaths.clear();
     }
 
     /**
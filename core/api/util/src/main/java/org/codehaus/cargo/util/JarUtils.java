@@ -33,7 +33,13 @@ import java.util.jar.JarOutputStream;
 public final class JarUtils
 {
     /**
-     * Create a jar file from a particular directory.
+     * Path of the JAR manifest, which must be the first entry of the JAR file.
+     */
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    /**
+     * Create a jar file from a particular directory. The manifest, which is added first, is
+     * skipped.
      * 
      * @param root in the root directory
      * @param directory in the directory we are adding
@@ -45,9 +51,7 @@ public final class JarUtils
                                           JarOutputStream jarStream)
         throws IOException
     {
-        byte[] buffer = new byte[40960];
-        int bytesRead;
-
+        File manifest = new File(root, MANIFEST);
         File[] filesToAdd = directory.listFiles();
 
         for (File fileToAdd : filesToAdd)
@@ -56,34 +60,51 @@ public final class JarUtils
             {
                 createJarFromDirectory(root, fileToAdd, jarStream);
             }
-            else
+            else if (!fileToAdd.equals(manifest))
             {
-                FileInputStream addFile = new FileInputStream(fileToAdd);
-                try
-                {
-                    // Create a jar entry and add it to the temp jar.
-                    String entryName = fileToAdd.getPath().substring(root.getPath().length() + 1);
+                addFile(root, fileToAdd, jarStream);
+            }
+        }
+    }
 
-                    // If we leave these entries as '\'s, then the resulting zip file won't be
-                    // expandable on Unix operating systems like OSX, because it is possible to
-                    // have filenames with \s in them - so it's impossible to determine that this
-                    // is actually a directory.
-                    entryName = entryName.replace('\\', '/');
-                    JarEntry entry = new JarEntry(entryName);
-                    jarStream.putNextEntry(entry);
+    /**
+     * Add a file to a jar file.
+     * 
+     * @param root in the root directory
+     * @param fileToAdd in the file to add
+     * @param jarStream the jar stream to be added to
+     * @throws IOException on IOException
+     */
+    private void addFile(File root, File fileToAdd, JarOutputStream jarStream)
+        throws IOException
+    {
+        byte[] buffer = new byte[40960];
+        int bytesRead;
+
+        FileInputStream addFile = new FileInputStream(fileToAdd);
+        try
+        {
+            // Create a jar entry and add it to the temp jar.
+            String entryName = fileToAdd.getPath().substring(root.getPath().length() + 1);
 
-                    // Read the file and write it to the jar.
-                    while ((bytesRead = addFile.read(buffer)) != -1)
-                    {
-                        jarStream.write(buffer, 0, bytesRead);
-                    }
-                    jarStream.closeEntry();
-                }
-                finally
-                {
-                    addFile.close();
-                }
+            // If we leave these entries as '\'s, then the resulting zip file won't be
+            // expandable on Unix operating systems like OSX, because it is possible to
+            // have filenames with \s in them - so it's impossible to determine that this
+            // is actually a directory.
+            entryName = entryName.replace('\\', '/');
+            JarEntry entry = new JarEntry(entryName);
+            jarStream.putNextEntry(entry);
+
+            // Read the file and write it to the jar.
+            while ((bytesRead = addFile.read(buffer)) != -1)
+            {
+                jarStream.write(buffer, 0, bytesRead);
             }
+            jarStream.closeEntry();
+        }
+        finally
+        {
+            addFile.close();
         }
     }
 
@@ -109,6 +130,12 @@ public final class JarUtils
             jarStream = new JarOutputStream(new FileOutputStream(outputJar));
             File dir = new File(directory);
 
+            // The manifest must come first for JarInputStream to find it
+            File manifest = new File(dir, MANIFEST);
+            if (manifest.isFile())
+            {
+                addFile(dir, manifest, jarStream);
+            }
             createJarFromDirectory(dir, dir, jarStream);
         }
         finally
@@ -0,0 +1,234 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.tools.ant.DirectoryScanner;
+
+/**
+ * File handler which copies and explodes files using NIO channels: files are copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets
+ * the operating system move the data without copying it through the JVM heap. Files are not
+ * memory-mapped, since a mapped file stays locked on Windows until the mapping is garbage
+ * collected. Other operations behave as in {@link DefaultFileHandler}.
+ * 
+ */
+public class NioFileHandler extends DefaultFileHandler
+{
+    /**
+     * Maximum number of bytes handed to a single transferTo call, some platforms do not support
+     * larger transfers.
+     */
+    private static final long MAX_TRANSFER_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * {@inheritDoc}. Unless <code>overwrite</code> is set, the target is only replaced if it is
+     * older than the source, as done by {@link DefaultFileHandler}.
+     */
+    @Override
+    public void copyFile(String source, String target, boolean overwrite)
+    {
+        File sourceFile = new File(source).getAbsoluteFile();
+        File targetFile = new File(target).getAbsoluteFile();
+        if (!overwrite && targetFile.exists()
+            && targetFile.lastModified() >= sourceFile.lastModified())
+        {
+            return;
+        }
+
+        try
+        {
+            copyFile(sourceFile, targetFile);
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to copy source file [" + source + "] to ["
+                + target + "]", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}. Ant's default excludes (version control metadata and the like) are applied,
+     * as done by {@link DefaultFileHandler}.
+     */
+    @Override
+    public void copyDirectory(String source, String target, List<String> excludes)
+    {
+        File sourceDirectory = new File(source).getAbsoluteFile();
+        File targetDirectory = new File(target).getAbsoluteFile();
+        if (!sourceDirectory.isDirectory())
+        {
+            throw new CargoException("Failed to copy source directory [" + source + "] to ["
+                + target + "]: source is not a directory");
+        }
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(sourceDirectory);
+        scanner.setExcludes(excludes.toArray(new String[excludes.size()]));
+        scanner.addDefaultExcludes();
+        scanner.scan();
+
+        try
+        {
+            mkdirs(targetDirectory.getPath());
+            for (String directory : scanner.getIncludedDirectories())
+            {
+                mkdirs(new File(targetDirectory, directory).getPath());
+            }
+            for (String file : scanner.getIncludedFiles())
+            {
+                copyFile(new File(sourceDirectory, file), new File(targetDirectory, file));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to copy source directory [" + source + "] to ["
+                + target + "]", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}. Each directory is only created once, and entries are written using a buffer
+     * of {@link #DEFAULT_BUFFER_SIZE} bytes reused for the whole archive.
+     */
+    @Override
+    public void explode(String war, String exploded)
+    {
+        if (exists(exploded))
+        {
+            delete(exploded);
+        }
+
+        File targetDirectory = new File(exploded).getAbsoluteFile();
+        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+        Set<File> createdDirectories = new HashSet<File>();
+
+        try
+        {
+            ZipFile archive = new ZipFile(new File(war).getAbsoluteFile());
+            try
+            {
+                Enumeration<? extends ZipEntry> entries = archive.entries();
+                while (entries.hasMoreElements())
+                {
+                    ZipEntry entry = entries.nextElement();
+                    File destination = new File(targetDirectory, entry.getName());
+                    if (entry.isDirectory())
+                    {
+                        createDirectory(destination, createdDirectories);
+                        continue;
+                    }
+                    createDirectory(destination.getParentFile(), createdDirectories);
+
+                    extractEntry(archive, entry, destination, buffer);
+                }
+            }
+            finally
+            {
+                archive.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new CargoException(
+                "Failed to extract file [" + war + "] to [" + exploded + "]", e);
+        }
+    }
+
+    /**
+     * Copies a file using channels, creating the target's parent directory if needed.
+     * 
+     * @param source File to copy.
+     * @param target Target file.
+     * @throws IOException If copying fails.
+     */
+    protected void copyFile(File source, File target) throws IOException
+    {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory())
+        {
+            mkdirs(parent.getPath());
+        }
+
+        FileInputStream in = new FileInputStream(source);
+        try
+        {
+            FileOutputStream out = new FileOutputStream(target);
+            try
+            {
+                FileChannel inChannel = in.getChannel();
+                transferCopy(inChannel, out.getChannel(), inChannel.size());
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in Source channel.
+     * @param out Target channel.
+     * @param size Number of bytes to copy.
+     * @throws IOException If copying fails.
+     */
+    private void transferCopy(FileChannel in, FileChannel out, long size) throws IOException
+    {
+        long position = 0;
+        while (position < size)
+        {
+            long transferred = in.transferTo(position,
+                Math.min(MAX_TRANSFER_SIZE, size - position), out);
+            if (transferred <= 0)
+            {
+                // The file shrank while being copied
+                break;
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * @param directory Directory to create.
+     * @param createdDirectories Directories already created, updated by this method.
+     */
+    private void createDirectory(File directory, Set<File> createdDirectories)
+    {
+        if (createdDirectories.add(directory))
+        {
+            mkdirs(directory.getPath());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.tools.ant.filters.ChainableReader;
+
+/**
+ * Replaces <code>@key@</code> tokens in a single pass, whatever the number of tokens. All tokens
+ * are compiled once into a trie, and each character of the filtered text is read exactly once, as
+ * opposed to chaining one Ant <code>ReplaceTokens</code> filter per token which makes every
+ * character go through every filter. The lookahead is bounded by the length of the longest key.
+ * <br>
+ * The replacement semantics are those of a single Ant <code>ReplaceTokens</code> filter holding all
+ * tokens: unknown tokens are left untouched, and replacement values are not filtered again. When
+ * a key is added twice, the first value is kept, as with a chain of <code>ReplaceTokens</code>
+ * filters. The replacer can be added to an Ant {@link org.apache.tools.ant.types.FilterChain}.
+ * 
+ */
+public class TokenReplacer implements ChainableReader
+{
+    /**
+     * Character starting and ending tokens.
+     */
+    static final char TOKEN_DELIMITER = '@';
+
+    /**
+     * Tokens to replace, in insertion order.
+     */
+    private final Map<String, String> tokens = new LinkedHashMap<String, String>();
+
+    /**
+     * Compiled tokens, <code>null</code> when the tokens have changed since last compiled.
+     */
+    private Node root;
+
+    /**
+     * Adds a token. If a token with the same key has already been added, it is kept.
+     * 
+     * @param key Token key, without the <code>@</code> delimiters.
+     * @param value Replacement value.
+     */
+    public synchronized void addToken(String key, String value)
+    {
+        if (key.indexOf(TOKEN_DELIMITER) != -1)
+        {
+            throw new IllegalArgumentException("Token key [" + key + "] contains the "
+                + TOKEN_DELIMITER + " delimiter");
+        }
+        if (!this.tokens.containsKey(key))
+        {
+            this.tokens.put(key, value == null ? "" : value);
+            this.root = null;
+        }
+    }
+
+    /**
+     * Adds tokens. Tokens whose key has already been added are ignored.
+     * 
+     * @param tokens Tokens to add, mapping keys to replacement values.
+     */
+    public void addTokens(Map<String, String> tokens)
+    {
+        for (Map.Entry<String, String> entry : tokens.entrySet())
+        {
+            addToken(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return Tokens of this replacer, mapping keys to replacement values.
+     */
+    public synchronized Map<String, String> getTokens()
+    {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, String>(this.tokens));
+    }
+
+    /**
+     * Creates a reader replacing tokens in the text of another reader. Tokens added after the
+     * reader is created are not taken into account by that reader.
+     * 
+     * @param reader Reader to filter.
+     * @return Filtering reader.
+     */
+    public Reader chain(Reader reader)
+    {
+        return new TokenReplacingReader(reader, getRoot());
+    }
+
+    /**
+     * Replaces the tokens in a string.
+     * 
+     * @param text Text to filter.
+     * @return Filtered text.
+     */
+    public String replace(String text)
+    {
+        Reader reader = chain(new StringReader(text));
+        StringBuilder result = new StringBuilder(text.length());
+        char[] buffer = new char[4096];
+        try
+        {
+            int length;
+            while ((length = reader.read(buffer)) != -1)
+            {
+                result.append(buffer, 0, length);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to replace tokens", e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return The trie of tokens, compiled if needed.
+     */
+    private synchronized Node getRoot()
+    {
+        if (this.root == null)
+        {
+            Node compiled = new Node();
+            for (Map.Entry<String, String> entry : this.tokens.entrySet())
+            {
+                Node node = compiled;
+                String key = entry.getKey();
+                for (int i = 0; i < key.length(); i++)
+                {
+                    node = node.getOrCreateChild(key.charAt(i));
+                }
+                node.setValue(entry.getValue());
+            }
+            this.root = compiled;
+        }
+        return this.root;
+    }
+
+    /**
+     * Node of the trie of tokens. Children are kept in arrays sorted by character, since nodes
+     * typically have very few children.
+     */
+    static final class Node
+    {
+        /**
+         * No children.
+         */
+        private static final char[] NO_LABELS = new char[0];
+
+        /**
+         * No children.
+         */
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /**
+         * Replacement value of the token ending at this node, <code>null</code> if none.
+         */
+        private String value;
+
+        /**
+         * Sorted characters leading to the children.
+         */
+        private char[] labels = NO_LABELS;
+
+        /**
+         * Children, in the order of {@link #labels}.
+         */
+        private Node[] children = NO_CHILDREN;
+
+        /**
+         * @return Replacement value of the token ending at this node, <code>null</code> if none.
+         */
+        String getValue()
+        {
+            return this.value;
+        }
+
+        /**
+         * @param value Replacement value of the token ending at this node.
+         */
+        private void setValue(String value)
+        {
+            this.value = value;
+        }
+
+        /**
+         * @param c Character.
+         * @return Child for the character, <code>null</code> if none.
+         */
+        Node getChild(char c)
+        {
+            int index = Arrays.binarySearch(this.labels, c);
+            return index < 0 ? null : this.children[index];
+        }
+
+        /**
+         * @param c Character.
+         * @return Child for the character, created if needed.
+         */
+        private Node getOrCreateChild(char c)
+        {
+            int index = Arrays.binarySearch(this.labels, c);
+            if (index >= 0)
+            {
+                return this.children[index];
+            }
+
+            int insert = -index - 1;
+            char[] newLabels = new char[this.labels.length + 1];
+            Node[] newChildren = new Node[this.children.length + 1];
+            System.arraycopy(this.labels, 0, newLabels, 0, insert);
+            System.arraycopy(this.children, 0, newChildren, 0, insert);
+            newLabels[insert] = c;
+            newChildren[insert] = new Node();
+            System.arraycopy(this.labels, insert, newLabels, insert + 1,
+                this.labels.length - insert);
+            System.arraycopy(this.children, insert, newChildren, insert + 1,
+                this.children.length - insert);
+            this.labels = newLabels;
+            this.children = newChildren;
+            return newChildren[insert];
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader replacing the tokens of a {@link TokenReplacer} in the text of another reader.
+ * 
+ */
+class TokenReplacingReader extends Reader
+{
+    /**
+     * Size of the input buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Reader to filter.
+     */
+    private final Reader in;
+
+    /**
+     * Root of the trie of tokens.
+     */
+    private final TokenReplacer.Node root;
+
+    /**
+     * Input buffer.
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Position of the next character to read in the input buffer.
+     */
+    private int position;
+
+    /**
+     * Number of characters in the input buffer.
+     */
+    private int limit;
+
+    /**
+     * Whether the end of the filtered reader has been reached.
+     */
+    private boolean endOfInput;
+
+    /**
+     * Text to return before reading further input: a replacement value, or the characters read
+     * while looking for a token that turned out not to be one.
+     */
+    private String pending;
+
+    /**
+     * Position of the next character to return in {@link #pending}.
+     */
+    private int pendingPosition;
+
+    /**
+     * Characters read while looking for a token.
+     */
+    private final StringBuilder candidate = new StringBuilder();
+
+    /**
+     * @param in Reader to filter.
+     * @param root Root of the trie of tokens.
+     */
+    TokenReplacingReader(Reader in, TokenReplacer.Node root)
+    {
+        this.in = in;
+        this.root = root;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException
+    {
+        int count = 0;
+        while (count < len)
+        {
+            if (this.pending != null)
+            {
+                int length = Math.min(len - count, this.pending.length() - this.pendingPosition);
+                this.pending.getChars(this.pendingPosition, this.pendingPosition + length, cbuf,
+                    off + count);
+                count += length;
+                this.pendingPosition += length;
+                if (this.pendingPosition == this.pending.length())
+                {
+                    this.pending = null;
+                }
+                continue;
+            }
+
+            if (this.position == this.limit && !fill())
+            {
+                break;
+            }
+
+            // Copy everything up to the next token delimiter as is
+            int start = this.position;
+            int end = Math.min(this.limit, start + len - count);
+            while (this.position < end
+                && this.buffer[this.position] != TokenReplacer.TOKEN_DELIMITER)
+            {
+                this.position++;
+            }
+            System.arraycopy(this.buffer, start, cbuf, off + count, this.position - start);
+            count += this.position - start;
+
+            if (this.position < end)
+            {
+                this.position++;
+                matchToken();
+            }
+        }
+        return count == 0 && len > 0 ? -1 : count;
+    }
+
+    /**
+     * Reads the characters following a token delimiter and sets {@link #pending} to either the
+     * replacement value of the token, or the characters read if there is no such token.
+     * 
+     * @throws IOException If reading fails.
+     */
+    private void matchToken() throws IOException
+    {
+        TokenReplacer.Node node = this.root;
+        this.candidate.setLength(0);
+        this.candidate.append(TokenReplacer.TOKEN_DELIMITER);
+        while (true)
+        {
+            if (this.position == this.limit && !fill())
+            {
+                break;
+            }
+
+            char c = this.buffer[this.position];
+            if (c == TokenReplacer.TOKEN_DELIMITER)
+            {
+                if (node.getValue() != null)
+                {
+                    this.position++;
+                    setPending(node.getValue());
+                    return;
+                }
+                // Not a token, the delimiter may start the next one
+                break;
+            }
+
+            this.position++;
+            this.candidate.append(c);
+            node = node.getChild(c);
+            if (node == null)
+            {
+                break;
+            }
+        }
+        setPending(this.candidate.toString());
+    }
+
+    /**
+     * @param text Text to return before reading further input.
+     */
+    private void setPending(String text)
+    {
+        if (text.length() > 0)
+        {
+            this.pending = text;
+            this.pendingPosition = 0;
+        }
+    }
+
+    /**
+     * Fills the input buffer.
+     * 
+     * @return <code>false</code> if the end of the filtered reader has been reached.
+     * @throws IOException If reading fails.
+     */
+    private boolean fill() throws IOException
+    {
+        while (!this.endOfInput)
+        {
+            int length = this.in.read(this.buffer, 0, this.buffer.length);
+            if (length == -1)
+            {
+                this.endOfInput = true;
+            }
+            else if (length > 0)
+            {
+                this.position = 0;
+                this.limit = length;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.in.close();
+    }
+}
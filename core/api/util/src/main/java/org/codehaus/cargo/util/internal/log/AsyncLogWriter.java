@@ -0,0 +1,497 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.internal.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.codehaus.cargo.util.CargoException;
+import org.codehaus.cargo.util.log.AsyncFileLogger;
+import org.codehaus.cargo.util.log.LogLevel;
+
+/**
+ * Background writer of a log file, shared by all {@link AsyncFileLogger}s logging to that file.
+ * Messages are queued in a {@link LogRingBuffer} and written in batches by a daemon thread, which
+ * only flushes the file once the queue has been drained. Writers are closed when the last logger
+ * using them is closed, or when the JVM shuts down.
+ * 
+ */
+public final class AsyncLogWriter implements Runnable
+{
+    /**
+     * Time the writer thread sleeps when there is nothing to write, in nanoseconds. Producers
+     * wake it up earlier when it is sleeping.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Time to wait for a writer thread to write its last messages when closing, in milliseconds.
+     */
+    private static final long CLOSE_TIMEOUT = 10000;
+
+    /**
+     * Writers, indexed by canonical path of the log file.
+     */
+    private static final Map<String, AsyncLogWriter> WRITERS =
+        new HashMap<String, AsyncLogWriter>();
+
+    /**
+     * Shutdown hook closing all writers, <code>null</code> until the first writer is created.
+     */
+    private static Thread shutdownHook;
+
+    /**
+     * Canonical path of the log file.
+     */
+    private final String path;
+
+    /**
+     * Queued messages.
+     */
+    private final LogRingBuffer<Message> buffer;
+
+    /**
+     * What to do when the buffer is full.
+     */
+    private final AsyncFileLogger.OverflowPolicy overflowPolicy;
+
+    /**
+     * Output to the log file, only used by the writer thread.
+     */
+    private final Writer output;
+
+    /**
+     * Date format, only used by the writer thread.
+     */
+    private final DateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+
+    /**
+     * Writer thread.
+     */
+    private final Thread thread;
+
+    /**
+     * Number of messages accepted in the buffer.
+     */
+    private final AtomicLong accepted = new AtomicLong();
+
+    /**
+     * Number of messages discarded because the buffer was full and not reported yet.
+     */
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Total number of messages discarded because the buffer was full.
+     */
+    private final AtomicLong totalDiscarded = new AtomicLong();
+
+    /**
+     * Number of messages written and flushed to the log file.
+     */
+    private volatile long flushed;
+
+    /**
+     * Failure of the writer thread, reported to the next logger logging a message.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Whether the writer thread is sleeping.
+     */
+    private volatile boolean sleeping;
+
+    /**
+     * Whether the writer has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Number of loggers using this writer, guarded by the class.
+     */
+    private int references;
+
+    /**
+     * Message queued for writing.
+     */
+    private static final class Message
+    {
+        /**
+         * Time the message was logged at.
+         */
+        private final long time;
+
+        /**
+         * Log level.
+         */
+        private final LogLevel level;
+
+        /**
+         * Message.
+         */
+        private final String message;
+
+        /**
+         * Log category.
+         */
+        private final String category;
+
+        /**
+         * @param time Time the message was logged at.
+         * @param level Log level.
+         * @param message Message.
+         * @param category Log category.
+         */
+        private Message(long time, LogLevel level, String message, String category)
+        {
+            this.time = time;
+            this.level = level;
+            this.message = message;
+            this.category = category;
+        }
+    }
+
+    /**
+     * @param file Log file.
+     * @param path Canonical path of the log file.
+     * @param append If <code>true</code> the file is appended to instead of being erased.
+     * @param overflowPolicy What to do when the buffer is full.
+     * @param capacity Capacity of the buffer, in messages.
+     * @throws IOException If the log file cannot be opened.
+     */
+    private AsyncLogWriter(File file, String path, boolean append,
+        AsyncFileLogger.OverflowPolicy overflowPolicy, int capacity) throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory())
+        {
+            parent.mkdirs();
+        }
+        this.path = path;
+        this.output = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file, append)), 64 * 1024);
+        this.buffer = new LogRingBuffer<Message>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.thread = new Thread(this, "Cargo log writer for " + file.getName());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Gets the writer of a log file, creating it if needed. The append mode, overflow policy and
+     * capacity are those given by the logger creating the writer.
+     * 
+     * @param file Log file.
+     * @param append If <code>true</code> the file is appended to instead of being erased.
+     * @param overflowPolicy What to do when the buffer is full.
+     * @param capacity Capacity of the buffer, in messages.
+     * @return Writer of the log file, to be {@link #release() released} when not used anymore.
+     */
+    public static AsyncLogWriter acquire(File file, boolean append,
+        AsyncFileLogger.OverflowPolicy overflowPolicy, int capacity)
+    {
+        synchronized (AsyncLogWriter.class)
+        {
+            try
+            {
+                String path = file.getCanonicalPath();
+                AsyncLogWriter writer = WRITERS.get(path);
+                if (writer == null)
+                {
+                    writer = new AsyncLogWriter(file, path, append, overflowPolicy, capacity);
+                    WRITERS.put(path, writer);
+                    writer.thread.start();
+                    if (shutdownHook == null)
+                    {
+                        shutdownHook = new Thread("Cargo log writers shutdown")
+                        {
+                            @Override
+                            public void run()
+                            {
+                                closeAll();
+                            }
+                        };
+                        Runtime.getRuntime().addShutdownHook(shutdownHook);
+                    }
+                }
+                writer.references++;
+                return writer;
+            }
+            catch (IOException e)
+            {
+                throw new CargoException("Failed to create file [" + file + "]", e);
+            }
+        }
+    }
+
+    /**
+     * Releases the writer, closing it if no other logger uses it.
+     */
+    public void release()
+    {
+        boolean close;
+        synchronized (AsyncLogWriter.class)
+        {
+            this.references--;
+            close = this.references == 0 && WRITERS.remove(this.path) != null;
+        }
+        if (close)
+        {
+            close();
+        }
+    }
+
+    /**
+     * Closes all writers, writing all queued messages.
+     */
+    private static void closeAll()
+    {
+        List<AsyncLogWriter> writers;
+        synchronized (AsyncLogWriter.class)
+        {
+            writers = new ArrayList<AsyncLogWriter>(WRITERS.values());
+            WRITERS.clear();
+        }
+        for (AsyncLogWriter writer : writers)
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Queues a message.
+     * 
+     * @param level Log level.
+     * @param message Message.
+     * @param category Log category.
+     */
+    public void log(LogLevel level, String message, String category)
+    {
+        checkFailure();
+        Message entry = new Message(System.currentTimeMillis(), level, message, category);
+        if (this.closed)
+        {
+            // Logged during shutdown, after the writer thread completed
+            writeDirectly(entry);
+            return;
+        }
+
+        while (!this.buffer.offer(entry))
+        {
+            if (this.overflowPolicy == AsyncFileLogger.OverflowPolicy.DISCARD
+                || this.closed)
+            {
+                this.discarded.incrementAndGet();
+                this.totalDiscarded.incrementAndGet();
+                return;
+            }
+            checkFailure();
+            LockSupport.unpark(this.thread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        this.accepted.incrementAndGet();
+        if (this.sleeping)
+        {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    /**
+     * Throws the failure of the writer thread, if any.
+     */
+    private void checkFailure()
+    {
+        IOException e = this.failure;
+        if (e != null)
+        {
+            throw new CargoException("Failed to write to log file [" + this.path + "]", e);
+        }
+    }
+
+    /**
+     * Waits until all messages queued so far have been written to the log file.
+     */
+    public void flush()
+    {
+        long target = this.accepted.get();
+        while (this.flushed < target && this.thread.isAlive())
+        {
+            LockSupport.unpark(this.thread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * @return Total number of messages discarded because the buffer was full.
+     */
+    public long getDiscardedCount()
+    {
+        return this.totalDiscarded.get();
+    }
+
+    /**
+     * Closes the writer, waiting for the writer thread to write all queued messages.
+     */
+    private void close()
+    {
+        this.closed = true;
+        LockSupport.unpark(this.thread);
+        try
+        {
+            this.thread.join(CLOSE_TIMEOUT);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes messages until the writer is closed.
+     */
+    public void run()
+    {
+        long written = 0;
+        try
+        {
+            while (true)
+            {
+                boolean wasClosed = this.closed;
+                Message message;
+                int batch = 0;
+                while ((message = this.buffer.poll()) != null)
+                {
+                    write(message);
+                    batch++;
+                }
+                long discardedNow = this.discarded.getAndSet(0);
+                if (discardedNow > 0)
+                {
+                    write(new Message(System.currentTimeMillis(), LogLevel.WARN, discardedNow
+                        + " log messages have been discarded as the log buffer was full",
+                        AsyncFileLogger.class.getName()));
+                }
+                if (batch > 0 || discardedNow > 0)
+                {
+                    this.output.flush();
+                    written += batch;
+                    this.flushed = written;
+                    continue;
+                }
+                if (wasClosed)
+                {
+                    break;
+                }
+
+                this.sleeping = true;
+                if (this.buffer.isEmpty() && !this.closed)
+                {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+                this.sleeping = false;
+            }
+        }
+        catch (IOException e)
+        {
+            this.failure = e;
+        }
+        finally
+        {
+            try
+            {
+                this.output.close();
+            }
+            catch (IOException ignored)
+            {
+                // Ignored
+            }
+        }
+    }
+
+    /**
+     * Formats and writes a message, in the same format as the
+     * {@link org.codehaus.cargo.util.log.FileLogger}.
+     * 
+     * @param message Message to write.
+     * @throws IOException If writing fails.
+     */
+    private void write(Message message) throws IOException
+    {
+        this.output.write(format(message));
+    }
+
+    /**
+     * @param message Message to format.
+     * @return Log line for the message.
+     */
+    private String format(Message message)
+    {
+        String category = message.category.length() > 20
+            ? message.category.substring(message.category.length() - 20) : message.category;
+        return "[" + this.format.format(new Date(message.time)) + "][" + message.level.getLevel()
+            + "][" + category + "] " + message.message + "\n";
+    }
+
+    /**
+     * Writes a message synchronously, once the writer thread has completed.
+     * 
+     * @param message Message to write.
+     */
+    private void writeDirectly(Message message)
+    {
+        synchronized (this)
+        {
+            try
+            {
+                this.thread.join(CLOSE_TIMEOUT);
+                Writer writer = new OutputStreamWriter(new FileOutputStream(this.path, true));
+                try
+                {
+                    writer.write(format(message));
+                }
+                finally
+                {
+                    writer.close();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException e)
+            {
+                throw new CargoException("Failed to write log message [" + message.message
+                    + "]", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.internal.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with any number of producers and a single consumer. Each slot
+ * carries a sequence number telling whether it is free for the producer of a given position or
+ * filled for the consumer, so producers only contend on a compare-and-set of the tail position and
+ * never block each other.
+ * 
+ * @param <E> Type of the elements.
+ */
+public class LogRingBuffer<E>
+{
+    /**
+     * Elements.
+     */
+    private final AtomicReferenceArray<E> slots;
+
+    /**
+     * Sequence number of each slot: equal to a position when the slot is free for the producer of
+     * that position, equal to the position plus one once filled.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Mask giving the slot of a position.
+     */
+    private final int mask;
+
+    /**
+     * Next position to produce to.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next position to consume from, only updated by the consumer.
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity Minimum capacity, rounded up to a power of two.
+     */
+    public LogRingBuffer(int capacity)
+    {
+        if (capacity < 1 || capacity > 1 << 30)
+        {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+        {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return Capacity of the buffer.
+     */
+    public int getCapacity()
+    {
+        return this.mask + 1;
+    }
+
+    /**
+     * Adds an element, can be called by any thread.
+     * 
+     * @param element Element to add.
+     * @return <code>false</code> if the buffer is full.
+     */
+    public boolean offer(E element)
+    {
+        long position = this.tail.get();
+        while (true)
+        {
+            int slot = (int) (position & this.mask);
+            long difference = this.sequences.get(slot) - position;
+            if (difference == 0)
+            {
+                if (this.tail.compareAndSet(position, position + 1))
+                {
+                    this.slots.set(slot, element);
+                    this.sequences.set(slot, position + 1);
+                    return true;
+                }
+            }
+            else if (difference < 0)
+            {
+                return false;
+            }
+            position = this.tail.get();
+        }
+    }
+
+    /**
+     * Removes the oldest element, must only be called by the consumer thread.
+     * 
+     * @return Oldest element, <code>null</code> if the buffer is empty.
+     */
+    public E poll()
+    {
+        long position = this.head;
+        int slot = (int) (position & this.mask);
+        if (this.sequences.get(slot) != position + 1)
+        {
+            return null;
+        }
+        E element = this.slots.get(slot);
+        this.slots.set(slot, null);
+        this.sequences.set(slot, position + this.mask + 1);
+        this.head = position + 1;
+        return element;
+    }
+
+    /**
+     * @return <code>true</code> if no element is ready to be consumed.
+     */
+    public boolean isEmpty()
+    {
+        long position = this.head;
+        return this.sequences.get((int) (position & this.mask)) != position + 1;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.internal.zip;
+
+/**
+ * Entry of the central directory of a {@link RawZipFile}.
+ * 
+ */
+public final class RawZipEntry
+{
+    /**
+     * Raw central directory header, including name, extra field and comment.
+     */
+    private final byte[] header;
+
+    /**
+     * Entry name.
+     */
+    private final String name;
+
+    /**
+     * General purpose flags.
+     */
+    private final int flags;
+
+    /**
+     * Compression method.
+     */
+    private final int method;
+
+    /**
+     * Compressed size.
+     */
+    private final long compressedSize;
+
+    /**
+     * Offset of the local header in the archive.
+     */
+    private final long localHeaderOffset;
+
+    /**
+     * @param header Raw central directory header.
+     * @param name Entry name.
+     * @param flags General purpose flags.
+     * @param method Compression method.
+     * @param compressedSize Compressed size.
+     * @param localHeaderOffset Offset of the local header in the archive.
+     */
+    RawZipEntry(byte[] header, String name, int flags, int method, long compressedSize,
+        long localHeaderOffset)
+    {
+        this.header = header;
+        this.name = name;
+        this.flags = flags;
+        this.method = method;
+        this.compressedSize = compressedSize;
+        this.localHeaderOffset = localHeaderOffset;
+    }
+
+    /**
+     * @return Entry name.
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return Whether the entry is a directory.
+     */
+    public boolean isDirectory()
+    {
+        return this.name.endsWith("/");
+    }
+
+    /**
+     * @return Compression method, as defined by <code>java.util.zip.ZipEntry</code>.
+     */
+    public int getMethod()
+    {
+        return this.method;
+    }
+
+    /**
+     * @return Compressed size.
+     */
+    public long getCompressedSize()
+    {
+        return this.compressedSize;
+    }
+
+    /**
+     * @return Copy of the raw central directory header.
+     */
+    byte[] getHeader()
+    {
+        return this.header.clone();
+    }
+
+    /**
+     * @return General purpose flags.
+     */
+    int getFlags()
+    {
+        return this.flags;
+    }
+
+    /**
+     * @return Offset of the local header in the archive.
+     */
+    long getLocalHeaderOffset()
+    {
+        return this.localHeaderOffset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.name;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.internal.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * ZIP archive (JAR, WAR, EAR...) read from its central directory, whose entries can be copied
+ * to a {@link RawZipWriter} as raw compressed bytes. Archives using the ZIP64 extensions are not
+ * supported: {@link #isRawCopySupported()} tells whether an archive can be read this way, and
+ * callers are expected to fall back to <code>java.util.zip</code> otherwise.
+ * 
+ */
+public class RawZipFile
+{
+    /**
+     * Local file header signature.
+     */
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    /**
+     * Central directory file header signature.
+     */
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    /**
+     * End of central directory record signature.
+     */
+    static final int END_SIGNATURE = 0x06054b50;
+
+    /**
+     * Data descriptor signature.
+     */
+    static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    /**
+     * Size of the fixed part of a local file header.
+     */
+    static final int LOCAL_HEADER_SIZE = 30;
+
+    /**
+     * Size of the fixed part of a central directory file header.
+     */
+    static final int CENTRAL_HEADER_SIZE = 46;
+
+    /**
+     * Size of the fixed part of the end of central directory record.
+     */
+    static final int END_SIZE = 22;
+
+    /**
+     * General purpose flag telling that sizes and CRC follow the entry data.
+     */
+    static final int DATA_DESCRIPTOR_FLAG = 0x08;
+
+    /**
+     * General purpose flag telling that the entry name is encoded in UTF-8.
+     */
+    static final int UTF8_FLAG = 0x800;
+
+    /**
+     * Maximum value of 16 bits fields, which means the actual value is in a ZIP64 record.
+     */
+    static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
+    /**
+     * Maximum value of 32 bits fields, which means the actual value is in a ZIP64 record.
+     */
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * Archive file.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Channel of the archive file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Entries of the archive, in central directory order, <code>null</code> for ZIP64 archives.
+     */
+    private final List<RawZipEntry> entries;
+
+    /**
+     * Archive comment, as raw bytes.
+     */
+    private final byte[] comment;
+
+    /**
+     * Opens an archive and reads its central directory.
+     * 
+     * @param archive Archive file.
+     * @throws IOException If reading fails or the file is not a ZIP archive.
+     */
+    public RawZipFile(File archive) throws IOException
+    {
+        this.file = new RandomAccessFile(archive, "r");
+        try
+        {
+            this.channel = this.file.getChannel();
+            ByteBuffer end = findEndOfCentralDirectory();
+            if (end == null)
+            {
+                this.entries = null;
+                this.comment = new byte[0];
+            }
+            else
+            {
+                this.entries = Collections.unmodifiableList(readCentralDirectory(
+                    end.getShort(10) & 0xFFFF, end.getInt(12) & ZIP64_MAGIC,
+                    end.getInt(16) & ZIP64_MAGIC));
+                this.comment = new byte[end.getShort(20) & 0xFFFF];
+                end.position(END_SIZE);
+                end.get(this.comment);
+            }
+        }
+        catch (IOException e)
+        {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Whether the entries of the archive can be read and copied raw, which is not the
+     * case of archives using the ZIP64 extensions.
+     */
+    public boolean isRawCopySupported()
+    {
+        return this.entries != null;
+    }
+
+    /**
+     * @return Entries of the archive, in central directory order.
+     * @throws ZipException If the archive uses the ZIP64 extensions.
+     */
+    public List<RawZipEntry> getEntries() throws ZipException
+    {
+        if (this.entries == null)
+        {
+            throw new ZipException("ZIP64 archives cannot be read raw");
+        }
+        return this.entries;
+    }
+
+    /**
+     * @return Archive comment, as raw bytes.
+     */
+    public byte[] getComment()
+    {
+        return this.comment.clone();
+    }
+
+    /**
+     * Reads the content of an entry. The compressed content is read in memory, this is meant for
+     * small entries such as deployment descriptors.
+     * 
+     * @param entry Entry to read.
+     * @return Uncompressed content of the entry.
+     * @throws IOException If reading fails or the compression method is not supported.
+     */
+    public InputStream getInputStream(RawZipEntry entry) throws IOException
+    {
+        ByteBuffer data = read(getDataOffset(entry), (int) entry.getCompressedSize());
+        InputStream content = new ByteArrayInputStream(data.array());
+        if (entry.getMethod() == ZipEntry.DEFLATED)
+        {
+            content = new InflaterInputStream(content, new Inflater(true));
+        }
+        else if (entry.getMethod() != ZipEntry.STORED)
+        {
+            throw new ZipException("Unsupported compression method " + entry.getMethod()
+                + " for entry [" + entry.getName() + "]");
+        }
+        return content;
+    }
+
+    /**
+     * Closes the archive.
+     * 
+     * @throws IOException If closing fails.
+     */
+    public void close() throws IOException
+    {
+        this.file.close();
+    }
+
+    /**
+     * @return Channel of the archive file.
+     */
+    FileChannel getChannel()
+    {
+        return this.channel;
+    }
+
+    /**
+     * @param entry Entry of the archive.
+     * @return Local extra field of the entry.
+     * @throws IOException If reading fails or the local header is invalid.
+     */
+    ByteBuffer getLocalExtra(RawZipEntry entry) throws IOException
+    {
+        ByteBuffer localHeader = readLocalHeader(entry);
+        return read(entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE
+            + (localHeader.getShort(26) & 0xFFFF), localHeader.getShort(28) & 0xFFFF);
+    }
+
+    /**
+     * @param entry Entry of the archive.
+     * @return Offset of the entry data in the archive.
+     * @throws IOException If reading fails or the local header is invalid.
+     */
+    long getDataOffset(RawZipEntry entry) throws IOException
+    {
+        ByteBuffer localHeader = readLocalHeader(entry);
+        return entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE
+            + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+    }
+
+    /**
+     * @param entry Entry of the archive.
+     * @return Fixed part of the local header of the entry.
+     * @throws IOException If reading fails or the local header is invalid.
+     */
+    private ByteBuffer readLocalHeader(RawZipEntry entry) throws IOException
+    {
+        ByteBuffer localHeader = read(entry.getLocalHeaderOffset(), LOCAL_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE)
+        {
+            throw new ZipException("Invalid local header for entry [" + entry.getName() + "]");
+        }
+        return localHeader;
+    }
+
+    /**
+     * @return End of central directory record, <code>null</code> if the archive uses ZIP64.
+     * @throws IOException If reading fails or the file is not a ZIP archive.
+     */
+    private ByteBuffer findEndOfCentralDirectory() throws IOException
+    {
+        long size = this.channel.size();
+        int tailSize = (int) Math.min(size, END_SIZE + ZIP64_MAGIC_SHORT);
+        ByteBuffer tail = read(size - tailSize, tailSize);
+        for (int i = tailSize - END_SIZE; i >= 0; i--)
+        {
+            if (tail.getInt(i) == END_SIGNATURE
+                && i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailSize)
+            {
+                tail.position(i);
+                ByteBuffer end = tail.slice().order(ByteOrder.LITTLE_ENDIAN);
+                if ((end.getShort(10) & 0xFFFF) == ZIP64_MAGIC_SHORT)
+                {
+                    return null;
+                }
+                boolean zip64 = (end.getInt(12) & ZIP64_MAGIC) == ZIP64_MAGIC
+                    || (end.getInt(16) & ZIP64_MAGIC) == ZIP64_MAGIC;
+                return zip64 ? null : end;
+            }
+        }
+        throw new ZipException("Not a ZIP archive: no end of central directory record found");
+    }
+
+    /**
+     * @param count Number of entries.
+     * @param size Size of the central directory.
+     * @param offset Offset of the central directory.
+     * @return Entries of the central directory.
+     * @throws IOException If reading fails or the central directory is invalid.
+     */
+    private List<RawZipEntry> readCentralDirectory(int count, long size, long offset)
+        throws IOException
+    {
+        ByteBuffer directory = read(offset, (int) size);
+        List<RawZipEntry> result = new ArrayList<RawZipEntry>(count);
+        int position = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (position + CENTRAL_HEADER_SIZE > size
+                || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE)
+            {
+                throw new ZipException("Invalid central directory entry at offset " + position);
+            }
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int length = CENTRAL_HEADER_SIZE + nameLength
+                + (directory.getShort(position + 30) & 0xFFFF)
+                + (directory.getShort(position + 32) & 0xFFFF);
+
+            byte[] header = new byte[length];
+            directory.position(position);
+            directory.get(header);
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            result.add(new RawZipEntry(header,
+                decodeName(header, CENTRAL_HEADER_SIZE, nameLength, flags), flags,
+                directory.getShort(position + 10) & 0xFFFF,
+                directory.getInt(position + 20) & ZIP64_MAGIC,
+                directory.getInt(position + 42) & ZIP64_MAGIC));
+            position += length;
+        }
+        return result;
+    }
+
+    /**
+     * @param bytes Bytes holding the name.
+     * @param offset Offset of the name.
+     * @param length Length of the name.
+     * @param flags General purpose flags of the entry.
+     * @return Entry name.
+     * @throws UnsupportedEncodingException Never, UTF-8 and ISO-8859-1 are always supported.
+     */
+    private static String decodeName(byte[] bytes, int offset, int length, int flags)
+        throws UnsupportedEncodingException
+    {
+        // Names only need to be compared with each other, any single byte charset does for these
+        return new String(bytes, offset, length,
+            (flags & UTF8_FLAG) != 0 ? "UTF-8" : "ISO-8859-1");
+    }
+
+    /**
+     * @param position Position to read at.
+     * @param length Number of bytes to read.
+     * @return Buffer holding the bytes, in little endian order.
+     * @throws IOException If reading fails or the archive ends too early.
+     */
+    private ByteBuffer read(long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining())
+        {
+            if (this.channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new ZipException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
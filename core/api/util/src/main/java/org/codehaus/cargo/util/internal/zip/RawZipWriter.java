@@ -0,0 +1,413 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.internal.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a ZIP archive whose entries are either copied raw from a {@link RawZipFile}, without
+ * being inflated and deflated again, or written from new content. Archives written this way do
+ * not use the ZIP64 extensions, hence cannot be larger than 4 GB nor hold more than 65535
+ * entries.
+ * 
+ */
+public class RawZipWriter
+{
+    /**
+     * Version needed to extract entries written by this class.
+     */
+    private static final short VERSION_NEEDED = 20;
+
+    /**
+     * Size of the buffers used to compress and copy content.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Target file.
+     */
+    private final FileOutputStream out;
+
+    /**
+     * Channel of the target file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Central directory, written when closing the archive.
+     */
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+    /**
+     * Number of entries written.
+     */
+    private int count;
+
+    /**
+     * Archive comment, as raw bytes.
+     */
+    private byte[] comment = new byte[0];
+
+    /**
+     * Creates an archive.
+     * 
+     * @param target Target file, overwritten if it exists.
+     * @throws IOException If the file cannot be created.
+     */
+    public RawZipWriter(File target) throws IOException
+    {
+        this.out = new FileOutputStream(target);
+        this.channel = this.out.getChannel();
+    }
+
+    /**
+     * @param comment Archive comment, as raw bytes.
+     */
+    public void setComment(byte[] comment)
+    {
+        if (comment.length > RawZipFile.ZIP64_MAGIC_SHORT)
+        {
+            throw new IllegalArgumentException("Archive comment too long");
+        }
+        this.comment = comment.clone();
+    }
+
+    /**
+     * Copies an entry as is, with a local header built from its central directory header.
+     * 
+     * @param source Archive holding the entry.
+     * @param entry Entry to copy.
+     * @throws IOException If reading or writing fails.
+     */
+    public void copyEntry(RawZipFile source, RawZipEntry entry) throws IOException
+    {
+        long offset = startEntry();
+        ByteBuffer header = ByteBuffer.wrap(entry.getHeader()).order(ByteOrder.LITTLE_ENDIAN);
+        // Sizes and CRC are written in the local header, no data descriptor is needed anymore
+        header.putShort(8, (short) (entry.getFlags() & ~RawZipFile.DATA_DESCRIPTOR_FLAG));
+        writeLocalHeader(header, source.getLocalExtra(entry));
+
+        long dataOffset = source.getDataOffset(entry);
+        FileChannel sourceChannel = source.getChannel();
+        long copied = 0;
+        while (copied < entry.getCompressedSize())
+        {
+            long transferred = sourceChannel.transferTo(dataOffset + copied,
+                entry.getCompressedSize() - copied, this.channel);
+            if (transferred <= 0)
+            {
+                throw new ZipException("Truncated entry [" + entry.getName() + "]");
+            }
+            copied += transferred;
+        }
+        endEntry(header, offset);
+    }
+
+    /**
+     * Writes an entry with new content, deflated, keeping the name, time, extra field and
+     * comment of an existing entry.
+     * 
+     * @param entry Entry to replace.
+     * @param content New content of the entry.
+     * @throws IOException If writing fails.
+     */
+    public void replaceEntry(RawZipEntry entry, byte[] content) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.wrap(entry.getHeader()).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort(8, (short) (entry.getFlags() & RawZipFile.UTF8_FLAG));
+        writeDeflatedEntry(header, content);
+    }
+
+    /**
+     * Writes a new entry, deflated.
+     * 
+     * @param name Entry name.
+     * @param content Entry content.
+     * @param time Last modification time of the entry.
+     * @throws IOException If writing fails.
+     */
+    public void putEntry(String name, byte[] content, long time) throws IOException
+    {
+        writeDeflatedEntry(createHeader(name, time), content);
+    }
+
+    /**
+     * Writes a new entry holding the content of a file, stored without compression. The file is
+     * read twice, once to compute its checksum and once to copy it, which is done by the
+     * operating system when possible. This is meant for files which are archives themselves,
+     * such as JARs in a WAR, which would hardly be compressed anyway.
+     * 
+     * @param name Entry name.
+     * @param file File to store.
+     * @throws IOException If reading or writing fails.
+     */
+    public void putEntry(String name, File file) throws IOException
+    {
+        long size = file.length();
+        if (size >= RawZipFile.ZIP64_MAGIC)
+        {
+            throw new ZipException("File [" + file + "] too large");
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int length;
+            while ((length = in.read(buffer)) != -1)
+            {
+                crc.update(buffer, 0, length);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        long offset = startEntry();
+        ByteBuffer header = createHeader(name, file.lastModified());
+        header.putShort(10, (short) ZipEntry.STORED);
+        header.putInt(16, (int) crc.getValue());
+        header.putInt(20, (int) size);
+        header.putInt(24, (int) size);
+        writeLocalHeader(header, ByteBuffer.allocate(0));
+
+        FileInputStream fileIn = new FileInputStream(file);
+        try
+        {
+            FileChannel fileChannel = fileIn.getChannel();
+            long copied = 0;
+            while (copied < size)
+            {
+                long transferred = fileChannel.transferTo(copied, size - copied, this.channel);
+                if (transferred <= 0)
+                {
+                    throw new ZipException("File [" + file + "] truncated while being stored");
+                }
+                copied += transferred;
+            }
+        }
+        finally
+        {
+            fileIn.close();
+        }
+        endEntry(header, offset);
+    }
+
+    /**
+     * Writes the central directory and closes the archive.
+     * 
+     * @throws IOException If writing fails or the archive is too large.
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            long centralDirectoryOffset = this.channel.position();
+            if (centralDirectoryOffset > RawZipFile.ZIP64_MAGIC
+                || this.count > RawZipFile.ZIP64_MAGIC_SHORT)
+            {
+                throw new ZipException("Archive too large to be written without ZIP64");
+            }
+            ByteBuffer end = ByteBuffer.allocate(RawZipFile.END_SIZE + this.comment.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(RawZipFile.END_SIGNATURE);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) this.count);
+            end.putShort((short) this.count);
+            end.putInt(this.centralDirectory.size());
+            end.putInt((int) centralDirectoryOffset);
+            end.putShort((short) this.comment.length);
+            end.put(this.comment);
+            this.centralDirectory.write(end.array());
+            writeFully(ByteBuffer.wrap(this.centralDirectory.toByteArray()));
+        }
+        finally
+        {
+            this.out.close();
+        }
+    }
+
+    /**
+     * @return Offset of the new entry.
+     * @throws IOException If the archive is too large.
+     */
+    private long startEntry() throws IOException
+    {
+        long offset = this.channel.position();
+        if (offset > RawZipFile.ZIP64_MAGIC)
+        {
+            throw new ZipException("Archive too large to be written without ZIP64");
+        }
+        return offset;
+    }
+
+    /**
+     * Adds an entry to the central directory.
+     * 
+     * @param header Central directory header of the entry.
+     * @param offset Offset of the local header of the entry.
+     */
+    private void endEntry(ByteBuffer header, long offset)
+    {
+        header.putInt(42, (int) offset);
+        this.centralDirectory.write(header.array(), 0, header.capacity());
+        this.count++;
+    }
+
+    /**
+     * Compresses and writes an entry.
+     * 
+     * @param header Central directory header of the entry, updated with the new content.
+     * @param content Entry content.
+     * @throws IOException If writing fails.
+     */
+    private void writeDeflatedEntry(ByteBuffer header, byte[] content) throws IOException
+    {
+        long offset = startEntry();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try
+        {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished())
+            {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        header.putShort(6, VERSION_NEEDED);
+        header.putShort(10, (short) ZipEntry.DEFLATED);
+        header.putInt(16, (int) crc.getValue());
+        header.putInt(20, compressed.size());
+        header.putInt(24, content.length);
+        writeLocalHeader(header, ByteBuffer.allocate(0));
+        writeFully(ByteBuffer.wrap(compressed.toByteArray()));
+        endEntry(header, offset);
+    }
+
+    /**
+     * @param name Entry name.
+     * @param time Last modification time of the entry.
+     * @return Central directory header of a new entry, without content.
+     * @throws IOException If the name is too long.
+     */
+    private static ByteBuffer createHeader(String name, long time) throws IOException
+    {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        if (nameBytes.length > RawZipFile.ZIP64_MAGIC_SHORT)
+        {
+            throw new ZipException("Entry name too long: " + name);
+        }
+        ByteBuffer header = ByteBuffer.allocate(RawZipFile.CENTRAL_HEADER_SIZE + nameBytes.length)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(RawZipFile.CENTRAL_HEADER_SIGNATURE);
+        header.putShort(VERSION_NEEDED);
+        header.putShort(VERSION_NEEDED);
+        header.putShort((short) RawZipFile.UTF8_FLAG);
+        header.putShort((short) ZipEntry.DEFLATED);
+        header.putInt((int) toDosTime(time));
+        header.putShort(28, (short) nameBytes.length);
+        // CRC, sizes, extra and comment lengths, disk, attributes and offset are set later or zero
+        header.position(RawZipFile.CENTRAL_HEADER_SIZE);
+        header.put(nameBytes);
+        return header;
+    }
+
+    /**
+     * @param time Time, in milliseconds since the epoch.
+     * @return Time in MS-DOS format, as used in ZIP headers.
+     */
+    private static long toDosTime(long time)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980)
+        {
+            return (1 << 21) | (1 << 16);
+        }
+        long date = (year - 1980) << 9;
+        date += (calendar.get(Calendar.MONTH) + 1) << 5;
+        date += calendar.get(Calendar.DAY_OF_MONTH);
+        long dosTime = calendar.get(Calendar.HOUR_OF_DAY) << 11;
+        dosTime += calendar.get(Calendar.MINUTE) << 5;
+        dosTime += calendar.get(Calendar.SECOND) >> 1;
+        return date << 16 | dosTime;
+    }
+
+    /**
+     * Writes a local header matching a central directory header.
+     * 
+     * @param header Central directory header.
+     * @param extra Local extra field.
+     * @throws IOException If writing fails.
+     */
+    private void writeLocalHeader(ByteBuffer header, ByteBuffer extra) throws IOException
+    {
+        int nameLength = header.getShort(28) & 0xFFFF;
+        ByteBuffer local = ByteBuffer.allocate(
+            RawZipFile.LOCAL_HEADER_SIZE + nameLength + extra.remaining())
+            .order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(RawZipFile.LOCAL_HEADER_SIGNATURE);
+        // Version needed, flags, method, time, date, CRC, compressed and uncompressed sizes
+        local.put(header.array(), 6, 22);
+        local.putShort((short) nameLength);
+        local.putShort((short) extra.remaining());
+        local.put(header.array(), RawZipFile.CENTRAL_HEADER_SIZE, nameLength);
+        local.put(extra);
+        local.flip();
+        writeFully(local);
+    }
+
+    /**
+     * @param buffer Bytes to write.
+     * @throws IOException If writing fails.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            this.channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.log;
+
+import java.io.File;
+
+import org.codehaus.cargo.util.internal.log.AbstractLogger;
+import org.codehaus.cargo.util.internal.log.AsyncLogWriter;
+
+/**
+ * File implementation which sends logged messages to a file asynchronously. Messages are queued
+ * in a bounded buffer and written in batches by a background thread, so that logging does not
+ * wait for the disk. All loggers logging to the same file share the same buffer and thread.
+ * Queued messages are written when the logger is {@link #close() closed} or when the JVM shuts
+ * down; the log lines have the same format as those of the {@link FileLogger}.
+ * 
+ */
+public class AsyncFileLogger extends AbstractLogger
+{
+    /**
+     * Default capacity of the buffer, in messages.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * What to do when a message is logged while the buffer is full.
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * Wait until the buffer has room for the message.
+         */
+        BLOCK,
+
+        /**
+         * Discard the message. The number of discarded messages is written to the log file.
+         */
+        DISCARD
+    }
+
+    /**
+     * Writer of the log file, <code>null</code> once closed.
+     */
+    private volatile AsyncLogWriter writer;
+
+    /**
+     * @param file the file to log to
+     * @param append if true the file is appended to insted of being erased
+     */
+    public AsyncFileLogger(File file, boolean append)
+    {
+        this(file, append, OverflowPolicy.BLOCK, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param file the file to log to
+     * @param append if true the file is appended to insted of being erased
+     */
+    public AsyncFileLogger(String file, boolean append)
+    {
+        this(new File(file), append);
+    }
+
+    /**
+     * @param file the file to log to
+     * @param append if true the file is appended to insted of being erased
+     * @param overflowPolicy what to do when the buffer is full
+     * @param capacity capacity of the buffer, in messages
+     */
+    public AsyncFileLogger(File file, boolean append, OverflowPolicy overflowPolicy,
+        int capacity)
+    {
+        this.writer = AsyncLogWriter.acquire(file, append, overflowPolicy, capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see AbstractLogger#doLog(LogLevel, String, String)
+     */
+    @Override
+    protected void doLog(LogLevel level, String message, String category)
+    {
+        AsyncLogWriter current = this.writer;
+        if (current == null)
+        {
+            throw new IllegalStateException("Logger has been closed");
+        }
+        current.log(level, message, category);
+    }
+
+    /**
+     * Waits until all messages logged so far have been written to the log file.
+     */
+    public void flush()
+    {
+        AsyncLogWriter current = this.writer;
+        if (current != null)
+        {
+            current.flush();
+        }
+    }
+
+    /**
+     * @return Number of messages discarded so far because the buffer was full, by all loggers
+     * logging to the same file.
+     */
+    public long getDiscardedCount()
+    {
+        AsyncLogWriter current = this.writer;
+        return current == null ? 0 : current.getDiscardedCount();
+    }
+
+    /**
+     * Writes all queued messages and closes the logger. The log file is closed once all loggers
+     * logging to it have been closed.
+     */
+    public synchronized void close()
+    {
+        AsyncLogWriter current = this.writer;
+        if (current != null)
+        {
+            current.flush();
+            this.writer = null;
+            current.release();
+        }
+    }
+}
@@ -84,7 +84,7 @@ public class FileLogger extends AbstractLogger
      * @see AbstractLogger#doLog(LogLevel, String, String)
      */
     @Override
-    protected void doLog(LogLevel level, String message, String category)
+    protected synchronized void doLog(LogLevel level, String message, String category)
     {
         final String formattedCategory = category.length() > 20
             ? category.substring(category.length() - 20) : category;
@@ -115,6 +115,31 @@ public class DefaultFileHandlerTest extends TestCase
         assertTrue("File " + file + " does not contain: " + new2, read.contains(new2));
     }
 
+    /**
+     * Test that the same XML replacement can be applied to several files in a row
+     */
+    public void testXmlReplacementInSeveralFiles()
+    {
+        final String file1 = "target/jboss-standalone-first.xml";
+        final String file2 = "target/jboss-standalone-second.xml";
+        final String xpath = "//server/socket-binding-group/socket-binding[@name='http']";
+
+        this.fileHandler.copyFile("src/test/resources/jboss-standalone.xml", file1, true);
+        this.fileHandler.copyFile("src/test/resources/jboss-standalone.xml", file2, true);
+
+        this.fileHandler.replaceInXmlFile(
+            new XmlReplacement(file1, xpath, "port", false, "first"));
+        this.fileHandler.replaceInXmlFile(
+            new XmlReplacement(file2, xpath, "port", false, "second"));
+
+        String read = this.fileHandler.readTextFile(file1, "UTF-8");
+        assertTrue("File " + file1 + " not modified",
+            read.contains("<socket-binding name=\"http\" port=\"first\"/>"));
+        read = this.fileHandler.readTextFile(file2, "UTF-8");
+        assertTrue("File " + file2 + " not modified",
+            read.contains("<socket-binding name=\"http\" port=\"second\"/>"));
+    }
+
     /**
      * Test valid XML replacement for replacing a neighbor
      */
@@ -0,0 +1,236 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.cargo.util.log.Logger;
+import org.codehaus.cargo.util.log.SimpleLogger;
+
+/**
+ * Compares the copy and explode performance of {@link NioFileHandler} and
+ * {@link DefaultFileHandler} on archives of realistic sizes: a WAR of a few thousand small
+ * resources plus some libraries, and an EAR nesting that WAR with large EJB modules. This is not a
+ * unit test and is not run by the build; run it with the test classpath, for example:
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.codehaus.cargo.util.FileHandlerBenchmarkMain</code>.
+ * 
+ */
+public final class FileHandlerBenchmarkMain
+{
+    /**
+     * Number of untimed runs before measuring.
+     */
+    private static final int WARMUP_RUNS = 3;
+
+    /**
+     * Number of measured runs.
+     */
+    private static final int MEASURED_RUNS = 5;
+
+    /**
+     * Logger the results are reported to.
+     */
+    private static final Logger LOGGER = new SimpleLogger();
+
+    /**
+     * Utility class.
+     */
+    private FileHandlerBenchmarkMain()
+    {
+        // Nothing
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args Optional working directory, defaults to <code>target/benchmark</code>.
+     * @throws IOException If creating the test archives fails.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File workDir = new File(args.length > 0 ? args[0] : "target/benchmark").getAbsoluteFile();
+        new DefaultFileHandler().delete(workDir.getPath());
+        workDir.mkdirs();
+
+        Random random = new Random(42);
+        File war = new File(workDir, "application.war");
+        createWar(war, random);
+        File ear = new File(workDir, "application.ear");
+        createEar(ear, war, random);
+
+        FileHandler[] fileHandlers = {new DefaultFileHandler(), new NioFileHandler()};
+        for (FileHandler fileHandler : fileHandlers)
+        {
+            String name = fileHandler.getClass().getSimpleName();
+            String target = new File(workDir, name).getPath();
+
+            run(name + " explode WAR", fileHandler, "explode", war, target);
+            run(name + " explode EAR", fileHandler, "explode", ear, target);
+            run(name + " copy EAR", fileHandler, "copyFile", ear, target);
+            fileHandler.explode(war.getPath(), target + "-source");
+            run(name + " copy exploded WAR", fileHandler, "copyDirectory",
+                new File(target + "-source"), target);
+        }
+    }
+
+    /**
+     * Times an operation and logs the average duration.
+     * 
+     * @param label Label of the operation.
+     * @param fileHandler File handler to use.
+     * @param operation One of <code>explode</code>, <code>copyFile</code> and
+     * <code>copyDirectory</code>.
+     * @param source Source file or directory.
+     * @param target Target path.
+     */
+    private static void run(String label, FileHandler fileHandler, String operation,
+        File source, String target)
+    {
+        long total = 0;
+        for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++)
+        {
+            fileHandler.delete(target);
+            long start = System.nanoTime();
+            if ("explode".equals(operation))
+            {
+                fileHandler.explode(source.getPath(), target);
+            }
+            else if ("copyFile".equals(operation))
+            {
+                fileHandler.copyFile(source.getPath(), target, true);
+            }
+            else
+            {
+                fileHandler.copyDirectory(source.getPath(), target);
+            }
+            if (i >= WARMUP_RUNS)
+            {
+                total += System.nanoTime() - start;
+            }
+        }
+        LOGGER.info(label + ": " + (total / MEASURED_RUNS / 1000000) + " ms",
+            FileHandlerBenchmarkMain.class.getName());
+    }
+
+    /**
+     * Creates a WAR with 3,000 resources of 1 to 32 kB and 40 libraries of 200 kB to 2 MB.
+     * 
+     * @param war WAR to create.
+     * @param random Random generator for the contents.
+     * @throws IOException If writing fails.
+     */
+    private static void createWar(File war, Random random) throws IOException
+    {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war));
+        try
+        {
+            for (int i = 0; i < 3000; i++)
+            {
+                addEntry(out, "resources/dir" + (i % 50) + "/file" + i + ".html",
+                    1024 + random.nextInt(31 * 1024), random, true);
+            }
+            for (int i = 0; i < 40; i++)
+            {
+                addEntry(out, "WEB-INF/lib/library" + i + ".jar",
+                    200 * 1024 + random.nextInt(1800 * 1024), random, false);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Creates an EAR with the given WAR and 10 EJB modules of 8 MB.
+     * 
+     * @param ear EAR to create.
+     * @param war WAR to add to the EAR.
+     * @param random Random generator for the contents.
+     * @throws IOException If writing fails.
+     */
+    private static void createEar(File ear, File war, Random random) throws IOException
+    {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(ear));
+        try
+        {
+            out.putNextEntry(new ZipEntry(war.getName()));
+            new DefaultFileHandler().copy(new DefaultFileHandler().getInputStream(war.getPath()),
+                out);
+            out.closeEntry();
+            for (int i = 0; i < 10; i++)
+            {
+                addEntry(out, "ejb" + i + ".jar", 8 * 1024 * 1024, random, false);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Adds an entry with random contents.
+     * 
+     * @param out Archive to add the entry to.
+     * @param name Name of the entry.
+     * @param size Size of the entry.
+     * @param random Random generator for the contents.
+     * @param compressible Whether the contents should compress like text; if not, the entry is
+     * stored like an already compressed library would.
+     * @throws IOException If writing fails.
+     */
+    private static void addEntry(ZipOutputStream out, String name, int size, Random random,
+        boolean compressible) throws IOException
+    {
+        byte[] data = new byte[size];
+        if (compressible)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                data[i] = (byte) ('a' + random.nextInt(8));
+            }
+        }
+        else
+        {
+            random.nextBytes(data);
+        }
+
+        ZipEntry entry = new ZipEntry(name);
+        if (!compressible)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+}
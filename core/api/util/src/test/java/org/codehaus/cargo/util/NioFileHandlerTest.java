@@ -0,0 +1,173 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link NioFileHandler}.
+ * 
+ */
+public class NioFileHandlerTest extends TestCase
+{
+    /**
+     * File handler.
+     */
+    private NioFileHandler fileHandler;
+
+    /**
+     * Working directory.
+     */
+    private String workDir;
+
+    /**
+     * Creates the file handler and an empty working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new NioFileHandler();
+        this.workDir = new File("target/nio/" + getName()).getAbsolutePath();
+        this.fileHandler.delete(this.workDir);
+        this.fileHandler.mkdirs(this.workDir);
+    }
+
+    /**
+     * Test file copy, including the overwrite semantics.
+     */
+    public void testCopyFile()
+    {
+        String source = this.fileHandler.append(this.workDir, "source.txt");
+        String target = this.fileHandler.append(this.workDir, "sub/dir/target.txt");
+        this.fileHandler.writeTextFile(source, "content", "UTF-8");
+
+        this.fileHandler.copyFile(source, target);
+        assertEquals("content", this.fileHandler.readTextFile(target, "UTF-8"));
+
+        this.fileHandler.writeTextFile(target, "newer", "UTF-8");
+        new File(target).setLastModified(new File(source).lastModified() + 10000);
+        this.fileHandler.copyFile(source, target, false);
+        assertEquals("newer", this.fileHandler.readTextFile(target, "UTF-8"));
+        this.fileHandler.copyFile(source, target, true);
+        assertEquals("content", this.fileHandler.readTextFile(target, "UTF-8"));
+    }
+
+    /**
+     * Test directory copy with excludes.
+     */
+    public void testCopyDirectory()
+    {
+        String source = this.fileHandler.append(this.workDir, "source");
+        String target = this.fileHandler.append(this.workDir, "target");
+        this.fileHandler.writeTextFile(source + "/a/file.txt", "a", "UTF-8");
+        this.fileHandler.writeTextFile(source + "/b/file.log", "b", "UTF-8");
+        this.fileHandler.mkdirs(source + "/empty");
+
+        this.fileHandler.copyDirectory(source, target, Arrays.asList("**/*.log"));
+        assertEquals("a", this.fileHandler.readTextFile(target + "/a/file.txt", "UTF-8"));
+        assertFalse(this.fileHandler.exists(target + "/b/file.log"));
+        assertTrue(this.fileHandler.isDirectory(target + "/empty"));
+    }
+
+    /**
+     * Test archive explode.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExplode() throws Exception
+    {
+        String war = createWar();
+        String exploded = this.fileHandler.append(this.workDir, "exploded");
+        this.fileHandler.explode(war, exploded);
+        assertExploded(exploded, 0);
+    }
+
+    /**
+     * Test parallel archive explode.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testParallelExplode() throws Exception
+    {
+        String war = createWar();
+        String exploded = this.fileHandler.append(this.workDir, "exploded");
+        this.fileHandler.writeTextFile(exploded + "/stale.txt", "stale", "UTF-8");
+        this.fileHandler.explode(war, exploded, 4);
+        assertExploded(exploded, 50);
+        assertFalse(this.fileHandler.exists(exploded + "/stale.txt"));
+    }
+
+    /**
+     * Creates a test WAR.
+     * @return Path to the test WAR.
+     * @throws Exception If anything goes wrong.
+     */
+    private String createWar() throws Exception
+    {
+        String war = this.fileHandler.append(this.workDir, "test.war");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war));
+        try
+        {
+            out.putNextEntry(new ZipEntry("WEB-INF/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+            out.write("<web-app/>".getBytes("UTF-8"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("images/logo.png"));
+            out.write(new byte[100000]);
+            out.closeEntry();
+            // Entries without directory entries for their parents
+            for (int i = 0; i < 50; i++)
+            {
+                out.putNextEntry(new ZipEntry("pages/section" + (i % 5) + "/page" + i + ".html"));
+                out.write(("page " + i).getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return war;
+    }
+
+    /**
+     * Checks an exploded test WAR.
+     * @param exploded Exploded directory.
+     * @param pages Number of pages to check.
+     */
+    private void assertExploded(String exploded, int pages)
+    {
+        assertEquals("<web-app/>",
+            this.fileHandler.readTextFile(exploded + "/WEB-INF/web.xml", "UTF-8"));
+        assertEquals(100000, this.fileHandler.getSize(exploded + "/images/logo.png"));
+        for (int i = 0; i < pages; i++)
+        {
+            assertEquals("page " + i, this.fileHandler.readTextFile(
+                exploded + "/pages/section" + (i % 5) + "/page" + i + ".html", "UTF-8"));
+        }
+    }
+}
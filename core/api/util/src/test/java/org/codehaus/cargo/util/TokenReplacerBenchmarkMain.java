@@ -0,0 +1,187 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+
+import org.apache.tools.ant.filters.ReplaceTokens;
+import org.apache.tools.ant.filters.util.ChainReaderHelper;
+import org.apache.tools.ant.types.FilterChain;
+import org.codehaus.cargo.util.log.Logger;
+import org.codehaus.cargo.util.log.SimpleLogger;
+
+/**
+ * Compares filtering a configuration template through a chain of one Ant
+ * <code>ReplaceTokens</code> filter per token, as {@link AntUtils} used to build, with filtering
+ * it through a single {@link TokenReplacer}. The template is a 200 kB text using 150 tokens, the
+ * size of a typical standalone configuration. This is not a unit test and is not run by the build;
+ * run it with the test classpath, for example:
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.codehaus.cargo.util.TokenReplacerBenchmarkMain</code>.
+ * 
+ */
+public final class TokenReplacerBenchmarkMain
+{
+    /**
+     * Number of tokens.
+     */
+    private static final int TOKENS = 150;
+
+    /**
+     * Number of untimed runs before measuring.
+     */
+    private static final int WARMUP_RUNS = 20;
+
+    /**
+     * Number of measured runs.
+     */
+    private static final int MEASURED_RUNS = 50;
+
+    /**
+     * Logger the results are reported to.
+     */
+    private static final Logger LOGGER = new SimpleLogger();
+
+    /**
+     * Utility class.
+     */
+    private TokenReplacerBenchmarkMain()
+    {
+        // Nothing
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args Ignored.
+     * @throws IOException If filtering fails.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> tokens = new LinkedHashMap<String, String>();
+        for (int i = 0; i < TOKENS; i++)
+        {
+            tokens.put("cargo.property." + i, "value" + i);
+        }
+        String template = createTemplate(new Random(42));
+
+        FilterChain chain = new FilterChain();
+        for (Map.Entry<String, String> entry : tokens.entrySet())
+        {
+            ReplaceTokens replaceTokens = new ReplaceTokens();
+            ReplaceTokens.Token token = new ReplaceTokens.Token();
+            token.setKey(entry.getKey());
+            token.setValue(entry.getValue());
+            replaceTokens.addConfiguredToken(token);
+            chain.addReplaceTokens(replaceTokens);
+        }
+
+        FilterChain singlePass = new FilterChain();
+        new AntUtils().addTokensToFilterChain(singlePass, tokens);
+
+        String expected = filter(template, chain);
+        if (!expected.equals(filter(template, singlePass)))
+        {
+            throw new IllegalStateException("Filter results differ");
+        }
+
+        run("Chain of " + TOKENS + " ReplaceTokens", template, chain);
+        run("Single TokenReplacer with " + TOKENS + " tokens", template, singlePass);
+    }
+
+    /**
+     * Times filtering and logs the average duration.
+     * 
+     * @param label Label of the filter.
+     * @param template Text to filter.
+     * @param filterChain Filter chain to apply.
+     * @throws IOException If filtering fails.
+     */
+    private static void run(String label, String template, FilterChain filterChain)
+        throws IOException
+    {
+        long total = 0;
+        for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++)
+        {
+            long start = System.nanoTime();
+            filter(template, filterChain);
+            if (i >= WARMUP_RUNS)
+            {
+                total += System.nanoTime() - start;
+            }
+        }
+        LOGGER.info(label + ": " + (total / MEASURED_RUNS / 1000) + " us",
+            TokenReplacerBenchmarkMain.class.getName());
+    }
+
+    /**
+     * Filters a text the way {@link DefaultFileHandler} filters files.
+     * 
+     * @param text Text to filter.
+     * @param filterChain Filter chain to apply.
+     * @return Filtered text.
+     * @throws IOException If filtering fails.
+     */
+    private static String filter(String text, FilterChain filterChain) throws IOException
+    {
+        ChainReaderHelper helper = new ChainReaderHelper();
+        helper.setBufferSize(8192);
+        helper.setPrimaryReader(new StringReader(text));
+        Vector<FilterChain> filterChains = new Vector<FilterChain>();
+        filterChains.add(filterChain);
+        helper.setFilterChains(filterChains);
+        Reader reader = helper.getAssembledReader();
+
+        StringBuilder result = new StringBuilder(text.length());
+        char[] buffer = new char[8192];
+        int length;
+        while ((length = reader.read(buffer)) != -1)
+        {
+            result.append(buffer, 0, length);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Creates an XML-like template of about 200 kB, with a token every few lines.
+     * 
+     * @param random Random generator choosing the tokens.
+     * @return Template.
+     */
+    private static String createTemplate(Random random)
+    {
+        StringBuilder template = new StringBuilder();
+        while (template.length() < 200 * 1024)
+        {
+            template.append("  <connector name=\"http\" protocol=\"HTTP/1.1\"");
+            template.append(" port=\"@cargo.property.");
+            template.append(random.nextInt(TOKENS));
+            template.append("@\" scheme=\"http\" secure=\"false\" enableLookups=\"false\"/>\n");
+            template.append("  <!-- user@example.com is not a token -->\n");
+        }
+        return template.toString();
+    }
+}
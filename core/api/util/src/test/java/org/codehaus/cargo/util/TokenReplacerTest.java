@@ -0,0 +1,205 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.types.FilterChain;
+
+/**
+ * Unit tests for {@link TokenReplacer}.
+ * 
+ */
+public class TokenReplacerTest extends TestCase
+{
+    /**
+     * Token replacer to test.
+     */
+    private TokenReplacer replacer;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.replacer = new TokenReplacer();
+        this.replacer.addToken("cargo.servlet.port", "8080");
+        this.replacer.addToken("cargo.hostname", "localhost");
+        this.replacer.addToken("cargo.host", "host");
+    }
+
+    /**
+     * Test replacing known tokens.
+     */
+    public void testReplaceTokens()
+    {
+        assertEquals("http://localhost:8080/ on host",
+            this.replacer.replace("http://@cargo.hostname@:@cargo.servlet.port@/ on @cargo.host@"));
+        assertEquals("80808080", this.replacer.replace("@cargo.servlet.port@@cargo.servlet.port@"));
+
+        this.replacer.addToken("empty", "");
+        assertEquals("[]", this.replacer.replace("[@empty@]"));
+    }
+
+    /**
+     * Test that unknown and unterminated tokens are left untouched, and that the closing delimiter
+     * of an unknown token can start a known one.
+     */
+    public void testUnknownTokens()
+    {
+        assertEquals("@unknown@ @cargo.hosts@ @cargo.", this.replacer.replace(
+            "@unknown@ @cargo.hosts@ @cargo."));
+        assertEquals("user@8080", this.replacer.replace("user@@cargo.servlet.port@"));
+        assertEquals("a@b@host", this.replacer.replace("a@b@@cargo.host@"));
+        assertEquals("@", this.replacer.replace("@"));
+    }
+
+    /**
+     * Test that replacement values are not filtered again and that the first value of a key wins.
+     */
+    public void testReplacementValues()
+    {
+        this.replacer.addToken("nested", "@cargo.host@");
+        this.replacer.addToken("cargo.host", "other");
+        assertEquals("@cargo.host@ host", this.replacer.replace("@nested@ @cargo.host@"));
+    }
+
+    /**
+     * Test that the replacer gives the same results as a naive implementation of the Ant
+     * <code>ReplaceTokens</code> semantics on random texts, when reading character by character.
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSameResultsAsNaiveReplacement() throws Exception
+    {
+        String[] fragments = {"@", "@@", "cargo.", "host", "name", "servlet.port", "x", "\n",
+            " "};
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++)
+        {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(40); j > 0; j--)
+            {
+                text.append(fragments[random.nextInt(fragments.length)]);
+            }
+
+            assertEquals(text.toString(), naiveReplace(text.toString()),
+                readFully(this.replacer.chain(new OneCharacterReader(text.toString()))));
+        }
+    }
+
+    /**
+     * Test that {@link AntUtils} puts all tokens in a single filter.
+     */
+    public void testAntUtilsUsesSingleFilter()
+    {
+        Map<String, String> tokens = new HashMap<String, String>();
+        tokens.put("a", "1");
+        tokens.put("b", "2");
+
+        FilterChain filterChain = new FilterChain();
+        AntUtils antUtils = new AntUtils();
+        antUtils.addTokensToFilterChain(filterChain, tokens);
+        antUtils.addTokenToFilterChain(filterChain, "c", "3");
+
+        assertEquals(1, filterChain.getFilterReaders().size());
+        assertEquals("1 2 3", antUtils.getTokenReplacer(filterChain).replace("@a@ @b@ @c@"));
+    }
+
+    /**
+     * Replaces tokens the way Ant <code>ReplaceTokens</code> does: on a delimiter, look for the
+     * next delimiter and replace the text in between if it is a token key, otherwise keep the
+     * first delimiter and continue with the next character.
+     * 
+     * @param text Text to filter.
+     * @return Filtered text.
+     */
+    private String naiveReplace(String text)
+    {
+        Map<String, String> tokens = this.replacer.getTokens();
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < text.length())
+        {
+            char c = text.charAt(i);
+            int end = text.indexOf('@', i + 1);
+            if (c == '@' && end != -1 && tokens.containsKey(text.substring(i + 1, end)))
+            {
+                result.append(tokens.get(text.substring(i + 1, end)));
+                i = end + 1;
+            }
+            else
+            {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param reader Reader to read.
+     * @return Text read.
+     * @throws IOException If reading fails.
+     */
+    private static String readFully(Reader reader) throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1)
+        {
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reader returning at most one character per read, to test buffer boundaries.
+     */
+    private static class OneCharacterReader extends FilterReader
+    {
+        /**
+         * @param text Text to read.
+         */
+        public OneCharacterReader(String text)
+        {
+            super(new StringReader(text));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException
+        {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+}
@@ -382,6 +382,27 @@ public class VFSFileHandler extends DefaultFileHandler
         return name;
     }
 
+    /**
+     * Get the size of a file. {@inheritDoc}
+     * @see FileHandler#getSize(String)
+     * @param file File to check.
+     * @return The size of <code>file</code>, in bytes.
+     */
+    @Override
+    public long getSize(String file)
+    {
+        long size;
+        try
+        {
+            size = getFileSystemManager().resolveFile(file).getContent().getSize();
+        }
+        catch (FileSystemException e)
+        {
+            throw new CargoException("Failed to get size of [" + file + "]", e);
+        }
+        return size;
+    }
+
     /**
      * Get the children of a directory. {@inheritDoc}
      * @param directory Directory to which to get the children.
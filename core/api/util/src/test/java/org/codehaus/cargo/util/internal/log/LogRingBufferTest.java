@@ -0,0 +1,105 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.internal.log;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LogRingBuffer}.
+ * 
+ */
+public class LogRingBufferTest extends TestCase
+{
+    /**
+     * Test that the capacity is rounded up to a power of two and that a full buffer refuses
+     * elements.
+     */
+    public void testCapacity()
+    {
+        LogRingBuffer<Integer> buffer = new LogRingBuffer<Integer>(3);
+        assertEquals(4, buffer.getCapacity());
+        assertTrue(buffer.isEmpty());
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(buffer.offer(Integer.valueOf(i)));
+        }
+        assertFalse(buffer.offer(Integer.valueOf(4)));
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(Integer.valueOf(4)));
+        for (int i = 1; i <= 4; i++)
+        {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    /**
+     * Test that elements offered by concurrent producers are all polled, each producer's
+     * elements in order.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testConcurrentProducers() throws Exception
+    {
+        final int producers = 4;
+        final int count = 20000;
+        final LogRingBuffer<int[]> buffer = new LogRingBuffer<int[]>(64);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++)
+        {
+            final int producer = p;
+            threads[p] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        while (!buffer.offer(new int[] {producer, i}))
+                        {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * count)
+        {
+            int[] element = buffer.poll();
+            if (element == null)
+            {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[element[0]], element[1]);
+            next[element[0]]++;
+            received++;
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util.log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link AsyncFileLogger}.
+ * 
+ */
+public class AsyncFileLoggerTest extends TestCase
+{
+    /**
+     * Log file.
+     */
+    private File logFile;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.logFile = File.createTempFile("cargo-async", ".log");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.logFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that the logger writes lines in the same format as the {@link FileLogger}.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testFormat() throws Exception
+    {
+        AsyncFileLogger logger = new AsyncFileLogger(this.logFile, false);
+        logger.info("message", "org.codehaus.cargo.SomeCategoryClass");
+        logger.debug("not logged", "category");
+        logger.flush();
+
+        List<String> lines = readLines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).matches(
+            "\\[\\d\\d:\\d\\d:\\d\\d\\.\\d\\d\\d\\]\\[info\\]\\[go.SomeCategoryClass\\] message"));
+        logger.close();
+    }
+
+    /**
+     * Test that messages logged by concurrent threads to loggers sharing a file are all written
+     * on close, each thread's messages in order.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testConcurrentLoggers() throws Exception
+    {
+        final int threads = 4;
+        final int count = 5000;
+        final AsyncFileLogger[] loggers = new AsyncFileLogger[threads];
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            loggers[t] = new AsyncFileLogger(this.logFile, false,
+                AsyncFileLogger.OverflowPolicy.BLOCK, 16);
+            producers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        loggers[thread].warn(thread + " " + i, "category");
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        for (int t = 0; t < threads; t++)
+        {
+            producers[t].join();
+            loggers[t].close();
+        }
+
+        List<String> lines = readLines();
+        assertEquals(threads * count, lines.size());
+        int[] next = new int[threads];
+        for (String line : lines)
+        {
+            String[] message = line.substring(line.lastIndexOf("] ") + 2).split(" ");
+            int thread = Integer.parseInt(message[0]);
+            assertEquals(next[thread], Integer.parseInt(message[1]));
+            next[thread]++;
+        }
+    }
+
+    /**
+     * Test that the discard policy never blocks and that discarded messages are reported.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDiscardPolicy() throws Exception
+    {
+        AsyncFileLogger logger = new AsyncFileLogger(this.logFile, false,
+            AsyncFileLogger.OverflowPolicy.DISCARD, 2);
+        int count = 100000;
+        for (int i = 0; i < count; i++)
+        {
+            logger.info("message " + i, "category");
+        }
+        long discarded = logger.getDiscardedCount();
+        logger.close();
+
+        int messages = 0;
+        boolean reported = false;
+        for (String line : readLines())
+        {
+            if (line.contains("] message "))
+            {
+                messages++;
+            }
+            else if (line.contains("log messages have been discarded"))
+            {
+                reported = true;
+            }
+        }
+        assertEquals(count, messages + discarded);
+        assertEquals(discarded > 0, reported);
+    }
+
+    /**
+     * Test that a closed logger refuses messages.
+     */
+    public void testClose()
+    {
+        AsyncFileLogger logger = new AsyncFileLogger(this.logFile, true);
+        logger.close();
+        logger.close();
+        try
+        {
+            logger.info("message", "category");
+            fail("A closed logger should refuse messages");
+        }
+        catch (IllegalStateException expected)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * @return Lines of the log file.
+     * @throws IOException If reading fails.
+     */
+    private List<String> readLines() throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(this.logFile));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lines.add(line);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -77,7 +77,6 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
     protected void doDeploy(Deployable deployable, boolean overwrite)
     {
         List<String> args = new ArrayList<String>();
-        this.addConnectOptions(args);
 
         args.add("deploy");
 
@@ -108,7 +107,7 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
         args.add(new File(deployable.getFile()).getAbsolutePath());
 
         // The return value is checked by GlassFish3xAsAdmin.invokeAsAdmin
-        this.getLocalContainer().invokeAsAdmin(false, args);
+        this.invokeAsAdmin(args);
     }
 
     /**
@@ -118,7 +117,6 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
     public void undeploy(Deployable deployable)
     {
         List<String> args = new ArrayList<String>();
-        this.addConnectOptions(args);
 
         args.add("undeploy");
 
@@ -128,7 +126,7 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
         args.add(this.cutExtension(this.getFileHandler().getName(deployable.getFile())));
 
         // The return value is checked by GlassFish3xAsAdmin.invokeAsAdmin
-        this.getLocalContainer().invokeAsAdmin(false, args);
+        this.invokeAsAdmin(args);
     }
 
     /**
@@ -168,7 +166,6 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
         String dataSourceId = "cargo-datasource-" + dataSource.getId();
 
         List<String> args = new ArrayList<String>();
-        this.addConnectOptions(args);
         args.add("create-jdbc-connection-pool");
         args.add("--restype");
         args.add(dataSource.getConnectionType());
@@ -190,17 +187,16 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
         args.add(dataSourceId);
 
         // The return value is checked by GlassFish3xAsAdmin.invokeAsAdmin
-        this.getLocalContainer().invokeAsAdmin(false, args);
+        this.invokeAsAdmin(args);
 
         args.clear();
-        this.addConnectOptions(args);
         args.add("create-jdbc-resource");
         args.add("--connectionpoolid");
         args.add(dataSourceId);
         args.add(dataSource.getJndiLocation());
 
         // The return value is checked by GlassFish3xAsAdmin.invokeAsAdmin
-        this.getLocalContainer().invokeAsAdmin(false, args);
+        this.invokeAsAdmin(args);
     }
 
     /**
@@ -212,20 +208,18 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
         List<String> args = new ArrayList<String>();
 
         args.clear();
-        this.addConnectOptions(args);
         args.add("delete-jdbc-resource");
         args.add(jdbcName);
 
         // The return value is checked by GlassFish3xAsAdmin.invokeAsAdmin
-        this.getLocalContainer().invokeAsAdmin(false, args);
+        this.invokeAsAdmin(args);
 
         args.clear();
-        this.addConnectOptions(args);
         args.add("delete-jdbc-connection-pool");
         args.add(poolName);
 
         // The return value is checked by GlassFish3xAsAdmin.invokeAsAdmin
-        this.getLocalContainer().invokeAsAdmin(false, args);
+        this.invokeAsAdmin(args);
     }
 
     /**
@@ -239,18 +233,16 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
         if (JMS_RESOURCE_TYPES.contains(resource.getType()))
         {
             List<String> args = new ArrayList<String>();
-            this.addConnectOptions(args);
             args.add("create-jms-resource");
             args.add("--restype");
             args.add(resource.getType());
             args.add(resource.getName());
 
-            this.getLocalContainer().invokeAsAdmin(false, args);
+            this.invokeAsAdmin(args);
         }        
         else if (ConfigurationEntryType.MAIL_SESSION.equals(resource.getType()))
         {
             List<String> args = new ArrayList<String>();
-            this.addConnectOptions(args);
             args.add("create-javamail-resource");
             args.add("--mailhost");
             args.add(resource.getParameter("mail.smtp.host"));
@@ -272,7 +264,7 @@ public class GlassFish3xInstalledLocalDeployer extends AbstractGlassFishInstalle
             }
             args.add(propertyBuilder.toString());
             args.add(resource.getName());
-            this.getLocalContainer().invokeAsAdmin(false, args);
+            this.invokeAsAdmin(args);
         }
     }
 
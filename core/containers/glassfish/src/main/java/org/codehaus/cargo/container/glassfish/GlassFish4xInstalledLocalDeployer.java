@@ -151,11 +151,10 @@ public class GlassFish4xInstalledLocalDeployer extends GlassFish3xInstalledLocal
     public void activateDefaultPrincipalToRoleMapping()
     {
         List<String> args = new ArrayList<String>();
-        this.addConnectOptions(args);
         args.add("set");
         args.add("configs.config.server-config.security-service."
                 + "activate-default-principal-to-role-mapping=true");
-        this.getLocalContainer().invokeAsAdmin(false, args);
+        this.invokeAsAdmin(args);
     }
 
 }
@@ -20,8 +20,16 @@
 package org.codehaus.cargo.container.glassfish.internal;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.property.RemotePropertySet;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
@@ -34,6 +42,12 @@ import org.codehaus.cargo.util.CargoException;
 public abstract class AbstractAsAdmin
 {
 
+    /**
+     * Result line printed by asadmin after each command of a multimode session.
+     */
+    private static final Pattern MULTIMODE_RESULT = Pattern.compile(
+        "^Command (\\S+) (executed successfully|failed)\\.?\\s*$", Pattern.MULTILINE);
+
     /**
      * Invokes asadmin using a Java container.
      * 
@@ -46,6 +60,135 @@ public abstract class AbstractAsAdmin
     public abstract int invokeAsAdmin(boolean async, JvmLauncher java, String[] args)
         throws CargoException;
 
+    /**
+     * Tells whether this asadmin can run several commands in a single
+     * <code>asadmin multimode</code> session.
+     * 
+     * @return <code>true</code> if {@link #invokeAsAdminMultimode} is supported.
+     */
+    public boolean isMultimodeSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Invokes several asadmin commands in a single <code>asadmin multimode</code> session, so that
+     * only one asadmin JVM is started for all commands. The commands are written to a command file
+     * which is passed to <code>multimode --file</code>. The asadmin JVM runs with an English
+     * locale, so that {@link #parseMultimodeResults} can read the result of each command.
+     * 
+     * @param java JVM launcher.
+     * @param options asadmin options applying to all commands, for example connection options.
+     * @param commands Commands to run, each being a subcommand name followed by its arguments.
+     * @param commandFile File to write the commands to.
+     * @return The exit code from asadmin.
+     * @throws CargoException If anything wrong happens.
+     */
+    public int invokeAsAdminMultimode(JvmLauncher java, List<String> options,
+        List<List<String>> commands, File commandFile) throws CargoException
+    {
+        try
+        {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(commandFile), "UTF-8");
+            try
+            {
+                for (List<String> command : commands)
+                {
+                    writer.write(toMultimodeLine(command));
+                    writer.write('\n');
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to write the asadmin command file " + commandFile, e);
+        }
+
+        java.setSystemProperty("user.language", "en");
+        java.setSystemProperty("user.country", "US");
+
+        List<String> args = new ArrayList<String>(options);
+        args.add("multimode");
+        args.add("--file");
+        args.add(commandFile.getAbsolutePath());
+        return invokeAsAdmin(false, java, args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Formats a command as a line of an <code>asadmin multimode</code> command file. Arguments
+     * containing blanks, quotes or backslashes are quoted, with quotes and backslashes escaped.
+     * 
+     * @param command Subcommand name followed by its arguments.
+     * @return Command line.
+     */
+    public static String toMultimodeLine(List<String> command)
+    {
+        StringBuilder line = new StringBuilder();
+        for (String arg : command)
+        {
+            if (line.length() > 0)
+            {
+                line.append(' ');
+            }
+
+            boolean quote = arg.length() == 0;
+            for (int i = 0; i < arg.length() && !quote; i++)
+            {
+                char c = arg.charAt(i);
+                quote = Character.isWhitespace(c) || c == '"' || c == '\'' || c == '\\';
+            }
+
+            if (quote)
+            {
+                line.append('"');
+                line.append(arg.replace("\\", "\\\\").replace("\"", "\\\""));
+                line.append('"');
+            }
+            else
+            {
+                line.append(arg);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Reads the result of each command of an <code>asadmin multimode</code> session from its
+     * output. asadmin prints a <code>Command &lt;name&gt; executed successfully</code> or
+     * <code>Command &lt;name&gt; failed</code> line after each command; each such line is paired
+     * with the first command of that name which has no result yet, hence lines which do not
+     * belong to any command cannot shift the results of the following commands.
+     * 
+     * @param commands Commands run, each being a subcommand name followed by its arguments.
+     * @param output Output of the multimode session.
+     * @return For each command, in order, {@link Boolean#TRUE} if it succeeded,
+     * {@link Boolean#FALSE} if it failed and <code>null</code> if the output holds no result for
+     * it.
+     */
+    public static Boolean[] parseMultimodeResults(List<List<String>> commands, String output)
+    {
+        Boolean[] results = new Boolean[commands.size()];
+        Matcher result = MULTIMODE_RESULT.matcher(output);
+        while (result.find())
+        {
+            for (int i = 0; i < results.length; i++)
+            {
+                List<String> command = commands.get(i);
+                if (results[i] == null && !command.isEmpty()
+                    && command.get(0).equals(result.group(1)))
+                {
+                    results[i] = Boolean.valueOf("executed successfully".equals(result.group(2)));
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * Creates and returns the password file that contains admin's password.
      * 
@@ -19,9 +19,13 @@
  */
 package org.codehaus.cargo.container.glassfish.internal;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
@@ -97,6 +101,133 @@ public abstract class AbstractGlassFishInstalledLocalContainer
         return asadmin.invokeAsAdmin(async, java, args);
     }
 
+    /**
+     * Invokes several asadmin commands. When supported by the asadmin, all commands are run by a
+     * single <code>asadmin multimode</code> session instead of starting one asadmin JVM per
+     * command. All commands are run even if some fail, the result of each command is logged and
+     * the failed commands are reported at the end. Commands for which asadmin reports no result
+     * are considered as failed.
+     * 
+     * @param options asadmin options applying to all commands, for example connection options.
+     * @param commands Commands to run, each being a subcommand name followed by its arguments.
+     */
+    public void invokeAsAdminBatch(List<String> options, List<List<String>> commands)
+    {
+        AbstractAsAdmin asadmin = getAsAdmin();
+        if (commands.size() < 2 || !asadmin.isMultimodeSupported())
+        {
+            for (List<String> command : commands)
+            {
+                List<String> args = new ArrayList<String>(options);
+                args.addAll(command);
+                invokeAsAdmin(false, args);
+            }
+            return;
+        }
+
+        File commandFile;
+        File outputFile;
+        try
+        {
+            commandFile = File.createTempFile("cargo-asadmin-", ".txt");
+            outputFile = File.createTempFile("cargo-asadmin-", ".log");
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to create the asadmin command file", e);
+        }
+
+        try
+        {
+            JvmLauncher java = createJvmLauncher(false);
+            java.setOutputFile(outputFile);
+            java.setAppendOutput(false);
+
+            CargoException failure = null;
+            try
+            {
+                asadmin.invokeAsAdminMultimode(java, options, commands, commandFile);
+            }
+            catch (CargoException e)
+            {
+                failure = e;
+            }
+
+            String output = getFileHandler().readTextFile(outputFile.getAbsolutePath(), null);
+            if (getOutput() != null)
+            {
+                appendOutput(output);
+            }
+
+            List<String> failedCommands = new ArrayList<String>();
+            List<String> unreportedCommands = new ArrayList<String>();
+            Boolean[] results = AbstractAsAdmin.parseMultimodeResults(commands, output);
+            for (int i = 0; i < results.length; i++)
+            {
+                String line = AbstractAsAdmin.toMultimodeLine(commands.get(i));
+                if (results[i] == null)
+                {
+                    getLogger().warn("No result for asadmin command: " + line,
+                        getClass().getName());
+                    unreportedCommands.add(line);
+                }
+                else if (results[i].booleanValue())
+                {
+                    getLogger().debug("asadmin command succeeded: " + line,
+                        getClass().getName());
+                }
+                else
+                {
+                    getLogger().warn("asadmin command failed: " + line, getClass().getName());
+                    failedCommands.add(line);
+                }
+            }
+
+            if (!failedCommands.isEmpty())
+            {
+                throw new CargoException("GlassFish admin commands " + failedCommands
+                    + " failed", failure);
+            }
+            else if (failure != null || !unreportedCommands.isEmpty())
+            {
+                throw new CargoException("GlassFish admin commands failed, commands without a "
+                    + "result: " + unreportedCommands + ", output: " + output, failure);
+            }
+        }
+        finally
+        {
+            commandFile.delete();
+            outputFile.delete();
+        }
+    }
+
+    /**
+     * Appends asadmin output to the container output file.
+     * 
+     * @param output asadmin output.
+     */
+    private void appendOutput(String output)
+    {
+        try
+        {
+            Writer writer = new FileWriter(getOutput(), true);
+            try
+            {
+                writer.write(output);
+                writer.write(System.getProperty("line.separator"));
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Cannot append asadmin output to " + getOutput() + ": " + e,
+                getClass().getName());
+        }
+    }
+
     /**
      * Returns the asadmin for the GlassFish server.
      * 
@@ -214,6 +345,9 @@ public abstract class AbstractGlassFishInstalledLocalContainer
 
         try
         {
+            // Run all configuration and deployment commands in as few asadmin JVMs as possible
+            deployer.startBatch();
+
             if (Boolean.valueOf(this.getConfiguration().getPropertyValue(
                 GlassFishPropertySet.REMOVE_DEFAULT_DATASOURCE)).booleanValue())
             {
@@ -252,6 +386,8 @@ public abstract class AbstractGlassFishInstalledLocalContainer
             {
                 deployer.redeploy(deployable);
             }
+
+            deployer.executeBatch();
         }
         catch (Throwable t)
         {
@@ -19,6 +19,7 @@
  */
 package org.codehaus.cargo.container.glassfish.internal;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.codehaus.cargo.container.InstalledLocalContainer;
@@ -43,6 +44,11 @@ import org.codehaus.cargo.container.spi.deployer.DeployerWatchdog;
 public abstract class AbstractGlassFishInstalledLocalDeployer extends AbstractLocalDeployer
 {
 
+    /**
+     * Commands waiting to be run, <code>null</code> when commands are run immediately.
+     */
+    private List<List<String>> batch;
+
     /**
      * Calls parent constructor, which saves the container.
      * 
@@ -181,6 +187,52 @@ public abstract class AbstractGlassFishInstalledLocalDeployer extends AbstractLo
         }
     }
 
+    /**
+     * Starts batching asadmin commands: until {@link #executeBatch()} is called, the commands
+     * invoked with {@link #invokeAsAdmin(List)} are queued instead of being run immediately.
+     */
+    public void startBatch()
+    {
+        this.batch = new ArrayList<List<String>>();
+    }
+
+    /**
+     * Runs all commands queued since {@link #startBatch()}, with as few asadmin invocations as the
+     * GlassFish version allows, and stops batching.
+     */
+    public void executeBatch()
+    {
+        List<List<String>> commands = this.batch;
+        this.batch = null;
+        if (commands != null && !commands.isEmpty())
+        {
+            List<String> options = new ArrayList<String>();
+            this.addConnectOptions(options);
+            this.getLocalContainer().invokeAsAdminBatch(options, commands);
+        }
+    }
+
+    /**
+     * Invokes an asadmin command with the connection options, or queues it if commands are being
+     * batched.
+     * 
+     * @param command Subcommand name followed by its arguments.
+     */
+    protected void invokeAsAdmin(List<String> command)
+    {
+        if (this.batch != null)
+        {
+            this.batch.add(new ArrayList<String>(command));
+        }
+        else
+        {
+            List<String> args = new ArrayList<String>();
+            this.addConnectOptions(args);
+            args.addAll(command);
+            this.getLocalContainer().invokeAsAdmin(false, args);
+        }
+    }
+
     /**
      * Adds connection options.
      * 
@@ -53,6 +53,15 @@ public class GlassFish3xAsAdmin extends AbstractAsAdmin
         this.home = home;
     }
 
+    /**
+     * {@inheritDoc}. GlassFish 3.x and onwards support <code>asadmin multimode</code>.
+     */
+    @Override
+    public boolean isMultimodeSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
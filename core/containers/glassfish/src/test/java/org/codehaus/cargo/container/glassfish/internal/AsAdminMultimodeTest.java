@@ -0,0 +1,126 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.glassfish.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the multimode support of {@link AbstractAsAdmin}.
+ * 
+ */
+public class AsAdminMultimodeTest extends TestCase
+{
+
+    /**
+     * Test that plain arguments are written as they are.
+     */
+    public void testMultimodeLineWithPlainArguments()
+    {
+        assertEquals("deploy --force=true --name test /tmp/test.war",
+            AbstractAsAdmin.toMultimodeLine(Arrays.asList(
+                "deploy", "--force=true", "--name", "test", "/tmp/test.war")));
+    }
+
+    /**
+     * Test that arguments with blanks are quoted.
+     */
+    public void testMultimodeLineWithBlanks()
+    {
+        assertEquals("deploy \"/tmp/my app/test.war\" \"a\tb\"",
+            AbstractAsAdmin.toMultimodeLine(Arrays.asList(
+                "deploy", "/tmp/my app/test.war", "a\tb")));
+    }
+
+    /**
+     * Test that quotes within arguments are escaped.
+     */
+    public void testMultimodeLineWithQuotes()
+    {
+        assertEquals("create-system-properties \"msg=say \\\"hi\\\"\" \"it's\"",
+            AbstractAsAdmin.toMultimodeLine(Arrays.asList(
+                "create-system-properties", "msg=say \"hi\"", "it's")));
+    }
+
+    /**
+     * Test that backslashes within arguments are escaped.
+     */
+    public void testMultimodeLineWithBackslashes()
+    {
+        assertEquals("deploy \"C:\\\\cargo\\\\test.war\"",
+            AbstractAsAdmin.toMultimodeLine(Arrays.asList("deploy", "C:\\cargo\\test.war")));
+    }
+
+    /**
+     * Test that empty arguments are kept.
+     */
+    public void testMultimodeLineWithEmptyArgument()
+    {
+        assertEquals("create-jvm-options \"\" --target server",
+            AbstractAsAdmin.toMultimodeLine(Arrays.asList(
+                "create-jvm-options", "", "--target", "server")));
+    }
+
+    /**
+     * Test that the <code>\:</code> escapes of connection pool properties survive the quoting.
+     */
+    public void testMultimodeLineWithEscapedPoolProperties()
+    {
+        assertEquals("create-jdbc-connection-pool --property "
+            + "\"user=cargo:url=jdbc\\\\:derby\\\\://localhost\\\\:1527/cargo\" cargoPool",
+            AbstractAsAdmin.toMultimodeLine(Arrays.asList(
+                "create-jdbc-connection-pool", "--property",
+                "user=cargo:url=jdbc\\:derby\\://localhost\\:1527/cargo", "cargoPool")));
+    }
+
+    /**
+     * Test that the results of a multimode session are paired with commands by name.
+     */
+    public void testParseMultimodeResults()
+    {
+        List<List<String>> commands = new ArrayList<List<String>>();
+        commands.add(Arrays.asList("create-jdbc-connection-pool", "--property", "a=b", "pool"));
+        commands.add(Arrays.asList("create-jdbc-resource", "--connectionpoolid", "pool", "jdbc"));
+        commands.add(Arrays.asList("deploy", "--name", "first", "/tmp/first.war"));
+        commands.add(Arrays.asList("deploy", "--name", "second", "/tmp/second.war"));
+        commands.add(Arrays.asList("create-system-properties", "a=b"));
+
+        String output = "JDBC connection pool pool created successfully.\n"
+            + "Command create-jdbc-connection-pool executed successfully.\n"
+            + "Command list-commands executed successfully.\n"
+            + "Application deployed with name first.\n"
+            + "Command deploy executed successfully.\n"
+            + "remote failure: Error occurred during deployment: second.war is corrupt.\n"
+            + "Command deploy failed.\n"
+            + "JDBC resource jdbc created successfully.\n"
+            + "Command create-jdbc-resource executed successfully.\n";
+
+        Boolean[] results = AbstractAsAdmin.parseMultimodeResults(commands, output);
+        assertEquals(5, results.length);
+        assertEquals(Boolean.TRUE, results[0]);
+        assertEquals(Boolean.TRUE, results[1]);
+        assertEquals(Boolean.TRUE, results[2]);
+        assertEquals(Boolean.FALSE, results[3]);
+        assertNull(results[4]);
+    }
+}
@@ -19,18 +19,18 @@
  */
 package org.codehaus.cargo.container.jboss;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import org.codehaus.cargo.container.InstalledLocalContainer;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableException;
+import org.codehaus.cargo.container.internal.util.ZipRewriter;
 
 /**
  * Static deployer that deploys WARs and EARs to the JBoss <code>deployments</code> directory.
@@ -154,70 +154,56 @@ public class JBoss7xInstalledLocalDeployer extends JBossInstalledLocalDeployer
             return originalDeployable;
         }
 
-        String outputFile =
-            getFileHandler().append(getContainer().getConfiguration().getHome(), "tmp/cargo");
-        getFileHandler().mkdirs(outputFile);
-        outputFile = getFileHandler().append(outputFile, getDeployableName(originalDeployable));
-
-        byte[] buf = new byte[1024];
+        // Only the manifest changes: all other entries are copied without being recompressed,
+        // and the rewritten archive is reused as long as the source and classpath do not change
+        final Set<String> dependencies = classpath;
+        ZipRewriter rewriter = new ZipRewriter();
+        rewriter.addTransformer("META-INF/MANIFEST.MF", new ZipRewriter.EntryTransformer()
+        {
+            public byte[] transform(String name, InputStream content) throws IOException
+            {
+                return addDependencies(new Manifest(content), dependencies);
+            }
+        });
+        String cacheDirectory = getFileHandler().append(
+            getContainer().getConfiguration().getHome(), "tmp/cargo");
+        File outputFile = rewriter.rewriteCached(new File(originalDeployable.getFile()),
+            new File(cacheDirectory), getDeployableName(originalDeployable),
+            classpath.toString());
+
+        return originalDeployable.getClass().getConstructor(String.class).newInstance(
+            outputFile.getPath());
+    }
 
-        ZipInputStream zin = new ZipInputStream(new FileInputStream(originalDeployable.getFile()));
-        try
+    /**
+     * Adds JBoss modules to the <code>Dependencies</code> attribute of a manifest.
+     * @param manifest Manifest to modify.
+     * @param classpath Names of the modules to add.
+     * @return Modified manifest.
+     * @throws IOException If writing the manifest fails.
+     */
+    private static byte[] addDependencies(Manifest manifest, Set<String> classpath)
+        throws IOException
+    {
+        String dependencies = manifest.getMainAttributes().getValue("Dependencies");
+        if (dependencies == null)
+        {
+            dependencies = "";
+        }
+        for (String classpathEntry : classpath)
         {
-            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(outputFile));
-            try
+            if (!dependencies.contains(classpathEntry))
             {
-                ZipEntry entry = zin.getNextEntry();
-                while (entry != null)
+                if (dependencies.length() > 0)
                 {
-                    String name = entry.getName();
-                    if (name.equalsIgnoreCase("META-INF/MANIFEST.MF"))
-                    {
-                        Manifest manifest = new Manifest(zin);
-                        String dependencies =
-                            manifest.getMainAttributes().getValue("Dependencies");
-                        if (dependencies == null)
-                        {
-                            dependencies = "";
-                        }
-                        for (String classpathEntry : classpath)
-                        {
-                            if (!dependencies.contains(classpathEntry))
-                            {
-                                if (dependencies.length() > 0)
-                                {
-                                    dependencies += ", ";
-                                }
-                                dependencies += "org.codehaus.cargo.classpath." + classpathEntry;
-                            }
-                        }
-                        manifest.getMainAttributes().putValue("Dependencies", dependencies);
-                        out.putNextEntry(new ZipEntry(name));
-                        manifest.write(out);
-                        out.closeEntry();
-                    }
-                    else
-                    {
-                        out.putNextEntry(new ZipEntry(name));
-                        int len;
-                        while ((len = zin.read(buf)) > 0)
-                        {
-                            out.write(buf, 0, len);
-                        }
-                    }
-                    entry = zin.getNextEntry();
+                    dependencies += ", ";
                 }
+                dependencies += "org.codehaus.cargo.classpath." + classpathEntry;
             }
-            finally
-            {
-                out.close();
-            }
-        }
-        finally
-        {
-            zin.close();
         }
-
-        return originalDeployable.getClass().getConstructor(String.class).newInstance(outputFile);
+        manifest.getMainAttributes().putValue("Dependencies", dependencies);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        return out.toByteArray();
     }
 }
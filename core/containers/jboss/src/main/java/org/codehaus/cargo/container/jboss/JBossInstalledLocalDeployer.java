@@ -79,6 +79,17 @@ public class JBossInstalledLocalDeployer extends AbstractCopyingInstalledLocalDe
         return deployableName;
     }
 
+    /**
+     * {@inheritDoc}. Like expanded WARs, WAR archives deployed exploded must keep the
+     * <code>.war</code> extension, else JBoss would not deploy them and {@link #undeploy} would
+     * not find them.
+     */
+    @Override
+    protected String getExplodedDeployableName(Deployable deployable)
+    {
+        return getDeployableName(deployable);
+    }
+
     /**
      * Removes previously deployed artifact.
      * 
@@ -0,0 +1,105 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.jboss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.FileHandler;
+
+/**
+ * Unit tests for {@link JBossInstalledLocalDeployer}.
+ * 
+ */
+public class JBossInstalledLocalDeployerTest extends TestCase
+{
+    /**
+     * File handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Configuration home.
+     */
+    private String configurationHome;
+
+    /**
+     * Deployer.
+     */
+    private JBossInstalledLocalDeployer deployer;
+
+    /**
+     * Creates an empty configuration home and the deployer. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new DefaultFileHandler();
+        this.configurationHome = new File("target/deployer/" + getName()).getAbsolutePath();
+        this.fileHandler.delete(this.configurationHome);
+        this.fileHandler.mkdirs(this.fileHandler.append(this.configurationHome, "deploy"));
+
+        JBoss4xInstalledLocalContainer container = new JBoss4xInstalledLocalContainer(
+            new JBossStandaloneLocalConfiguration(this.configurationHome));
+        container.setFileHandler(this.fileHandler);
+        this.deployer = new JBossInstalledLocalDeployer(container);
+    }
+
+    /**
+     * Test that a WAR archive deployed exploded keeps its <code>.war</code> extension, and that
+     * it can be undeployed.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDeployAndUndeployExplodedWar() throws Exception
+    {
+        String war = this.fileHandler.append(this.configurationHome, "test.war");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war));
+        try
+        {
+            out.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+            out.write("<web-app/>".getBytes("UTF-8"));
+            out.closeEntry();
+        }
+        finally
+        {
+            out.close();
+        }
+        WAR deployable = new WAR(war);
+        String exploded = this.fileHandler.append(this.configurationHome, "deploy/test.war");
+
+        this.deployer.setShouldExplodeArchive(DeployableType.WAR, true);
+        this.deployer.deploy(deployable);
+        assertTrue(this.fileHandler.isDirectory(exploded));
+        assertEquals("<web-app/>",
+            this.fileHandler.readTextFile(exploded + "/WEB-INF/web.xml", "UTF-8"));
+
+        this.deployer.undeploy(deployable);
+        assertFalse(this.fileHandler.exists(exploded));
+    }
+}
@@ -46,6 +46,16 @@ public class Jetty6xInstalledLocalDeployer extends AbstractCopyingInstalledLocal
         super(container);
     }
 
+    /**
+     * {@inheritDoc}. Jetty context files are named after the WAR context, which the copying
+     * deployer keeps unique, so concurrent deployments never write to the same file.
+     */
+    @Override
+    public boolean isConcurrentOperationSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}. For Jetty this is the <code>webapps</code> directory.
      */
@@ -19,7 +19,6 @@
  */
 package org.codehaus.cargo.container.jetty;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,6 +29,8 @@ import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.RemoteContainer;
@@ -62,6 +63,11 @@ public class JettyRemoteDeployer extends AbstractRemoteDeployer
      */
     private static final String DEFAULT_DEPLOYER_CONTEXT = "cargo-jetty-deployer";
 
+    /**
+     * Size of the buffer used when sending archives.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
     /**
      * The username to use for the remote server authentication.
      */
@@ -97,6 +103,16 @@ public class JettyRemoteDeployer extends AbstractRemoteDeployer
         }
     }
 
+    /**
+     * {@inheritDoc}. Each deployment action is a separate HTTP request to the deployer web
+     * application.
+     */
+    @Override
+    public boolean isConcurrentOperationSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -172,28 +188,19 @@ public class JettyRemoteDeployer extends AbstractRemoteDeployer
         connection.setRequestMethod("PUT");
         connection.setRequestProperty("Content-Type", "application/octet-stream");
 
-        // When trying to upload large amount of data the internal connection buffer can become
-        // too large and exceed the heap size, leading to a java.lang.OutOfMemoryError.
-        // This was fixed in JDK 1.5 by introducing a new setChunkedStreamingMode() method.
-        // As Cargo should also work with JDK versions lesser than 1.5 we use reflection to call
-        // setChunkedStreamingMode(). If it fails, we assume we're running an older version of
-        // the JDK. In that case the solution for the user is to increase it's heap size.
-        // For reference, see the following discussions about this:
-        // http://www.velocityreviews.com/forums/t149076-leaking-memory-when-writing-to-url.html
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=5026745
-        // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4212479
-        try
+        // Stream the archive instead of letting the connection buffer it in memory, with a known
+        // length when possible so that the deployer can write it to disk as it arrives
+        File webapp = new File(war.getFile());
+        long length = webapp.length();
+        if (length <= Integer.MAX_VALUE)
         {
-            connection.getClass().getMethod("setChunkedStreamingMode",
-                new Class[] {Integer.TYPE}).invoke(connection, new Object[] {new Integer(0)});
+            connection.setFixedLengthStreamingMode((int) length);
         }
-        catch (Exception e)
+        else
         {
-            // We assume we're on an older JDK version, do nothing.
-            getLogger().debug("Not calling setChunkedStreamingMode() method as JVM ["
-                + System.getProperty("java.version") + "] doesn't support it.",
-                getClass().getName());
+            connection.setChunkedStreamingMode(0);
         }
+        connection.setRequestProperty("Content-MD5", computeChecksum(webapp));
 
         if (this.username != null)
         {
@@ -299,16 +306,58 @@ public class JettyRemoteDeployer extends AbstractRemoteDeployer
      */
     protected void pipe(InputStream in, OutputStream out) throws IOException
     {
-        BufferedOutputStream bufferedOut = new BufferedOutputStream(out);
-        int n;
-        byte[] bytes = new byte[1024 * 4];
-        while ((n = in.read(bytes)) != -1)
+        try
+        {
+            int n;
+            byte[] bytes = new byte[JettyRemoteDeployer.BUFFER_SIZE];
+            while ((n = in.read(bytes)) != -1)
+            {
+                out.write(bytes, 0, n);
+            }
+            out.flush();
+        }
+        finally
+        {
+            out.close();
+            in.close();
+        }
+    }
+
+    /**
+     * Computes the checksum sent along with an archive, which the deployer uses to verify the
+     * archive it received.
+     * 
+     * @param file the archive
+     * @return the Base64-encoded MD5 checksum of the archive
+     * @throws IOException if an i/o error occurs
+     */
+    protected String computeChecksum(File file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContainerException("MD5 is not supported by this JVM", e);
+        }
+
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int n;
+            byte[] bytes = new byte[JettyRemoteDeployer.BUFFER_SIZE];
+            while ((n = in.read(bytes)) != -1)
+            {
+                digest.update(bytes, 0, n);
+            }
+        }
+        finally
         {
-            bufferedOut.write(bytes, 0, n);
+            in.close();
         }
-        bufferedOut.flush();
-        bufferedOut.close();
-        in.close();
+        return Base64.encodeToString(digest.digest());
     }
 
     /**
@@ -38,6 +38,15 @@ public class Jo1xInstalledLocalDeployer extends AbstractCopyingInstalledLocalDep
         super(container);
     }
 
+    /**
+     * {@inheritDoc}. jo! only needs the deployable files to be copied, each to its own location.
+     */
+    @Override
+    public boolean isConcurrentOperationSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}. For jo! this is the <code>webapp/host</code> directory.
      */
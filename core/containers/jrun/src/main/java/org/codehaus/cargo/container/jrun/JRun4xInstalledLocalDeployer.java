@@ -39,6 +39,16 @@ public class JRun4xInstalledLocalDeployer extends AbstractCopyingInstalledLocalD
         super(container);
     }
 
+    /**
+     * {@inheritDoc}. JRun deploys each archive found in its server directory without any
+     * further configuration, so archives can be copied there concurrently.
+     */
+    @Override
+    public boolean isConcurrentOperationSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}. For JRun this is the <code>servers/server_name</code> directory.
      */
@@ -24,7 +24,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.tools.ant.filters.ReplaceTokens;
 import org.apache.tools.ant.types.FilterChain;
 import org.apache.tools.ant.util.FileUtils;
 import org.codehaus.cargo.container.LocalContainer;
@@ -254,15 +253,6 @@ public abstract class AbstractOrionStandaloneLocalConfiguration extends
 
         // Add application deployment tokens
 
-        ReplaceTokens.Token tokenApplications = new ReplaceTokens.Token();
-        tokenApplications.setKey("orion.application");
-
-        ReplaceTokens.Token tokenWebModules = new ReplaceTokens.Token();
-        tokenWebModules.setKey("orion.web-module");
-
-        ReplaceTokens.Token tokenWebApps = new ReplaceTokens.Token();
-        tokenWebApps.setKey("orion.web-app");
-
         // Note: The following values must never be empty string as otherwise
         // the Ant filtering code fails.
         StringBuilder keyApplications = new StringBuilder(" ");
@@ -326,21 +316,11 @@ public abstract class AbstractOrionStandaloneLocalConfiguration extends
             }
         }
 
-        tokenApplications.setValue(keyApplications.toString());
-        tokenWebModules.setValue(keyWebModules.toString());
-        tokenWebApps.setValue(keyWebApps.toString());
-
-        ReplaceTokens replaceApplications = new ReplaceTokens();
-        replaceApplications.addConfiguredToken(tokenApplications);
-        filterChain.addReplaceTokens(replaceApplications);
-
-        ReplaceTokens replaceWebModules = new ReplaceTokens();
-        replaceWebModules.addConfiguredToken(tokenWebModules);
-        filterChain.addReplaceTokens(replaceWebModules);
-
-        ReplaceTokens replaceWebApps = new ReplaceTokens();
-        replaceWebApps.addConfiguredToken(tokenWebApps);
-        filterChain.addReplaceTokens(replaceWebApps);
+        getAntUtils().addTokenToFilterChain(filterChain, "orion.application",
+            keyApplications.toString());
+        getAntUtils().addTokenToFilterChain(filterChain, "orion.web-module",
+            keyWebModules.toString());
+        getAntUtils().addTokenToFilterChain(filterChain, "orion.web-app", keyWebApps.toString());
 
         return filterChain;
     }
@@ -38,6 +38,16 @@ public class ResinInstalledLocalDeployer extends AbstractCopyingInstalledLocalDe
         super(container);
     }
 
+    /**
+     * {@inheritDoc}. Resin picks up each deployable from its own file in the
+     * <code>webapps</code> directory, there is no shared descriptor to update.
+     */
+    @Override
+    public boolean isConcurrentOperationSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}. For Resin this is the <code>webapps</code> directory.
      */
@@ -52,6 +52,17 @@ public class TomcatCopyingInstalledLocalDeployer extends AbstractCopyingInstalle
         super(container);
     }
 
+    /**
+     * {@inheritDoc}. Each WAR gets its own file or directory under <code>webapps</code> and, when
+     * deployed in place, its own context XML file named after its context; undeploying only
+     * deletes these. Several WARs can hence be deployed at the same time.
+     */
+    @Override
+    public boolean isConcurrentOperationSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}. For Tomcat this is the <code>webapps</code> directory.
      */
@@ -33,6 +33,7 @@ import org.codehaus.cargo.container.internal.ServletContainerCapability;
 import org.codehaus.cargo.container.property.GeneralPropertySet;
 import org.codehaus.cargo.container.spi.AbstractInstalledLocalContainer;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
+import org.codehaus.cargo.container.spi.util.ContainerStopStrategy;
 
 /**
  * Base support for Catalina based installed local containers.
@@ -152,6 +153,30 @@ public abstract class AbstractCatalinaInstalledLocalContainer extends
         invokeContainer("stop", java);
     }
 
+    /**
+     * {@inheritDoc}. Catalina closes its shutdown port as soon as it receives the shutdown command,
+     * before stopping its connectors and applications: that port hence does not tell whether the
+     * container has stopped and is not watched.
+     */
+    @Override
+    protected ContainerStopStrategy createStopStrategy()
+    {
+        ContainerStopStrategy stopStrategy = super.createStopStrategy();
+        String shutdownPort = getConfiguration().getPropertyValue(GeneralPropertySet.RMI_PORT);
+        if (shutdownPort != null && stopStrategy.getPorts().size() > 1)
+        {
+            try
+            {
+                stopStrategy.removePort(Integer.parseInt(shutdownPort));
+            }
+            catch (NumberFormatException e)
+            {
+                // Not a port, nothing to remove
+            }
+        }
+        return stopStrategy;
+    }
+
     /**
      * Does not add anything to the extra classpath since this is already handled by the
      * {@link AbstractCatalinaStandaloneLocalConfiguration}. {@inheritDoc}
@@ -19,7 +19,7 @@
  */
 package org.codehaus.cargo.container.tomcat.internal;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -98,8 +98,10 @@ public abstract class AbstractTomcatManagerDeployer extends AbstractRemoteDeploy
 
         try
         {
-            getTomcatManager().deploy(getPath(deployable), getVersion(deployable),
-                new FileInputStream(file), false, null);
+            TomcatManager tomcatManager = getTomcatManager();
+            tomcatManager.deploy(getPath(deployable), getVersion(deployable), new File(file),
+                false, null);
+            logThroughput(file, tomcatManager);
         }
         catch (TomcatManagerException exception)
         {
@@ -111,6 +113,22 @@ public abstract class AbstractTomcatManagerDeployer extends AbstractRemoteDeploy
         }
     }
 
+    /**
+     * Logs the throughput of the last upload to Tomcat manager.
+     * 
+     * @param file the file which has been uploaded
+     * @param tomcatManager the Tomcat manager wrapper used for uploading
+     */
+    protected void logThroughput(String file, TomcatManager tomcatManager)
+    {
+        long bytes = tomcatManager.getLastUploadBytes();
+        long uploadDuration = tomcatManager.getLastUploadDuration();
+        long kilobytesPerSecond = bytes * 1000 / 1024 / Math.max(1, uploadDuration);
+        getLogger().info("Deployed [" + file + "] in " + tomcatManager.getLastRequestDuration()
+            + " ms: uploaded " + bytes + " bytes in " + uploadDuration + " ms ("
+            + kilobytesPerSecond + " KB/s)", this.getClass().getName());
+    }
+
     /**
      * {@inheritDoc}
      * @see org.codehaus.cargo.container.deployer.Deployer#undeploy(org.codehaus.cargo.container.deployable.Deployable)
@@ -19,7 +19,8 @@
  */
 package org.codehaus.cargo.container.tomcat.internal;
 
-import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -27,8 +28,12 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 import java.util.StringTokenizer;
 
 import org.codehaus.cargo.util.Base64;
@@ -76,6 +81,52 @@ public class TomcatManager extends LoggedObject
      */
     private MessageDigest md5;
 
+    /**
+     * Whether a request has already succeeded, in which case the authentication scheme is known.
+     */
+    private boolean authenticationNegotiated;
+
+    /**
+     * Realm of the last Digest authentication challenge.
+     */
+    private String digestRealm;
+
+    /**
+     * Quality of protection of the last Digest authentication challenge.
+     */
+    private String digestQop;
+
+    /**
+     * Nonce of the last Digest authentication challenge, null if the server did not request a
+     * Digest authentication.
+     */
+    private String digestNonce;
+
+    /**
+     * Opaque data of the last Digest authentication challenge.
+     */
+    private String digestOpaque;
+
+    /**
+     * Number of requests sent with the current nonce.
+     */
+    private int digestNonceCount;
+
+    /**
+     * Number of bytes sent by the last upload.
+     */
+    private long lastUploadBytes;
+
+    /**
+     * Duration of the last upload, in milliseconds.
+     */
+    private long lastUploadDuration;
+
+    /**
+     * Duration of the last request, from connection to response, in milliseconds.
+     */
+    private long lastRequestDuration;
+
     /**
      * Creates a Tomcat manager wrapper for the specified URL that uses a username of
      * <code>admin</code>, an empty password and ISO-8859-1 URL encoding.
@@ -198,6 +249,31 @@ public class TomcatManager extends LoggedObject
         this.userAgent = userAgent;
     }
 
+    /**
+     * @return the number of bytes sent by the last upload
+     */
+    public long getLastUploadBytes()
+    {
+        return this.lastUploadBytes;
+    }
+
+    /**
+     * @return the duration of the last upload, in milliseconds
+     */
+    public long getLastUploadDuration()
+    {
+        return this.lastUploadDuration;
+    }
+
+    /**
+     * @return the duration of the last request, including the upload and the processing by
+     * Tomcat manager, in milliseconds
+     */
+    public long getLastRequestDuration()
+    {
+        return this.lastRequestDuration;
+    }
+
     /**
      * Deploys the specified WAR as a URL to the specified context path.
      * 
@@ -287,7 +363,7 @@ public class TomcatManager extends LoggedObject
     public void deploy(String path, InputStream war, boolean update, String tag)
         throws TomcatManagerException, IOException
     {
-        deployImpl(path, null, null, null, war, update, tag);
+        deployImpl(path, null, null, null, new Upload(war), update, tag);
     }
 
     /**
@@ -305,7 +381,27 @@ public class TomcatManager extends LoggedObject
     public void deploy(String path, String version, InputStream war, boolean update, String tag)
         throws TomcatManagerException, IOException
     {
-        deployImpl(path, version, null, null, war, update, tag);
+        deployImpl(path, version, null, null, new Upload(war), update, tag);
+    }
+
+    /**
+     * Deploys the specified WAR file as a HTTP PUT to the specified context path, optionally
+     * undeploying the webapp if it already exists and using the specified tag name. The file is
+     * streamed with a fixed length body and, unlike a stream, can be sent again if the server
+     * requests a new authentication.
+     * 
+     * @param path the webapp context path to deploy to
+     * @param version the webapp version
+     * @param war the WAR file to deploy
+     * @param update whether to first undeploy the webapp if it already exists
+     * @param tag the tag name to use
+     * @throws TomcatManagerException if the Tomcat manager request fails
+     * @throws IOException if an i/o error occurs
+     */
+    public void deploy(String path, String version, File war, boolean update, String tag)
+        throws TomcatManagerException, IOException
+    {
+        deployImpl(path, version, null, null, new Upload(war), update, tag);
     }
 
     /**
@@ -510,32 +606,68 @@ public class TomcatManager extends LoggedObject
     protected String invoke(String path, InputStream data, String digestData) throws
         TomcatManagerException, IOException
     {
-        // TODO: This method should be refactored so that it can be unit testable.
+        Upload upload = null;
+        if (data != null)
+        {
+            upload = new Upload(data);
+        }
+        return send(path, upload, digestData);
+    }
+
+    /**
+     * Invokes Tomcat manager with the specified command and upload. Before an upload, the
+     * authentication scheme is negotiated with a cheap <code>GET</code> request unless it is
+     * already known, so that the upload is sent only once with the right credentials.
+     * 
+     * @param path the Tomcat manager command to invoke
+     * @param upload the content to upload, or null for none
+     * @param authorization the authorization header to send, or null to compute it
+     * @return the result of the invoking command, as returned by the Tomcat Manager application
+     * @throws TomcatManagerException if the Tomcat manager request fails
+     * @throws IOException if an i/o error occurs
+     */
+    private String send(String path, Upload upload, String authorization)
+        throws TomcatManagerException, IOException
+    {
+        if (upload != null && authorization == null && this.username != null
+            && !this.authenticationNegotiated)
+        {
+            getLogger().debug("Negotiating authentication before uploading",
+                getClass().getName());
+            invoke("/list", null, null);
+        }
 
         getLogger().debug("Invoking Tomcat manager using path [" + path + "]",
             getClass().getName());
 
         URL invokeURL = new URL(this.url + path);
+        String method = upload == null ? "GET" : "PUT";
         HttpURLConnection connection = (HttpURLConnection) invokeURL.openConnection();
         connection.setAllowUserInteraction(false);
         connection.setDoInput(true);
         connection.setUseCaches(false);
+        connection.setRequestMethod(method);
 
-        if (data == null)
+        if (upload == null)
         {
             connection.setDoOutput(false);
-            connection.setRequestMethod("GET");
         }
         else
         {
             connection.setDoOutput(true);
-            connection.setRequestMethod("PUT");
             connection.setRequestProperty("Content-Type", "application/octet-stream");
 
-            // When trying to upload large amount of data the internal connection buffer can become
-            // too large and exceed the heap size, leading to a java.lang.OutOfMemoryError.
-            // This was fixed in JDK 1.5 by introducing a new setChunkedStreamingMode() method.
-            connection.setChunkedStreamingMode(0);
+            // Never let the connection buffer the upload, as that can exceed the heap size. When
+            // the length is known, the upload is streamed with a fixed length body.
+            long length = upload.getLength();
+            if (length >= 0 && length <= Integer.MAX_VALUE)
+            {
+                connection.setFixedLengthStreamingMode((int) length);
+            }
+            else
+            {
+                connection.setChunkedStreamingMode(0);
+            }
         }
 
         if (this.userAgent != null)
@@ -543,21 +675,32 @@ public class TomcatManager extends LoggedObject
             connection.setRequestProperty("User-Agent", this.userAgent);
         }
 
-        if (digestData != null)
+        String requestAuthorization = authorization;
+        if (requestAuthorization == null)
         {
-            connection.setRequestProperty("Authorization", digestData);
+            requestAuthorization = getAuthorization(method, invokeURL.getPath());
         }
-        else if (this.username != null)
+        if (requestAuthorization != null)
         {
-            String authorization = toAuthorization(this.username, this.password);
-            connection.setRequestProperty("Authorization", authorization);
+            connection.setRequestProperty("Authorization", requestAuthorization);
         }
 
+        long start = System.currentTimeMillis();
         connection.connect();
 
-        if (data != null)
+        if (upload != null)
         {
-            pipe(data, connection.getOutputStream());
+            long uploadStart = System.currentTimeMillis();
+            OutputStream out = connection.getOutputStream();
+            try
+            {
+                this.lastUploadBytes = upload.writeTo(out);
+            }
+            finally
+            {
+                out.close();
+            }
+            this.lastUploadDuration = System.currentTimeMillis() - uploadStart;
         }
 
         String response;
@@ -570,112 +713,27 @@ public class TomcatManager extends LoggedObject
             if (connection.getResponseCode() == 401)
             {
                 String wwwAuthenticate = connection.getHeaderField("WWW-Authenticate");
-                if (digestData == null && wwwAuthenticate != null
+                if (authorization == null && wwwAuthenticate != null
                     && wwwAuthenticate.startsWith("Digest "))
                 {
                     getLogger().debug(
                         "Response code is 401 and server requests Digest authentication",
                         getClass().getName());
 
-                    String realm = extractHeaderComponent(wwwAuthenticate, "realm");
-                    String qop = extractHeaderComponent(wwwAuthenticate, "qop");
-                    String nonce = extractHeaderComponent(wwwAuthenticate, "nonce");
-                    String opaque = extractHeaderComponent(wwwAuthenticate, "opaque");
-                    String algorithm = extractHeaderComponent(wwwAuthenticate, "algorithm");
-
-                    if (realm == null || nonce == null)
-                    {
-                        throw new TomcatManagerException(
-                            "The username and password you provided are not correct (error 401), "
-                                + "the server requested a Digest authentication but "
-                                    + "realm or nonce are not provided", e);
-                    }
-                    if (qop != null && !"auth".equals(qop))
-                    {
-                        throw new TomcatManagerException(
-                            "The username and password you provided are not correct (error 401), "
-                                + "the server requested a Digest authentication but qop is set to "
-                                    + qop, e);
-                    }
-                    if (algorithm != null && !"MD5".equals(algorithm))
+                    boolean wasDigest = this.digestNonce != null;
+                    setDigestChallenge(wwwAuthenticate, e);
+                    if (wasDigest && !isStale(wwwAuthenticate))
                     {
                         throw new TomcatManagerException(
-                            "The username and password you provided are not correct (error 401), "
-                                + "the server requested a Digest authentication but "
-                                    + "algorithm is set to " + algorithm, e);
-                    }
-
-                    String ha1 = this.username + ":" + realm + ":" + this.password;
-                    byte[] hash = md5.digest(ha1.getBytes("UTF-8"));
-                    StringBuilder sb = new StringBuilder();
-                    for (byte hashByte : hash)
-                    {
-                        sb.append(String.format("%02x", hashByte));
-                    }
-                    ha1 = sb.toString();
-
-                    String uri = invokeURL.getPath();
-                    String ha2;
-                    if (data == null)
-                    {
-                        ha2 = "GET";
-                    }
-                    else
-                    {
-                        ha2 = "PUT";
-                    }
-                    ha2 += ":" + uri;
-                    hash = md5.digest(ha2.getBytes("UTF-8"));
-                    sb = new StringBuilder();
-                    for (byte hashByte : hash)
-                    {
-                        sb.append(String.format("%02x", hashByte));
-                    }
-                    ha2 = sb.toString();
-
-                    String nc = String.format("%08x", System.currentTimeMillis());
-                    nc = nc.substring(nc.length() - 8);
-                    String cnonce = String.format("%08x", (long) (Math.random() * 4294967295.0));
-                    cnonce = cnonce.substring(cnonce.length() - 8);
-
-                    String ha3;
-                    if (qop != null)
-                    {
-                        ha3 = ha1 + ":" + nonce + ":" + nc + ":" + cnonce + ":" + qop + ":" + ha2;
-                    }
-                    else
-                    {
-                        ha3 = ha1 + ":" + nonce + ":" + ha2;
-                    }
-                    hash = md5.digest(ha3.getBytes("UTF-8"));
-                    sb = new StringBuilder();
-                    for (byte hashByte : hash)
-                    {
-                        sb.append(String.format("%02x", hashByte));
-                    }
-                    ha3 = sb.toString();
-
-                    wwwAuthenticate = "Digest username=\"" + this.username + "\", "
-                        + "realm=\"" + realm + "\", "
-                        + "nonce=\"" + nonce + "\", "
-                        + "uri=\"" + uri + "\", "
-                        + "algorithm=MD5, "
-                        + "nc=" + nc + ", "
-                        + "cnonce=\"" + cnonce + "\", "
-                        + "response=\"" + ha3 + "\"";
-                    if (qop != null)
-                    {
-                        wwwAuthenticate += ", qop=\"" + qop + "\"";
+                            "The username and password you provided are not correct (error 401)",
+                            e);
                     }
-                    if (opaque != null)
+                    if (upload != null && !upload.isRepeatable())
                     {
-                        wwwAuthenticate += ", opaque=\"" + opaque + "\"";
+                        throw new TomcatManagerException("The server requested a new Digest "
+                            + "authentication and the uploaded stream cannot be sent again", e);
                     }
-
-                    getLogger().debug("Digest authentication with ha=" + ha1 + ", ha2=" + ha2
-                        + " and full header " + wwwAuthenticate, getClass().getName());
-
-                    return invoke(path, data, wwwAuthenticate);
+                    return send(path, upload, getAuthorization(method, invokeURL.getPath()));
                 }
                 else
                 {
@@ -693,6 +751,15 @@ public class TomcatManager extends LoggedObject
                 throw e;
             }
         }
+        finally
+        {
+            if (upload != null)
+            {
+                upload.close();
+            }
+        }
+        this.lastRequestDuration = System.currentTimeMillis() - start;
+        this.authenticationNegotiated = true;
 
         if (!response.startsWith("OK -"))
         {
@@ -702,20 +769,144 @@ public class TomcatManager extends LoggedObject
         return response;
     }
 
+    /**
+     * Records a Digest authentication challenge, so that the following requests are
+     * authenticated upfront using its nonce.
+     * 
+     * @param wwwAuthenticate the <code>WWW-Authenticate</code> header of the challenge
+     * @param cause the exception which reported the challenge
+     * @throws TomcatManagerException if the challenge is not supported
+     */
+    private synchronized void setDigestChallenge(String wwwAuthenticate, IOException cause)
+        throws TomcatManagerException
+    {
+        String realm = extractHeaderComponent(wwwAuthenticate, "realm");
+        String qop = extractHeaderComponent(wwwAuthenticate, "qop");
+        String nonce = extractHeaderComponent(wwwAuthenticate, "nonce");
+        String opaque = extractHeaderComponent(wwwAuthenticate, "opaque");
+        String algorithm = extractHeaderComponent(wwwAuthenticate, "algorithm");
+
+        if (realm == null || nonce == null)
+        {
+            throw new TomcatManagerException(
+                "The username and password you provided are not correct (error 401), "
+                    + "the server requested a Digest authentication but "
+                        + "realm or nonce are not provided", cause);
+        }
+        if (qop != null && !"auth".equals(qop))
+        {
+            throw new TomcatManagerException(
+                "The username and password you provided are not correct (error 401), "
+                    + "the server requested a Digest authentication but qop is set to "
+                        + qop, cause);
+        }
+        if (algorithm != null && !"MD5".equals(algorithm))
+        {
+            throw new TomcatManagerException(
+                "The username and password you provided are not correct (error 401), "
+                    + "the server requested a Digest authentication but "
+                        + "algorithm is set to " + algorithm, cause);
+        }
+
+        this.digestRealm = realm;
+        this.digestQop = qop;
+        this.digestNonce = nonce;
+        this.digestOpaque = opaque;
+        this.digestNonceCount = 0;
+    }
+
+    /**
+     * Gets the authorization header for a request: a Digest authorization computed from the last
+     * challenge received if any, a Basic authorization otherwise.
+     * 
+     * @param method the HTTP method of the request
+     * @param uri the URI of the request
+     * @return the authorization header, null if there is no username
+     * @throws IOException if the header cannot be encoded
+     */
+    private synchronized String getAuthorization(String method, String uri) throws IOException
+    {
+        if (this.digestNonce == null)
+        {
+            if (this.username == null)
+            {
+                return null;
+            }
+            return toAuthorization(this.username, this.password);
+        }
+
+        String ha1 = toHex(md5.digest((this.username + ":" + this.digestRealm + ":"
+            + this.password).getBytes("UTF-8")));
+        String ha2 = toHex(md5.digest((method + ":" + uri).getBytes("UTF-8")));
+
+        this.digestNonceCount++;
+        String nc = String.format("%08x", this.digestNonceCount);
+        String cnonce = String.format("%08x", (long) (Math.random() * 4294967295.0));
+        cnonce = cnonce.substring(cnonce.length() - 8);
+
+        String ha3;
+        if (this.digestQop != null)
+        {
+            ha3 = ha1 + ":" + this.digestNonce + ":" + nc + ":" + cnonce + ":" + this.digestQop
+                + ":" + ha2;
+        }
+        else
+        {
+            ha3 = ha1 + ":" + this.digestNonce + ":" + ha2;
+        }
+        ha3 = toHex(md5.digest(ha3.getBytes("UTF-8")));
+
+        String authorization = "Digest username=\"" + this.username + "\", "
+            + "realm=\"" + this.digestRealm + "\", "
+            + "nonce=\"" + this.digestNonce + "\", "
+            + "uri=\"" + uri + "\", "
+            + "algorithm=MD5, "
+            + "nc=" + nc + ", "
+            + "cnonce=\"" + cnonce + "\", "
+            + "response=\"" + ha3 + "\"";
+        if (this.digestQop != null)
+        {
+            authorization += ", qop=\"" + this.digestQop + "\"";
+        }
+        if (this.digestOpaque != null)
+        {
+            authorization += ", opaque=\"" + this.digestOpaque + "\"";
+        }
+
+        getLogger().debug("Digest authentication with ha1=" + ha1 + ", ha2=" + ha2
+            + " and full header " + authorization, getClass().getName());
+
+        return authorization;
+    }
+
+    /**
+     * @param hash the bytes of a hash
+     * @return the lower case hexadecimal representation of the hash
+     */
+    private static String toHex(byte[] hash)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (byte hashByte : hash)
+        {
+            sb.append(String.format("%02x", hashByte));
+        }
+        return sb.toString();
+    }
+
     /**
      * Deploys the specified WAR.
      * 
      * @param path the webapp context path to deploy to
      * @param version the webapp version
      * @param config the URL of the context XML configuration to deploy, or null for none
-     * @param war the URL of the WAR to deploy, or null to use <code>data</code>
-     * @param data an input stream to the WAR to deploy, or null to use <code>war</code>
+     * @param war the URL of the WAR to deploy, or null to use <code>upload</code>
+     * @param upload the WAR to upload, or null to use <code>war</code>
      * @param update whether to first undeploy the webapp if it already exists
      * @param tag the tag name to use
      * @throws TomcatManagerException if the Tomcat manager request fails
      * @throws IOException if an i/o error occurs
      */
-    private void deployImpl(String path, String version, URL config, URL war, InputStream data,
+    private void deployImpl(String path, String version, URL config, URL war, Upload upload,
         boolean update, String tag) throws TomcatManagerException, IOException
     {
         StringBuilder buffer = new StringBuilder("/deploy");
@@ -741,7 +932,7 @@ public class TomcatManager extends LoggedObject
             buffer.append("&tag=").append(URLEncoder.encode(tag, this.charset));
         }
 
-        invoke(buffer.toString(), data, null);
+        send(buffer.toString(), upload, null);
     }
 
     /**
@@ -768,6 +959,16 @@ public class TomcatManager extends LoggedObject
         return header.substring(index1 + fullComponentLength, index2);
     }
 
+    /**
+     * @param wwwAuthenticate a Digest authentication challenge
+     * @return whether the challenge reports that the nonce which was used is stale
+     */
+    private static boolean isStale(String wwwAuthenticate)
+    {
+        String header = wwwAuthenticate.toLowerCase(Locale.ENGLISH).replace("\"", "");
+        return header.contains("stale=true");
+    }
+
     /**
      * Gets the HTTP Basic Authorization header value for the supplied username and password.
      * 
@@ -786,28 +987,6 @@ public class TomcatManager extends LoggedObject
         return "Basic " + new String(Base64.encodeBase64(buffer.toString().getBytes()));
     }
 
-    /**
-     * Reads all the data from the specified input stream and writes it to the specified output
-     * stream. Both streams are also closed.
-     * 
-     * @param in the input stream to read from
-     * @param out the output stream to write to
-     * @throws IOException if an i/o error occurs
-     */
-    private void pipe(InputStream in, OutputStream out) throws IOException
-    {
-        BufferedOutputStream bufferedOut = new BufferedOutputStream(out);
-        int n;
-        byte[] bytes = new byte[1024 * 4];
-        while ((n = in.read(bytes)) != -1)
-        {
-            bufferedOut.write(bytes, 0, n);
-        }
-        bufferedOut.flush();
-        bufferedOut.close();
-        in.close();
-    }
-
     /**
      * Gets the data from the specified input stream as a string using the specified charset.
      * 
@@ -870,4 +1049,117 @@ public class TomcatManager extends LoggedObject
         }
         return TomcatDeployableStatus.NOT_FOUND;
     }
+
+    /**
+     * Content uploaded to Tomcat manager, either a file which can be sent again if needed or a
+     * stream which can only be sent once.
+     */
+    private static class Upload
+    {
+        /**
+         * Size of the chunks transferred at once.
+         */
+        private static final int CHUNK_SIZE = 64 * 1024;
+
+        /**
+         * File to upload, null if uploading a stream.
+         */
+        private File file;
+
+        /**
+         * Stream to upload, null if uploading a file.
+         */
+        private InputStream stream;
+
+        /**
+         * @param file the file to upload
+         */
+        public Upload(File file)
+        {
+            this.file = file;
+        }
+
+        /**
+         * @param stream the stream to upload, closed once uploaded
+         */
+        public Upload(InputStream stream)
+        {
+            this.stream = stream;
+        }
+
+        /**
+         * @return the length of the content, -1 if unknown
+         */
+        public long getLength()
+        {
+            if (this.file != null)
+            {
+                return this.file.length();
+            }
+            return -1;
+        }
+
+        /**
+         * @return whether the content can be sent again
+         */
+        public boolean isRepeatable()
+        {
+            return this.file != null;
+        }
+
+        /**
+         * Writes the content.
+         * 
+         * @param out the stream to write to
+         * @return the number of bytes written
+         * @throws IOException if an i/o error occurs
+         */
+        public long writeTo(OutputStream out) throws IOException
+        {
+            long written = 0;
+            if (this.file != null)
+            {
+                FileInputStream in = new FileInputStream(this.file);
+                try
+                {
+                    FileChannel channel = in.getChannel();
+                    WritableByteChannel target = Channels.newChannel(out);
+                    long size = channel.size();
+                    while (written < size)
+                    {
+                        written += channel.transferTo(written,
+                            Math.min(size - written, CHUNK_SIZE), target);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            else
+            {
+                byte[] bytes = new byte[CHUNK_SIZE];
+                int n;
+                while ((n = this.stream.read(bytes)) != -1)
+                {
+                    out.write(bytes, 0, n);
+                    written += n;
+                }
+            }
+            return written;
+        }
+
+        /**
+         * Closes the stream to upload, if any.
+         * 
+         * @throws IOException if an i/o error occurs
+         */
+        public void close() throws IOException
+        {
+            if (this.stream != null)
+            {
+                this.stream.close();
+            }
+        }
+    }
 }
@@ -19,6 +19,21 @@
  */
 package org.codehaus.cargo.container.tomcat.internal;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 import org.codehaus.cargo.util.AbstractResourceTest;
 
 /**
@@ -46,4 +61,96 @@ public class TomcatManagerTest extends AbstractResourceTest
             TomcatManager.extractHeaderComponent(header, "opaque"));
         assertNull(TomcatManager.extractHeaderComponent(header, "nothing"));
     }
+
+    /**
+     * Test that an upload to a server requesting Digest authentication is sent only once, with
+     * a fixed length, after the authentication has been negotiated with a <code>GET</code>, and
+     * that the nonce is then reused.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDeployFileWithDigestAuthentication() throws Exception
+    {
+        DigestManagerHandler handler = new DigestManagerHandler();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/manager", handler);
+        server.start();
+        try
+        {
+            File war = File.createTempFile("cargo", ".war");
+            war.deleteOnExit();
+            OutputStream out = new FileOutputStream(war);
+            try
+            {
+                out.write(new byte[100000]);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            TomcatManager manager = new TomcatManager(new URL("http://localhost:"
+                + server.getAddress().getPort() + "/manager"), "admin", "secret");
+            manager.deploy("/test", null, war, false, null);
+            manager.deploy("/test2", null, war, false, null);
+
+            assertEquals(100000, manager.getLastUploadBytes());
+            assertEquals(4, handler.requests.size());
+            assertEquals("GET /manager/list Basic", handler.requests.get(0));
+            assertEquals("GET /manager/list Digest", handler.requests.get(1));
+            assertEquals("PUT /manager/deploy Digest 100000", handler.requests.get(2));
+            assertEquals("PUT /manager/deploy Digest 100000", handler.requests.get(3));
+        }
+        finally
+        {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Fake Tomcat manager which requests Digest authentication and records the requests it gets.
+     */
+    private static class DigestManagerHandler implements HttpHandler
+    {
+        /**
+         * Requests received, as method, path, authentication scheme and body size.
+         */
+        private List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        /**
+         * {@inheritDoc}
+         */
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            String request = exchange.getRequestMethod() + " "
+                + exchange.getRequestURI().getPath() + " "
+                + authorization.substring(0, authorization.indexOf(' '));
+            if ("PUT".equals(exchange.getRequestMethod()))
+            {
+                request += " " + exchange.getRequestHeaders().getFirst("Content-Length");
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1)
+                {
+                    // Consume the upload
+                }
+            }
+            this.requests.add(request);
+
+            if (!authorization.startsWith("Digest ")
+                || !authorization.contains("nonce=\"abc\""))
+            {
+                exchange.getResponseHeaders().add("WWW-Authenticate",
+                    "Digest realm=\"Tomcat\", qop=\"auth\", nonce=\"abc\"");
+                exchange.sendResponseHeaders(401, -1);
+            }
+            else
+            {
+                byte[] response = "OK - Done".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+            }
+            exchange.close();
+        }
+    }
 }
@@ -55,18 +55,6 @@ public abstract class AbstractWebLogicWlstStandaloneLocalConfiguration extends
      */
     protected abstract ConfigurationBuilder createConfigurationBuilder(LocalContainer container);
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void configure(LocalContainer container)
-    {
-        super.configure(container);
-        configureDataSources(container);
-        sortResources();
-        configureResources(container);
-    }
-
     /**
      * Configure datasources.
      *
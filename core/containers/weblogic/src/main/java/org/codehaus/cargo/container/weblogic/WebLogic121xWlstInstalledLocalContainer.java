@@ -46,6 +46,16 @@ public class WebLogic121xWlstInstalledLocalContainer extends AbstractWebLogicIns
      */
     public static final String ID = "weblogic121x";
 
+    /**
+     * WLST script being batched, <code>null</code> when scripts are run immediately.
+     */
+    private List<String> wlstBatch;
+
+    /**
+     * Domain modifications not yet added to the WLST batch.
+     */
+    private List<String> pendingDomainModifications;
+
     /**
      * {@inheritDoc}
      *
@@ -156,12 +166,103 @@ public class WebLogic121xWlstInstalledLocalContainer extends AbstractWebLogicIns
         writeWithWlst(configurationScript);
     }
 
+    /**
+     * Starts batching WLST scripts: until {@link #executeWlstBatch()} is called, the scripts passed
+     * to {@link #writeWithWlst(Collection)} and
+     * {@link #modifyDomainConfigurationWithWlst(Collection)} are queued instead of being run
+     * immediately. Consecutive domain modifications are merged
+     * into a single <code>readDomain</code> / <code>updateDomain</code> cycle.
+     */
+    public void startWlstBatch()
+    {
+        this.wlstBatch = new ArrayList<String>();
+        this.pendingDomainModifications = new ArrayList<String>();
+    }
+
+    /**
+     * Runs all WLST scripts queued since {@link #startWlstBatch()} in a single WLST session, and
+     * stops batching.
+     */
+    public void executeWlstBatch()
+    {
+        if (this.wlstBatch == null)
+        {
+            return;
+        }
+
+        flushDomainModifications();
+        List<String> script = this.wlstBatch;
+        cancelWlstBatch();
+        if (!script.isEmpty())
+        {
+            executeWlst(script);
+        }
+    }
+
+    /**
+     * Stops batching WLST scripts, discarding the queued scripts if any.
+     */
+    public void cancelWlstBatch()
+    {
+        this.wlstBatch = null;
+        this.pendingDomainModifications = null;
+    }
+
     /**
      * Used for modifying domain configuration with script provided as parameter.
      *
      * @param configurationScript Script containing WLST configuration for domain modifications.
      */
     public void modifyDomainConfigurationWithWlst(Collection<String> configurationScript)
+    {
+        if (this.wlstBatch != null)
+        {
+            this.pendingDomainModifications.add("cd('/')");
+            this.pendingDomainModifications.addAll(configurationScript);
+        }
+        else
+        {
+            executeWlst(createDomainModificationScript(configurationScript));
+        }
+    }
+
+    /**
+     * Writes configuration script using WLST.
+     *
+     * @param configurationScript Script containing WLST configuration to be executed.
+     */
+    public void writeWithWlst(Collection<String> configurationScript)
+    {
+        if (this.wlstBatch != null)
+        {
+            flushDomainModifications();
+            this.wlstBatch.addAll(configurationScript);
+        }
+        else
+        {
+            executeWlst(new ArrayList<String>(configurationScript));
+        }
+    }
+
+    /**
+     * Moves the pending domain modifications to the WLST batch.
+     */
+    private void flushDomainModifications()
+    {
+        if (!this.pendingDomainModifications.isEmpty())
+        {
+            this.wlstBatch.addAll(createDomainModificationScript(this.pendingDomainModifications));
+            this.pendingDomainModifications.clear();
+        }
+    }
+
+    /**
+     * Wraps domain modifications into a script reading and updating the domain.
+     *
+     * @param configurationScript Script containing WLST configuration for domain modifications.
+     * @return Complete script.
+     */
+    private List<String> createDomainModificationScript(Collection<String> configurationScript)
     {
         List<String> completeScript = new ArrayList<String>();
         completeScript.add(String.format("readDomain('%s')", getDomainHome()));
@@ -169,16 +270,15 @@ public class WebLogic121xWlstInstalledLocalContainer extends AbstractWebLogicIns
         completeScript.addAll(configurationScript);
         completeScript.add("updateDomain()");
         completeScript.add("closeDomain()");
-
-        writeWithWlst(completeScript);
+        return completeScript;
     }
 
     /**
-     * Writes configuration script using WLST.
+     * Runs a script in a new WLST process.
      *
      * @param configurationScript Script containing WLST configuration to be executed.
      */
-    public void writeWithWlst(Collection<String> configurationScript)
+    protected void executeWlst(List<String> configurationScript)
     {
         configurationScript.add("dumpStack()");
 
@@ -87,13 +87,29 @@ public class WebLogic121xWlstStandaloneLocalConfiguration extends
         WebLogic121xWlstInstalledLocalContainer weblogicContainer =
             (WebLogic121xWlstInstalledLocalContainer) container;
 
-        // create domain
-        createNewDomain(weblogicContainer);
-
-        // deploy war
-        WebLogic9x10x103x12xWlstOfflineInstalledLocalDeployer deployer =
-            new WebLogic9x10x103x12xWlstOfflineInstalledLocalDeployer(weblogicContainer);
-        deployer.deploy(getDeployables());
+        // Starting WLST takes a long time, so all domain changes are run in a single WLST session
+        weblogicContainer.startWlstBatch();
+        try
+        {
+            // create domain
+            createNewDomain(weblogicContainer);
+
+            // deploy war
+            WebLogic9x10x103x12xWlstOfflineInstalledLocalDeployer deployer =
+                new WebLogic9x10x103x12xWlstOfflineInstalledLocalDeployer(weblogicContainer);
+            deployer.deploy(getDeployables());
+
+            // add datasources and resources
+            configureDataSources(container);
+            sortResources();
+            configureResources(container);
+
+            weblogicContainer.executeWlstBatch();
+        }
+        finally
+        {
+            weblogicContainer.cancelWlstBatch();
+        }
 
         // deploy cargo ping
         deployCargoPing(weblogicContainer);
@@ -0,0 +1,146 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.weblogic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.container.configuration.LocalConfiguration;
+
+/**
+ * Unit tests for the WLST batching of {@link WebLogic121xWlstInstalledLocalContainer}.
+ */
+public class WebLogic121xWlstInstalledLocalContainerTest extends TestCase
+{
+    /**
+     * DOMAIN_HOME
+     */
+    private static final String DOMAIN_HOME = "ram:/bea/mydomain";
+
+    /**
+     * Container.
+     */
+    private RecordingContainer container;
+
+    /**
+     * Container that records WLST scripts instead of running them.
+     */
+    private static class RecordingContainer extends WebLogic121xWlstInstalledLocalContainer
+    {
+        /**
+         * Scripts executed so far.
+         */
+        private List<List<String>> scripts = new ArrayList<List<String>>();
+
+        /**
+         * @param configuration Container configuration.
+         */
+        public RecordingContainer(LocalConfiguration configuration)
+        {
+            super(configuration);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void executeWlst(List<String> configurationScript)
+        {
+            scripts.add(configurationScript);
+        }
+    }
+
+    /**
+     * Creates the container. {@inheritDoc}
+     * 
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        this.container = new RecordingContainer(
+            new WebLogic121xWlstStandaloneLocalConfiguration(DOMAIN_HOME));
+    }
+
+    /**
+     * Test that scripts are run immediately when not batching.
+     */
+    public void testWithoutBatch()
+    {
+        container.modifyDomainConfigurationWithWlst(new ArrayList<String>(Arrays.asList("a()")));
+        container.modifyDomainConfigurationWithWlst(new ArrayList<String>(Arrays.asList("b()")));
+
+        assertEquals(2, container.scripts.size());
+        assertEquals(Arrays.asList("readDomain('" + DOMAIN_HOME + "')", "cd('/')", "a()",
+            "updateDomain()", "closeDomain()"), container.scripts.get(0));
+    }
+
+    /**
+     * Test that all batched scripts are run in a single WLST session, with consecutive domain
+     * modifications merged.
+     */
+    public void testBatch()
+    {
+        container.startWlstBatch();
+        container.writeWithWlst(Arrays.asList("writeDomain()"));
+        container.modifyDomainConfigurationWithWlst(Arrays.asList("a()"));
+        container.modifyDomainConfigurationWithWlst(Arrays.asList("b()"));
+        assertEquals(0, container.scripts.size());
+
+        container.executeWlstBatch();
+
+        assertEquals(1, container.scripts.size());
+        assertEquals(Arrays.asList("writeDomain()", "readDomain('" + DOMAIN_HOME + "')",
+            "cd('/')", "cd('/')", "a()", "cd('/')", "b()", "updateDomain()", "closeDomain()"),
+            container.scripts.get(0));
+
+        container.modifyDomainConfigurationWithWlst(Arrays.asList("c()"));
+        assertEquals(2, container.scripts.size());
+    }
+
+    /**
+     * Test that an empty batch does not start WLST.
+     */
+    public void testEmptyBatch()
+    {
+        container.startWlstBatch();
+        container.executeWlstBatch();
+
+        assertEquals(0, container.scripts.size());
+    }
+
+    /**
+     * Test that a cancelled batch is discarded.
+     */
+    public void testCancelBatch()
+    {
+        container.startWlstBatch();
+        container.modifyDomainConfigurationWithWlst(Arrays.asList("a()"));
+        container.cancelWlstBatch();
+        container.executeWlstBatch();
+
+        assertEquals(0, container.scripts.size());
+    }
+}
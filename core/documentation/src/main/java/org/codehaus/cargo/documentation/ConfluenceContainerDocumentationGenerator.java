@@ -1180,10 +1180,11 @@ public class ConfluenceContainerDocumentationGenerator
         Set<String> sortedPropertyNames = new TreeSet<String>(properties.keySet());
         for (String property : sortedPropertyNames)
         {
-            if (property.equals(GeneralPropertySet.SPAWN_PROCESS)
+            if ((property.equals(GeneralPropertySet.SPAWN_PROCESS)
+                || property.equals(GeneralPropertySet.JVM_LAUNCHER))
                 && ContainerType.EMBEDDED.equals(containerType))
             {
-                // Embedded containers don't support SPAWN_PROCESS
+                // Embedded containers don't support SPAWN_PROCESS nor JVM_LAUNCHER
                 continue;
             }
 
@@ -60,6 +60,7 @@ import org.codehaus.cargo.tools.daemon.DaemonClient;
 import org.codehaus.cargo.tools.daemon.DaemonPropertySet;
 import org.codehaus.cargo.tools.daemon.DaemonStart;
 import org.codehaus.cargo.util.log.AntLogger;
+import org.codehaus.cargo.util.log.AsyncFileLogger;
 import org.codehaus.cargo.util.log.FileLogger;
 import org.codehaus.cargo.util.log.LogLevel;
 import org.codehaus.cargo.util.log.Logger;
@@ -223,6 +224,11 @@ public class CargoTask extends Task
      */
     private LogLevel logLevel;
 
+    /**
+     * Whether the Cargo log file should be written asynchronously.
+     */
+    private boolean logAsync;
+
     /**
      * Whether output of the container should be appended to an existing file, or the existing file
      * should be truncated.
@@ -414,6 +420,14 @@ public class CargoTask extends Task
         this.logLevel = LogLevel.toLevel(logLevel);
     }
 
+    /**
+     * @param logAsync Whether the Cargo log file should be written asynchronously.
+     */
+    public void setLogAsync(boolean logAsync)
+    {
+        this.logAsync = logAsync;
+    }
+
     /**
      * {@inheritDoc}
      * @see LocalContainer#setAppend(boolean)
@@ -514,14 +528,21 @@ public class CargoTask extends Task
 
     /**
      * Create the Cargo logger that will be used for logging all messages. If the user has specified
-     * a log file we create a File logger. If no file has been specified we use an Ant logger by
-     * default to log to the Ant logging subsystem.
+     * a log file we create a File logger, asynchronous if <code>logAsync</code> is set. If no file
+     * has been specified we use an Ant logger by default to log to the Ant logging subsystem.
      */
     private void createCargoLogger()
     {
         if (getLog() != null)
         {
-            this.logger = new FileLogger(getLog(), true);
+            if (isLogAsync())
+            {
+                this.logger = new AsyncFileLogger(getLog(), true);
+            }
+            else
+            {
+                this.logger = new FileLogger(getLog(), true);
+            }
         }
         else
         {
@@ -1042,6 +1063,15 @@ public class CargoTask extends Task
         return this.logLevel;
     }
 
+    /**
+     * @return Whether the Cargo log file should be written asynchronously.
+     * @see #setLogAsync(boolean)
+     */
+    protected boolean isLogAsync()
+    {
+        return this.logAsync;
+    }
+
     /**
      * {@inheritDoc}
      * @see #setHome(String)
@@ -50,6 +50,16 @@ public class ZipURLInstallerElement
      */
     private Proxy proxy;
 
+    /**
+     * Whether to download and extract natively instead of using the Ant tasks.
+     */
+    private boolean nativeMode;
+
+    /**
+     * Directory of the archive cache shared between all download directories.
+     */
+    private String cacheDir;
+
     /**
      * @param downloadDir the destination directory where the zipped container install will be
      * downloaded.
@@ -121,6 +131,40 @@ public class ZipURLInstallerElement
         return this.proxy;
     }
 
+    /**
+     * @param nativeMode <code>true</code> to download and extract the container natively, the
+     * archive being extracted in parallel while it is being downloaded.
+     */
+    public void setNativeMode(boolean nativeMode)
+    {
+        this.nativeMode = nativeMode;
+    }
+
+    /**
+     * @return <code>true</code> if the container is downloaded and extracted natively.
+     */
+    public boolean isNativeMode()
+    {
+        return this.nativeMode;
+    }
+
+    /**
+     * @param cacheDir directory of the archive cache shared between all download directories,
+     * only used in native mode.
+     */
+    public void setCacheDir(String cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return directory of the archive cache shared between all download directories.
+     */
+    public String getCacheDir()
+    {
+        return this.cacheDir;
+    }
+
     /**
      * @return a new instance of {@link ZipURLInstaller} configured using the attributes specified
      * by the user
@@ -133,6 +177,8 @@ public class ZipURLInstallerElement
         {
             installer.setProxy(getProxy());
         }
+        installer.setNativeMode(isNativeMode());
+        installer.setCacheDir(getCacheDir());
         return installer;
     }
 }
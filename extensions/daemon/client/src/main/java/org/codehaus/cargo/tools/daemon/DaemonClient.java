@@ -19,15 +19,20 @@
  */
 package org.codehaus.cargo.tools.daemon;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.codehaus.cargo.container.InstalledLocalContainer;
 import org.codehaus.cargo.container.configuration.FileConfig;
@@ -35,6 +40,7 @@ import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.configuration.StandaloneLocalConfiguration;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.container.installer.ArchiveCache;
 import org.codehaus.cargo.util.Base64;
 import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
@@ -77,6 +83,13 @@ public class DaemonClient extends LoggedObject
      */
     private final FileHandler fileHandler = new DefaultFileHandler();
 
+    /**
+     * SHA-256 checksums of the files sent to the Cargo daemon manager, indexed by file path, last
+     * modification date and size so that unchanged files are not hashed again.
+     */
+    private final Map<String, String> fileHashes =
+        Collections.synchronizedMap(new HashMap<String, String>());
+
     /**
      * The user agent name to use when communicating with Cargo daemon manager.
      */
@@ -282,11 +295,138 @@ public class DaemonClient extends LoggedObject
             {
                 parameters.setParameter("containerAppend", "off");
             }
+
+            deduplicateFiles(parameters);
         }
 
         invoke("start", parameters);
     }
 
+    /**
+     * Content-addressed upload: sends the SHA-256 checksums of the files to upload to the Cargo
+     * daemon manager, and only keeps the files the daemon does not have in its blob store yet in
+     * the parameters. The checksums of all files are sent in the <code>fileHashes</code> parameter
+     * so that the daemon can resolve the other files from its blob store. The installer ZIP file
+     * is left out, as it has its own check. If the daemon does not support blobs, all files are
+     * uploaded.
+     * 
+     * @param parameters The daemon parameters.
+     * @throws IOException If computing a checksum fails.
+     */
+    private void deduplicateFiles(DaemonParameters parameters) throws IOException
+    {
+        Map<String, String> hashes = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : parameters.getFiles().entrySet())
+        {
+            if (!"installerZipFileData".equals(entry.getKey()))
+            {
+                hashes.put(entry.getKey(), getFileHash(entry.getValue()));
+            }
+        }
+        if (hashes.isEmpty())
+        {
+            return;
+        }
+
+        Set<String> missing;
+        try
+        {
+            missing = missingBlobs(new HashSet<String>(hashes.values()));
+        }
+        catch (DaemonException e)
+        {
+            getLogger().debug("The Cargo daemon does not support blobs, uploading all files: "
+                + e.getMessage(), this.getClass().getName());
+            return;
+        }
+
+        int skipped = 0;
+        long skippedBytes = 0;
+        StringBuilder fileHashesJSON = new StringBuilder();
+        fileHashesJSON.append("{");
+        for (Map.Entry<String, String> entry : hashes.entrySet())
+        {
+            if (fileHashesJSON.length() > 1)
+            {
+                fileHashesJSON.append(",");
+            }
+            fileHashesJSON.append("\"" + entry.getKey() + "\":\"" + entry.getValue() + "\"");
+
+            if (!missing.contains(entry.getValue()))
+            {
+                String file = parameters.getFiles().remove(entry.getKey());
+                skipped++;
+                skippedBytes += new File(file).length();
+            }
+        }
+        fileHashesJSON.append("}");
+        parameters.setParameter("fileHashes", fileHashesJSON.toString());
+
+        getLogger().info("Uploading " + (hashes.size() - skipped) + " of " + hashes.size()
+            + " files, " + skipped + " files (" + skippedBytes + " bytes) are already known to"
+            + " the Cargo daemon", this.getClass().getName());
+    }
+
+    /**
+     * Computes the SHA-256 checksum of a file, reusing the checksum computed previously if the
+     * file has not been modified since.
+     * 
+     * @param path The file path.
+     * @return SHA-256 checksum of the file, in hexadecimal.
+     * @throws IOException If reading the file fails.
+     */
+    private String getFileHash(String path) throws IOException
+    {
+        File file = new File(path);
+        String key = file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length();
+        String hash = fileHashes.get(key);
+        if (hash == null)
+        {
+            hash = ArchiveCache.sha256(file);
+            fileHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Asks the daemon which blobs are missing from its blob store.
+     * 
+     * @param hashes SHA-256 checksums of the blobs.
+     * @return SHA-256 checksums of the blobs the daemon does not have.
+     * @throws DaemonException If a daemon exception occurs, for example if the daemon is too old
+     * to support blobs
+     * @throws IOException If an I/O error occurs
+     */
+    private Set<String> missingBlobs(Set<String> hashes) throws DaemonException, IOException
+    {
+        StringBuilder hashesJSON = new StringBuilder();
+        hashesJSON.append("[");
+        for (Iterator<String> iterator = hashes.iterator(); iterator.hasNext();)
+        {
+            hashesJSON.append("\"" + iterator.next() + "\"");
+            if (iterator.hasNext())
+            {
+                hashesJSON.append(",");
+            }
+        }
+        hashesJSON.append("]");
+
+        DaemonParameters parameters = new DaemonParameters();
+        parameters.setParameter("hashes", hashesJSON.toString());
+
+        // The response is a JSON array of hexadecimal strings
+        String response = invoke("missingBlobs", parameters).trim().substring("OK -".length());
+        Set<String> missing = new HashSet<String>();
+        for (String hash : response.replaceAll("[\\[\\]\"\\s]", "").split(","))
+        {
+            if (hash.length() > 0)
+            {
+                missing.add(hash);
+            }
+        }
+        return missing;
+    }
+
     /**
      * Setup the additional classpath for the container.
      * 
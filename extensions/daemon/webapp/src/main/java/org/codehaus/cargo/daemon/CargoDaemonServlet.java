@@ -88,6 +88,16 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
      */
     private static final int INITIALAUTOSTARTTIMEOUT = 3;
 
+    /**
+     * Maximum time a log follow request waits for data, in milliseconds.
+     */
+    private static final long FOLLOW_TIMEOUT = 25000;
+
+    /**
+     * Maximum number of log bytes sent in one server-sent event.
+     */
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
     /**
      * Serial version UUID.
      */
@@ -259,7 +269,9 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 if (startRequest == null)
                 {
                     // Use case: Create new / replace existing handleId with provided configuration
-                    startRequest = new StartRequest().parse(request);
+                    startRequest = new StartRequest();
+                    startRequest.setFileManager(fileManager);
+                    startRequest.parse(request);
                     startRequest.setSave(true);
                 }
 
@@ -324,79 +336,7 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
         {
             try
             {
-                String handleId = request.getParameter("handleId");
-                Long offset = getLong(request.getParameter("offset"));
-                Handle handle = handles.get(handleId);
-                String logFilePath = null;
-                long pos = 0;
-
-                
-                if (handle == null)
-                {
-                    throw new CargoDaemonException("Handle id " + handleId + " not found.");
-                }
-
-                if ("viewlog".equals(servletPath))
-                {
-                    logFilePath = handle.getContainerOutputPath();
-                }
-                else if ("viewcargolog".equals(servletPath))
-                {
-                    logFilePath = handle.getContainerLogPath();
-                }
-                
-                long filesize = fileManager.getFileSize(logFilePath);                
-
-                response.setContentType("text/html");
-                response.setCharacterEncoding("UTF-8");
-                response.setHeader("X-Text-Size", String.valueOf(filesize));
-                
-                                
-                ServletOutputStream outputStream = response.getOutputStream();
-
-                // For some browsers, there needs to be atleast 1024 bytes sent before something is
-                // displayed.
-                // So, we respond with a nice log header to make sure we reach this limit.
-                if (offset == null) 
-                {
-                    outputLogPageHeader(outputStream);
-                    fileManager.copyHeader(
-                        getClass().getClassLoader().getResourceAsStream(
-                            "org/codehaus/cargo/daemon/logheader.txt"), outputStream);
-
-                    outputStream.println("DATE " + new Date());
-                    outputStream.println("");
-
-                    outputStream.flush();
-                }
-
-                if (filesize == 0)
-                {
-                    outputStream.println("");
-                }
-                else
-                {
-                    if (offset == null) 
-                    {
-                        // For logs larger than 1MB, only start at the last 1MB 
-                        // if no offset is specified
-                        if (filesize > 1048576)
-                        {
-                            pos = filesize - 1048576;
-                        }
-                    }
-                    else
-                    {
-                        pos = offset;
-                    }
-                    
-                    fileManager.copy(logFilePath, outputStream, pos, filesize - pos);
-                }
-                
-                if (offset == null) 
-                {
-                    outputLogPageFooter(outputStream, handleId, servletPath, filesize);
-                }
+                viewLog(request, response, servletPath);
             }
             catch (Throwable e)
             {
@@ -418,6 +358,35 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 response.getWriter().println("OK - NOTEXIST");
             }
         }
+        else if ("missingBlobs".equals(servletPath))
+        {
+            // Content-addressed upload: the client sends the SHA-256 checksums of the files it is
+            // about to upload, and only uploads the ones listed in the response
+            try
+            {
+                JSONArray missing = new JSONArray();
+                Object hashes = JSONValue.parse(request.getParameter("hashes"));
+                if (!(hashes instanceof JSONArray))
+                {
+                    throw new CargoDaemonException("Parameter hashes is not a JSON array");
+                }
+                for (Object hash : (JSONArray) hashes)
+                {
+                    if (!fileManager.existsBlob(String.valueOf(hash)))
+                    {
+                        missing.add(hash);
+                    }
+                }
+
+                response.setContentType("text/plain");
+                response.getWriter().println("OK - " + missing.toJSONString());
+            }
+            catch (Throwable e)
+            {
+                getServletContext().log("Cannot check blobs", e);
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.toString());
+            }
+        }
         else if ("getHandles".equals(servletPath))
         {
             response.setContentType("text/plain");
@@ -954,6 +923,299 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
         }
     }
 
+    /**
+     * Serves the container output or Cargo log of a handle. Without any offset, an HTML page
+     * showing the end of the log and following it is returned. Otherwise, the raw log text is
+     * returned, either from the <code>offset</code> parameter or for the HTTP <code>Range</code>
+     * requested. With <code>follow=true</code>, a request for the bytes just past the end of the
+     * log waits for data to be appended before returning; with <code>follow=stream</code>, the
+     * appended data is pushed as server-sent events until the client disconnects.
+     * 
+     * @param request The HTTP request
+     * @param response The HTTP response
+     * @param pageId The page id (ie, viewlog or viewcargolog)
+     * @throws Exception in case of error
+     */
+    private void viewLog(HttpServletRequest request, HttpServletResponse response, String pageId)
+        throws Exception
+    {
+        String handleId = request.getParameter("handleId");
+        Long offset = getLong(request.getParameter("offset"));
+        String follow = request.getParameter("follow");
+        String range = request.getHeader("Range");
+        Handle handle = handles.get(handleId);
+        String logFilePath = null;
+        long pos = 0;
+
+        if (handle == null)
+        {
+            throw new CargoDaemonException("Handle id " + handleId + " not found.");
+        }
+
+        if ("viewlog".equals(pageId))
+        {
+            logFilePath = handle.getContainerOutputPath();
+        }
+        else if ("viewcargolog".equals(pageId))
+        {
+            logFilePath = handle.getContainerLogPath();
+        }
+
+        if ("stream".equals(follow))
+        {
+            String lastEventId = request.getHeader("Last-Event-ID");
+            if (lastEventId != null)
+            {
+                offset = getLong(lastEventId);
+            }
+            streamLog(response, handleId, logFilePath, offset);
+            return;
+        }
+
+        long filesize = fileManager.getFileSize(logFilePath);
+        if (range != null && offset == null)
+        {
+            sendLogRange(response, logFilePath, range, filesize, "true".equals(follow));
+            return;
+        }
+
+        if (offset != null && offset.longValue() == filesize && "true".equals(follow))
+        {
+            filesize = fileManager.awaitFileSizeChange(logFilePath, filesize, FOLLOW_TIMEOUT);
+        }
+
+        response.setContentType("text/html");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("X-Text-Size", String.valueOf(filesize));
+
+        ServletOutputStream outputStream = response.getOutputStream();
+
+        // For some browsers, there needs to be atleast 1024 bytes sent before something is
+        // displayed.
+        // So, we respond with a nice log header to make sure we reach this limit.
+        if (offset == null) 
+        {
+            outputLogPageHeader(outputStream);
+            fileManager.copyHeader(
+                getClass().getClassLoader().getResourceAsStream(
+                    "org/codehaus/cargo/daemon/logheader.txt"), outputStream);
+
+            outputStream.println("DATE " + new Date());
+            outputStream.println("");
+
+            outputStream.flush();
+        }
+
+        if (filesize == 0)
+        {
+            outputStream.println("");
+        }
+        else
+        {
+            if (offset == null) 
+            {
+                // For logs larger than 1MB, only start at the last 1MB 
+                // if no offset is specified
+                if (filesize > 1048576)
+                {
+                    pos = filesize - 1048576;
+                }
+            }
+            else
+            {
+                pos = offset;
+            }
+
+            fileManager.copy(logFilePath, outputStream, pos, filesize - pos);
+        }
+
+        if (offset == null) 
+        {
+            outputLogPageFooter(outputStream, handleId, pageId, filesize);
+        }
+    }
+
+    /**
+     * Sends the part of a log file requested with an HTTP <code>Range</code> header. Only single
+     * byte ranges are supported, any other range is ignored and the whole log is sent.
+     * 
+     * @param response The HTTP response
+     * @param logFilePath The log file
+     * @param range The value of the <code>Range</code> header
+     * @param filesize The current size of the log file
+     * @param follow Whether to wait for data if the range starts at the end of the log
+     * @throws Exception in case of error
+     */
+    private void sendLogRange(HttpServletResponse response, String logFilePath, String range,
+        long filesize, boolean follow) throws Exception
+    {
+        long size = filesize;
+        long[] bounds = parseRange(range, size);
+        if (follow && bounds != null && bounds[0] == size)
+        {
+            size = fileManager.awaitFileSizeChange(logFilePath, size, FOLLOW_TIMEOUT);
+            bounds = parseRange(range, size);
+        }
+
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("X-Text-Size", String.valueOf(size));
+
+        long start = 0;
+        long end = size;
+        if (bounds != null)
+        {
+            start = bounds[0];
+            end = bounds[1];
+            if (start >= end)
+            {
+                response.setHeader("Content-Range", "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            response.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + size);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        }
+        response.setHeader("Content-Length", String.valueOf(end - start));
+
+        if (end > start)
+        {
+            fileManager.copy(logFilePath, response.getOutputStream(), start, end - start);
+        }
+    }
+
+    /**
+     * Parses a single byte range, as in <code>bytes=0-499</code>, <code>bytes=500-</code> or
+     * <code>bytes=-500</code>.
+     * 
+     * @param range The value of the <code>Range</code> header
+     * @param size The size of the resource
+     * @return The start (inclusive) and end (exclusive) of the range, clipped to the resource
+     * size, or <code>null</code> if the range is not a single valid byte range
+     */
+    private long[] parseRange(String range, long size)
+    {
+        String spec = range.trim();
+        if (!spec.startsWith("bytes=") || spec.indexOf(',') != -1)
+        {
+            return null;
+        }
+        spec = spec.substring("bytes=".length());
+        int dash = spec.indexOf('-');
+        if (dash == -1)
+        {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+
+        try
+        {
+            if (first.length() == 0)
+            {
+                long suffix = Long.parseLong(last);
+                return new long[] {Math.max(0, size - suffix), size};
+            }
+
+            long start = Long.parseLong(first);
+            long end = size;
+            if (last.length() != 0)
+            {
+                long lastByte = Long.parseLong(last);
+                if (lastByte < start)
+                {
+                    return null;
+                }
+                end = Math.min(lastByte + 1, size);
+            }
+            return new long[] {start, end};
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Streams a log file as server-sent events: every event carries data appended to the log, and
+     * has the log offset following that data as id so that clients can resume where they stopped.
+     * The stream ends when the client disconnects or when the handle is removed.
+     * 
+     * @param response The HTTP response
+     * @param handleId The handle id
+     * @param logFilePath The log file
+     * @param offset The offset to start streaming from, <code>null</code> for the end of the log
+     * @throws Exception in case of error
+     */
+    private void streamLog(HttpServletResponse response, String handleId, String logFilePath,
+        Long offset) throws Exception
+    {
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        ServletOutputStream outputStream = response.getOutputStream();
+        long size = fileManager.getFileSize(logFilePath);
+        long pos = offset == null ? size : offset.longValue();
+
+        try
+        {
+            while (handles.get(handleId) != null)
+            {
+                StringBuilder event = new StringBuilder();
+                if (size < pos)
+                {
+                    // The log has been truncated, start again from its beginning
+                    pos = 0;
+                    event.append("event: truncated\nid: 0\ndata: \n\n");
+                }
+                if (size > pos)
+                {
+                    byte[] data = fileManager.read(logFilePath, pos, STREAM_CHUNK_SIZE);
+                    int length = data.length;
+                    for (int i = data.length - 1; i > 0; i--)
+                    {
+                        // Only send complete lines, as long as there are some
+                        if (data[i] == '\n')
+                        {
+                            length = i + 1;
+                            break;
+                        }
+                    }
+                    pos += length;
+                    event.append("id: " + pos + "\n");
+                    for (String line : new String(data, 0, length, "UTF-8").split("\n", -1))
+                    {
+                        event.append("data: " + line + "\n");
+                    }
+                    event.append("\n");
+                }
+                else if (event.length() == 0)
+                {
+                    // Keep-alive comment, which also detects disconnected clients
+                    event.append(": \n\n");
+                }
+                outputStream.write(event.toString().getBytes("UTF-8"));
+                outputStream.flush();
+
+                if (fileManager.getFileSize(logFilePath) == pos)
+                {
+                    size = fileManager.awaitFileSizeChange(logFilePath, pos, FOLLOW_TIMEOUT);
+                }
+                else
+                {
+                    size = fileManager.getFileSize(logFilePath);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // The client went away
+        }
+    }
+
     /**
      * @return Details of current handles.
      */
@@ -1118,9 +1380,19 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 + "      }\n"
                 + "      if (xmlHttpRequest)\n"
                 + "      {\n"
+                + "        function poll()\n"
+                + "        {\n"
+                + "          if (isNaN(offset)) return;\n"
+                + "          xmlHttpRequest.open(\"GET\", \"./" + pageId 
+                + "?handleId=\" + handleId "
+                + "+ \"&offset=\" + offset + \"&follow=true\", true);\n"
+                + "\n"
+                + "          xmlHttpRequest.send();\n"
+                + "        }\n"
                 + "        xmlHttpRequest.onreadystatechange = function()\n"
                 + "        {\n"
-                + "          if (xmlHttpRequest.readyState==4 && xmlHttpRequest.status==200)\n"
+                + "          if (xmlHttpRequest.readyState!=4) return;\n"
+                + "          if (xmlHttpRequest.status==200)\n"
                 + "          {\n"
                 + "            var response = xmlHttpRequest.responseText;\n"
                 + "            if (response.length != 0)\n"
@@ -1133,18 +1405,15 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 + "            }\n"
                 + "            offset = parseInt(xmlHttpRequest.getResponseHeader"
                 + "('X-Text-Size'));\n"
+                + "            setTimeout(poll, 0);\n"
+                + "          }\n"
+                + "          else\n"
+                + "          {\n"
+                + "            setTimeout(poll, 5000);\n"
                 + "          }\n"
                 + "        }\n"
                 + "\n"
-                + "        setInterval(function()\n"
-                + "        {\n"
-                + "          if (isNaN(offset)) return;\n"
-                + "          xmlHttpRequest.open(\"GET\", \"./" + pageId 
-                + "?handleId=\" + handleId "
-                + "+ \"&offset=\" + offset, true);\n"
-                + "\n"
-                + "          xmlHttpRequest.send();\n"
-                + "        }, 1000);\n"
+                + "        poll();\n"
                 + "      }\n"
                 + "//]]>\n"
                 + "    </script>\n"
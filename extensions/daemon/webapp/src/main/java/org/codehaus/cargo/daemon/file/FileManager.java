@@ -21,11 +21,20 @@ package org.codehaus.cargo.daemon.file;
 
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
 import java.util.Properties;
 
+import org.codehaus.cargo.container.installer.ArchiveCache;
+import org.codehaus.cargo.daemon.CargoDaemonException;
 import org.codehaus.cargo.daemon.HandleDatabase;
 import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
@@ -42,6 +51,11 @@ public class FileManager
      */
     private static final int REFRESH_TIME = 500;
 
+    /**
+     * The time between two checks of followed log files.
+     */
+    private static final long LOG_POLL_INTERVAL = 250;
+
     /**
      * The cargo home directory.
      */
@@ -67,6 +81,11 @@ public class FileManager
      */
     private String logDirectory;
 
+    /**
+     * The blob store directory.
+     */
+    private String blobDirectory;
+
     /**
      * The configuration record file.
      */
@@ -77,6 +96,11 @@ public class FileManager
      */
     private final FileHandler fileHandler = new DefaultFileHandler();
 
+    /**
+     * The watcher used to follow log files.
+     */
+    private final LogFileWatcher logFileWatcher = new LogFileWatcher(LOG_POLL_INTERVAL);
+
     /**
      * Get the cargo home directory.
      * 
@@ -144,6 +168,158 @@ public class FileManager
         return installDirectory;
     }
 
+    /**
+     * Get the blob store directory. Uploaded files are kept there under their SHA-256 checksum,
+     * so that clients only need to send the files the daemon does not have yet.
+     * 
+     * @return the blob store directory
+     */
+    public String getBlobDirectory()
+    {
+        if (blobDirectory == null)
+        {
+            blobDirectory = fileHandler.append(getCargoHomeDirectory(), "blobs");
+        }
+
+        return blobDirectory;
+    }
+
+    /**
+     * Get the path of a blob in the blob store.
+     * 
+     * @param hash The SHA-256 checksum of the blob, in hexadecimal
+     * @return the path to the blob
+     */
+    public String getBlobFile(String hash)
+    {
+        if (!isValidHash(hash))
+        {
+            throw new CargoDaemonException("Invalid blob hash " + hash);
+        }
+
+        return fileHandler.append(fileHandler.append(getBlobDirectory(), hash.substring(0, 2)),
+            hash);
+    }
+
+    /**
+     * Check if a blob exists in the blob store.
+     * 
+     * @param hash The SHA-256 checksum of the blob, in hexadecimal
+     * @return true if the blob exists
+     */
+    public boolean existsBlob(String hash)
+    {
+        return isValidHash(hash) && new File(getBlobFile(hash)).isFile();
+    }
+
+    /**
+     * Saves the input stream to the blob store. The content is written to a temporary file and
+     * only moved to its final location once its checksum has been verified, so that a blob in the
+     * store is always complete. If the blob already exists, the input stream is not read.
+     * 
+     * @param hash The expected SHA-256 checksum of the content, in hexadecimal
+     * @param inputStream The inputstream containing the blob contents
+     * @return path to the saved blob
+     */
+    public String saveBlob(String hash, InputStream inputStream)
+    {
+        String blob = getBlobFile(hash);
+        File blobFile = new File(blob);
+        if (blobFile.isFile())
+        {
+            return blob;
+        }
+
+        try
+        {
+            File directory = blobFile.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            {
+                throw new IOException("Failed to create directory " + directory);
+            }
+
+            File tmpFile = File.createTempFile("blob", ".part", directory);
+            MessageDigest digest = ArchiveCache.createDigest();
+            OutputStream out = new FileOutputStream(tmpFile);
+            try
+            {
+                byte[] buf = new byte[64 * 1024];
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buf)) != -1)
+                {
+                    digest.update(buf, 0, bytesRead);
+                    out.write(buf, 0, bytesRead);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+
+            String actualHash = ArchiveCache.toHex(digest.digest());
+            if (!actualHash.equals(hash))
+            {
+                tmpFile.delete();
+                throw new CargoDaemonException("Checksum mismatch for blob " + hash
+                    + ", received content has checksum " + actualHash);
+            }
+
+            // Another request may have stored the same blob concurrently
+            if (!tmpFile.renameTo(blobFile))
+            {
+                tmpFile.delete();
+                if (!blobFile.isFile())
+                {
+                    throw new IOException("Failed to move blob to " + blob);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new CargoDaemonException("Failed to save blob " + hash, e);
+        }
+
+        return blob;
+    }
+
+    /**
+     * Get an input stream to a blob of the blob store.
+     * 
+     * @param hash The SHA-256 checksum of the blob, in hexadecimal
+     * @return the input stream
+     */
+    public InputStream getBlobInputStream(String hash)
+    {
+        try
+        {
+            return new FileInputStream(getBlobFile(hash));
+        }
+        catch (IOException e)
+        {
+            throw new CargoDaemonException("Blob " + hash + " not found", e);
+        }
+    }
+
+    /**
+     * @param hash Hash to check.
+     * @return true if the hash is a lower case hexadecimal SHA-256 checksum.
+     */
+    private static boolean isValidHash(String hash)
+    {
+        if (hash == null || hash.length() != 64)
+        {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++)
+        {
+            if ("0123456789abcdef".indexOf(hash.charAt(i)) == -1)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Gets the file path of the handle record file. The handle record file keeps track of the
      * handle id's and if they should be automatically started.
@@ -325,7 +501,7 @@ public class FileManager
     {
         String file = fileHandler.append(getWorkspaceDirectory(), relativeFile);
 
-        fileHandler.copy(inputStream, fileHandler.getOutputStream(file));
+        writeFile(file, inputStream);
 
         return file;
     }
@@ -344,7 +520,7 @@ public class FileManager
 
         if (inputStream != null)
         {
-            fileHandler.copy(inputStream, fileHandler.getOutputStream(file));
+            writeFile(file, inputStream);
         }
 
         return file;
@@ -368,11 +544,38 @@ public class FileManager
                 fileHandler.append(getWorkspaceDirectory(handleId), relativeDirectory),
                 relativeFile);
 
-        fileHandler.copy(inputStream, fileHandler.getOutputStream(file));
+        writeFile(file, inputStream);
 
         return file;
     }
 
+    /**
+     * Writes the input stream to a file, closing both the input stream and the file.
+     * 
+     * @param file The file to write
+     * @param inputStream The inputstream containing the file contents
+     */
+    private void writeFile(String file, InputStream inputStream)
+    {
+        OutputStream out = fileHandler.getOutputStream(file);
+        try
+        {
+            fileHandler.copy(inputStream, out);
+        }
+        finally
+        {
+            try
+            {
+                out.close();
+                inputStream.close();
+            }
+            catch (IOException e)
+            {
+                throw new CargoDaemonException("Failed to close file " + file, e);
+            }
+        }
+    }
+
     /**
      * Check if filename exists in the workspace.
      * 
@@ -443,8 +646,8 @@ public class FileManager
     }
 
     /**
-     * Copies the given file to the output stream continously, i.e. not stop when end of file is
-     * reached, but rather wait for additional data to be appended to the file.
+     * Copies a range of the given file to the output stream. The file is read with positional
+     * channel transfers, so that no data before the offset is ever read.
      * 
      * @param filename The file to copy
      * @param out The destination output stream
@@ -461,46 +664,30 @@ public class FileManager
         {
             return 0;
         }
-        
-        BufferedInputStream is = new BufferedInputStream(getFileInputStream(filename));
-        byte[] buf = new byte[64 * 1024];
-        int bytesRead;
-        long pos = 0;
-        long remaining = size;  
+
+        FileInputStream is = new FileInputStream(filename);
+        long pos = offset;
 
         try
         {
-            if (offset != 0)
+            FileChannel channel = is.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long end = Math.min(offset + size, channel.size());
+            while (pos < end)
             {
-                is.skip(offset);
-                pos += offset;
-            }
-            
-            while (remaining != 0)
-            {
-                int max = buf.length;
-                if (max > remaining)
-                {
-                    max = (int) remaining;
-                }
-                
-                bytesRead = is.read(buf, 0, max);
-                if (bytesRead == -1)
+                long transferred = channel.transferTo(pos, end - pos, target);
+                if (transferred <= 0)
                 {
                     break;
                 }
-                
-                out.write(buf, 0, bytesRead);
-                pos += bytesRead;
-                remaining -= bytesRead;
+                pos += transferred;
             }
 
             out.flush();
         }
-        catch (Exception e) 
+        catch (IOException e) 
         {
-            // Ignore
-            out.flush();
+            // Ignore, the client most probably went away
         }
         finally
         {
@@ -517,6 +704,63 @@ public class FileManager
         return pos;
     }
 
+    /**
+     * Reads a range of the given file.
+     * 
+     * @param filename The file to read
+     * @param offset The starting offset to read from
+     * @param maxLength The maximum number of bytes to read
+     * @return The bytes read, which may be less than <code>maxLength</code> if the end of the
+     * file is reached
+     * @throws IOException if error happens
+     */
+    public byte[] read(String filename, long offset, int maxLength) throws IOException
+    {
+        FileInputStream is = new FileInputStream(filename);
+        try
+        {
+            FileChannel channel = is.getChannel();
+            int length = (int) Math.max(0, Math.min(maxLength, channel.size() - offset));
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer, offset + buffer.position()) == -1)
+                {
+                    break;
+                }
+            }
+            byte[] result = new byte[buffer.position()];
+            buffer.flip();
+            buffer.get(result);
+            return result;
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * Waits for the size of a log file to differ from a given size, that is for data to be
+     * appended to it or for it to be truncated.
+     * 
+     * @param filePath The file
+     * @param size The size already known to the caller
+     * @param timeout Maximum time to wait, in milliseconds
+     * @return The current size, equal to <code>size</code> if the timeout expired first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long awaitFileSizeChange(String filePath, long size, long timeout)
+        throws InterruptedException
+    {
+        if (filePath == null || filePath.length() == 0)
+        {
+            return 0;
+        }
+
+        return logFileWatcher.awaitChange(new File(filePath), size, timeout);
+    }
+
     /**
      * Resolves a path relative to the workspace directory to an absolute path.
      * 
@@ -0,0 +1,239 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2015 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Watches log files for appended data. A single background thread polls the length of the files
+ * that requests are currently waiting on and wakes those requests up as soon as a file grows (or
+ * shrinks, for example when a container is restarted and its log is truncated). The thread only
+ * runs while there is at least one waiting request.
+ * 
+ */
+public class LogFileWatcher
+{
+    /**
+     * Files being watched, with their last known length.
+     */
+    private final Map<File, WatchedFile> watchedFiles = new HashMap<File, WatchedFile>();
+
+    /**
+     * Time between two polls of the watched files, in milliseconds.
+     */
+    private final long pollInterval;
+
+    /**
+     * Polling thread, <code>null</code> when no file is being watched.
+     */
+    private Thread poller;
+
+    /**
+     * @param pollInterval Time between two polls of the watched files, in milliseconds.
+     */
+    public LogFileWatcher(long pollInterval)
+    {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Waits for a file's length to differ from a given length.
+     * 
+     * @param file File to watch.
+     * @param length Length already known to the caller.
+     * @param timeout Maximum time to wait, in milliseconds.
+     * @return The current length of the file, equal to <code>length</code> if the timeout expired
+     * before the file changed.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public long awaitChange(File file, long length, long timeout) throws InterruptedException
+    {
+        long current = file.length();
+        if (current != length || timeout <= 0)
+        {
+            return current;
+        }
+
+        WatchedFile watched = register(file, current);
+        try
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            synchronized (watched)
+            {
+                long remaining = timeout;
+                while (watched.length == length && remaining > 0)
+                {
+                    watched.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                return watched.length;
+            }
+        }
+        finally
+        {
+            unregister(watched);
+        }
+    }
+
+    /**
+     * Registers a waiter on a file, starting the polling thread if needed.
+     * 
+     * @param file File to watch.
+     * @param length Current length of the file.
+     * @return Watched file entry.
+     */
+    private synchronized WatchedFile register(File file, long length)
+    {
+        WatchedFile watched = watchedFiles.get(file);
+        if (watched == null)
+        {
+            watched = new WatchedFile(file, length);
+            watchedFiles.put(file, watched);
+        }
+        else
+        {
+            synchronized (watched)
+            {
+                if (watched.length != length)
+                {
+                    watched.length = length;
+                    watched.notifyAll();
+                }
+            }
+        }
+        watched.waiters++;
+
+        if (poller == null)
+        {
+            poller = new Thread(new Poller(), "Cargo daemon log file watcher");
+            poller.setDaemon(true);
+            poller.start();
+        }
+        return watched;
+    }
+
+    /**
+     * Unregisters a waiter, the file is no longer watched once it has no waiters left.
+     * 
+     * @param watched Watched file entry.
+     */
+    private synchronized void unregister(WatchedFile watched)
+    {
+        watched.waiters--;
+        if (watched.waiters == 0)
+        {
+            watchedFiles.remove(watched.file);
+        }
+    }
+
+    /**
+     * Polls the length of all watched files once.
+     * 
+     * @return <code>false</code> if no file is watched anymore, in which case the polling thread
+     * must stop.
+     */
+    private boolean poll()
+    {
+        WatchedFile[] files;
+        synchronized (this)
+        {
+            if (watchedFiles.isEmpty())
+            {
+                poller = null;
+                return false;
+            }
+            files = watchedFiles.values().toArray(new WatchedFile[watchedFiles.size()]);
+        }
+
+        for (WatchedFile watched : files)
+        {
+            long length = watched.file.length();
+            synchronized (watched)
+            {
+                if (length != watched.length)
+                {
+                    watched.length = length;
+                    watched.notifyAll();
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Body of the polling thread.
+     */
+    private class Poller implements Runnable
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            try
+            {
+                while (poll())
+                {
+                    Thread.sleep(pollInterval);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                synchronized (LogFileWatcher.this)
+                {
+                    poller = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A watched file, which is also the monitor waiters wait on.
+     */
+    private static class WatchedFile
+    {
+        /**
+         * The file.
+         */
+        private final File file;
+
+        /**
+         * Last known length of the file.
+         */
+        private long length;
+
+        /**
+         * Number of requests waiting on the file.
+         */
+        private int waiters;
+
+        /**
+         * @param file The file.
+         * @param length Current length of the file.
+         */
+        WatchedFile(File file, long length)
+        {
+            this.file = file;
+            this.length = length;
+        }
+    }
+}
@@ -36,12 +36,13 @@ import com.sun.jna.platform.win32.WinNT.HANDLE;
 import org.apache.tools.ant.types.Commandline;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncherException;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncherProcessAware;
 
 /**
  * A JVM launcher that launches a new Process, that can be forcibly killed if needed.
  *
  */
-class DaemonJvmLauncher implements JvmLauncher
+class DaemonJvmLauncher implements JvmLauncher, JvmLauncherProcessAware
 {
     /**
      * The working directory.
@@ -441,6 +442,27 @@ class DaemonJvmLauncher implements JvmLauncher
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isRunning()
+    {
+        Process running = process;
+        if (running == null)
+        {
+            return false;
+        }
+        try
+        {
+            running.exitValue();
+            return false;
+        }
+        catch (IllegalThreadStateException e)
+        {
+            return true;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -34,6 +34,7 @@ import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.codehaus.cargo.daemon.CargoDaemonException;
+import org.codehaus.cargo.daemon.file.FileManager;
 import org.codehaus.cargo.daemon.properties.PropertyTable;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -55,11 +56,35 @@ public class StartRequest
      */
     private Map<String, FileItem> files;
 
+    /**
+     * The SHA-256 checksums of the files, indexed by file parameter name.
+     */
+    private PropertyTable fileHashes;
+
+    /**
+     * The file manager holding the blob store, <code>null</code> if files are only read from the
+     * request itself.
+     */
+    private FileManager fileManager;
+
     /**
      * Tells if this request needs to be saved.
      */
     private boolean save = false;
 
+    /**
+     * Sets the file manager used to resolve files from the blob store. Clients can send the
+     * <code>fileHashes</code> parameter, a JSON object mapping each file parameter name to the
+     * SHA-256 checksum of the file, and only upload the files the daemon is missing. Uploaded
+     * files with a checksum are added to the blob store when the request is parsed.
+     * 
+     * @param fileManager The file manager.
+     */
+    public void setFileManager(FileManager fileManager)
+    {
+        this.fileManager = fileManager;
+    }
+
     /**
      * Parses the servlet request.
      * 
@@ -103,9 +128,51 @@ public class StartRequest
             }
         }
 
+        fileHashes = getProperties("fileHashes", false);
+        if (fileManager != null)
+        {
+            storeBlobs();
+        }
+
         return this;
     }
 
+    /**
+     * Moves the uploaded files which have a checksum to the blob store.
+     */
+    private void storeBlobs()
+    {
+        for (Map.Entry<String, String> entry : fileHashes.entrySet())
+        {
+            FileItem item = files.remove(entry.getKey());
+            if (item == null)
+            {
+                continue;
+            }
+
+            try
+            {
+                InputStream inputStream = item.getInputStream();
+                try
+                {
+                    fileManager.saveBlob(entry.getValue(), inputStream);
+                }
+                finally
+                {
+                    inputStream.close();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new CargoDaemonException(e);
+            }
+            finally
+            {
+                item.delete();
+            }
+        }
+    }
+
     /**
      * Gets a parameters from the request.
      * 
@@ -246,7 +313,8 @@ public class StartRequest
 
 
     /**
-     * Gets the inputstream of a file with key name {@code name}.
+     * Gets the inputstream of a file with key name {@code name}. The file is read from the blob
+     * store if the request gave its checksum, otherwise from the request itself.
      * 
      * @param name The key name.
      * @param required If required {@code true}, otherwise {@code false}
@@ -258,7 +326,17 @@ public class StartRequest
         {
             InputStream inputStream = null;
 
-            if (files != null)
+            String hash = fileHashes == null ? null : fileHashes.get(name);
+            if (hash != null && fileManager != null)
+            {
+                if (!fileManager.existsBlob(hash))
+                {
+                    throw new CargoDaemonException("File " + name + " with checksum " + hash
+                        + " has neither been uploaded nor is in the blob store.");
+                }
+                inputStream = fileManager.getBlobInputStream(hash);
+            }
+            else if (files != null)
             {
                 FileItem item = files.get(name);
                 if (item != null)
@@ -49,10 +49,9 @@ import org.codehaus.cargo.container.RemoteContainer;
 import org.codehaus.cargo.container.configuration.ConfigurationType;
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.configuration.RuntimeConfiguration;
-import org.codehaus.cargo.container.deployer.DeployableMonitor;
 import org.codehaus.cargo.container.deployer.URLDeployableMonitor;
 import org.codehaus.cargo.container.internal.util.ResourceUtils;
-import org.codehaus.cargo.container.spi.deployer.DeployerWatchdog;
+import org.codehaus.cargo.container.spi.deployer.DeployerWatchdogGroup;
 import org.codehaus.cargo.maven2.configuration.ArtifactInstaller;
 import org.codehaus.cargo.maven2.configuration.Configuration;
 import org.codehaus.cargo.maven2.configuration.Container;
@@ -65,6 +64,7 @@ import org.codehaus.cargo.maven2.util.CargoProject;
 import org.codehaus.cargo.maven2.util.EmbeddedContainerArtifactResolver;
 import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.log.AsyncFileLogger;
 import org.codehaus.cargo.util.log.FileLogger;
 import org.codehaus.cargo.util.log.LogLevel;
 import org.codehaus.cargo.util.log.Logger;
@@ -935,7 +935,8 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
 
     /**
      * Create a logger. If a <code>&lt;log&gt;</code> configuration element has been specified by
-     * the user then use it. If none is specified then log to the Maven 2 logging subsystem.
+     * the user then use it, asynchronously if <code>&lt;logAsync&gt;</code> is set. If none is
+     * specified then log to the Maven 2 logging subsystem.
      * 
      * @return the logger to use for logging this plugin's activity
      */
@@ -947,7 +948,14 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
             // Ensure that the directories where the log will go are created
             getContainerElement().getLog().getParentFile().mkdirs();
 
-            logger = new FileLogger(getContainerElement().getLog(), true);
+            if (getContainerElement().isLogAsync())
+            {
+                logger = new AsyncFileLogger(getContainerElement().getLog(), true);
+            }
+            else
+            {
+                logger = new FileLogger(getContainerElement().getLog(), true);
+            }
         }
         else
         {
@@ -978,7 +986,9 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
     }
 
     /**
-     * Waits until all deployables with a deployable monitor are deployed / undeployed.
+     * Waits until all deployables with a deployable monitor are deployed / undeployed. All ping
+     * URLs are watched at the same time, so the wait ends as soon as the slowest deployable is
+     * ready; the time each deployable took is logged.
      * 
      * @param starting <code>true</code> if container is starting (i.e., wait for deployment),
      * <code>false</code> otherwise.
@@ -988,13 +998,15 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
         if (getDeployablesElement() != null)
         {
             Logger watchdogLogger = createLogger();
+            DeployerWatchdogGroup watchdogs = new DeployerWatchdogGroup();
+            watchdogs.setLogger(watchdogLogger);
 
             for (Deployable deployable : getDeployablesElement())
             {
                 URL pingURL = deployable.getPingURL();
                 if (pingURL != null)
                 {
-                    DeployableMonitor monitor;
+                    URLDeployableMonitor monitor;
                     Long pingTimeout = deployable.getPingTimeout();
                     if (pingTimeout == null)
                     {
@@ -1004,12 +1016,20 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
                     {
                         monitor = new URLDeployableMonitor(pingURL, pingTimeout.longValue());
                     }
-                    DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
-                    watchdog.setLogger(watchdogLogger);
+                    // Reuse connections between pings of the same server
+                    monitor.setKeepAlive(true);
                     monitor.setLogger(watchdogLogger);
-                    watchdog.watch(starting);
+                    watchdogs.addMonitor(monitor);
                 }
             }
+
+            Map<String, Long> completed = watchdogs.watch(starting);
+            for (Map.Entry<String, Long> deployable : completed.entrySet())
+            {
+                getLog().info("Deployable [" + deployable.getKey() + "] is "
+                    + (starting ? "deployed" : "undeployed") + " after "
+                    + deployable.getValue() + " ms");
+            }
         }
     }
 
@@ -19,14 +19,19 @@
  */
 package org.codehaus.cargo.maven2;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.util.List;
+import java.util.Properties;
 
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.archiver.MavenArchiver;
@@ -52,11 +57,12 @@ import org.codehaus.cargo.module.webapp.merge.WarArchiveMerger;
 import org.codehaus.plexus.PlexusConstants;
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.jar.Manifest;
 import org.codehaus.plexus.archiver.jar.ManifestException;
-import org.codehaus.plexus.archiver.war.WarArchiver;
 import org.codehaus.plexus.context.Context;
 import org.codehaus.plexus.context.ContextException;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Contextualizable;
+import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.jdom.JDOMException;
 
@@ -240,22 +246,12 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
                 doMerge(wam, merge);
             }
 
-            File assembleDir = new File(this.outputDirectory, this.warName);
             File warFile = new File(this.outputDirectory, this.warName + ".war");
 
-            // Merge to directory
+            // Merge directly to the WAR file, with the manifest and POM generated in memory
             MergedWarArchive output = (MergedWarArchive) wam.performMerge();
-            output.merge(assembleDir.getAbsolutePath());
-
-            // Archive to WAR file
-            WarArchiver warArchiver = new WarArchiver();
-            warArchiver.addDirectory(assembleDir);
-            warArchiver.setIgnoreWebxml(false);
-
-            MavenArchiver mar = new MavenArchiver();
-            mar.setArchiver(warArchiver);
-            mar.setOutputFile(warFile);
-            mar.createArchive(mavenProject, archive);
+            addArchiveResources(output);
+            output.store(warFile);
 
             getProject().getArtifact().setFile(warFile);
         }
@@ -289,6 +285,65 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
         }
     }
 
+    /**
+     * Adds the manifest and, if configured, the Maven descriptor to the merged WAR file.
+     * @param output Merged WAR file.
+     * @throws IOException If a file cannot be read.
+     * @throws ArchiverException If the default manifest cannot be read.
+     * @throws ManifestException If a manifest is invalid.
+     * @throws DependencyResolutionRequiredException If the manifest class path cannot be built.
+     */
+    private void addArchiveResources(MergedWarArchive output) throws IOException,
+        ArchiverException, ManifestException, DependencyResolutionRequiredException
+    {
+        Manifest manifest = Manifest.getDefaultManifest();
+        if (archive.getManifestFile() != null)
+        {
+            Reader manifestReader = new FileReader(archive.getManifestFile());
+            try
+            {
+                manifest.merge(new Manifest(manifestReader));
+            }
+            finally
+            {
+                manifestReader.close();
+            }
+        }
+        manifest.merge(new MavenArchiver().getManifest(mavenProject, archive));
+        StringWriter manifestWriter = new StringWriter();
+        PrintWriter printWriter = new PrintWriter(manifestWriter);
+        manifest.write(printWriter);
+        printWriter.flush();
+        output.addResource("META-INF/MANIFEST.MF", manifestWriter.toString().getBytes("UTF-8"));
+
+        if (archive.isAddMavenDescriptor())
+        {
+            String descriptorPath = "META-INF/maven/" + mavenProject.getGroupId() + "/"
+                + mavenProject.getArtifactId() + "/";
+            if (mavenProject.getFile() != null && mavenProject.getFile().isFile())
+            {
+                InputStream pom = new FileInputStream(mavenProject.getFile());
+                try
+                {
+                    output.addResource(descriptorPath + "pom.xml", IOUtil.toByteArray(pom));
+                }
+                finally
+                {
+                    pom.close();
+                }
+            }
+
+            Properties pomProperties = new Properties();
+            pomProperties.setProperty("groupId", mavenProject.getGroupId());
+            pomProperties.setProperty("artifactId", mavenProject.getArtifactId());
+            pomProperties.setProperty("version", mavenProject.getVersion());
+            ByteArrayOutputStream pomPropertiesBytes = new ByteArrayOutputStream();
+            pomProperties.store(pomPropertiesBytes, "Generated by Maven");
+            output.addResource(descriptorPath + "pom.properties",
+                pomPropertiesBytes.toByteArray());
+        }
+    }
+
     /**
      * Do thr actual merge.
      * @param wam WAR archive merger.
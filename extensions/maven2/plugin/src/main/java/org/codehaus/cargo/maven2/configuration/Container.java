@@ -116,6 +116,11 @@ public class Container
      */
     private LogLevel logLevel;
 
+    /**
+     * Whether to write the log file asynchronously.
+     */
+    private boolean logAsync;
+
     /**
      * Container type.
      */
@@ -352,6 +357,22 @@ public class Container
         return this.logLevel;
     }
 
+    /**
+     * @param logAsync Whether to write the log file asynchronously.
+     */
+    public void setLogAsync(boolean logAsync)
+    {
+        this.logAsync = logAsync;
+    }
+
+    /**
+     * @return Whether to write the log file asynchronously.
+     */
+    public boolean isLogAsync()
+    {
+        return this.logAsync;
+    }
+
     /**
      * @return Container implementation.
      */
@@ -57,6 +57,16 @@ public class ZipUrlInstaller
      */
     private Proxy proxy;
 
+    /**
+     * Whether to download and extract natively instead of using the Ant tasks.
+     */
+    private boolean nativeMode;
+
+    /**
+     * Directory of the archive cache shared between all download directories.
+     */
+    private String cacheDir;
+
     /**
      * @param downloadDir the destination directory where the zipped container install will be
      * downloaded.
@@ -128,6 +138,40 @@ public class ZipUrlInstaller
         return this.proxy;
     }
 
+    /**
+     * @param nativeMode <code>true</code> to download and extract the container natively, the
+     * archive being extracted in parallel while it is being downloaded.
+     */
+    public void setNativeMode(boolean nativeMode)
+    {
+        this.nativeMode = nativeMode;
+    }
+
+    /**
+     * @return <code>true</code> if the container is downloaded and extracted natively.
+     */
+    public boolean isNativeMode()
+    {
+        return this.nativeMode;
+    }
+
+    /**
+     * @param cacheDir directory of the archive cache shared between all download directories,
+     * only used in native mode.
+     */
+    public void setCacheDir(String cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return directory of the archive cache shared between all download directories.
+     */
+    public String getCacheDir()
+    {
+        return this.cacheDir;
+    }
+
     /**
      * Creates the {@link ZipURLInstaller} with the appropriate configuration.
      * @param projectBuildDirectory Project build directory.
@@ -146,6 +190,8 @@ public class ZipUrlInstaller
         {
             installer.setProxy(getProxy());
         }
+        installer.setNativeMode(isNativeMode());
+        installer.setCacheDir(getCacheDir());
         return installer;
     }
 
@@ -32,6 +32,7 @@ import org.codehaus.cargo.maven2.configuration.Container;
 import org.codehaus.cargo.maven2.configuration.ZipUrlInstaller;
 import org.codehaus.cargo.maven2.log.MavenLogger;
 import org.codehaus.cargo.maven2.util.CargoProject;
+import org.codehaus.cargo.util.log.AsyncFileLogger;
 import org.codehaus.cargo.util.log.FileLogger;
 import org.codehaus.cargo.util.log.Logger;
 
@@ -108,6 +109,24 @@ public class CargoMojoTest extends TestCase
         assertEquals(FileLogger.class.getName(), logger.getClass().getName());
     }
 
+    /**
+     * Test logger creation when a log element is specified with asynchronous logging.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCreateLoggerWhenLogAsyncSpecified() throws Exception
+    {
+        File logFile = File.createTempFile("cargo-test-" + getClass().getName(), ".log");
+        logFile.deleteOnExit();
+
+        this.mojo.setContainerElement(new Container());
+        this.mojo.getContainerElement().setLog(logFile);
+        this.mojo.getContainerElement().setLogAsync(true);
+
+        Logger logger = this.mojo.createLogger();
+        assertEquals(AsyncFileLogger.class.getName(), logger.getClass().getName());
+        ((AsyncFileLogger) logger).close();
+    }
+
     /**
      * Test logger creation when no log element is specified.
      */
@@ -20,10 +20,12 @@
 package org.codehaus.cargo.sample.maven2.uberwar_test;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.cli.MavenCli;
@@ -98,17 +100,16 @@ public class UberwarTest extends AbstractDocumentBuilderTest
         String projectVersion = System.getProperty("project.version");
         assertNotNull("System property project.version not set", projectVersion);
 
-        File uberwarExpandedDirectory = new File(target,
-            "classes/target/cargo-sample-maven2-uberwar-test-artifact-" + projectVersion);
-        assertNotNull("Not a directory: " + uberwarExpandedDirectory,
-            uberwarExpandedDirectory.isDirectory());
+        File uberwar = new File(target,
+            "classes/target/cargo-sample-maven2-uberwar-test-artifact-" + projectVersion + ".war");
+        assertTrue("Not a file: " + uberwar, uberwar.isFile());
 
-        File webXmlFile = new File(uberwarExpandedDirectory, "WEB-INF/web.xml");
-        assertNotNull("Not a file: " + webXmlFile, webXmlFile.isFile());
-
-        FileInputStream webXmlStream = new FileInputStream(webXmlFile);
+        ZipFile uberwarZip = new ZipFile(uberwar);
         try
         {
+            ZipEntry webXmlEntry = uberwarZip.getEntry("WEB-INF/web.xml");
+            assertNotNull("No WEB-INF/web.xml in " + uberwar, webXmlEntry);
+            InputStream webXmlStream = uberwarZip.getInputStream(webXmlEntry);
             WebXml webXml = WebXmlIo.parseWebXml(webXmlStream, getEntityResolver());
 
             // Check that the security constraints are in the uberwar
@@ -130,7 +131,7 @@ public class UberwarTest extends AbstractDocumentBuilderTest
         }
         finally
         {
-            webXmlStream.close();
+            uberwarZip.close();
         }
     }
 
@@ -19,8 +19,6 @@
  */
 package org.codehaus.cargo.deployer.jetty;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -31,6 +29,9 @@ import java.io.PrintWriter;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -41,6 +42,7 @@ import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.util.B64Code;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.webapp.WebAppClassLoader;
 import org.eclipse.jetty.webapp.WebAppContext;
@@ -53,6 +55,11 @@ import org.eclipse.jetty.webapp.WebAppContext;
 public class DeployerServlet extends HttpServlet
 {
 
+    /**
+     * Size of the buffer used when receiving web archives.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
     /**
      * Timeout when deploying.
      */
@@ -234,23 +241,14 @@ public class DeployerServlet extends HttpServlet
             String webappLocation = webAppDirectory + contextPath
                     + (contextPath.equals("/") ? "ROOT" : "") + ".war";
             File webappFile = new File(webappLocation);
-            InputStream inputStream = new BufferedInputStream(request.getInputStream());
-            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(webappFile),
-                8096);
-
-            // transfer the data across
-            int i = inputStream.read();
-            while (i != -1)
+            String checksum = request.getHeader("Content-MD5");
+            if (!receiveFile(request.getInputStream(), webappFile, checksum))
             {
-                outputStream.write(i);
-                i = inputStream.read();
+                sendError(response, "The received web archive does not match its checksum "
+                    + checksum);
+                return;
             }
 
-            // close and flush readers
-            inputStream.close();
-            outputStream.flush();
-            outputStream.close();
-
             // CARGO-1122: Just wait for Jetty to deploy the application by itself
             long timeout = System.currentTimeMillis() + DeployerServlet.TIMEOUT;
             while (System.currentTimeMillis() < timeout)
@@ -277,6 +275,113 @@ public class DeployerServlet extends HttpServlet
         }
     }
 
+    /**
+     * Receives a file from a stream. The data is first written next to the file and only moved to
+     * the file once complete, so that Jetty never picks up a partially received web archive.
+     * @param in The stream to read the file from, which is closed by this method
+     * @param file The file to write
+     * @param checksum Expected Base64-encoded MD5 checksum of the data, as sent in the
+     * <code>Content-MD5</code> header, <code>null</code> not to verify the data
+     * @return <code>false</code> if the data does not match the checksum, in which case the file
+     * is not written
+     * @throws IOException If an io exception occurs
+     */
+    protected boolean receiveFile(InputStream in, File file, String checksum) throws IOException
+    {
+        MessageDigest digest = null;
+        if (checksum != null)
+        {
+            try
+            {
+                digest = MessageDigest.getInstance("MD5");
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException("MD5 is not supported by this JVM", e);
+            }
+        }
+
+        File partFile = new File(file.getPath() + ".part");
+        OutputStream out = new FileOutputStream(partFile);
+        try
+        {
+            byte[] buffer = new byte[DeployerServlet.BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, n);
+                if (digest != null)
+                {
+                    digest.update(buffer, 0, n);
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+            in.close();
+        }
+
+        if (digest != null
+            && !checksum.trim().equals(new String(B64Code.encode(digest.digest()))))
+        {
+            partFile.delete();
+            return false;
+        }
+        if (!partFile.renameTo(file))
+        {
+            file.delete();
+            if (!partFile.renameTo(file))
+            {
+                partFile.delete();
+                throw new IOException("Cannot move " + partFile + " to " + file);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a file, letting the operating system transfer the data between both files.
+     * @param source The file to copy
+     * @param dest The destination file
+     * @throws IOException If an io exception occurs
+     */
+    protected void copyFile(File source, File dest) throws IOException
+    {
+        FileChannel in = new FileInputStream(source).getChannel();
+        try
+        {
+            FileChannel out = new FileOutputStream(dest).getChannel();
+            try
+            {
+                long size = in.size();
+                long position = 0;
+                while (position < size)
+                {
+                    long transferred = in.transferTo(position, size - position, out);
+                    if (transferred <= 0)
+                    {
+                        break;
+                    }
+                    position += transferred;
+                }
+                if (position < size)
+                {
+                    throw new IOException("Copied only " + position + " of the " + size
+                        + " bytes of [" + source + "] to [" + dest + "]");
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
     /**
      * Returns the file if it exists for the specified context path. If the file does not exist
      * then it will return null.
@@ -404,19 +509,7 @@ public class DeployerServlet extends HttpServlet
 
             File webappSource = new File(uri);
 
-            FileInputStream fileInputStream = new FileInputStream(webappSource);
-            FileOutputStream fileOutputStream = new FileOutputStream(webappDest);
-
-            int i = fileInputStream.read();
-            while (i != -1)
-            {
-                fileOutputStream.write(i);
-                i = fileInputStream.read();
-            }
-
-            fileInputStream.close();
-            fileOutputStream.flush();
-            fileOutputStream.close();
+            copyFile(webappSource, webappDest);
 
             WebAppContext webappcontext = new WebAppContext();
             webappcontext.setContextPath(context);